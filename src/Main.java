@@ -1,9 +1,32 @@
+import analytics.*;
 import auth.*;
+import cluster.ShardRouter;
 import contracts.*;
 import entities.*;
 import java.io.*;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import metrics.*;
 import platforms.*;
+import replication.LedgerFollower;
+import replication.LedgerLeader;
+import scheduling.CampaignScheduler;
+import search.InfluencerSearchIndex;
+import search.LookalikeIndex;
+import storage.BulkImporter;
+import storage.CampaignArchive;
+import storage.DataExporter;
+import storage.HistoryCache;
+import storage.HistoryStore;
+import storage.InfluencerHistory;
+import util.Money;
+import util.SymbolDictionary;
 
 /**
  * The main entry point for the Influencer Platform application.
@@ -13,22 +36,74 @@ import platforms.*;
  * and admins. It also initializes sample data for testing purposes.</p>
  */
 public class Main {
-    private static final int MAX_INFLUENCERS = 100; // Maximum number of influencers
-    private static final int MAX_CONTRACTS = 100; // Maximum number of contracts
+    private static final int INITIAL_INFLUENCERS = 100; // Initial capacity of the influencer array
     
     // Data storage
-    private static Influencer[] influencers = new Influencer[MAX_INFLUENCERS]; // Array to store influencers
-    private static Contract[] contracts = new Contract[MAX_CONTRACTS]; // Array to store contracts
-    private static int influencerCount = 0; // Current count of influencers
-    private static int contractCount = 0; // Current count of contracts
+    private static volatile Influencer[] influencers = new Influencer[INITIAL_INFLUENCERS]; // Array to store influencers, grown as needed
+    private static ContractLog contracts = new ContractLog(); // Columnar log of all contracts
+    private static ContractIndex contractIndex = new ContractIndex(contracts); // Query indexes over the contracts
+    private static ReportSnapshot.Publisher snapshots = new ReportSnapshot.Publisher(contracts); // Point-in-time views for admin reports
+    private static CampaignScheduler scheduler; // Launches future-dated and recurring campaigns
+    private static volatile int influencerCount = 0; // Current count of influencers; published after the array slot is written
+    private static InfluencerSearchIndex searchIndex = new InfluencerSearchIndex(); // Username and niche search
+    private static LookalikeIndex lookalikes = new LookalikeIndex(); // Nearest influencers by features
+    private static ShardRouter router; // Owns influencers and contracts when they are partitioned across shard processes, or null
+    private static LedgerLeader leader; // Ships contracts to read-only replicas, or null
+    private static LedgerFollower follower; // Copies contracts from the leader when this process is a read-only replica, or null
     
     /**
      * The main method that starts the application.
      *
+     * <p>With {@code -Dshards=N}, influencers and their contracts are partitioned
+     * across {@code N} worker processes on this host and reached through a
+     * {@link ShardRouter}; campaign scheduling and the reports that need every
+     * campaign in one process are then unavailable.</p>
+     *
+     * <p>With {@code -Dreplication.port=P}, contracts are shipped to read-only
+     * replicas that connect on loopback port {@code P}. A replica is started
+     * with {@code -Dreplication.leader=P}; it holds no data of its own and
+     * serves only the admin reports.</p>
+     *
      * @param args Command line arguments (not used).
      */
     public static void main(String[] args) {
+        Integer leaderPort = Integer.getInteger("replication.leader");
+        if (leaderPort != null) {
+            follower = new LedgerFollower(contracts, leaderPort, Main::addInfluencer);
+            follower.start();
+            System.out.println("Read-only replica of the contract ledger on port " + leaderPort);
+            runApplication();
+            return;
+        }
+        int shards = Integer.getInteger("shards", 0);
+        if (shards > 0) {
+            try {
+                router = ShardRouter.launch(shards);
+                Runtime.getRuntime().addShutdownHook(new Thread(router::close));
+                System.out.println("Influencers partitioned across " + shards + " shards");
+            } catch (IOException e) {
+                System.out.println("Could not start shards, running in one process: " + e.getMessage());
+            }
+        }
         initializeSampleData(); // Initialize sample data for testing
+        Integer replicationPort = Integer.getInteger("replication.port");
+        if (replicationPort != null && router == null) {
+            try {
+                leader = new LedgerLeader(contracts, replicationPort);
+                leader.start();
+                System.out.println("Replicating contracts on port " + leader.getPort());
+            } catch (IOException e) {
+                System.out.println("Replication unavailable: " + e.getMessage());
+            }
+        }
+        if (router == null) {
+            try {
+                scheduler = new CampaignScheduler(new File(System.getProperty("scheduler.journal", "campaign-schedules.journal")));
+                scheduler.start(); // Launch scheduled campaigns in the background
+            } catch (IOException e) {
+                System.out.println("Campaign scheduling unavailable: " + e.getMessage());
+            }
+        }
         runApplication(); // Start the application
     }
 
@@ -66,27 +141,72 @@ public class Main {
      * Initializes sample data for influencers and brand managers.
      */
     private static void initializeSampleData() {
+        if (router != null) {
+            initializeShardedSampleData();
+            return;
+        }
         // Initialize influencers (must match users.txt)
-        influencers[influencerCount++] = new Influencer("inf1", "pass123", "Fashion", 4.5, "US", "EU");
-        influencers[influencerCount++] = new Influencer("inf2", "pass123", "Tech", 4.2, "Global");
-        influencers[influencerCount++] = new Influencer("inf3", "pass123", "Lifestyle", 4.8, "US", "Asia");
+        addInfluencer(new Influencer("inf1", "pass123", "Fashion", 4.5, "US", "EU"));
+        addInfluencer(new Influencer("inf2", "pass123", "Tech", 4.2, "Global"));
+        addInfluencer(new Influencer("inf3", "pass123", "Lifestyle", 4.8, "US", "Asia"));
         
         // Initialize brand managers
-        BrandManager brand1 = new BrandManager("brand1", "pass123", "FashionCo", 50000);
-        BrandManager brand2 = new BrandManager("brand2", "pass123", "TechGiant", 100000);
+        BrandManager brand1 = new BrandManager("brand1", "pass123", "FashionCo", Money.ofUnits(50000));
+        BrandManager brand2 = new BrandManager("brand2", "pass123", "TechGiant", Money.ofUnits(100000));
+        UserDirectory.register(brand1);
+        UserDirectory.register(brand2);
         
         // Sample contracts with payments
         try {
-            Contract contract1 = brand1.offerSponsorship(influencers[0], 2500);
-            contracts[contractCount++] = contract1;
+            Contract contract1 = brand1.offerSponsorship(influencers[0], Money.ofUnits(2500));
+            contracts.append(contract1);
             
-            Contract contract2 = brand2.offerSponsorship(influencers[1], 5000);
-            contracts[contractCount++] = contract2;
+            Contract contract2 = brand2.offerSponsorship(influencers[1], Money.ofUnits(5000));
+            contracts.append(contract2);
+        } catch (Exception e) {
+            System.out.println("Error initializing sample contracts: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Initializes the same sample data on the shards. Brand managers stay in this process.
+     */
+    private static void initializeShardedSampleData() {
+        router.addInfluencer("inf1", "pass123", "Fashion", 4.5, "US", "EU");
+        router.addInfluencer("inf2", "pass123", "Tech", 4.2, "Global");
+        router.addInfluencer("inf3", "pass123", "Lifestyle", 4.8, "US", "Asia");
+
+        BrandManager brand1 = new BrandManager("brand1", "pass123", "FashionCo", Money.ofUnits(50000));
+        BrandManager brand2 = new BrandManager("brand2", "pass123", "TechGiant", Money.ofUnits(100000));
+        UserDirectory.register(brand1);
+        UserDirectory.register(brand2);
+
+        try {
+            router.offerSponsorship(brand1, "inf1", Money.ofUnits(2500));
+            router.offerSponsorship(brand2, "inf2", Money.ofUnits(5000));
         } catch (Exception e) {
             System.out.println("Error initializing sample contracts: " + e.getMessage());
         }
     }
 
+    /**
+     * Adds an influencer to the system, registering it and placing it on the leaderboards.
+     *
+     * @param influencer The influencer to add.
+     */
+    private static void addInfluencer(Influencer influencer) {
+        if (influencerCount == influencers.length) {
+            influencers = Arrays.copyOf(influencers, influencers.length + (influencers.length >> 1));
+        }
+        influencers[influencerCount++] = influencer;
+        int id = UserDirectory.register(influencer);
+        Leaderboard.EARNINGS.increment(id, 0);
+        Leaderboard.ENGAGEMENT.set(id, Leaderboard.rateScore(influencer.getEngagementRate()));
+        searchIndex.add(influencer);
+        Recommendations.add(influencer);
+        lookalikes.add(influencer);
+    }
+
     /**
      * Handles the user session after successful login.
      *
@@ -96,11 +216,21 @@ public class Main {
      */
     private static void handleUserSession(User user, BufferedReader reader) throws Exception {
         System.out.println("\nLogin successful! Welcome, " + user.username + ".");
+        if (follower != null && !(user instanceof Admin)) {
+            System.out.println("This is a read-only replica; only admin reports are available.");
+            return;
+        }
         
         while (true) {
             user.displayMenu();
             
-            if (user instanceof Influencer) {
+            if (user instanceof Influencer && router != null) {
+                if (!shardedInfluencerDashboard(user.username, reader)) {
+                    if (logoutPrompt(reader)) {
+                        return; // Go back to login
+                    }
+                }
+            } else if (user instanceof Influencer) {
                 Influencer loggedInInfluencer = findInfluencer(user.username);
                 if (loggedInInfluencer != null) {
                     if (!influencerDashboard(loggedInInfluencer, reader)) {
@@ -171,21 +301,150 @@ public class Main {
         System.out.println("2. View My Contracts");
         System.out.println("3. View Earnings Report");
         System.out.println("4. Launch New Campaign");
-        System.out.println("5. Logout");
+        System.out.println("5. Scheduled Campaigns");
+        System.out.println("6. Report Campaign Engagement");
+        System.out.println("7. Logout");
         System.out.print("Choose: ");
         
         int choice = Integer.parseInt(reader.readLine());
         switch (choice) {
-            case 1: showFullProfile(influencer); break;
-            case 2: viewMyContracts(influencer.username); break;
-            case 3: showEarningsReport(influencer); break;
+            case 1: runReport("FullProfile", () -> showFullProfile(influencer)); break;
+            case 2: runReport("MyContracts", () -> viewMyContracts(influencer)); break;
+            case 3: runReport("EarningsReport", () -> showEarningsReport(influencer)); break;
             case 4: launchCampaign(influencer, reader); break;
-            case 5: return false; // Trigger logout
+            case 5: manageScheduledCampaigns(influencer, reader); break;
+            case 6: reportEngagement(influencer, reader); break;
+            case 7: return false; // Trigger logout
+            default: System.out.println("Invalid choice!");
+        }
+        return true;
+    }
+
+    /**
+    * Displays the influencer dashboard when influencers are partitioned across shards.
+    *
+    * <p>Every choice is answered by the shard that owns the influencer.</p>
+    *
+    * @param username The username of the influencer currently logged in.
+    * @param reader BufferedReader to read user input.
+    * @return true if the user chooses to stay logged in; false if the user chooses to log out.
+    * @throws Exception if an error occurs during the operation.
+    */
+    private static boolean shardedInfluencerDashboard(String username, BufferedReader reader) throws Exception {
+        System.out.println("\n=== INFLUENCER DASHBOARD ===");
+        System.out.println("Logged in as: " + username + " (shard " + router.shardOf(username) + ")");
+        System.out.println("1. View Full Profile");
+        System.out.println("2. View My Contracts");
+        System.out.println("3. View Earnings Report");
+        System.out.println("4. Launch New Campaign");
+        System.out.println("5. Scheduled Campaigns");
+        System.out.println("6. Logout");
+        System.out.print("Choose: ");
+
+        int choice = Integer.parseInt(reader.readLine());
+        switch (choice) {
+            case 1: runReport("FullProfile", () -> showShardedProfile(username)); break;
+            case 2: runReport("MyContracts", () -> showShardedContracts(username, false)); break;
+            case 3: runReport("EarningsReport", () -> showShardedContracts(username, true)); break;
+            case 4: launchShardedCampaign(username, reader); break;
+            case 5: System.out.println("Campaign scheduling is unavailable while influencers are partitioned across shards"); break;
+            case 6: return false; // Trigger logout
             default: System.out.println("Invalid choice!");
         }
         return true;
     }
 
+    /**
+    * Displays an influencer's profile from its shard.
+    *
+    * @param username The username of the influencer.
+    */
+    private static void showShardedProfile(String username) {
+        ShardRouter.Profile profile = router.profile(username);
+        if (profile == null) {
+            System.out.println("Error: Could not load influencer data");
+            return;
+        }
+        System.out.println("\n=== YOUR PROFILE ===");
+        System.out.println("Username: " + profile.getUsername());
+        System.out.println("Niche: " + profile.getNiche());
+        System.out.println("Engagement Rate: " + profile.getEngagementRate());
+        System.out.println("Regions: " + String.join(", ", profile.getRegions()));
+        System.out.printf("Total Earnings: $%s\n", Money.format(profile.getEarningsCents()));
+        for (int i = 0; i < profile.getCampaignCount(); i++) {
+            Platform p = profile.getCampaignPlatform(i);
+            if (p != null) {
+                System.out.println("Campaign Name :"+profile.getCampaignName(i)+" Budget: "+Money.format(profile.getCampaignBudget(i))+" Platform: "+p.getName()+" Likes: "+p.getLikes()+" Views: "+p.getViews()+" Shares: "+p.getShares());
+            }
+        }
+    }
+
+    /**
+    * Displays an influencer's contracts, or earnings report, from its shard.
+    *
+    * @param username The username of the influencer.
+    * @param earnings true for the earnings report; false for the contract list.
+    */
+    private static void showShardedContracts(String username, boolean earnings) {
+        List<ShardRouter.ContractRow> rows = router.contractsOf(username);
+        SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
+        if (earnings) {
+            ShardRouter.Profile profile = router.profile(username);
+            System.out.println("\n=== EARNINGS REPORT ===");
+            System.out.printf("Total Earnings: $%s\n", Money.format(profile == null ? 0 : profile.getEarningsCents()));
+            System.out.println("\nPayment Details:");
+        } else {
+            System.out.println("\n=== YOUR CONTRACTS ===");
+        }
+        for (ShardRouter.ContractRow c : rows) {
+            System.out.printf(earnings ? "- %s: $%s on %s\n" : "- Brand: %s | Amount: $%s | Date: %s\n",
+                c.getBrandName(),
+                Money.format(c.getAmountCents()),
+                sdf.format(new Date(c.getStartMillis())));
+        }
+        if (rows.isEmpty()) System.out.println(earnings ? "No payment history found" : "No contracts found");
+    }
+
+    /**
+    * Launches a new campaign on the shard that owns the influencer.
+    *
+    * @param username The username of the influencer launching the campaign.
+    * @param reader BufferedReader to read user input.
+    * @throws Exception if an error occurs during the campaign launch.
+    */
+    private static void launchShardedCampaign(String username, BufferedReader reader) throws Exception {
+        System.out.println("\n=== LAUNCH NEW CAMPAIGN ===");
+        System.out.print("Campaign name: ");
+        String name = reader.readLine();
+        System.out.print("Budget: $");
+        long budget = Money.parse(reader.readLine());
+        if (budget <= 0) {
+            System.out.println("Budget must be positive!");
+            return;
+        }
+
+        System.out.println("Select platform:");
+        List<Platform> platforms = PlatformRegistry.all();
+        for (int i = 0; i < platforms.size(); i++) {
+            System.out.println((i + 1) + ". " + platforms.get(i).getName());
+        }
+        System.out.print("Choice: ");
+        Platform p = getPlatform(Integer.parseInt(reader.readLine()));
+        if (p == null) {
+            System.out.println("Invalid platform choice!");
+            return;
+        }
+        try {
+            router.launchCampaign(username, name, budget, p);
+        } catch (PaymentFailedException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        System.out.println("Campaign launched successfully!");
+        p.trackCampaign(username);
+        System.out.println("Tracking campaign on " + p.getName());
+    }
+
     /**
     * Displays the full profile of the influencer.
     *
@@ -196,36 +455,102 @@ public class Main {
         System.out.println("\n=== YOUR PROFILE ===");
         System.out.println("Username: " + influencer.username);
         System.out.println("Niche: " + influencer.getNiche());
-        System.out.println("Engagement Rate: " + influencer.getEngagementRate());
+        double recent = influencer.getRecentEngagementRate();
+        System.out.printf("Engagement Rate: %.2f%s\n", influencer.getEngagementRate(),
+            Double.isNaN(recent) ? "" : String.format(" (last %d hours: %.2f)", RollingEngagement.WINDOW_HOURS, recent));
         System.out.println("Regions: " + String.join(", ", influencer.getRegions()));
-        System.out.printf("Total Earnings: $%.2f\n", influencer.getSponsorshipAmount());
-        for(Influencer.Campaign s : influencer.getCampaigns()){
-            if(s!=null){
-                System.out.println("Campaign Name :"+s.getName()+" Budget: "+s.getBudget()+" Platform: "+s.getPlatform().getClass().getSimpleName()+" Likes: "+s.getPlatform().getLikes()+" Views: "+s.getPlatform().getViews()+" Shares: "+s.getPlatform().getShares());
+        System.out.printf("Total Earnings: $%s\n", Money.format(influencer.getSponsorshipAmount()));
+        System.out.printf("Earnings Rank: #%d of %d | Engagement Rank: #%d of %d\n",
+            Leaderboard.EARNINGS.rankOf(influencer.getId()), Leaderboard.EARNINGS.size(),
+            Leaderboard.ENGAGEMENT.rankOf(influencer.getId()), Leaderboard.ENGAGEMENT.size());
+        HashMap<Long, Influencer.Campaign> resident = new HashMap<>(); // Resident campaigns carry the reported counts
+        for (Influencer.Campaign c : influencer.getRecentCampaigns()) {
+            if (c != null) {
+                resident.put(c.getHistoryOffset(), c);
+            }
+        }
+        InfluencerHistory history = HistoryCache.get(influencer.getId());
+        List<InfluencerHistory.CampaignEntry> page = history.getCampaigns(0, InfluencerHistory.PAGE_RECORDS);
+        for(InfluencerHistory.CampaignEntry s : page){
+            if(s.getPlatform()!=null){
+                Platform p = s.getPlatform();
+                Influencer.Campaign r = resident.get(s.getOffset());
+                System.out.println("Campaign Name :"+s.getName()+" Budget: "+Money.format(s.getBudget())+" Platform: "+p.getName()+" Likes: "+p.getLikes()+" Views: "+p.getViews()+" Shares: "+p.getShares()
+                    +(r!=null && r.getViews()>0 ? " | Reported Views: "+r.getViews()+" Likes: "+r.getLikes()+" Shares: "+r.getShares() : ""));
             }
         }
+        int older = history.getCampaignCount() - page.size();
+        if (older > 0) {
+            System.out.println("... and " + older + " older campaigns");
+        }
+    }
+
+    /**
+    * Records views, likes and shares for one of the influencer's campaigns and shows the updated engagement rate.
+    *
+    * @param influencer The influencer reporting engagement.
+    * @param reader BufferedReader to read user input.
+    * @throws Exception if an error occurs during the operation.
+    */
+
+    private static void reportEngagement(Influencer influencer, BufferedReader reader) throws Exception {
+        System.out.println("\n=== REPORT CAMPAIGN ENGAGEMENT ===");
+        Influencer.Campaign[] campaigns = influencer.getRecentCampaigns(); // Archived campaigns are read-only copies
+        int count = 0;
+        for (Influencer.Campaign c : campaigns) {
+            if (c != null) {
+                System.out.println((++count) + ". " + c.getName());
+            }
+        }
+        if (count == 0) {
+            System.out.println("No campaigns launched yet");
+            return;
+        }
+        System.out.print("Select campaign: ");
+        int selected = Integer.parseInt(reader.readLine());
+        Influencer.Campaign campaign = null;
+        for (int i = 0, n = 0; i < campaigns.length && campaign == null; i++) {
+            if (campaigns[i] != null && ++n == selected) {
+                campaign = campaigns[i];
+            }
+        }
+        if (campaign == null) {
+            System.out.println("Invalid selection!");
+            return;
+        }
+        System.out.print("Views: ");
+        long views = Long.parseLong(reader.readLine().trim());
+        System.out.print("Likes: ");
+        long likes = Long.parseLong(reader.readLine().trim());
+        System.out.print("Shares: ");
+        long shares = Long.parseLong(reader.readLine().trim());
+        if (views < 0 || likes < 0 || shares < 0) {
+            System.out.println("Counts cannot be negative!");
+            return;
+        }
+        influencer.recordEngagement(campaign, views, likes, shares);
+        System.out.printf("Engagement rate: %.2f (last %d hours: %.2f)\n",
+            influencer.getEngagementRate(), RollingEngagement.WINDOW_HOURS, influencer.getRecentEngagementRate());
     }
 
     /**
     * Displays the contracts associated with the specified influencer.
     *
-    * @param username The username of the influencer whose contracts are to be displayed.
+    * @param influencer The influencer whose contracts are to be displayed.
     */
 
-    private static void viewMyContracts(String username) {
+    private static void viewMyContracts(Influencer influencer) {
         System.out.println("\n=== YOUR CONTRACTS ===");
         boolean found = false;
         SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
         
-        for (int i = 0; i < contractCount; i++) {
-            if (contracts[i].getInfluencer().username.equals(username)) {
-                Contract c = contracts[i];
-                System.out.printf("- Brand: %s | Amount: $%.2f | Date: %s\n",
-                    c.getBrand().brandName,
-                    c.getAmount(),
-                    sdf.format(c.getStartDate()));
-                found = true;
-            }
+        for (int i : contractIndex.query(new ContractQuery().influencer(influencer.getId())).getRows()) {
+            Contract c = contracts.get(i);
+            System.out.printf("- Brand: %s | Amount: $%s | Date: %s\n",
+                c.getBrand().getBrandName(),
+                Money.format(c.getAmount()),
+                sdf.format(c.getStartDate()));
+            found = true;
         }
         
         if (!found) System.out.println("No contracts found");
@@ -239,24 +564,25 @@ public class Main {
 
     private static void showEarningsReport(Influencer influencer) {
         System.out.println("\n=== EARNINGS REPORT ===");
-        System.out.printf("Total Earnings: $%.2f\n", influencer.getSponsorshipAmount());
+        System.out.printf("Total Earnings: $%s\n", Money.format(influencer.getSponsorshipAmount()));
         
         System.out.println("\nPayment Details:");
-        boolean found = false;
         SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
         
-        for (int i = 0; i < contractCount; i++) {
-            if (contracts[i].getInfluencer().username.equals(influencer.username)) {
-                Contract c = contracts[i];
-                System.out.printf("- %s: $%.2f on %s\n",
-                    c.getBrand().brandName,
-                    c.getAmount(),
-                    sdf.format(c.getStartDate()));
-                found = true;
-            }
+        InfluencerHistory history = HistoryCache.get(influencer.getId());
+        List<Contract> page = history.getContracts(0, InfluencerHistory.PAGE_RECORDS); // Newest first
+        for (Contract c : page) {
+            System.out.printf("- %s: $%s on %s\n",
+                c.getBrand().getBrandName(),
+                Money.format(c.getAmount()),
+                sdf.format(c.getStartDate()));
         }
         
-        if (!found) System.out.println("No payment history found");
+        if (page.isEmpty()) System.out.println("No payment history found");
+        int older = history.getContractCount() - page.size();
+        if (older > 0) {
+            System.out.println("... and " + older + " older payments");
+        }
     }
 
     /**
@@ -272,15 +598,48 @@ public class Main {
         System.out.print("Campaign name: ");
         String name = reader.readLine();
         System.out.print("Budget: $");
-        double budget = Double.parseDouble(reader.readLine());
+        long budget = Money.parse(reader.readLine());
+        if (budget <= 0) {
+            System.out.println("Budget must be positive!");
+            return;
+        }
         
         System.out.println("Select platform:");
-        System.out.println("1. YouTube");
-        System.out.println("2. Instagram");
-        System.out.println("3. Twitter");
+        List<Platform> platforms = PlatformRegistry.all();
+        for (int i = 0; i < platforms.size(); i++) {
+            System.out.println((i + 1) + ". " + platforms.get(i).getName());
+        }
         System.out.print("Choice: ");
         int platform = Integer.parseInt(reader.readLine());
         Platform p = getPlatform(platform);
+        if (p == null) {
+            System.out.println("Invalid platform choice!");
+            return;
+        }
+        if (scheduler != null) {
+            System.out.print("Start (blank for now, or MM/dd/yyyy HH:mm): ");
+            String when = reader.readLine().trim();
+            System.out.print("Repeat every how many days (0 for never): ");
+            String repeat = reader.readLine().trim();
+            int days = repeat.isEmpty() ? 0 : Integer.parseInt(repeat);
+            if (!when.isEmpty() || days > 0) {
+                long startMillis = System.currentTimeMillis();
+                if (!when.isEmpty()) {
+                    SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy HH:mm");
+                    sdf.setLenient(false);
+                    try {
+                        startMillis = sdf.parse(when).getTime();
+                    } catch (ParseException e) {
+                        System.out.println("Invalid date: " + e.getMessage());
+                        return;
+                    }
+                }
+                long id = scheduler.schedule(influencer.username, name, budget, p, startMillis, days * 24L * 60 * 60 * 1000);
+                System.out.println("Campaign scheduled (id " + id + ") for " + new SimpleDateFormat("MM/dd/yyyy HH:mm").format(new Date(startMillis))
+                    + (days > 0 ? ", repeating every " + days + " days" : ""));
+                return;
+            }
+        }
         boolean x  =true;
         try{
             influencer.launchCampaign(name, budget, p);
@@ -291,10 +650,47 @@ public class Main {
         if(x) {
             System.out.println("Campaign launched successfully!");
             p.trackCampaign(influencer.username);
-            System.out.println("Tracking campaign on " + p.getClass().getSimpleName());
+            System.out.println("Tracking campaign on " + p.getName());
         } 
     }
 
+    /**
+    * Lists the influencer's pending scheduled campaigns and lets them cancel one.
+    *
+    * @param influencer The influencer currently logged in.
+    * @param reader BufferedReader to read user input.
+    * @throws Exception if an error occurs while reading input.
+    */
+    private static void manageScheduledCampaigns(Influencer influencer, BufferedReader reader) throws Exception {
+        System.out.println("\n=== SCHEDULED CAMPAIGNS ===");
+        if (scheduler == null) {
+            System.out.println("Campaign scheduling is unavailable");
+            return;
+        }
+        List<CampaignScheduler.ScheduledCampaign> pending = scheduler.pendingFor(influencer.username);
+        if (pending.isEmpty()) {
+            System.out.println("No scheduled campaigns");
+            return;
+        }
+        SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy HH:mm");
+        for (CampaignScheduler.ScheduledCampaign c : pending) {
+            long days = c.getIntervalMillis() / (24L * 60 * 60 * 1000);
+            System.out.printf("[%d] %s | Budget: $%s | Platform: %s | Next: %s%s\n",
+                c.getId(), c.getCampaign(), Money.format(c.getBudgetCents()), c.getPlatform(),
+                sdf.format(new Date(c.getDueMillis())), days > 0 ? " | Every " + days + " days" : "");
+        }
+        System.out.print("Id to cancel (blank to go back): ");
+        String id = reader.readLine().trim();
+        if (!id.isEmpty()) {
+            long target = Long.parseLong(id);
+            boolean own = false;
+            for (CampaignScheduler.ScheduledCampaign c : pending) {
+                own |= c.getId() == target;
+            }
+            System.out.println(own && scheduler.cancel(target) ? "Scheduled campaign cancelled" : "No such scheduled campaign");
+        }
+    }
+
     /**
     * Displays the brand manager dashboard and handles user choices.
     *
@@ -307,22 +703,214 @@ public class Main {
     // ========== BRAND MANAGER DASHBOARD ========== //
     private static boolean brandManagerDashboard(BrandManager brand, BufferedReader reader) throws Exception {
         System.out.println("\n=== BRAND DASHBOARD ===");
-        System.out.printf("Brand: %s | Budget: $%.2f\n", brand.brandName, brand.getSponsorshipBudget());
+        System.out.printf("Brand: %s | Budget: $%s", brand.getBrandName(), Money.format(brand.getSponsorshipBudget()));
+        long held = Escrow.heldBy(brand);
+        System.out.println(held > 0 ? " | In escrow: $" + Money.format(held) : "");
         System.out.println("1. Offer New Sponsorship");
         System.out.println("2. View My Contracts");
-        System.out.println("3. Logout");
+        System.out.println("3. View Top Influencers");
+        System.out.println("4. Recommended Influencers");
+        System.out.println("5. Find Lookalike Influencers");
+        System.out.println("6. Plan Sponsorships Within Budget");
+        System.out.println("7. Logout");
         System.out.print("Choose: ");
         
         int choice = Integer.parseInt(reader.readLine());
         switch (choice) {
             case 1: offerSponsorship(brand, reader); break;
-            case 2: viewBrandContracts(brand.username); break;
-            case 3: return false; // Trigger logout
+            case 2: runReport("BrandContracts", () -> viewBrandContracts(brand.username)); break;
+            case 3: showLeaderboard(reader); break;
+            case 4: showRecommendations(reader); break;
+            case 5: showLookalikes(reader); break;
+            case 6: planSponsorships(brand, reader); break;
+            case 7: return false; // Trigger logout
             default: System.out.println("Invalid choice!");
         }
         return true;
     }
 
+    /**
+    * Shows the most engaged influencers of a niche for a platform, optionally limited to a region.
+    *
+    * @param reader BufferedReader to read user input.
+    * @throws Exception if an error occurs during the operation.
+    */
+
+    private static void showRecommendations(BufferedReader reader) throws Exception {
+        if (router != null) {
+            System.out.println("Recommendations are unavailable while influencers are partitioned across shards");
+            return;
+        }
+        System.out.println("\n=== RECOMMENDED INFLUENCERS ===");
+        System.out.println("Select platform:");
+        List<Platform> platforms = PlatformRegistry.all();
+        for (int i = 0; i < platforms.size(); i++) {
+            System.out.println((i + 1) + ". " + platforms.get(i).getName());
+        }
+        Platform p = getPlatform(Integer.parseInt(reader.readLine()));
+        if (!(p instanceof RecommendationEngine)) {
+            System.out.println("Invalid platform choice!");
+            return;
+        }
+        System.out.print("Niche: ");
+        String niche = reader.readLine();
+        System.out.print("Region (blank for any): ");
+        String region = reader.readLine();
+        System.out.print("How many (default " + RecommendationEngine.DEFAULT_RECOMMENDATIONS + "): ");
+        String count = reader.readLine();
+        int k = count == null || count.isBlank() ? RecommendationEngine.DEFAULT_RECOMMENDATIONS : Integer.parseInt(count.trim());
+
+        List<Influencer> recommended = ((RecommendationEngine) p).recommendInfluencers(niche, region, k);
+        if (recommended.isEmpty()) {
+            System.out.println("No influencers found");
+            return;
+        }
+        for (int i = 0; i < recommended.size(); i++) {
+            Influencer inf = recommended.get(i);
+            System.out.printf("%d. %s (%s, Engagement: %.1f)\n",
+                i+1,
+                inf.username,
+                inf.getNiche(),
+                inf.getEngagementRate());
+        }
+    }
+
+    /**
+    * Shows the influencers most similar to one the brand already works with.
+    *
+    * @param reader BufferedReader to read user input.
+    * @throws Exception if an error occurs during the operation.
+    */
+
+    private static void showLookalikes(BufferedReader reader) throws Exception {
+        if (router != null) {
+            System.out.println("Lookalike search is unavailable while influencers are partitioned across shards");
+            return;
+        }
+        System.out.println("\n=== LOOKALIKE INFLUENCERS ===");
+        System.out.print("Influencer username: ");
+        String username = reader.readLine();
+        List<InfluencerSearchIndex.Match> found = searchIndex.search(username, 0, 1);
+        if (found.isEmpty() || !found.get(0).getInfluencer().username.equalsIgnoreCase(username.trim())) {
+            System.out.println("Influencer not found!");
+            return;
+        }
+        Influencer target = found.get(0).getInfluencer();
+        List<LookalikeIndex.Match> matches = lookalikes.lookalikes(target, 10);
+        if (matches.isEmpty()) {
+            System.out.println("No lookalikes found");
+            return;
+        }
+        System.out.printf("Influencers like %s (%s, Engagement: %.1f):\n", target.username, target.getNiche(), target.getEngagementRate());
+        for (int i = 0; i < matches.size(); i++) {
+            Influencer inf = matches.get(i).getInfluencer();
+            System.out.printf("%d. %s (%s, Engagement: %.1f, Regions: %s) | Distance: %.2f\n",
+                i+1,
+                inf.username,
+                inf.getNiche(),
+                inf.getEngagementRate(),
+                String.join(", ", inf.getRegions()),
+                matches.get(i).getDistance());
+        }
+    }
+
+    /**
+    * Chooses the influencers that give a brand the most engagement for a budget and optionally sends them offers.
+    *
+    * <p>Each influencer is priced at the average of its past contracts, or at
+    * a default price if it has none.</p>
+    *
+    * @param brand The brand manager planning the sponsorships.
+    * @param reader BufferedReader to read user input.
+    * @throws Exception if an error occurs during the operation.
+    */
+
+    private static void planSponsorships(BrandManager brand, BufferedReader reader) throws Exception {
+        if (router != null) {
+            System.out.println("Budget planning is unavailable while influencers are partitioned across shards");
+            return;
+        }
+        System.out.println("\n=== PLAN SPONSORSHIPS ===");
+        System.out.print("Budget to spend (blank for all $" + Money.format(brand.getSponsorshipBudget()) + "): $");
+        String input = reader.readLine();
+        long budget = input == null || input.isBlank() ? brand.getSponsorshipBudget() : Money.parse(input);
+        System.out.print("Niche (blank for any): ");
+        String niche = reader.readLine();
+        System.out.print("Region (blank for any): ");
+        String region = reader.readLine();
+        System.out.print("Lowest price per influencer (blank for none): $");
+        input = reader.readLine();
+        long minPrice = input == null || input.isBlank() ? 0 : Money.parse(input);
+        System.out.print("Highest price per influencer (blank for none): $");
+        input = reader.readLine();
+        long maxPrice = input == null || input.isBlank() ? Long.MAX_VALUE : Money.parse(input);
+        System.out.print("Price of influencers without past contracts: $");
+        long defaultPrice = Money.parse(reader.readLine());
+        System.out.print("Time limit in milliseconds (blank for " + BudgetOptimiser.DEFAULT_TIME_LIMIT_MILLIS + "): ");
+        input = reader.readLine();
+        long timeLimit = input == null || input.isBlank() ? BudgetOptimiser.DEFAULT_TIME_LIMIT_MILLIS : Long.parseLong(input.trim());
+
+        BudgetOptimiser optimiser = new BudgetOptimiser(budget).priceBetween(minPrice, maxPrice).timeLimit(timeLimit);
+        if (niche != null && !niche.isBlank()) {
+            int nicheId = SymbolDictionary.NICHES.lookup(niche.trim());
+            if (nicheId == SymbolDictionary.NONE) {
+                System.out.println("No influencers found");
+                return;
+            }
+            optimiser.niche(nicheId);
+        }
+        if (region != null && !region.isBlank()) {
+            int regionId = SymbolDictionary.REGIONS.lookup(region.trim());
+            optimiser.region(regionId == SymbolDictionary.NONE ? -2 : regionId); // An unknown region only matches global influencers
+        }
+        HashMap<Integer, long[]> history = new HashMap<>(); // Influencer id to {total, count} of past contracts
+        for (int row = 0, rows = contracts.size(); row < rows; row++) {
+            long[] h = history.computeIfAbsent(contracts.influencerId(row), id -> new long[2]);
+            h[0] += contracts.amountCents(row);
+            h[1]++;
+        }
+        for (int i = 0; i < influencerCount; i++) {
+            long[] h = history.get(influencers[i].getId());
+            optimiser.add(influencers[i], h == null ? defaultPrice : h[0] / h[1]);
+        }
+        if (optimiser.size() == 0) {
+            System.out.println("No influencers found");
+            return;
+        }
+
+        BudgetOptimiser.Plan quick = optimiser.greedy();
+        BudgetOptimiser.Plan plan = optimiser.optimise();
+        System.out.printf("Greedy: %d influencers, $%s, engagement %.1f (%.1f ms)\n",
+            quick.size(), Money.format(quick.getTotalCents()), quick.getTotalEngagement(), quick.getElapsedNanos() / 1e6);
+        System.out.printf("%s: %d influencers, $%s, engagement %.1f (%.1f ms)%s\n",
+            plan.getMethod().substring(0, 1).toUpperCase() + plan.getMethod().substring(1),
+            plan.size(), Money.format(plan.getTotalCents()), plan.getTotalEngagement(), plan.getElapsedNanos() / 1e6,
+            plan.isOptimal() ? " - optimal" : " - best found within the time limit");
+        for (int i = 0; i < plan.size(); i++) {
+            Influencer inf = plan.getInfluencer(i);
+            System.out.printf("%d. %s (%s, Engagement: %.1f) | $%s\n",
+                i+1,
+                inf.username,
+                inf.getNiche(),
+                inf.getEngagementRate(),
+                Money.format(plan.getPrice(i)));
+        }
+
+        System.out.print("\nSend these offers? (y/n): ");
+        if (!"y".equalsIgnoreCase(reader.readLine())) {
+            return;
+        }
+        for (int i = 0; i < plan.size(); i++) {
+            Influencer inf = plan.getInfluencer(i);
+            try {
+                contracts.append(brand.offerSponsorship(inf, plan.getPrice(i)));
+                System.out.println("Offer sent to " + inf.username);
+            } catch (InsufficientBalanceException | PaymentFailedException e) {
+                System.out.println("Offer to " + inf.username + " failed: " + e.getMessage());
+            }
+        }
+    }
+
     /**
     * Offers a sponsorship to an influencer.
     *
@@ -332,39 +920,118 @@ public class Main {
     */
 
     private static void offerSponsorship(BrandManager brand, BufferedReader reader) throws Exception {
+        if (router != null) {
+            offerShardedSponsorship(brand, reader);
+            return;
+        }
         System.out.println("\n=== OFFER SPONSORSHIP ===");
-        System.out.println("Available Influencers:");
+        System.out.print("Search influencers by username or niche (blank for all): ");
+        String query = reader.readLine();
+        final int pageSize = 10;
         
-        for (int i = 0; i < influencerCount; i++) {
-            System.out.printf("%d. %s (%s, Engagement: %.1f)\n",
-                i+1,
-                influencers[i].username,
-                influencers[i].getNiche(),
-                influencers[i].getEngagementRate());
+        Influencer selectedInfluencer = null;
+        for (int page = 0; selectedInfluencer == null; ) {
+            List<InfluencerSearchIndex.Match> matches = searchIndex.search(query, page, pageSize);
+            if (matches.isEmpty()) {
+                System.out.println(page == 0 ? "No influencers found" : "No more influencers");
+                return;
+            }
+            System.out.println("Matching Influencers:");
+            for (int i = 0; i < matches.size(); i++) {
+                Influencer inf = matches.get(i).getInfluencer();
+                System.out.printf("%d. %s (%s, Engagement: %.1f)\n",
+                    i+1,
+                    inf.username,
+                    inf.getNiche(),
+                    inf.getEngagementRate());
+            }
+            
+            System.out.print("\nSelect influencer (number), or 'n' for the next page: ");
+            String input = reader.readLine();
+            if ("n".equalsIgnoreCase(input)) {
+                page++;
+                continue;
+            }
+            int infNum = Integer.parseInt(input) - 1;
+            if (infNum < 0 || infNum >= matches.size()) {
+                System.out.println("Invalid selection!");
+                return;
+            }
+            selectedInfluencer = matches.get(infNum).getInfluencer();
         }
         
-        System.out.print("\nSelect influencer (number): ");
-        int infNum = Integer.parseInt(reader.readLine()) - 1;
-        
-        if (infNum < 0 || infNum >= influencerCount) {
-            System.out.println("Invalid selection!");
+        System.out.print("Sponsorship amount: $");
+        long amount = Money.parse(reader.readLine());
+        if (amount <= 0) {
+            System.out.println("Amount must be positive!");
             return;
         }
         
-        System.out.print("Sponsorship amount: $");
-        double amount = Double.parseDouble(reader.readLine());
-        
         try {
-            Influencer selectedInfluencer = influencers[infNum];
             Contract contract = brand.offerSponsorship(selectedInfluencer, amount);
             
-            if (contractCount < MAX_CONTRACTS) {
-                contracts[contractCount++] = contract;
-                System.out.println("\nSponsorship offer created successfully!");
-                contract.displayContract();
-            } else {
-                System.out.println("Cannot create more contracts - system limit reached");
+            contracts.append(contract);
+            System.out.println("\nSponsorship offer created successfully!");
+            contract.displayContract();
+        } catch (InsufficientBalanceException e) {
+            System.out.println("Error: " + e.getMessage());
+        } catch (PaymentFailedException e) {
+            System.out.println("Payment Error: " + e.getMessage());
+        }
+    }
+
+    /**
+    * Offers a sponsorship to an influencer found by searching every shard.
+    *
+    * @param brand The brand manager offering the sponsorship.
+    * @param reader BufferedReader to read user input.
+    * @throws Exception if an error occurs during the sponsorship offer.
+    */
+    private static void offerShardedSponsorship(BrandManager brand, BufferedReader reader) throws Exception {
+        System.out.println("\n=== OFFER SPONSORSHIP ===");
+        System.out.print("Search influencers by username or niche (blank for all): ");
+        String query = reader.readLine();
+        final int pageSize = 10;
+
+        String selected = null;
+        for (int page = 0; selected == null; ) {
+            List<ShardRouter.InfluencerRow> matches = router.search(query, page, pageSize);
+            if (matches.isEmpty()) {
+                System.out.println(page == 0 ? "No influencers found" : "No more influencers");
+                return;
+            }
+            System.out.println("Matching Influencers:");
+            for (int i = 0; i < matches.size(); i++) {
+                ShardRouter.InfluencerRow inf = matches.get(i);
+                System.out.printf("%d. %s (%s, Engagement: %.1f)\n", i+1, inf.getUsername(), inf.getNiche(), inf.getEngagementRate());
+            }
+
+            System.out.print("\nSelect influencer (number), or 'n' for the next page: ");
+            String input = reader.readLine();
+            if ("n".equalsIgnoreCase(input)) {
+                page++;
+                continue;
             }
+            int infNum = Integer.parseInt(input) - 1;
+            if (infNum < 0 || infNum >= matches.size()) {
+                System.out.println("Invalid selection!");
+                return;
+            }
+            selected = matches.get(infNum).getUsername();
+        }
+
+        System.out.print("Sponsorship amount: $");
+        long amount = Money.parse(reader.readLine());
+        if (amount <= 0) {
+            System.out.println("Amount must be positive!");
+            return;
+        }
+
+        try {
+            long start = router.offerSponsorship(brand, selected, amount);
+            System.out.println("\nSponsorship offer created successfully!");
+            System.out.println("Contract: " + brand.getBrandName() + " with " + selected +
+                " | Amount: $" + Money.format(amount) + " | Date: " + new Date(start));
         } catch (InsufficientBalanceException e) {
             System.out.println("Error: " + e.getMessage());
         } catch (PaymentFailedException e) {
@@ -383,15 +1050,24 @@ public class Main {
         boolean found = false;
         SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
         
-        for (int i = 0; i < contractCount; i++) {
-            if (contracts[i].getBrand().username.equals(username)) {
-                Contract c = contracts[i];
-                System.out.printf("- Influencer: %s | Amount: $%.2f | Date: %s\n",
-                    c.getInfluencer().username,
-                    c.getAmount(),
-                    sdf.format(c.getStartDate()));
+        if (router != null) {
+            for (ShardRouter.ContractRow c : router.contractsOfBrand(username)) {
+                System.out.printf("- Influencer: %s | Amount: $%s | Date: %s\n",
+                    c.getInfluencer(), Money.format(c.getAmountCents()), sdf.format(new Date(c.getStartMillis())));
                 found = true;
             }
+            if (!found) System.out.println("No contracts found");
+            return;
+        }
+        User brand = UserDirectory.find(username);
+        int[] rows = brand == null ? new int[0] : contractIndex.query(new ContractQuery().brand(brand.getId())).getRows();
+        for (int i : rows) {
+            Contract c = contracts.get(i);
+            System.out.printf("- Influencer: %s | Amount: $%s | Date: %s\n",
+                c.getInfluencer().username,
+                Money.format(c.getAmount()),
+                sdf.format(c.getStartDate()));
+            found = true;
         }
         
         if (!found) System.out.println("No contracts found");
@@ -412,32 +1088,264 @@ public class Main {
         System.out.println("1. View All Influencers");
         System.out.println("2. View All Contracts");
         System.out.println("3. System Statistics");
-        System.out.println("4. Logout");
+        System.out.println("4. Campaign ROI Ranking");
+        System.out.println("5. Leaderboards");
+        System.out.println("6. Bulk Import from CSV");
+        System.out.println("7. Export Contracts/Earnings");
+        System.out.println("8. Query Contracts");
+        System.out.println("9. Logout");
         System.out.print("Choose: ");
         
         int choice = Integer.parseInt(reader.readLine());
+        if (router != null && (choice == 4 || choice >= 6 && choice <= 8)) {
+            System.out.println("Not available while influencers are partitioned across shards");
+            return true;
+        }
+        if (follower != null && choice == 6) {
+            System.out.println("Not available on a read-only replica");
+            return true;
+        }
         switch (choice) {
-            case 1: showAllInfluencers(); break;
-            case 2: showAllContracts(); break;
-            case 3: showSystemStats(); break;
-            case 4: return false; // Trigger logout
+            case 1: runReport("AllInfluencers", Main::showAllInfluencers); break;
+            case 2: runReport("AllContracts", Main::showAllContracts); break;
+            case 3: runReport("SystemStats", Main::showSystemStats); break;
+            case 4: runReport("CampaignRanking", Main::showCampaignRanking); break;
+            case 5: showLeaderboard(reader); break;
+            case 6: bulkImport(reader); break;
+            case 7: exportData(reader); break;
+            case 8: queryContracts(reader); break;
+            case 9: return false; // Trigger logout
             default: System.out.println("Invalid choice!");
         }
         return true;
     }
 
+    /**
+    * Imports influencers and brand managers from a CSV file chosen by the admin.
+    *
+    * @param reader BufferedReader to read user input.
+    * @throws Exception if an error occurs while reading input.
+    */
+    private static void bulkImport(BufferedReader reader) throws Exception {
+        System.out.print("CSV file path: ");
+        String path = reader.readLine().trim();
+        try {
+            BulkImporter.Result result = BulkImporter.importFile(Paths.get(path), Main::addInfluencer);
+            System.out.printf("Imported %d influencers and %d brands from %d lines in %d ms%n",
+                result.getInfluencers(), result.getBrands(), result.getLines(), result.getElapsedMillis());
+            if (result.getRejected() > 0) {
+                System.out.println(result.getRejected() + " lines rejected:");
+                for (String error : result.getErrors()) {
+                    System.out.println("  " + error);
+                }
+            }
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Import failed: " + e.getMessage());
+        }
+    }
+
+    /**
+    * Exports contracts or influencer earnings to a file chosen by the admin.
+    *
+    * @param reader BufferedReader to read user input.
+    * @throws Exception if an error occurs while reading input.
+    */
+    private static void exportData(BufferedReader reader) throws Exception {
+        System.out.print("Export 1. Contracts or 2. Earnings: ");
+        boolean earnings = reader.readLine().trim().equals("2");
+        System.out.print("Format (csv/jsonl): ");
+        DataExporter.Format format = reader.readLine().trim().equalsIgnoreCase("jsonl")
+            ? DataExporter.Format.JSONL : DataExporter.Format.CSV;
+        System.out.print("Compress with gzip? (y/n): ");
+        boolean gzip = reader.readLine().trim().equalsIgnoreCase("y");
+
+        DataExporter.Filter filter = new DataExporter.Filter();
+        System.out.print("Brand manager username (blank for all): ");
+        String brand = reader.readLine().trim();
+        if (!brand.isEmpty()) {
+            User user = UserDirectory.find(brand);
+            if (!(user instanceof BrandManager)) {
+                System.out.println("Unknown brand manager: " + brand);
+                return;
+            }
+            filter.brand(user.getId());
+        }
+        System.out.print("Influencer username (blank for all): ");
+        String name = reader.readLine().trim();
+        if (!name.isEmpty()) {
+            Influencer influencer = findInfluencer(name);
+            if (influencer == null) {
+                System.out.println("Unknown influencer: " + name);
+                return;
+            }
+            filter.influencer(influencer.getId());
+        }
+        long[] range = readDateRange(reader);
+        if (range == null) {
+            return;
+        }
+        filter.between(range[0], range[1]);
+
+        System.out.print("Output file: ");
+        String path = reader.readLine().trim();
+        try {
+            long start = System.nanoTime();
+            long rows = earnings
+                ? DataExporter.exportEarnings(contracts, Paths.get(path), format, gzip, filter)
+                : DataExporter.exportContracts(contracts, Paths.get(path), format, gzip, filter);
+            System.out.printf("Exported %d rows to %s in %d ms%n", rows, path, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Export failed: " + e.getMessage());
+        }
+    }
+
+    /**
+    * Prompts for an optional start and end date.
+    *
+    * @param reader BufferedReader to read user input.
+    * @return The range as epoch milliseconds, the end exclusive and unbounded sides open; {@code null} if a date is invalid.
+    * @throws IOException if an error occurs while reading input.
+    */
+    private static long[] readDateRange(BufferedReader reader) throws IOException {
+        SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
+        sdf.setLenient(false);
+        System.out.print("From date MM/dd/yyyy (blank for any): ");
+        String from = reader.readLine().trim();
+        System.out.print("To date MM/dd/yyyy, inclusive (blank for any): ");
+        String to = reader.readLine().trim();
+        try {
+            long fromMillis = from.isEmpty() ? Long.MIN_VALUE : sdf.parse(from).getTime();
+            long toMillis = to.isEmpty() ? Long.MAX_VALUE : sdf.parse(to).getTime() + 24L * 60 * 60 * 1000;
+            return new long[] {fromMillis, toMillis};
+        } catch (ParseException e) {
+            System.out.println("Invalid date: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+    * Runs an ad-hoc contract query built from the admin's answers.
+    *
+    * @param reader BufferedReader to read user input.
+    * @throws Exception if an error occurs while reading input.
+    */
+    private static void queryContracts(BufferedReader reader) throws Exception {
+        ContractQuery query = new ContractQuery();
+        System.out.print("Brand manager username (blank for any): ");
+        String brand = reader.readLine().trim();
+        if (!brand.isEmpty()) {
+            User user = UserDirectory.find(brand);
+            if (!(user instanceof BrandManager)) {
+                System.out.println("Unknown brand manager: " + brand);
+                return;
+            }
+            query.brand(user.getId());
+        }
+        System.out.print("Influencer username (blank for any): ");
+        String name = reader.readLine().trim();
+        if (!name.isEmpty()) {
+            Influencer influencer = findInfluencer(name);
+            if (influencer == null) {
+                System.out.println("Unknown influencer: " + name);
+                return;
+            }
+            query.influencer(influencer.getId());
+        }
+        System.out.print("Influencer niche (blank for any): ");
+        String niche = reader.readLine().trim();
+        if (!niche.isEmpty()) {
+            int nicheId = SymbolDictionary.NICHES.lookup(niche);
+            if (nicheId == SymbolDictionary.NONE) {
+                System.out.println("No contracts found");
+                return;
+            }
+            query.niche(nicheId);
+        }
+        System.out.print("Minimum amount (blank for any): $");
+        String min = reader.readLine().trim();
+        System.out.print("Maximum amount, exclusive (blank for any): $");
+        String max = reader.readLine().trim();
+        try {
+            if (!min.isEmpty()) query.minAmount(Money.parse(min));
+            if (!max.isEmpty()) query.maxAmount(Money.parse(max));
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid amount: " + e.getMessage());
+            return;
+        }
+        long[] range = readDateRange(reader);
+        if (range == null) {
+            return;
+        }
+        if (range[0] != Long.MIN_VALUE || range[1] != Long.MAX_VALUE) {
+            query.startedBetween(range[0], range[1]);
+        }
+
+        long start = System.nanoTime();
+        ContractIndex.Result result = contractIndex.query(query);
+        long micros = (System.nanoTime() - start) / 1000;
+        SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
+        System.out.println("\n=== QUERY RESULTS ===");
+        int shown = 0;
+        for (int row : result.getRows()) {
+            if (shown++ == 50) {
+                System.out.println("... " + (result.getRows().length - 50) + " more");
+                break;
+            }
+            Contract c = contracts.get(row);
+            System.out.printf("- %s -> %s: $%s on %s\n",
+                c.getBrand().getBrandName(),
+                c.getInfluencer().username,
+                Money.format(c.getAmount()),
+                sdf.format(c.getStartDate()));
+        }
+        System.out.printf("%d contracts | Plan: %s | %d rows examined in %d us\n",
+            result.getRows().length, result.getPlan(), result.getExamined(), micros);
+    }
+
+    /**
+    * Returns a consistent view of the influencers and contracts for a report.
+    *
+    * @return The latest {@link ReportSnapshot}, built now if anything was added since the last one.
+    */
+    private static ReportSnapshot snapshot() {
+        int rows = contracts.size(); // Every contract's influencer was added before the contract
+        int count = influencerCount; // Read before the array, which always holds at least this many
+        return snapshots.take(rows, count, influencers);
+    }
+
+    /**
+    * Prints which snapshot a report reads.
+    *
+    * @param snapshot The snapshot.
+    */
+    private static void printSnapshotHeader(ReportSnapshot snapshot) {
+        System.out.printf("As of %s (snapshot v%d)\n",
+            new SimpleDateFormat("MM/dd/yyyy HH:mm:ss").format(new Date(snapshot.getTakenMillis())), snapshot.getVersion());
+    }
+
     /**
     * Displays all influencers in the system.
     */
 
     private static void showAllInfluencers() {
         System.out.println("\n=== ALL INFLUENCERS ===");
-        for (int i = 0; i < influencerCount; i++) {
-            System.out.printf("%d. %s - %s (Earnings: $%.2f)\n",
+        if (router != null) {
+            List<ShardRouter.InfluencerRow> all = router.allInfluencers();
+            for (int i = 0; i < all.size(); i++) {
+                System.out.printf("%d. %s - %s (Earnings: $%s)\n",
+                    i+1, all.get(i).getUsername(), all.get(i).getNiche(), Money.format(all.get(i).getEarningsCents()));
+            }
+            return;
+        }
+        ReportSnapshot snapshot = snapshot();
+        printSnapshotHeader(snapshot);
+        for (int i = 0; i < snapshot.getInfluencerCount(); i++) {
+            Influencer inf = snapshot.getInfluencer(i);
+            System.out.printf("%d. %s - %s (Earnings: $%s)\n",
                 i+1,
-                influencers[i].username,
-                influencers[i].getNiche(),
-                influencers[i].getSponsorshipAmount());
+                inf.username,
+                inf.getNiche(),
+                Money.format(snapshot.getEarningsCents(inf)));
         }
     }
 
@@ -449,13 +1357,24 @@ public class Main {
         System.out.println("\n=== ALL CONTRACTS ===");
         SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
         
-        for (int i = 0; i < contractCount; i++) {
-            Contract c = contracts[i];
-            System.out.printf("%d. %s -> %s: $%.2f on %s \n",
+        if (router != null) {
+            List<ShardRouter.ContractRow> all = router.allContracts();
+            for (int i = 0; i < all.size(); i++) {
+                ShardRouter.ContractRow c = all.get(i);
+                System.out.printf("%d. %s -> %s: $%s on %s \n",
+                    i+1, c.getBrandName(), c.getInfluencer(), Money.format(c.getAmountCents()), sdf.format(new Date(c.getStartMillis())));
+            }
+            return;
+        }
+        ReportSnapshot snapshot = snapshot();
+        printSnapshotHeader(snapshot);
+        for (int i = 0; i < snapshot.getContractCount(); i++) {
+            Contract c = snapshot.getContract(i);
+            System.out.printf("%d. %s -> %s: $%s on %s \n",
                 i+1,
-                c.getBrand().brandName,
+                c.getBrand().getBrandName(),
                 c.getInfluencer().username,
-                c.getAmount(),
+                Money.format(c.getAmount()),
                 sdf.format(c.getStartDate()));
         }
     }
@@ -466,14 +1385,143 @@ public class Main {
 
     private static void showSystemStats() {
         System.out.println("\n=== SYSTEM STATISTICS ===");
-        System.out.printf("Total Influencers: %d\n", influencerCount);
-        System.out.printf("Total Contracts: %d\n", contractCount);
-        
-        double totalPayments = 0;
-        for (int i = 0; i < influencerCount; i++) {
-            totalPayments += influencers[i].getSponsorshipAmount();
+        if (router != null) {
+            ShardRouter.Stats stats = router.stats();
+            System.out.printf("Shards: %d\n", router.shardCount());
+            System.out.printf("Total Influencers: %d\n", stats.getInfluencers());
+            System.out.printf("Total Contracts: %d\n", stats.getContracts());
+            System.out.printf("Total Money Transferred: $%s\n", Money.format(stats.getEarningsCents()));
+            return;
+        }
+        ReportSnapshot snapshot = snapshot();
+        printSnapshotHeader(snapshot);
+        System.out.printf("Total Influencers: %d\n", snapshot.getInfluencerCount());
+        System.out.printf("Total Contracts: %d\n", snapshot.getContractCount());
+        System.out.printf("Total Money Transferred: $%s\n", Money.format(snapshot.getTotalCents()));
+        System.out.printf("Recommendation Cache: %d hits, %d misses\n", Recommendations.getHitCount(), Recommendations.getMissCount());
+        System.out.printf("History Cache: %d users, %d hits, %d misses | History File: %d KB\n", HistoryCache.size(),
+            HistoryCache.getHitCount(), HistoryCache.getMissCount(), HistoryStore.shared().size() / 1024);
+        System.out.printf("Campaign Archive: %d segments, compressed to %.0f%%\n",
+            CampaignArchive.shared().getSegmentCount(), CampaignArchive.shared().getCompressionRatio() * 100);
+        if (leader != null) {
+            List<LedgerLeader.FollowerStatus> replicas = leader.followers();
+            System.out.printf("Replicas: %d\n", replicas.size());
+            for (LedgerLeader.FollowerStatus f : replicas) {
+                System.out.printf("- %s: %d rows applied, %d behind, lag %d ms\n",
+                    f.getAddress(), f.getAckedRows(), f.getLagRows(), f.getLagMillis());
+            }
+        }
+        if (follower != null) {
+            System.out.printf("Replica: %s | %d of %d rows applied | lag %d ms\n",
+                follower.getState(), follower.getAppliedRows(), follower.getLeaderRows(), follower.getLagMillis());
+        }
+    }
+
+    /**
+    * Displays the top campaigns across all influencers ranked by ROI score.
+    */
+
+    private static void showCampaignRanking() {
+        System.out.println("\n=== CAMPAIGN ROI RANKING ===");
+        CampaignScorer scorer = CampaignScorer.fromInfluencers(influencers, influencerCount);
+        if (scorer.size() == 0) {
+            System.out.println("No campaigns launched yet");
+            return;
+        }
+        scorer.score();
+        int[] ranked = scorer.rank(10);
+        for (int r = 0; r < ranked.length; r++) {
+            int row = ranked[r];
+            Influencer owner = (Influencer) UserDirectory.get(scorer.getInfluencerId(row));
+            InfluencerHistory.CampaignEntry campaign = HistoryCache.get(owner.getId()).getCampaign(scorer.getHistoryOffset(row));
+            System.out.printf("%d. %s by %s | ROI: %.1f | Engagement: %.2f%% | $/View: %.4f | $/Like: %.3f | $/Share: %.3f\n",
+                r+1,
+                campaign.getName(),
+                owner.username,
+                scorer.getRoi(row),
+                scorer.getEngagement(row),
+                scorer.getCostPerView(row),
+                scorer.getCostPerLike(row),
+                scorer.getCostPerShare(row));
+        }
+    }
+
+    /**
+    * Displays the earnings or engagement leaderboard one page at a time.
+    *
+    * @param reader BufferedReader to read user input.
+    * @throws IOException if an I/O error occurs.
+    */
+
+    private static void showLeaderboard(BufferedReader reader) throws IOException {
+        System.out.println("\n=== LEADERBOARDS ===");
+        System.out.println("1. Earnings");
+        System.out.println("2. Engagement");
+        System.out.print("Choose: ");
+        Leaderboard board = Integer.parseInt(reader.readLine()) == 2 ? Leaderboard.ENGAGEMENT : Leaderboard.EARNINGS;
+        final int pageSize = 10;
+
+        for (int page = 0; ; page++) {
+            List<Leaderboard.Entry> entries = router != null ? null : board.page(page, pageSize);
+            List<ShardRouter.InfluencerRow> rows = router == null ? null
+                : router.leaderboard(board == Leaderboard.ENGAGEMENT, (page + 1) * pageSize);
+            if (rows != null) {
+                rows = rows.subList(Math.min(page * pageSize, rows.size()), rows.size());
+            }
+            int count = rows != null ? rows.size() : entries.size();
+            if (count == 0) {
+                System.out.println("No more entries");
+                return;
+            }
+            System.out.println("\n--- " + board.getName() + " (page " + (page + 1) + ") ---");
+            for (int i = 0; i < count; i++) {
+                String name = rows != null ? rows.get(i).getUsername() : UserDirectory.get(entries.get(i).getUserId()).username;
+                String score;
+                if (board == Leaderboard.EARNINGS) {
+                    score = "$" + Money.format(rows != null ? (long) rows.get(i).getScore() : entries.get(i).getScore()); // Cents are exact in a double
+                } else {
+                    score = String.format("%.1f", rows != null ? rows.get(i).getScore() : Leaderboard.rateOf(entries.get(i).getScore()));
+                }
+                System.out.printf("%d. %s - %s\n", page * pageSize + i + 1, name, score);
+            }
+            if (count < pageSize) {
+                return;
+            }
+            System.out.print("Enter 'n' for the next page or anything else to go back: ");
+            if (!"n".equalsIgnoreCase(reader.readLine())) {
+                return;
+            }
+        }
+    }
+
+    /**
+    * Runs a report, records its latency in {@link Metrics#report(String)} and
+    * emits a {@link ReportEvent}.
+    *
+    * <p>Interactive reports such as the paged leaderboard are not timed, since
+    * most of their time is spent waiting for input.</p>
+    *
+    * @param name The name the report is published under.
+    * @param report The report to run.
+    */
+
+    private static void runReport(String name, Runnable report) {
+        long start = System.nanoTime();
+        boolean success = false;
+        ReportEvent event = new ReportEvent();
+        event.begin();
+        try {
+            report.run();
+            success = true;
+        } finally {
+            Metrics.report(name).record(System.nanoTime() - start, success);
+            event.end();
+            if (event.shouldCommit()) {
+                event.report = name;
+                event.succeeded = success;
+                event.commit();
+            }
         }
-        System.out.printf("Total Money Transferred: $%.2f\n", totalPayments);
     }
 
     /**
@@ -485,21 +1533,13 @@ public class Main {
 
     // ========== HELPER METHODS ========== //
     private static Influencer findInfluencer(String username) {
-        for (int i = 0; i < influencerCount; i++) {
-            if (influencers[i].username.equals(username)) {
-                return influencers[i];
-            }
-        }
-        return null;
+        User user = UserDirectory.find(username);
+        return user instanceof Influencer ? (Influencer) user : null;
     }
 
     private static Platform getPlatform(int choice) {
-        switch (choice) {
-            case 1: return new YouTube();
-            case 2: return new Instagram();
-            case 3: return new Twitter();
-            default: return new YouTube();
-        }
+        List<Platform> platforms = PlatformRegistry.all();
+        return choice >= 1 && choice <= platforms.size() ? platforms.get(choice - 1) : null;
     }
 
     /**
@@ -0,0 +1,599 @@
+package analytics;
+
+import entities.Influencer;
+import entities.UserDirectory;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import util.SymbolDictionary;
+
+/**
+ * Chooses which influencers a brand should sponsor to get the most engagement for a budget.
+ *
+ * <p>Every candidate influencer has a price, in cents, and is worth its
+ * engagement rate. The optimiser picks the set of candidates whose prices fit
+ * the budget and whose engagement adds up to the most: a 0/1 knapsack.
+ * Conditions are set first and chained like a query; candidates that do not
+ * meet them are ignored when they are {@link #add added}:</p>
+ * <pre>
+ * new BudgetOptimiser(budget).niche(techId).region(usId).priceBetween(Money.ofUnits(100), Money.ofUnits(2000))
+ * </pre>
+ *
+ * <p>{@link #greedy()} takes candidates in order of engagement per dollar
+ * and answers at once, within a factor of two of the best plan.
+ * {@link #optimise()} finds the best plan: by dynamic programming over the
+ * budget when prices share a large enough common divisor to keep the table
+ * small, and otherwise by branch and bound, with the first decisions split
+ * across the common {@link ForkJoinPool}. Both stop at the time limit and
+ * then return the best plan found so far, which is never worse than the
+ * greedy one.</p>
+ */
+public class BudgetOptimiser {
+    /** Time limit used unless {@link #timeLimit(long)} is called, in milliseconds. */
+    public static final long DEFAULT_TIME_LIMIT_MILLIS = 2000;
+
+    private static final long DP_CELL_LIMIT = 1L << 26; // Largest candidates x budget steps table solved by dynamic programming
+    private static final long DP_STEP_LIMIT = 1L << 22; // Most budget steps solved by dynamic programming; 32 MB of engagement totals
+    private static final int DEADLINE_CHECK_NODES = 1024; // Branch and bound nodes between clock reads
+    private static final double EPSILON = 1e-9; // Engagement differences smaller than this are ties
+
+    private final long budgetCents; // Most the chosen influencers may cost together
+    private int nicheId = SymbolDictionary.NONE; // Required niche, or NONE for any
+    private int regionId = SymbolDictionary.NONE; // Required region, or NONE for any
+    private long minPrice = 0; // Lowest price accepted, in cents
+    private long maxPrice = Long.MAX_VALUE; // Highest price accepted, in cents
+    private long timeLimitMillis = DEFAULT_TIME_LIMIT_MILLIS; // Longest optimise() may search
+
+    private int size = 0; // Number of candidates added
+    private int[] influencerIds = new int[16]; // Directory id of each candidate
+    private long[] prices = new long[16]; // Price of each candidate, in cents
+    private double[] values = new double[16]; // Engagement rate of each candidate
+
+    /**
+     * A set of influencers to sponsor.
+     */
+    public static final class Plan {
+        final int[] influencerIds; // Directory ids of the chosen influencers
+        final long[] prices; // Price of each chosen influencer, in cents
+        final long totalCents; // Sum of the prices
+        final double totalEngagement; // Sum of the engagement rates
+        final boolean optimal; // Whether no plan within the budget has more engagement
+        final String method; // How the plan was found
+        final long elapsedNanos; // Time taken to find the plan
+
+        Plan(int[] influencerIds, long[] prices, double totalEngagement, boolean optimal, String method, long elapsedNanos) {
+            this.influencerIds = influencerIds;
+            this.prices = prices;
+            long total = 0;
+            for (long p : prices) {
+                total += p;
+            }
+            this.totalCents = total;
+            this.totalEngagement = totalEngagement;
+            this.optimal = optimal;
+            this.method = method;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the number of influencers chosen.
+         *
+         * @return The number of influencers.
+         */
+        public int size() {
+            return influencerIds.length;
+        }
+
+        /**
+         * Returns a chosen influencer.
+         *
+         * @param i The index of the influencer in the plan, from {@code 0}.
+         * @return The {@link Influencer}.
+         */
+        public Influencer getInfluencer(int i) {
+            return (Influencer) UserDirectory.get(influencerIds[i]);
+        }
+
+        /**
+         * Returns the price of a chosen influencer.
+         *
+         * @param i The index of the influencer in the plan, from {@code 0}.
+         * @return The price, in cents.
+         */
+        public long getPrice(int i) {
+            return prices[i];
+        }
+
+        /**
+         * Returns what the plan costs.
+         *
+         * @return The sum of the prices, in cents.
+         */
+        public long getTotalCents() {
+            return totalCents;
+        }
+
+        /**
+         * Returns the engagement the plan buys.
+         *
+         * @return The sum of the chosen influencers' engagement rates.
+         */
+        public double getTotalEngagement() {
+            return totalEngagement;
+        }
+
+        /**
+         * Returns whether the plan is known to be the best within the budget.
+         *
+         * @return {@code true} if no plan has more engagement; {@code false} for greedy plans and searches that ran out of time.
+         */
+        public boolean isOptimal() {
+            return optimal;
+        }
+
+        /**
+         * Returns how the plan was found.
+         *
+         * @return {@code "greedy"}, {@code "dynamic programming"} or {@code "branch and bound"}.
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * Returns how long it took to find the plan.
+         *
+         * @return The time, in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+    /**
+     * Constructs a new {@code BudgetOptimiser} with no candidates.
+     *
+     * @param budgetCents The most the chosen influencers may cost together, in cents.
+     */
+    public BudgetOptimiser(long budgetCents) {
+        this.budgetCents = budgetCents;
+    }
+
+    /**
+     * Only accepts influencers in one niche.
+     *
+     * @param nicheId The id of the niche in {@link SymbolDictionary#NICHES}.
+     * @return This optimiser.
+     */
+    public BudgetOptimiser niche(int nicheId) {
+        this.nicheId = nicheId;
+        return this;
+    }
+
+    /**
+     * Only accepts influencers operating in one region, or globally.
+     *
+     * @param regionId The id of the region in {@link SymbolDictionary#REGIONS}.
+     * @return This optimiser.
+     */
+    public BudgetOptimiser region(int regionId) {
+        this.regionId = regionId;
+        return this;
+    }
+
+    /**
+     * Only accepts influencers whose price lies in a range.
+     *
+     * @param minCents The lowest price accepted, in cents.
+     * @param maxCents The highest price accepted, in cents.
+     * @return This optimiser.
+     */
+    public BudgetOptimiser priceBetween(long minCents, long maxCents) {
+        this.minPrice = minCents;
+        this.maxPrice = maxCents;
+        return this;
+    }
+
+    /**
+     * Sets how long {@link #optimise()} may search before returning its best plan so far.
+     *
+     * @param millis The time limit, in milliseconds.
+     * @return This optimiser.
+     */
+    public BudgetOptimiser timeLimit(long millis) {
+        this.timeLimitMillis = millis;
+        return this;
+    }
+
+    /**
+     * Offers an influencer as a candidate, if it meets the conditions.
+     *
+     * @param influencer The influencer.
+     * @param priceCents What sponsoring the influencer would cost, in cents.
+     * @return {@code true} if the influencer became a candidate.
+     */
+    public boolean add(Influencer influencer, long priceCents) {
+        if (priceCents <= 0 || priceCents < minPrice || priceCents > maxPrice || priceCents > budgetCents) {
+            return false;
+        }
+        if (nicheId != SymbolDictionary.NONE && influencer.getNicheId() != nicheId) {
+            return false;
+        }
+        if (regionId != SymbolDictionary.NONE && !influencer.operatesIn(regionId)) {
+            int global = SymbolDictionary.REGIONS.lookup("Global");
+            if (global == SymbolDictionary.NONE || !influencer.operatesIn(global)) {
+                return false;
+            }
+        }
+        if (size == prices.length) {
+            int c = size + (size >> 1);
+            influencerIds = Arrays.copyOf(influencerIds, c);
+            prices = Arrays.copyOf(prices, c);
+            values = Arrays.copyOf(values, c);
+        }
+        influencerIds[size] = UserDirectory.register(influencer);
+        prices[size] = priceCents;
+        values[size] = Math.max(influencer.getEngagementRate(), 0);
+        size++;
+        return true;
+    }
+
+    /**
+     * Returns the number of candidates.
+     *
+     * @return The number of influencers that met the conditions.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Picks candidates in order of engagement per cent while they fit the
+     * budget, or the single most engaging candidate if that is better.
+     *
+     * @return A plan with at least half the engagement of the best one.
+     */
+    public Plan greedy() {
+        long start = System.nanoTime();
+        Search s = new Search(byRatio(), Long.MAX_VALUE);
+        s.greedy();
+        return s.plan("greedy", false, start);
+    }
+
+    /**
+     * Finds the plan with the most engagement within the budget, or the best
+     * one found before the time limit.
+     *
+     * @return The plan; {@link Plan#isOptimal()} tells whether the search finished.
+     */
+    public Plan optimise() {
+        long start = System.nanoTime();
+        Search s = new Search(byRatio(), start + timeLimitMillis * 1_000_000L);
+        s.greedy();
+        long step = 0;
+        for (int i = 0; i < s.n; i++) {
+            step = gcd(step, s.p[i]);
+        }
+        if (s.n == 0) {
+            return s.plan("greedy", true, start);
+        }
+        long steps = budgetCents / step + 1;
+        if (steps <= DP_STEP_LIMIT && steps <= DP_CELL_LIMIT / s.n) { // The totals grow with the steps alone, the bits with both
+            boolean finished = s.dynamicProgramming(step, (int) steps);
+            return s.plan("dynamic programming", finished, start);
+        }
+        ForkJoinPool.commonPool().invoke(s.new Subtree(0, 0, 0, new boolean[s.n], splitDepth(s.n)));
+        return s.plan("branch and bound", !s.timedOut, start);
+    }
+
+    /**
+     * Returns the candidates ordered by engagement per cent, best first.
+     *
+     * @return Candidate indexes.
+     */
+    private int[] byRatio() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Double.compare(values[b] / prices[b], values[a] / prices[a]);
+            return c != 0 ? c : Integer.compare(influencerIds[a], influencerIds[b]);
+        });
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns how many levels of the search tree are forked as separate tasks.
+     *
+     * @param n The number of candidates.
+     * @return A depth giving a few tasks per worker thread.
+     */
+    private static int splitDepth(int n) {
+        int workers = ForkJoinPool.commonPool().getParallelism();
+        int depth = 32 - Integer.numberOfLeadingZeros(Math.max(workers, 1)) + 2;
+        return Math.min(depth, n);
+    }
+
+    /**
+     * Returns the greatest common divisor of two non-negative numbers.
+     *
+     * @param a One number.
+     * @param b The other number.
+     * @return The divisor; {@code b} if {@code a} is {@code 0}.
+     */
+    private static long gcd(long a, long b) {
+        while (a != 0) {
+            long t = b % a;
+            b = a;
+            a = t;
+        }
+        return b;
+    }
+
+    /**
+     * One optimisation over the candidates, copied into ratio order.
+     */
+    private final class Search {
+        final int n; // Number of candidates
+        final int[] index; // Candidate index of each position in ratio order
+        final long[] p; // Price at each position
+        final double[] v; // Engagement at each position
+        final long[] prefixPrice; // Sum of the prices before each position
+        final double[] prefixValue; // Sum of the engagement before each position
+        final long deadline; // System.nanoTime() at which searching stops
+        volatile double bestValue = -1; // Engagement of the best plan found
+        boolean[] best; // Positions chosen by the best plan found, guarded by this search
+        volatile boolean timedOut = false; // Set when the deadline passed before the search finished
+
+        Search(int[] order, long deadline) {
+            this.n = order.length;
+            this.index = order;
+            this.deadline = deadline;
+            p = new long[n];
+            v = new double[n];
+            prefixPrice = new long[n + 1];
+            prefixValue = new double[n + 1];
+            for (int i = 0; i < n; i++) {
+                p[i] = prices[order[i]];
+                v[i] = values[order[i]];
+                prefixPrice[i + 1] = prefixPrice[i] + p[i];
+                prefixValue[i + 1] = prefixValue[i] + v[i];
+            }
+        }
+
+        /**
+         * Records the greedy plan as the best so far.
+         */
+        void greedy() {
+            boolean[] chosen = new boolean[n];
+            long cost = 0;
+            double value = 0;
+            int top = -1;
+            for (int i = 0; i < n; i++) {
+                if (cost + p[i] <= budgetCents) {
+                    chosen[i] = true;
+                    cost += p[i];
+                    value += v[i];
+                }
+                if (top < 0 || v[i] > v[top]) {
+                    top = i;
+                }
+            }
+            if (top >= 0 && v[top] > value) {
+                chosen = new boolean[n];
+                chosen[top] = true;
+                value = v[top];
+            }
+            record(value, chosen);
+        }
+
+        /**
+         * Solves the knapsack exactly over budget steps of a common divisor of every price.
+         *
+         * @param step The divisor, in cents.
+         * @param steps The number of budget steps, including zero.
+         * @return {@code true} if the table was completed before the deadline.
+         */
+        boolean dynamicProgramming(long step, int steps) {
+            double[] most = new double[steps]; // Most engagement for each budget, using the positions so far
+            long[][] taken = new long[n][]; // Bit per budget: whether position i is in that budget's best plan
+            for (int i = 0; i < n; i++) {
+                if (System.nanoTime() > deadline) {
+                    timedOut = true;
+                    return false;
+                }
+                int w = (int) (p[i] / step);
+                long[] bits = new long[(steps + 63) >>> 6];
+                for (int b = steps - 1; b >= w; b--) {
+                    double with = most[b - w] + v[i];
+                    if (with > most[b] + EPSILON) {
+                        most[b] = with;
+                        bits[b >>> 6] |= 1L << b;
+                    }
+                }
+                taken[i] = bits;
+            }
+            boolean[] chosen = new boolean[n];
+            double value = 0;
+            int b = steps - 1;
+            for (int i = n - 1; i >= 0; i--) {
+                if ((taken[i][b >>> 6] & 1L << b) != 0) {
+                    chosen[i] = true;
+                    value += v[i];
+                    b -= (int) (p[i] / step);
+                }
+            }
+            record(value, chosen);
+            return true;
+        }
+
+        /**
+         * Returns an upper bound on the engagement reachable from a node: the
+         * fractional knapsack over the remaining positions, found by binary
+         * search over the prefix sums.
+         *
+         * @param from The first undecided position.
+         * @param cost The price of the positions chosen so far.
+         * @param value The engagement of the positions chosen so far.
+         * @return The bound.
+         */
+        double bound(int from, long cost, double value) {
+            long room = budgetCents - cost;
+            long limit = prefixPrice[from] + room;
+            int lo = from;
+            int hi = n; // Largest j with prefixPrice[j] <= limit
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (prefixPrice[mid] <= limit) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            double bound = value + prefixValue[lo] - prefixValue[from];
+            if (lo < n) {
+                bound += (double) (limit - prefixPrice[lo]) * v[lo] / p[lo];
+            }
+            return bound;
+        }
+
+        /**
+         * Searches the subtree below a node depth first, including a position
+         * before excluding it, with an explicit stack instead of recursion.
+         *
+         * @param from The first undecided position.
+         * @param cost The price of the positions chosen so far.
+         * @param value The engagement of the positions chosen so far.
+         * @param chosen The positions chosen so far; changed during the search and restored afterwards.
+         */
+        void branchAndBound(int from, long cost, double value, boolean[] chosen) {
+            int[] included = new int[n - from]; // Positions included below the node, in order
+            int top = 0;
+            int i = from;
+            long nodes = 0;
+            while (true) {
+                if (++nodes % DEADLINE_CHECK_NODES == 0 && (timedOut || System.nanoTime() > deadline)) {
+                    timedOut = true;
+                    break;
+                }
+                if (value > bestValue + EPSILON) {
+                    record(value, chosen);
+                }
+                if (i < n && bound(i, cost, value) > bestValue + EPSILON) {
+                    if (cost + p[i] <= budgetCents) {
+                        chosen[i] = true;
+                        included[top++] = i;
+                        cost += p[i];
+                        value += v[i];
+                    }
+                    i++;
+                    continue;
+                }
+                if (top == 0) {
+                    break;
+                }
+                int j = included[--top]; // Backtrack: exclude the last position included
+                chosen[j] = false;
+                cost -= p[j];
+                value -= v[j];
+                i = j + 1;
+            }
+            while (top > 0) {
+                chosen[included[--top]] = false;
+            }
+        }
+
+        /**
+         * Keeps a plan if it has more engagement than the best so far.
+         *
+         * @param value The engagement of the plan.
+         * @param chosen The positions chosen by the plan; copied.
+         */
+        synchronized void record(double value, boolean[] chosen) {
+            if (value > bestValue + EPSILON) {
+                bestValue = value;
+                best = chosen.clone();
+            }
+        }
+
+        /**
+         * Turns the best plan found into a {@link Plan}.
+         *
+         * @param method How the plan was found.
+         * @param optimal Whether the plan is known to be the best.
+         * @param start System.nanoTime() when the optimisation started.
+         * @return The plan.
+         */
+        synchronized Plan plan(String method, boolean optimal, long start) {
+            int count = 0;
+            for (boolean b : best) {
+                if (b) {
+                    count++;
+                }
+            }
+            int[] ids = new int[count];
+            long[] planPrices = new long[count];
+            double total = 0;
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                if (best[i]) {
+                    ids[k] = influencerIds[index[i]];
+                    planPrices[k++] = p[i];
+                    total += v[i];
+                }
+            }
+            return new Plan(ids, planPrices, total, optimal, method, System.nanoTime() - start);
+        }
+
+        /**
+         * Fork/join task that branches on one position at a time until the
+         * split depth, then searches its subtree on the current thread.
+         */
+        @SuppressWarnings("serial") // Fork/join tasks are never serialized
+        private final class Subtree extends RecursiveAction {
+            final int from; // First undecided position
+            final long cost; // Price of the positions chosen so far
+            final double value; // Engagement of the positions chosen so far
+            final boolean[] chosen; // Positions chosen so far; owned by this task
+            final int splitDepth; // Position from which the subtree is searched without forking
+
+            Subtree(int from, long cost, double value, boolean[] chosen, int splitDepth) {
+                this.from = from;
+                this.cost = cost;
+                this.value = value;
+                this.chosen = chosen;
+                this.splitDepth = splitDepth;
+            }
+
+            /**
+             * Searches the subtree, forking the include and exclude branches above the split depth.
+             */
+            @Override
+            protected void compute() {
+                if (from >= splitDepth) {
+                    branchAndBound(from, cost, value, chosen);
+                    return;
+                }
+                if (value > bestValue + EPSILON) {
+                    record(value, chosen);
+                }
+                if (bound(from, cost, value) <= bestValue + EPSILON) {
+                    return;
+                }
+                Subtree exclude = new Subtree(from + 1, cost, value, chosen.clone(), splitDepth);
+                if (cost + p[from] > budgetCents) {
+                    exclude.compute();
+                    return;
+                }
+                boolean[] with = chosen.clone();
+                with[from] = true;
+                invokeAll(new Subtree(from + 1, cost + p[from], value + v[from], with, splitDepth), exclude);
+            }
+        }
+    }
+}
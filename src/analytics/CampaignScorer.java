@@ -0,0 +1,412 @@
+package analytics;
+
+import entities.Influencer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import platforms.Platform;
+import storage.CampaignArchive;
+import storage.HistoryStore;
+import storage.InfluencerHistory;
+
+/**
+ * Scores and ranks campaigns by return on investment across many influencers.
+ *
+ * <p>Campaign metrics are copied into primitive columns (budget, views, likes
+ * and shares), and {@link #score()} derives cost per view, like and share, an
+ * engagement percentage and a weighted ROI score for every row in simple
+ * array loops. Large batches are split across the common
+ * {@link ForkJoinPool}. {@link #rank(int)} then orders rows by ROI score using
+ * a primitive sort, without boxing.</p>
+ */
+public class CampaignScorer {
+    /** Weight of a view in the ROI score. */
+    public static final float VIEW_WEIGHT = 1f;
+    /** Weight of a like in the ROI score. */
+    public static final float LIKE_WEIGHT = 10f;
+    /** Weight of a share in the ROI score. */
+    public static final float SHARE_WEIGHT = 25f;
+
+    private static final int PARALLEL_THRESHOLD = 1 << 14; // Rows below which scoring stays on the calling thread
+
+    private int size = 0; // Number of campaigns added
+    private int[] influencerIds; // Directory id of the campaign owner
+    private long[] historyOffsets; // Offset of the campaign's record in the HistoryStore
+    private long[] budgets; // Campaign budget, in cents
+    private int[] views; // Views reported by the platform
+    private int[] likes; // Likes reported by the platform
+    private int[] shares; // Shares reported by the platform
+
+    private float[] costPerView; // Budget in currency units per view
+    private float[] costPerLike; // Budget in currency units per like
+    private float[] costPerShare; // Budget in currency units per share
+    private float[] engagement; // Likes and shares as a percentage of views
+    private float[] roi; // Weighted interactions per currency unit spent
+
+    /**
+     * Constructs a new {@code CampaignScorer} with room for the specified number of campaigns.
+     *
+     * @param capacity The initial number of campaigns to allocate room for.
+     */
+    public CampaignScorer(int capacity) {
+        int c = Math.max(capacity, 16);
+        influencerIds = new int[c];
+        historyOffsets = new long[c];
+        budgets = new long[c];
+        views = new int[c];
+        likes = new int[c];
+        shares = new int[c];
+    }
+
+    /**
+     * Collects every launched campaign of the specified influencers.
+     *
+     * <p>Campaigns are read from the {@link HistoryStore} one at a time,
+     * without taking any influencer's lock or reading archived campaigns back
+     * into memory. Campaigns whose record could not be written to the store
+     * are left out.</p>
+     *
+     * <p>Each row holds the views, likes and shares reported for the
+     * campaign, from the influencer's resident campaigns or the
+     * {@link CampaignArchive}. Campaigns with no reports fall back to their
+     * platform's figures, and are left out if they have no platform either.</p>
+     *
+     * @param influencers The influencers whose campaigns are to be scored.
+     * @param count The number of entries of {@code influencers} in use.
+     * @return A scorer holding one row per campaign, not yet scored.
+     */
+    public static CampaignScorer fromInfluencers(Influencer[] influencers, int count) {
+        CampaignScorer scorer = new CampaignScorer(count * 4);
+        HistoryStore store = HistoryStore.shared();
+        HashMap<Long, long[]> reported = new HashMap<>(); // Views, likes and shares of one influencer's campaigns, by history offset
+        for (int i = 0; i < count; i++) {
+            int id = influencers[i].getId();
+            if (id < 0) {
+                continue; // Never registered, so nothing was recorded
+            }
+            reported.clear();
+            for (Influencer.Campaign c : influencers[i].getRecentCampaigns()) {
+                if (c != null) {
+                    putReported(reported, c.getHistoryOffset(), c.getViews(), c.getLikes(), c.getShares());
+                }
+            }
+            CampaignArchive.shared().forEach(id, e ->
+                    putReported(reported, e.getHistoryOffset(), e.getViews(), e.getLikes(), e.getShares()));
+            new InfluencerHistory(store, id).forEachCampaign(campaign -> {
+                long[] counts = reported.get(campaign.getOffset());
+                Platform p = campaign.getPlatform();
+                if (counts != null) {
+                    scorer.add(id, campaign.getOffset(), campaign.getBudget(), clamp(counts[0]), clamp(counts[1]), clamp(counts[2]));
+                } else if (p != null) {
+                    scorer.add(id, campaign.getOffset(), campaign.getBudget(), p.getViews(), p.getLikes(), p.getShares());
+                }
+            });
+        }
+        return scorer;
+    }
+
+    /**
+     * Keeps the reported counts of a campaign, unless nothing was reported or
+     * the campaign is already kept. Resident campaigns are put first, so
+     * their counts win over an archived copy.
+     */
+    private static void putReported(HashMap<Long, long[]> reported, long historyOffset, long views, long likes, long shares) {
+        if (historyOffset >= 0 && (views | likes | shares) != 0) {
+            reported.putIfAbsent(historyOffset, new long[] {views, likes, shares});
+        }
+    }
+
+    /**
+     * Narrows a reported count to a column value.
+     */
+    private static int clamp(long count) {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds one campaign's metrics.
+     *
+     * @param influencerId The directory id of the campaign owner.
+     * @param historyOffset The offset of the campaign's record in the {@link HistoryStore}.
+     * @param budgetCents The campaign budget, in cents.
+     * @param viewCount The number of views.
+     * @param likeCount The number of likes.
+     * @param shareCount The number of shares.
+     * @return The row index of the campaign.
+     */
+    public int add(int influencerId, long historyOffset, long budgetCents, int viewCount, int likeCount, int shareCount) {
+        if (size == budgets.length) {
+            int c = size + (size >> 1);
+            influencerIds = Arrays.copyOf(influencerIds, c);
+            historyOffsets = Arrays.copyOf(historyOffsets, c);
+            budgets = Arrays.copyOf(budgets, c);
+            views = Arrays.copyOf(views, c);
+            likes = Arrays.copyOf(likes, c);
+            shares = Arrays.copyOf(shares, c);
+        }
+        influencerIds[size] = influencerId;
+        historyOffsets[size] = historyOffset;
+        budgets[size] = budgetCents;
+        views[size] = viewCount;
+        likes[size] = likeCount;
+        shares[size] = shareCount;
+        return size++;
+    }
+
+    /**
+     * Computes the cost, engagement and ROI columns for every row.
+     *
+     * <p>Batches larger than a few thousand rows are scored in parallel. The
+     * result columns are reused when the same rows are scored again.</p>
+     */
+    public void score() {
+        if (roi == null || roi.length != size) {
+            costPerView = new float[size];
+            costPerLike = new float[size];
+            costPerShare = new float[size];
+            engagement = new float[size];
+            roi = new float[size];
+        }
+        if (size < PARALLEL_THRESHOLD) {
+            scoreRange(0, size);
+        } else {
+            ForkJoinPool.commonPool().invoke(new ScoreTask(0, size));
+        }
+    }
+
+    /**
+     * Scores the rows in the specified range.
+     *
+     * <p>The loop body only reads and writes primitive arrays at the same
+     * index, which keeps it simple enough for the JIT to vectorise.</p>
+     *
+     * @param from The first row, inclusive.
+     * @param to The last row, exclusive.
+     */
+    private void scoreRange(int from, int to) {
+        for (int i = from; i < to; i++) {
+            float spend = budgets[i] / 100f;
+            float v = Math.max(views[i], 1);
+            float l = Math.max(likes[i], 1);
+            float s = Math.max(shares[i], 1);
+            costPerView[i] = spend / v;
+            costPerLike[i] = spend / l;
+            costPerShare[i] = spend / s;
+            engagement[i] = (likes[i] + shares[i]) * 100f / v;
+            float weighted = views[i] * VIEW_WEIGHT + likes[i] * LIKE_WEIGHT + shares[i] * SHARE_WEIGHT;
+            roi[i] = weighted / Math.max(spend, 0.01f);
+        }
+    }
+
+    /**
+     * Fork/join task that splits a row range until it is small enough to score directly.
+     */
+    @SuppressWarnings("serial") // Fork/join tasks are never serialized
+    private class ScoreTask extends RecursiveAction {
+        final int from; // First row, inclusive
+        final int to; // Last row, exclusive
+
+        /**
+         * Constructs a new {@code ScoreTask} over the specified range.
+         *
+         * @param from The first row, inclusive.
+         * @param to The last row, exclusive.
+         */
+        ScoreTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Scores the range, splitting it in half while it is above the threshold.
+         */
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                scoreRange(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ScoreTask(from, mid), new ScoreTask(mid, to));
+            }
+        }
+    }
+
+    /**
+     * Returns the rows ordered from the highest to the lowest ROI score.
+     *
+     * <p>Each row is packed with its score into one {@code long} key. Scores are
+     * never negative, so their float bits order the same way as their values.
+     * Small limits keep the best keys in a primitive min-heap; large ones sort
+     * every key with {@link Arrays#parallelSort(long[])}.</p>
+     *
+     * @param limit The maximum number of rows to return.
+     * @return The row indexes of the best campaigns, best first.
+     * @throws IllegalStateException If {@link #score()} has not been called since the last row was added.
+     */
+    public int[] rank(int limit) {
+        if (roi == null || roi.length != size) {
+            throw new IllegalStateException("Campaigns must be scored before they are ranked");
+        }
+        int n = Math.min(Math.max(limit, 0), size);
+        long[] best;
+        if (n <= size >> 3) {
+            best = topKeys(n);
+        } else {
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = key(i);
+            }
+            Arrays.parallelSort(keys);
+            best = Arrays.copyOfRange(keys, size - n, size);
+        }
+        int[] ranked = new int[n];
+        for (int r = 0; r < n; r++) {
+            ranked[r] = (int) best[n - 1 - r]; // Highest key first
+        }
+        return ranked;
+    }
+
+    /**
+     * Returns the sort key of a row: the ROI score bits above the row index.
+     *
+     * @param row The row index.
+     * @return The packed key.
+     */
+    private long key(int row) {
+        return ((long) Float.floatToIntBits(roi[row]) << 32) | row;
+    }
+
+    /**
+     * Selects the {@code k} largest keys with a fixed-size min-heap.
+     *
+     * @param k The number of keys to keep.
+     * @return The largest keys in ascending order.
+     */
+    private long[] topKeys(int k) {
+        long[] heap = new long[k];
+        if (k == 0) {
+            return heap;
+        }
+        for (int i = 0; i < k; i++) {
+            heap[i] = key(i);
+        }
+        for (int i = (k >>> 1) - 1; i >= 0; i--) {
+            siftDown(heap, i, k);
+        }
+        for (int i = k; i < size; i++) {
+            long candidate = key(i);
+            if (candidate > heap[0]) {
+                heap[0] = candidate; // Replace the smallest of the current best
+                siftDown(heap, 0, k);
+            }
+        }
+        Arrays.sort(heap);
+        return heap;
+    }
+
+    /**
+     * Restores the min-heap property below the specified slot.
+     *
+     * @param heap The heap array.
+     * @param i The slot to sift down from.
+     * @param n The number of slots in use.
+     */
+    private static void siftDown(long[] heap, int i, int n) {
+        long value = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) {
+                break;
+            }
+            if (child + 1 < n && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= value) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = value;
+    }
+
+    /**
+     * Returns the number of campaigns added.
+     *
+     * @return The number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the directory id of the influencer who owns the campaign in the specified row.
+     *
+     * @param row The row index.
+     * @return The influencer's id.
+     */
+    public int getInfluencerId(int row) {
+        return influencerIds[row];
+    }
+
+    /**
+     * Returns where the campaign is recorded in the {@link HistoryStore}.
+     *
+     * @param row The row index.
+     * @return The offset of the campaign's record, for {@link InfluencerHistory#getCampaign(long)}.
+     */
+    public long getHistoryOffset(int row) {
+        return historyOffsets[row];
+    }
+
+    /**
+     * Returns the cost per view of the specified row.
+     *
+     * @param row The row index.
+     * @return The budget in currency units per view.
+     */
+    public float getCostPerView(int row) {
+        return costPerView[row];
+    }
+
+    /**
+     * Returns the cost per like of the specified row.
+     *
+     * @param row The row index.
+     * @return The budget in currency units per like.
+     */
+    public float getCostPerLike(int row) {
+        return costPerLike[row];
+    }
+
+    /**
+     * Returns the cost per share of the specified row.
+     *
+     * @param row The row index.
+     * @return The budget in currency units per share.
+     */
+    public float getCostPerShare(int row) {
+        return costPerShare[row];
+    }
+
+    /**
+     * Returns the engagement of the specified row.
+     *
+     * @param row The row index.
+     * @return Likes and shares as a percentage of views.
+     */
+    public float getEngagement(int row) {
+        return engagement[row];
+    }
+
+    /**
+     * Returns the ROI score of the specified row.
+     *
+     * @param row The row index.
+     * @return The weighted interactions per currency unit spent.
+     */
+    public float getRoi(int row) {
+        return roi[row];
+    }
+}
@@ -0,0 +1,393 @@
+package analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A ranking of users by score that is updated as scores change.
+ *
+ * <p>Entries are kept in an indexable skip list ordered from the highest to
+ * the lowest score. Every link also records how many entries it skips, so a
+ * search can count the entries it passes: rank-of-user, top-N and paged
+ * queries all take O(log n) steps to find their starting point, plus one step
+ * per entry returned. Updates replace the user's entry in O(log n).</p>
+ *
+ * <p>Scores are whole numbers, so money is ranked in exact cents. The
+ * {@link #ENGAGEMENT} board stores rates through {@link #rateScore(double)}.
+ * Reads share a read lock and updates take a short write lock, so concurrent
+ * payments to one user are never lost and readers never see a user twice.</p>
+ */
+public class Leaderboard {
+    /** Influencers ranked by the total of all payments received, in cents. */
+    public static final Leaderboard EARNINGS = new Leaderboard("Earnings");
+    /** Influencers ranked by their current engagement rate, as {@link #rateScore(double) rate scores}. */
+    public static final Leaderboard ENGAGEMENT = new Leaderboard("Engagement");
+
+    private static final long RATE_SCALE = 1_000_000; // Rate scores per percentage point
+    private static final int MAX_LEVEL = 32; // Levels of the skip list; enough for any int-sized board
+
+    private final String name; // Display name of the leaderboard
+    private final Node head = new Node(null, MAX_LEVEL); // Sentinel before the best entry
+    private final HashMap<Integer, Node> current = new HashMap<>(); // Node of each ranked user
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Guards the list and the map
+
+    /**
+     * A user's position on a leaderboard. Entries are immutable; an update
+     * replaces the entry.
+     */
+    public static final class Entry implements Comparable<Entry> {
+        final int userId; // Directory id of the user
+        final long score; // Score the user is ranked by
+
+        /**
+         * Constructs a new {@code Entry}.
+         *
+         * @param userId The directory id of the user.
+         * @param score The score of the user.
+         */
+        Entry(int userId, long score) {
+            this.userId = userId;
+            this.score = score;
+        }
+
+        /**
+         * Returns the directory id of the user.
+         *
+         * @return The user's id.
+         */
+        public int getUserId() {
+            return userId;
+        }
+
+        /**
+         * Returns the score of the user.
+         *
+         * @return The score: cents on {@link #EARNINGS}, a rate score on {@link #ENGAGEMENT}.
+         */
+        public long getScore() {
+            return score;
+        }
+
+        /**
+         * Orders entries by descending score, then by ascending user id.
+         *
+         * @param other The entry to compare with.
+         * @return A negative number if this entry ranks higher.
+         */
+        @Override
+        public int compareTo(Entry other) {
+            int c = Long.compare(other.score, score);
+            return c != 0 ? c : Integer.compare(userId, other.userId);
+        }
+
+        /**
+         * Checks whether another object is an entry for the same user and score.
+         *
+         * @param o The object to compare with.
+         * @return {@code true} if the entries are equal.
+         */
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && compareTo((Entry) o) == 0;
+        }
+
+        /**
+         * Returns a hash code consistent with {@link #equals(Object)}.
+         *
+         * @return The hash code.
+         */
+        @Override
+        public int hashCode() {
+            return 31 * userId + Long.hashCode(score);
+        }
+    }
+
+    /**
+     * A skip list node. {@code width[i]} is the number of level-0 steps from
+     * this node to {@code next[i]}, or to one past the last entry if
+     * {@code next[i]} is {@code null}.
+     */
+    private static final class Node {
+        final Entry entry; // The entry, or null for the head
+        final Node[] next; // Following node on each level
+        final int[] width; // Entries skipped by each link, counting its target
+
+        Node(Entry entry, int levels) {
+            this.entry = entry;
+            this.next = new Node[levels];
+            this.width = new int[levels];
+        }
+    }
+
+    /**
+     * Constructs a new, empty {@code Leaderboard}.
+     *
+     * @param name The display name of the leaderboard.
+     */
+    public Leaderboard(String name) {
+        this.name = name;
+        Arrays.fill(head.width, 1); // An empty list: every link reaches one past the end
+    }
+
+    /**
+     * Converts an engagement rate to a score for {@link #ENGAGEMENT}.
+     *
+     * @param rate The rate, in percent.
+     * @return The rate in millionths of a percentage point.
+     */
+    public static long rateScore(double rate) {
+        return Math.round(rate * RATE_SCALE);
+    }
+
+    /**
+     * Converts a score of {@link #ENGAGEMENT} back to an engagement rate.
+     *
+     * @param score The score, from {@link #rateScore(double)}.
+     * @return The rate, in percent.
+     */
+    public static double rateOf(long score) {
+        return (double) score / RATE_SCALE;
+    }
+
+    /**
+     * Returns the display name of the leaderboard.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets a user's score, adding the user if they are not ranked yet.
+     *
+     * @param userId The directory id of the user.
+     * @param score The new score.
+     */
+    public void set(int userId, long score) {
+        lock.writeLock().lock();
+        try {
+            Node old = current.get(userId);
+            if (old != null) {
+                if (old.entry.score == score) {
+                    return;
+                }
+                unlink(old.entry);
+            }
+            current.put(userId, link(new Entry(userId, score)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds to a user's score, starting from zero if they are not ranked yet.
+     *
+     * <p>Concurrent increments for the same user are never lost.</p>
+     *
+     * @param userId The directory id of the user.
+     * @param delta The amount to add to the score.
+     * @throws ArithmeticException If the score overflows a {@code long}.
+     */
+    public void increment(int userId, long delta) {
+        lock.writeLock().lock();
+        try {
+            Node old = current.get(userId);
+            long score = Math.addExact(old == null ? 0 : old.entry.score, delta);
+            if (old != null) {
+                if (delta == 0) {
+                    return;
+                }
+                unlink(old.entry);
+            }
+            current.put(userId, link(new Entry(userId, score)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a user from the leaderboard.
+     *
+     * @param userId The directory id of the user.
+     */
+    public void remove(int userId) {
+        lock.writeLock().lock();
+        try {
+            Node old = current.remove(userId);
+            if (old != null) {
+                unlink(old.entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the best entries.
+     *
+     * @param n The maximum number of entries to return.
+     * @return Up to {@code n} entries, best first.
+     */
+    public List<Entry> top(int n) {
+        return page(0, n);
+    }
+
+    /**
+     * Returns one page of the ranking.
+     *
+     * @param page The zero-based page number.
+     * @param pageSize The number of entries per page.
+     * @return The entries on the page, best first; empty if the page is past the end.
+     */
+    public List<Entry> page(int page, int pageSize) {
+        List<Entry> result = new ArrayList<>(Math.max(pageSize, 0));
+        long first = (long) page * pageSize + 1; // 1-based position of the first entry
+        lock.readLock().lock();
+        try {
+            if (pageSize <= 0 || first > current.size()) {
+                return result;
+            }
+            Node node = head;
+            long position = 0;
+            for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+                while (node.next[level] != null && position + node.width[level] <= first) {
+                    position += node.width[level];
+                    node = node.next[level];
+                }
+            }
+            for (; node != null && result.size() < pageSize; node = node.next[0]) {
+                result.add(node.entry);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the 1-based rank of a user.
+     *
+     * @param userId The directory id of the user.
+     * @return The rank, or {@code -1} if the user is not on the leaderboard.
+     */
+    public int rankOf(int userId) {
+        lock.readLock().lock();
+        try {
+            Node node = current.get(userId);
+            if (node == null) {
+                return -1;
+            }
+            Node n = head;
+            int position = 0;
+            for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+                while (n.next[level] != null && n.next[level].entry.compareTo(node.entry) <= 0) {
+                    position += n.width[level];
+                    n = n.next[level];
+                }
+            }
+            return position;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the score of a user.
+     *
+     * @param userId The directory id of the user.
+     * @return The score, or {@code 0} if the user is not on the leaderboard.
+     */
+    public long scoreOf(int userId) {
+        lock.readLock().lock();
+        try {
+            Node node = current.get(userId);
+            return node == null ? 0 : node.entry.score;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of users on the leaderboard.
+     *
+     * @return The number of ranked users.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return current.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts an entry into the skip list. Called with the write lock held.
+     *
+     * @param entry The entry, not yet in the list.
+     * @return The new node.
+     */
+    private Node link(Entry entry) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] positions = new int[MAX_LEVEL];
+        Node n = head;
+        int position = 0;
+        for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+            while (n.next[level] != null && n.next[level].entry.compareTo(entry) < 0) {
+                position += n.width[level];
+                n = n.next[level];
+            }
+            update[level] = n;
+            positions[level] = position;
+        }
+        int levels = randomLevels();
+        Node node = new Node(entry, levels);
+        for (int level = 0; level < MAX_LEVEL; level++) {
+            Node before = update[level];
+            if (level < levels) {
+                node.next[level] = before.next[level];
+                before.next[level] = node;
+                node.width[level] = before.width[level] - (position - positions[level]);
+                before.width[level] = position + 1 - positions[level];
+            } else {
+                before.width[level]++; // The link now passes one more entry
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Removes an entry from the skip list. Called with the write lock held.
+     *
+     * @param entry The entry, which must be in the list.
+     */
+    private void unlink(Entry entry) {
+        Node n = head;
+        for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+            while (n.next[level] != null && n.next[level].entry.compareTo(entry) < 0) {
+                n = n.next[level];
+            }
+            Node target = n.next[level];
+            if (target != null && target.entry == entry) {
+                n.width[level] += target.width[level] - 1;
+                n.next[level] = target.next[level];
+            } else {
+                n.width[level]--;
+            }
+        }
+    }
+
+    /**
+     * Picks the number of levels of a new node: one, plus one more with probability 1/2 each time.
+     *
+     * @return A level count between 1 and {@value #MAX_LEVEL}.
+     */
+    private static int randomLevels() {
+        return Math.min(MAX_LEVEL, 1 + Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | (1 << 31)));
+    }
+}
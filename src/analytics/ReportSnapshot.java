@@ -0,0 +1,196 @@
+package analytics;
+
+import contracts.Contract;
+import contracts.ContractLog;
+import entities.Influencer;
+import entities.UserDirectory;
+import java.util.Arrays;
+import util.Money;
+
+/**
+ * An immutable, versioned view of the influencers and contracts at one point in time, for reports.
+ *
+ * <p>Reports that read the live registry and contract log while offers are
+ * being made can count an influencer's contract but not the influencer, or
+ * print totals that do not add up. A snapshot fixes the number of
+ * influencers and contract rows and the contracted earnings of every
+ * influencer, so a report reading it sees one consistent state however long
+ * it runs.</p>
+ *
+ * <p>Writers never take part: influencers and contract rows are only ever
+ * appended, so a snapshot shares the registry array and the log and simply
+ * stops at its counts. The earnings are the one derived column; a
+ * {@link Publisher} builds each new snapshot from the previous one by
+ * copying its earnings and folding in only the rows appended since, and
+ * hands the same snapshot to every report until something changes.</p>
+ */
+public final class ReportSnapshot {
+    private final long version; // Increases by one for each snapshot a publisher builds
+    private final long takenMillis; // When the snapshot was built
+    private final Influencer[] influencers; // Registry array; only the first influencerCount entries belong to the snapshot
+    private final int influencerCount; // Influencers in the snapshot
+    private final ContractLog log; // Contract log; only the first contractCount rows belong to the snapshot
+    private final int contractCount; // Contract rows in the snapshot
+    private final long[] earnings; // Contracted cents per influencer, indexed by directory id; never written after construction
+    private final long totalCents; // Sum of the amounts of every contract in the snapshot
+
+    private ReportSnapshot(long version, Influencer[] influencers, int influencerCount, ContractLog log,
+            int contractCount, long[] earnings, long totalCents) {
+        this.version = version;
+        this.takenMillis = System.currentTimeMillis();
+        this.influencers = influencers;
+        this.influencerCount = influencerCount;
+        this.log = log;
+        this.contractCount = contractCount;
+        this.earnings = earnings;
+        this.totalCents = totalCents;
+    }
+
+    /**
+     * Builds snapshots of one registry and contract log, reusing the latest while nothing has changed.
+     */
+    public static final class Publisher {
+        private final ContractLog log; // The contracts snapshots are taken of
+        private volatile ReportSnapshot latest; // Last snapshot built
+
+        /**
+         * Constructs a new {@code Publisher} whose first snapshot is empty.
+         *
+         * @param log The contract log to take snapshots of.
+         */
+        public Publisher(ContractLog log) {
+            this.log = log;
+            this.latest = new ReportSnapshot(0, new Influencer[0], 0, log, 0, new long[0], 0);
+        }
+
+        /**
+         * Returns a snapshot of the current influencers and contracts.
+         *
+         * <p>The caller passes the registry; it must read the contract count
+         * before the influencer count, and the influencer count before the
+         * array. Every contract names an influencer added before it, and the
+         * array holds at least as many influencers as any count read before
+         * it, so the snapshot never holds a contract whose influencer it is
+         * missing.</p>
+         *
+         * <p>Reports racing each other may pass counts older than the
+         * latest snapshot's. Each count is then raised to the latest
+         * snapshot's, with its registry array for the influencers, so the
+         * rows already folded into the earnings are never folded in
+         * again.</p>
+         *
+         * @param contractCount The number of contract rows, read first.
+         * @param influencerCount The number of influencers, read second.
+         * @param influencers The registry array, read last.
+         * @return The latest snapshot if nothing was added since it was built; otherwise a new one.
+         */
+        public synchronized ReportSnapshot take(int contractCount, int influencerCount, Influencer[] influencers) {
+            ReportSnapshot last = latest;
+            if (contractCount <= last.contractCount && influencerCount <= last.influencerCount) {
+                return last;
+            }
+            contractCount = Math.max(contractCount, last.contractCount);
+            if (influencerCount < last.influencerCount) {
+                influencerCount = last.influencerCount;
+                influencers = last.influencers; // Holds at least the latest count, which covers every row up to it
+            }
+            long[] earnings = Arrays.copyOf(last.earnings, Math.max(last.earnings.length, UserDirectory.size()));
+            long total = last.totalCents;
+            for (int row = last.contractCount; row < contractCount; row++) {
+                int id = log.influencerId(row);
+                if (id >= earnings.length) {
+                    earnings = Arrays.copyOf(earnings, Math.max(id + 1, earnings.length * 2));
+                }
+                long amount = log.amountCents(row);
+                earnings[id] = Money.add(earnings[id], amount);
+                total = Money.add(total, amount);
+            }
+            latest = new ReportSnapshot(last.version + 1, influencers, influencerCount, log, contractCount, earnings, total);
+            return latest;
+        }
+    }
+
+    /**
+     * Returns the version of the snapshot.
+     *
+     * @return A number that increases with every snapshot of the same publisher.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns when the snapshot was built.
+     *
+     * @return The time, in epoch milliseconds.
+     */
+    public long getTakenMillis() {
+        return takenMillis;
+    }
+
+    /**
+     * Returns the number of influencers in the snapshot.
+     *
+     * @return The number of influencers.
+     */
+    public int getInfluencerCount() {
+        return influencerCount;
+    }
+
+    /**
+     * Returns an influencer of the snapshot, in the order they were added.
+     *
+     * @param i The index of the influencer, from {@code 0}.
+     * @return The influencer.
+     * @throws IndexOutOfBoundsException If the influencer is not in the snapshot.
+     */
+    public Influencer getInfluencer(int i) {
+        if (i < 0 || i >= influencerCount) {
+            throw new IndexOutOfBoundsException("Influencer " + i + " out of bounds for snapshot size " + influencerCount);
+        }
+        return influencers[i];
+    }
+
+    /**
+     * Returns the number of contracts in the snapshot.
+     *
+     * @return The number of contract rows.
+     */
+    public int getContractCount() {
+        return contractCount;
+    }
+
+    /**
+     * Returns a contract of the snapshot.
+     *
+     * @param row The row index.
+     * @return A {@link Contract} view of the row.
+     * @throws IndexOutOfBoundsException If the row is not in the snapshot.
+     */
+    public Contract getContract(int row) {
+        if (row < 0 || row >= contractCount) {
+            throw new IndexOutOfBoundsException("Contract row " + row + " out of bounds for snapshot size " + contractCount);
+        }
+        return log.get(row);
+    }
+
+    /**
+     * Returns what an influencer was contracted for up to the snapshot.
+     *
+     * @param influencer The influencer.
+     * @return The sum of the influencer's contract amounts, in cents.
+     */
+    public long getEarningsCents(Influencer influencer) {
+        int id = influencer.getId();
+        return id >= 0 && id < earnings.length ? earnings[id] : 0;
+    }
+
+    /**
+     * Returns the total amount of every contract in the snapshot.
+     *
+     * @return The sum, in cents.
+     */
+    public long getTotalCents() {
+        return totalCents;
+    }
+}
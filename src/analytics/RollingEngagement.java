@@ -0,0 +1,188 @@
+package analytics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks an influencer's engagement rate from a stream of views, likes and shares.
+ *
+ * <p>The engagement rate is likes and shares as a percentage of views, the
+ * same measure {@link CampaignScorer} uses. Two aggregates are kept, both in
+ * constant space and updated in constant time per event:</p>
+ * <ul>
+ *   <li>an exponentially weighted one, where interactions and views lose
+ *       half their weight every {@value #HALF_LIFE_HOURS} hours. It starts
+ *       from a baseline rate worth {@value #BASELINE_VIEWS} views, so a few
+ *       early views do not swing the rate, and drifts back to the baseline
+ *       when events stop. {@link #getRate(long)} decays the sums to the time
+ *       it is asked for, so the drift shows without new events;</li>
+ *   <li>a sliding window over the last {@value #WINDOW_HOURS} hours, kept
+ *       as one bucket per hour plus running totals. Buckets that fall out of
+ *       the window are subtracted as the window advances.</li>
+ * </ul>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+public final class RollingEngagement {
+    /** Hours after which an event counts half as much in {@link #getRate(long)}. */
+    public static final int HALF_LIFE_HOURS = 6;
+    /** Length of the window behind {@link #getWindowRate(long)}, in hours. */
+    public static final int WINDOW_HOURS = 24;
+
+    private static final double BASELINE_VIEWS = 1000; // Weight of the baseline rate, in views
+    private static final long HALF_LIFE_MILLIS = TimeUnit.HOURS.toMillis(HALF_LIFE_HOURS); // Half-life of the weighted aggregate
+    private static final long BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1); // Span of one window bucket
+
+    private double baseline; // Rate assumed before any events, in percent
+    private double weightedInteractions; // Decayed likes and shares
+    private double weightedViews; // Decayed views
+    private long weightedMillis = Long.MIN_VALUE; // Time the weighted sums were last decayed to
+    private final long[] bucketInteractions = new long[WINDOW_HOURS]; // Likes and shares per hour, a ring indexed by hour
+    private final long[] bucketViews = new long[WINDOW_HOURS]; // Views per hour, a ring indexed by hour
+    private long newestBucket = Long.MIN_VALUE; // Hour of the newest bucket in the ring
+    private long windowInteractions; // Sum of bucketInteractions
+    private long windowViews; // Sum of bucketViews
+
+    /**
+     * Constructs a new {@code RollingEngagement} with no events.
+     *
+     * @param baseline The rate to assume before any events, in percent.
+     */
+    public RollingEngagement(double baseline) {
+        this.baseline = baseline;
+    }
+
+    /**
+     * Adds the views, likes and shares reported at a point in time.
+     *
+     * <p>Events may arrive slightly out of order: an event older than the
+     * newest one is weighted as if it had just happened, and counted in its
+     * own hour if that hour is still in the window.</p>
+     *
+     * @param views The number of views.
+     * @param likes The number of likes.
+     * @param shares The number of shares.
+     * @param nowMillis When they were reported, in milliseconds since the epoch.
+     * @return The updated weighted rate, in percent.
+     */
+    public synchronized double record(long views, long likes, long shares, long nowMillis) {
+        long interactions = likes + shares;
+        decayTo(nowMillis);
+        weightedInteractions += interactions;
+        weightedViews += views;
+
+        long hour = Math.floorDiv(nowMillis, BUCKET_MILLIS);
+        advanceTo(hour);
+        if (hour > newestBucket - WINDOW_HOURS) {
+            int slot = (int) Math.floorMod(hour, (long) WINDOW_HOURS);
+            bucketInteractions[slot] += interactions;
+            bucketViews[slot] += views;
+            windowInteractions += interactions;
+            windowViews += views;
+        }
+        return rate();
+    }
+
+    /**
+     * Returns the exponentially weighted rate at a point in time.
+     *
+     * <p>Events lose weight up to that time, so the rate moves towards the
+     * baseline the longer nothing is reported. The sums never decay
+     * backwards: an earlier time than any seen so far gives the rate as of
+     * the latest time seen.</p>
+     *
+     * @param nowMillis The current time, in milliseconds since the epoch.
+     * @return The rate, in percent.
+     */
+    public synchronized double getRate(long nowMillis) {
+        decayTo(nowMillis);
+        return rate();
+    }
+
+    /**
+     * Returns the rate over the last {@value #WINDOW_HOURS} hours.
+     *
+     * @param nowMillis The current time, in milliseconds since the epoch.
+     * @return The rate, in percent, or {@link Double#NaN} if there were no views in the window.
+     */
+    public synchronized double getWindowRate(long nowMillis) {
+        advanceTo(Math.floorDiv(nowMillis, BUCKET_MILLIS));
+        return windowViews == 0 ? Double.NaN : windowInteractions * 100.0 / windowViews;
+    }
+
+    /**
+     * Returns the number of views in the last {@value #WINDOW_HOURS} hours.
+     *
+     * @param nowMillis The current time, in milliseconds since the epoch.
+     * @return The views in the window.
+     */
+    public synchronized long getWindowViews(long nowMillis) {
+        advanceTo(Math.floorDiv(nowMillis, BUCKET_MILLIS));
+        return windowViews;
+    }
+
+    /**
+     * Replaces the baseline rate, keeping the events recorded so far.
+     *
+     * @param baseline The rate to assume without events, in percent.
+     * @param nowMillis The current time, in milliseconds since the epoch.
+     * @return The updated weighted rate at that time, in percent.
+     */
+    public synchronized double setBaseline(double baseline, long nowMillis) {
+        this.baseline = baseline;
+        return getRate(nowMillis);
+    }
+
+    /**
+     * Returns the baseline rate.
+     *
+     * @return The rate assumed without events, in percent.
+     */
+    public synchronized double getBaseline() {
+        return baseline;
+    }
+
+    /**
+     * Computes the weighted rate from the sums as last decayed. Called with the lock held.
+     *
+     * @return The rate, in percent.
+     */
+    private double rate() {
+        return (weightedInteractions * 100 + baseline * BASELINE_VIEWS) / (weightedViews + BASELINE_VIEWS);
+    }
+
+    /**
+     * Decays the weighted sums to a point in time. Never decays backwards.
+     *
+     * @param nowMillis The time, in milliseconds since the epoch.
+     */
+    private void decayTo(long nowMillis) {
+        if (weightedMillis != Long.MIN_VALUE && nowMillis > weightedMillis) {
+            double factor = Math.pow(0.5, (double) (nowMillis - weightedMillis) / HALF_LIFE_MILLIS);
+            weightedInteractions *= factor;
+            weightedViews *= factor;
+        }
+        weightedMillis = Math.max(weightedMillis, nowMillis);
+    }
+
+    /**
+     * Moves the window forward to an hour, emptying the buckets it passes.
+     * Never moves backwards, and empties at most the whole ring.
+     *
+     * @param hour The hour, counted from the epoch.
+     */
+    private void advanceTo(long hour) {
+        if (newestBucket == Long.MIN_VALUE) {
+            newestBucket = hour;
+            return;
+        }
+        long steps = Math.min(hour - newestBucket, WINDOW_HOURS);
+        for (long h = hour - steps + 1; h <= hour; h++) {
+            int slot = (int) Math.floorMod(h, (long) WINDOW_HOURS);
+            windowInteractions -= bucketInteractions[slot];
+            windowViews -= bucketViews[slot];
+            bucketInteractions[slot] = 0;
+            bucketViews[slot] = 0;
+        }
+        newestBucket = Math.max(newestBucket, hour);
+    }
+}
@@ -0,0 +1,79 @@
+package audit;
+
+import util.Json;
+
+/**
+ * One entry of the audit trail.
+ *
+ * <p>An {@code AuditEvent} is immutable and holds only strings and primitives,
+ * so it can be handed to the background writer without copying.</p>
+ */
+public final class AuditEvent {
+
+    /**
+     * The kinds of activity that are audited.
+     */
+    public enum Type {
+        /** A brand manager's sponsorship offer was accepted and a contract created. */
+        CONTRACT_CREATED,
+        /** An influencer launched a campaign. */
+        CAMPAIGN_LAUNCHED,
+        /** A platform started tracking a campaign. */
+        CAMPAIGN_TRACKED
+    }
+
+    final Type type; // What happened
+    final long timestampMillis; // When it happened, in epoch milliseconds
+    final String actor; // Username of the user who acted
+    final String subject; // What was acted on: an influencer, brand or campaign
+    final String detail; // Extra context such as the platform name, may be null
+    final long amountCents; // Money involved, in cents, or 0
+
+    /**
+     * Constructs a new {@code AuditEvent} stamped with the current time.
+     *
+     * @param type What happened.
+     * @param actor The username of the user who acted.
+     * @param subject What was acted on.
+     * @param detail Extra context, or {@code null}.
+     * @param amountCents The money involved, in cents, or {@code 0}.
+     */
+    public AuditEvent(Type type, String actor, String subject, String detail, long amountCents) {
+        this.type = type;
+        this.timestampMillis = System.currentTimeMillis();
+        this.actor = actor;
+        this.subject = subject;
+        this.detail = detail;
+        this.amountCents = amountCents;
+    }
+
+    /**
+     * Appends this event to a builder as one line of JSON, including the newline.
+     *
+     * @param sb The builder to append to.
+     */
+    void appendJson(StringBuilder sb) {
+        sb.append("{\"ts\":").append(timestampMillis);
+        sb.append(",\"type\":\"").append(type.name()).append('"');
+        appendField(sb, "actor", actor);
+        appendField(sb, "subject", subject);
+        appendField(sb, "detail", detail);
+        sb.append(",\"amountCents\":").append(amountCents);
+        sb.append("}\n");
+    }
+
+    /**
+     * Appends a string field, skipping it if the value is {@code null}.
+     *
+     * @param sb The builder to append to.
+     * @param name The field name.
+     * @param value The field value.
+     */
+    private static void appendField(StringBuilder sb, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        sb.append(",\"").append(name).append("\":");
+        Json.appendString(sb, value);
+    }
+}
@@ -0,0 +1,232 @@
+package audit;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous audit trail for contracts and campaigns.
+ *
+ * <p>Callers hand {@link AuditEvent}s to {@link #record(AuditEvent)}, which
+ * only adds them to a lock-free queue and returns. A single background thread
+ * drains the queue, encodes the events as JSON lines and appends them to files
+ * in the audit directory, starting a new file once the current one reaches
+ * {@value #MAX_FILE_BYTES} bytes.</p>
+ *
+ * <p>Recording never blocks. If the writer falls more than
+ * {@value #MAX_PENDING} events behind, new events are dropped and counted in
+ * {@link #getDroppedCount()} rather than slowing down the caller. The
+ * directory defaults to {@code audit-logs} and can be changed with the
+ * {@code audit.dir} system property.</p>
+ */
+public final class AuditLog {
+    private static final int MAX_PENDING = 1 << 20; // Events allowed to wait for the writer
+    private static final long MAX_FILE_BYTES = 64L << 20; // Size at which a new file is started
+    private static final int BATCH_BYTES = 64 << 10; // Encoded bytes gathered before each write
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10); // Writer sleep when idle
+
+    private static final ConcurrentLinkedQueue<AuditEvent> queue = new ConcurrentLinkedQueue<>(); // Events waiting to be written
+    private static final AtomicInteger pending = new AtomicInteger(); // Size of the queue
+    private static final AtomicLong accepted = new AtomicLong(); // Events accepted since start
+    private static final LongAdder dropped = new LongAdder(); // Events dropped because the queue was full or writing failed
+    private static volatile long written = 0; // Events handed to the file system since start
+    private static volatile boolean stopping = false; // Set by the shutdown hook
+    private static final File directory = new File(System.getProperty("audit.dir", "audit-logs")); // Where audit files go
+    private static final Thread writer = new Thread(AuditLog::writeLoop, "audit-writer"); // Background writer
+
+    static {
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopping = true;
+            LockSupport.unpark(writer);
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "audit-shutdown"));
+    }
+
+    private AuditLog() {
+    }
+
+    /**
+     * Queues an event for the audit trail without blocking.
+     *
+     * @param event The event to record.
+     * @return {@code true} if the event was queued; {@code false} if it was dropped because the writer is too far behind.
+     */
+    public static boolean record(AuditEvent event) {
+        if (pending.incrementAndGet() > MAX_PENDING) {
+            pending.decrementAndGet();
+            dropped.increment();
+            return false;
+        }
+        queue.offer(event);
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Records that a sponsorship offer created a contract.
+     *
+     * @param brandManager The username of the offering brand manager.
+     * @param influencer The username of the sponsored influencer.
+     * @param brandName The name of the brand.
+     * @param amountCents The sponsorship amount, in cents.
+     */
+    public static void contractCreated(String brandManager, String influencer, String brandName, long amountCents) {
+        record(new AuditEvent(AuditEvent.Type.CONTRACT_CREATED, brandManager, influencer, brandName, amountCents));
+    }
+
+    /**
+     * Records that an influencer launched a campaign.
+     *
+     * @param influencer The username of the influencer.
+     * @param campaign The name of the campaign.
+     * @param platform The name of the platform, or {@code null}.
+     * @param budgetCents The campaign budget, in cents.
+     */
+    public static void campaignLaunched(String influencer, String campaign, String platform, long budgetCents) {
+        record(new AuditEvent(AuditEvent.Type.CAMPAIGN_LAUNCHED, influencer, campaign, platform, budgetCents));
+    }
+
+    /**
+     * Records that a platform started tracking an influencer's campaign.
+     *
+     * <p>The influencer whose campaign is tracked is recorded as the actor and
+     * the platform as the detail, as for {@link #campaignLaunched}.</p>
+     *
+     * @param platform The name of the platform.
+     * @param influencer The username of the influencer.
+     */
+    public static void campaignTracked(String platform, String influencer) {
+        record(new AuditEvent(AuditEvent.Type.CAMPAIGN_TRACKED, influencer, null, platform, 0));
+    }
+
+    /**
+     * Waits until every event accepted before this call has been written.
+     *
+     * @param timeoutMillis The longest time to wait, in milliseconds.
+     * @return {@code true} if the events were written in time.
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    public static boolean flush(long timeoutMillis) throws InterruptedException {
+        long target = accepted.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (written + dropped.sum() < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of events written to the audit files since start.
+     *
+     * @return The number of written events.
+     */
+    public static long getWrittenCount() {
+        return written;
+    }
+
+    /**
+     * Returns the number of events dropped since start.
+     *
+     * @return The number of dropped events.
+     */
+    public static long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Body of the writer thread: drains the queue in batches until shutdown.
+     */
+    private static void writeLoop() {
+        StringBuilder batch = new StringBuilder(BATCH_BYTES + 1024);
+        int batchCount = 0;
+        FileChannel channel = null;
+        long fileBytes = 0;
+        int fileSeq = 0;
+        long startMillis = System.currentTimeMillis();
+
+        while (true) {
+            AuditEvent event = queue.poll();
+            if (event != null) {
+                pending.decrementAndGet();
+                event.appendJson(batch);
+                batchCount++;
+                if (batch.length() < BATCH_BYTES) {
+                    continue; // Keep gathering while events are arriving
+                }
+            }
+            if (batchCount > 0) {
+                try {
+                    if (channel == null || fileBytes >= MAX_FILE_BYTES) {
+                        if (channel != null) {
+                            channel.close();
+                        }
+                        directory.mkdirs();
+                        File file = new File(directory, "audit-" + startMillis + "-" + (fileSeq++) + ".jsonl");
+                        channel = new FileOutputStream(file, true).getChannel();
+                        fileBytes = 0;
+                    }
+                    ByteBuffer bytes = StandardCharsets.UTF_8.encode(batch.toString());
+                    fileBytes += bytes.remaining();
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    written += batchCount;
+                } catch (IOException e) {
+                    System.err.println("Audit log write failed, " + batchCount + " events lost: " + e.getMessage());
+                    dropped.add(batchCount);
+                    closeQuietly(channel); // Reopened with a new file for the next batch
+                    channel = null;
+                }
+                batch.setLength(0);
+                batchCount = 0;
+            }
+            if (event == null) {
+                if (stopping && queue.isEmpty()) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Audit log close failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Closes a channel after a failed write, ignoring any further error.
+     *
+     * @param channel The channel, or {@code null}.
+     */
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // The write failure has already been reported
+            }
+        }
+    }
+}
@@ -2,6 +2,11 @@ package auth;
 
 import entities.*;
 import java.io.*;
+import java.util.HashMap;
+import java.util.List;
+import metrics.LoginEvent;
+import metrics.Metrics;
+import util.Money;
 
 /**
  * The {@code AuthManager} class is responsible for handling user authentication
@@ -9,16 +14,23 @@ import java.io.*;
  * by verifying their credentials against stored data.
  */
 public class AuthManager {
+    private static final String CREDENTIALS_FILE = "users.txt"; // File containing user credentials
+    private static HashMap<String, String[]> credentials = new HashMap<>(); // Username to password and role
+    private static long loadedModified = -1; // Modification time of the file when it was loaded
+    private static long loadedLength = -1; // Length of the file when it was loaded
 
     /**
      * Logs in a user by verifying the provided username and password.
      *
      * <p>This method reads user credentials from a file named {@code users.txt}.
+     * The file is loaded into memory on first use and again whenever it changes.
      * If the username exists and the password matches, it returns the corresponding
      * {@link User} object based on the user's role (Admin, Influencer, or BrandManager).
      * If the password does not match, a {@link PasswordNotMatchingException} is thrown.
      * If the user is not found, the method returns {@code null}.</p>
      *
+     * <p>Every call is timed in {@link Metrics#LOGIN} and emitted as a {@link LoginEvent}.</p>
+     *
      * @param username The username of the user attempting to log in.
      * @param password The password of the user attempting to log in.
      * @return A {@link User} object representing the logged-in user (Admin, Influencer, or BrandManager).
@@ -26,26 +38,156 @@ public class AuthManager {
      * @throws IOException If an I/O error occurs while reading the user data file.
      */
     public static User login(String username, String password) throws PasswordNotMatchingException, IOException {
-        File file = new File("users.txt"); // File containing user credentials
-        BufferedReader br = new BufferedReader(new FileReader(file)); // BufferedReader to read the file
-        String line;
+        long start = System.nanoTime(); // Start of the call, for Metrics.LOGIN
+        boolean success = false;
+        LoginEvent event = new LoginEvent();
+        event.begin();
+        String outcome = "ERROR";
+        try {
+            User user = authenticate(username, password);
+            success = true;
+            outcome = user == null ? "NOT_FOUND" : "SUCCESS";
+            return user;
+        } catch (PasswordNotMatchingException e) {
+            outcome = "BAD_PASSWORD";
+            throw e;
+        } finally {
+            Metrics.LOGIN.record(System.nanoTime() - start, success);
+            event.end();
+            if (event.shouldCommit()) {
+                event.username = username;
+                event.outcome = outcome;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Looks up the user in {@code users.txt} and checks the password.
+     *
+     * <p>Users that are registered in the {@link UserDirectory}, such as imported
+     * influencers and brands, are returned as the registered object so that
+     * their niche, brand and budget are kept.</p>
+     *
+     * @param username The username of the user attempting to log in.
+     * @param password The password of the user attempting to log in.
+     * @return The logged-in {@link User}, or {@code null} if the user is not found.
+     * @throws PasswordNotMatchingException If the provided password does not match the stored password.
+     * @throws IOException If an I/O error occurs while reading the user data file.
+     */
+    private static User authenticate(String username, String password) throws PasswordNotMatchingException, IOException {
+        String[] creds = lookup(username); // Password and role of the user
+        if (creds == null) {
+            return null; // Return null if the user is not found
+        }
+        if (!creds[0].equals(password)) {
+            // Throw exception if the password does not match
+            throw new PasswordNotMatchingException("Incorrect Password");
+        }
+        String role = creds[1]; // Get the user role
+        User known = UserDirectory.find(username); // Registered user with this name, if any
+        // Return the appropriate User object based on the role
+        if (role.equals("Admin")) return new Admin(username, password);
+        if (role.equals("Influencer")) return known instanceof Influencer ? known : new Influencer(username, password);
+        if (role.equals("BrandManager")) return known instanceof BrandManager ? known : new BrandManager(username, password, "SampleBrand", Money.ofUnits(5000));
+        return null;
+    }
 
-        // Read each line of the file to find the user
-        while ((line = br.readLine()) != null) {
-            String[] creds = line.split(","); // Split the line into credentials
-            if (creds[0].equals(username)) { // Check if the username matches
-                if (!creds[1].equals(password)) {
-                    // Throw exception if the password does not match
-                    throw new PasswordNotMatchingException("Incorrect Password");
+    /**
+     * Returns the stored password and role of a user, reloading the
+     * credential file first if it has changed on disk.
+     *
+     * @param username The username to look up.
+     * @return An array of the password and role, or {@code null} if the user is not found.
+     * @throws IOException If an I/O error occurs while reading the user data file.
+     */
+    private static synchronized String[] lookup(String username) throws IOException {
+        File file = new File(CREDENTIALS_FILE);
+        if (file.lastModified() != loadedModified || file.length() != loadedLength) {
+            reload(file);
+        }
+        return credentials.get(username);
+    }
+
+    /**
+     * Reads every credential in the file into memory.
+     *
+     * <p>When a username appears more than once, the first line wins, as it
+     * did when the file was scanned on every login.</p>
+     *
+     * @param file The credential file.
+     * @throws IOException If an I/O error occurs while reading the file.
+     */
+    private static void reload(File file) throws IOException {
+        HashMap<String, String[]> loaded = new HashMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) { // BufferedReader to read the file
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] creds = line.split(","); // Split the line into credentials
+                if (creds.length >= 3) {
+                    loaded.putIfAbsent(creds[0], new String[] {creds[1], creds[2]});
+                }
+            }
+        }
+        credentials = loaded;
+        loadedModified = file.lastModified();
+        loadedLength = file.length();
+    }
+
+    /**
+     * Appends credentials to {@code users.txt} in one write and makes them
+     * available to {@link #login(String, String)} straight away.
+     *
+     * <p>A username that already has credentials in the file, including
+     * users that exist only there such as admins, or that appears earlier in
+     * the list is skipped. The file is checked for changes once per call, so
+     * a batch costs the same few file checks however many users it holds.
+     * If the write fails, none of the credentials become available to
+     * logins.</p>
+     *
+     * @param users The users to add; each entry is a username, password and role.
+     * @return For each user, {@code true} if its credentials were added, {@code false} if the username was taken.
+     * @throws IOException If an I/O error occurs while writing the user data file.
+     */
+    public static synchronized boolean[] addCredentials(List<String[]> users) throws IOException {
+        boolean[] added = new boolean[users.size()];
+        if (users.isEmpty()) {
+            return added;
+        }
+        File file = new File(CREDENTIALS_FILE);
+        if (file.lastModified() != loadedModified || file.length() != loadedLength) {
+            reload(file);
+        }
+        HashMap<String, String[]> fresh = new HashMap<>(); // Credentials written by this call
+        for (int i = 0; i < users.size(); i++) {
+            String[] user = users.get(i);
+            added[i] = !credentials.containsKey(user[0]) && fresh.putIfAbsent(user[0], new String[] {user[1], user[2]}) == null;
+        }
+        if (fresh.isEmpty()) {
+            return added;
+        }
+        boolean needsNewline = false;
+        if (file.length() > 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.seek(file.length() - 1);
+                needsNewline = raf.read() != '\n';
+            }
+        }
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file, true), 1 << 16)) {
+            if (needsNewline) {
+                bw.newLine();
+            }
+            for (int i = 0; i < users.size(); i++) {
+                if (added[i]) {
+                    String[] user = users.get(i);
+                    bw.write(user[0] + "," + user[1] + "," + user[2]);
+                    bw.newLine();
                 }
-                String role = creds[2]; // Get the user role
-                // Return the appropriate User object based on the role
-                if (role.equals("Admin")) return new Admin(username, password);
-                if (role.equals("Influencer")) return new Influencer(username, password);
-                if (role.equals("BrandManager")) return new BrandManager(username, password, "SampleBrand", 5000);
             }
         }
-        br.close(); // Close the BufferedReader
-        return null; // Return null if the user is not found
+        credentials.putAll(fresh);
+        loadedModified = file.lastModified();
+        loadedLength = file.length();
+        return added;
     }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package cluster;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Constants and helpers shared by {@link ShardRouter} and {@link ShardWorker}.
+ *
+ * <p>Each request is one opcode byte followed by its arguments; each reply is
+ * one status byte followed by its payload, or by a message if the status is
+ * {@link #REFUSED}, {@link #NOT_FOUND} or {@link #ERROR}. Strings are written
+ * with {@link DataOutputStream#writeUTF}, numbers in big-endian binary.</p>
+ */
+final class ShardProtocol {
+    static final String READY = "SHARD READY "; // Printed by a worker, followed by its port, once it accepts connections
+
+    static final byte ADD_INFLUENCER = 1; // username, password, niche, rate, regions -> OK
+    static final byte PROFILE = 2; // username -> profile
+    static final byte INFLUENCER_CONTRACTS = 3; // username -> contract rows
+    static final byte BRAND_CONTRACTS = 4; // brand username -> contract rows
+    static final byte ALL_CONTRACTS = 5; // -> contract rows
+    static final byte LAUNCH = 6; // username, campaign, budget, platform name or "" -> OK
+    static final byte OFFER = 7; // router session, reservation id, brand username, brand name, influencer, amount -> OK, start time
+    static final byte SEARCH = 8; // query, limit -> influencer rows
+    static final byte ALL_INFLUENCERS = 9; // -> influencer rows
+    static final byte STATS = 10; // -> influencers, contracts, earnings
+    static final byte LEADERBOARD = 11; // engagement?, limit -> influencer rows with their scores
+    static final byte SHUTDOWN = 12; // -> OK, then the worker exits
+    static final byte OFFER_STATUS = 13; // router session, reservation id -> OK, start time if the offer was applied; REFUSED once it never will be
+
+    static final byte OK = 0; // The request succeeded
+    static final byte NOT_FOUND = 1; // The influencer is not on this shard
+    static final byte REFUSED = 2; // The request was refused, for example for lack of money
+    static final byte ERROR = 3; // The request failed unexpectedly
+
+    static final long OFFER_TIMEOUT_MILLIS = 10 * 60_000; // Time a shard has to confirm a sponsorship before its escrow expires
+
+    private ShardProtocol() {
+    }
+
+    /**
+     * Returns the shard that owns a username.
+     *
+     * @param username The username.
+     * @param shards The number of shards.
+     * @return The shard index, from {@code 0} to {@code shards - 1}.
+     */
+    static int shardOf(String username, int shards) {
+        return Math.floorMod(username.hashCode() * 0x9E3779B9, shards); // Spread similar names across shards
+    }
+
+    /**
+     * Writes an array of strings.
+     *
+     * @param out The stream.
+     * @param values The strings.
+     * @throws IOException If the stream fails.
+     */
+    static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (String v : values) {
+            out.writeUTF(v);
+        }
+    }
+
+    /**
+     * Reads an array of strings written by {@link #writeStrings}.
+     *
+     * @param in The stream.
+     * @return The strings.
+     * @throws IOException If the stream fails.
+     */
+    static String[] readStrings(DataInputStream in) throws IOException {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readUTF();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,866 @@
+package cluster;
+
+import auth.InsufficientBalanceException;
+import auth.PaymentFailedException;
+import entities.BrandManager;
+import entities.Escrow;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import platforms.Platform;
+import platforms.PlatformRegistry;
+
+/**
+ * Routes requests to the {@link ShardWorker} processes that own influencers
+ * and their contracts.
+ *
+ * <p>Influencers are partitioned by a hash of their username, so a request
+ * about one influencer goes to exactly one shard. Requests that span every
+ * influencer, such as the admin reports and influencer search, are sent to
+ * all shards at once and their answers merged. Each shard is a separate
+ * process on the same host, reached over a loopback socket; the router keeps
+ * a pool of connections per shard, so concurrent callers reach a shard in
+ * parallel and every shard works on its own cores.</p>
+ *
+ * <p>Brand managers and their budgets stay in the router's process. A
+ * sponsorship first moves the amount out of the brand manager's budget into
+ * {@link Escrow}, then asks the owning shard to pay the influencer and record
+ * the contract, and commits the escrow only once the shard has confirmed. If
+ * the shard refuses, the money is released back to the brand manager. Each
+ * offer carries its reservation id, and a shard applies an id at most once,
+ * so when the connection fails before the reply arrives the router keeps the
+ * money in escrow and asks the shard what became of that id: it commits if
+ * the shard paid and releases otherwise, and the shard refuses the offer
+ * from then on should it arrive late. If the shard cannot be asked either,
+ * it is asked again before the next offer routed to it; a reservation that
+ * stays unresolved past {@link ShardProtocol#OFFER_TIMEOUT_MILLIS} expires
+ * back to the brand manager.</p>
+ *
+ * <p>Methods throw {@link UncheckedIOException} if a shard cannot be reached.
+ * The router is safe to use from any number of threads.</p>
+ */
+public final class ShardRouter implements Closeable {
+    private final Shard[] shards; // Shards by index
+    private final long session = new SecureRandom().nextLong(); // Tells this router's reservation ids apart from an earlier router's
+    private final ExecutorService scatter; // Sends one request to every shard in parallel
+
+    /**
+     * A contract as reported by a shard.
+     */
+    public static final class ContractRow {
+        final String brandName; // Name of the sponsoring brand
+        final String influencer; // Username of the influencer
+        final long amountCents; // Amount of the sponsorship, in cents
+        final long startMillis; // Start of the contract, in epoch milliseconds
+
+        ContractRow(DataInputStream in) throws IOException {
+            this.brandName = in.readUTF();
+            this.influencer = in.readUTF();
+            this.amountCents = in.readLong();
+            this.startMillis = in.readLong();
+        }
+
+        /**
+         * Returns the name of the sponsoring brand.
+         *
+         * @return The brand name.
+         */
+        public String getBrandName() {
+            return brandName;
+        }
+
+        /**
+         * Returns the username of the influencer.
+         *
+         * @return The influencer's username.
+         */
+        public String getInfluencer() {
+            return influencer;
+        }
+
+        /**
+         * Returns the amount of the sponsorship.
+         *
+         * @return The amount, in cents.
+         */
+        public long getAmountCents() {
+            return amountCents;
+        }
+
+        /**
+         * Returns the start of the contract.
+         *
+         * @return The start time, in epoch milliseconds.
+         */
+        public long getStartMillis() {
+            return startMillis;
+        }
+    }
+
+    /**
+     * An influencer as reported by a shard.
+     */
+    public static class InfluencerRow {
+        final String username; // Username of the influencer
+        final String niche; // Niche of the influencer
+        final double engagementRate; // Engagement rate of the influencer
+        final long earningsCents; // Total sponsorships received, in cents
+        final double score; // Search relevance or leaderboard score, when requested
+
+        InfluencerRow(DataInputStream in) throws IOException {
+            this.username = in.readUTF();
+            this.niche = in.readUTF();
+            this.engagementRate = in.readDouble();
+            this.earningsCents = in.readLong();
+            this.score = in.readDouble();
+        }
+
+        /**
+         * Returns the username of the influencer.
+         *
+         * @return The username.
+         */
+        public String getUsername() {
+            return username;
+        }
+
+        /**
+         * Returns the niche of the influencer.
+         *
+         * @return The niche.
+         */
+        public String getNiche() {
+            return niche;
+        }
+
+        /**
+         * Returns the engagement rate of the influencer.
+         *
+         * @return The engagement rate.
+         */
+        public double getEngagementRate() {
+            return engagementRate;
+        }
+
+        /**
+         * Returns the total sponsorships the influencer received.
+         *
+         * @return The earnings, in cents.
+         */
+        public long getEarningsCents() {
+            return earningsCents;
+        }
+
+        /**
+         * Returns the search relevance or leaderboard score the row was ranked by.
+         *
+         * @return The score, or {@code 0} if the row was not ranked.
+         */
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * An influencer's profile, with their regions and campaigns, newest first.
+     */
+    public static final class Profile extends InfluencerRow {
+        final String[] regions; // Regions the influencer operates in
+        final List<String> campaignNames = new ArrayList<>(); // Names of the launched campaigns
+        final List<Long> campaignBudgets = new ArrayList<>(); // Budgets of the launched campaigns, in cents
+        final List<String> campaignPlatforms = new ArrayList<>(); // Platform names of the launched campaigns, or ""
+
+        Profile(DataInputStream in) throws IOException {
+            super(in);
+            this.regions = ShardProtocol.readStrings(in);
+            for (int i = in.readInt(); i > 0; i--) {
+                campaignNames.add(in.readUTF());
+                campaignBudgets.add(in.readLong());
+                campaignPlatforms.add(in.readUTF());
+            }
+        }
+
+        /**
+         * Returns the regions the influencer operates in.
+         *
+         * @return The region names.
+         */
+        public String[] getRegions() {
+            return regions.clone();
+        }
+
+        /**
+         * Returns the number of campaigns the influencer launched.
+         *
+         * @return The number of campaigns.
+         */
+        public int getCampaignCount() {
+            return campaignNames.size();
+        }
+
+        /**
+         * Returns the name of a campaign.
+         *
+         * @param i The index of the campaign.
+         * @return The campaign name.
+         */
+        public String getCampaignName(int i) {
+            return campaignNames.get(i);
+        }
+
+        /**
+         * Returns the budget of a campaign.
+         *
+         * @param i The index of the campaign.
+         * @return The budget, in cents.
+         */
+        public long getCampaignBudget(int i) {
+            return campaignBudgets.get(i);
+        }
+
+        /**
+         * Returns the platform of a campaign.
+         *
+         * @param i The index of the campaign.
+         * @return The shared {@link Platform}, or {@code null} if the campaign has none.
+         */
+        public Platform getCampaignPlatform(int i) {
+            String name = campaignPlatforms.get(i);
+            return name.isEmpty() ? null : PlatformRegistry.find(name);
+        }
+    }
+
+    /**
+     * Totals across every shard.
+     */
+    public static final class Stats {
+        int influencers; // Number of influencers
+        int contracts; // Number of contracts
+        long earningsCents; // Sponsorships received by all influencers, in cents
+
+        /**
+         * Returns the number of influencers.
+         *
+         * @return The number of influencers.
+         */
+        public int getInfluencers() {
+            return influencers;
+        }
+
+        /**
+         * Returns the number of contracts.
+         *
+         * @return The number of contracts.
+         */
+        public int getContracts() {
+            return contracts;
+        }
+
+        /**
+         * Returns the sponsorships received by all influencers.
+         *
+         * @return The total, in cents.
+         */
+        public long getEarningsCents() {
+            return earningsCents;
+        }
+    }
+
+    /**
+     * Writes the arguments of a request.
+     */
+    private interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads the payload of a reply.
+     *
+     * @param <T> The type of the result.
+     */
+    private interface Reply<T> {
+        T read(int status, DataInputStream in) throws IOException;
+    }
+
+    /**
+     * One open connection to a shard.
+     */
+    private static final class Connection {
+        final Socket socket; // The socket
+        final DataInputStream in; // Replies
+        final DataOutputStream out; // Requests
+
+        Connection(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+    }
+
+    /**
+     * A shard process and its idle connections.
+     */
+    private static final class Shard {
+        final int index; // Index of the shard
+        final int port; // Loopback port of the worker
+        final Process process; // The worker process, or null if it was started elsewhere
+        final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<>(); // Connections not in use
+        final ConcurrentLinkedQueue<Escrow.Reservation> unresolved = new ConcurrentLinkedQueue<>(); // Offers whose outcome the shard has yet to report
+
+        Shard(int index, int port, Process process) {
+            this.index = index;
+            this.port = port;
+            this.process = process;
+        }
+
+        /**
+         * Sends a request and reads its reply on an idle connection, opening one if none is idle.
+         *
+         * @param op The opcode.
+         * @param request Writes the arguments.
+         * @param reply Reads the payload.
+         * @param <T> The type of the result.
+         * @return The result.
+         * @throws IOException If the shard cannot be reached or failed.
+         */
+        <T> T call(byte op, Request request, Reply<T> reply) throws IOException {
+            Connection c = idle.pollFirst();
+            if (c == null) {
+                c = new Connection(port);
+            }
+            boolean complete = false; // Whether the whole reply was read, so the connection can be reused
+            try {
+                c.out.writeByte(op);
+                request.write(c.out);
+                c.out.flush();
+                int status = c.in.readByte();
+                if (status == ShardProtocol.ERROR) {
+                    String message = c.in.readUTF();
+                    complete = true;
+                    throw new IOException(message);
+                }
+                T result = reply.read(status, c.in);
+                complete = true;
+                return result;
+            } finally {
+                if (complete) {
+                    idle.addFirst(c);
+                } else {
+                    c.socket.close(); // The stream may be out of step; never reuse it
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructs a new {@code ShardRouter}.
+     *
+     * @param shards The shards, by index.
+     */
+    private ShardRouter(Shard[] shards) {
+        this.shards = shards;
+        this.scatter = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "shard-scatter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts one worker process per shard on this host and connects to them.
+     *
+     * <p>The workers run with the same Java runtime and class path as this
+     * process. They exit when this process exits.</p>
+     *
+     * @param count The number of shards.
+     * @return A router connected to the new shards.
+     * @throws IOException If a worker cannot be started.
+     */
+    public static ShardRouter launch(int count) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+        Shard[] shards = new Shard[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                List<String> command = new ArrayList<>(List.of(java, "-cp", classpath));
+                if (System.getProperty("audit.dir") != null) {
+                    command.add("-Daudit.dir=" + System.getProperty("audit.dir"));
+                }
+                command.addAll(List.of(ShardWorker.class.getName(), Integer.toString(i), Integer.toString(count)));
+                Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                shards[i] = new Shard(i, awaitReady(process, i), process);
+            }
+        } catch (IOException e) {
+            for (Shard s : shards) {
+                if (s != null) {
+                    s.process.destroy();
+                }
+            }
+            throw e;
+        }
+        return new ShardRouter(shards);
+    }
+
+    /**
+     * Connects to workers that are already running on this host.
+     *
+     * @param ports The port of each shard, by index.
+     * @return A router connected to the shards.
+     */
+    public static ShardRouter connect(int... ports) {
+        Shard[] shards = new Shard[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            shards[i] = new Shard(i, ports[i], null);
+        }
+        return new ShardRouter(shards);
+    }
+
+    /**
+     * Waits for a worker to report its port, then keeps draining its output.
+     *
+     * @param process The worker process.
+     * @param index The index of its shard.
+     * @return The port the worker listens on.
+     * @throws IOException If the worker exits before it is ready.
+     */
+    private static int awaitReady(Process process, int index) throws IOException {
+        BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = out.readLine()) != null && !line.startsWith(ShardProtocol.READY)) {
+            // Skip anything the JVM prints before the worker starts
+        }
+        if (line == null) {
+            throw new IOException("Shard " + index + " exited before it was ready");
+        }
+        Thread drain = new Thread(() -> {
+            try {
+                while (out.readLine() != null) {
+                    // Discard
+                }
+            } catch (IOException e) {
+                // The worker exited
+            }
+        }, "shard-" + index + "-output");
+        drain.setDaemon(true);
+        drain.start();
+        return Integer.parseInt(line.substring(ShardProtocol.READY.length()).trim());
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return The number of shards.
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the shard that owns an influencer.
+     *
+     * @param username The influencer's username.
+     * @return The shard index.
+     */
+    public int shardOf(String username) {
+        return ShardProtocol.shardOf(username, shards.length);
+    }
+
+    /**
+     * Adds an influencer to its shard.
+     *
+     * @param username The username.
+     * @param password The password.
+     * @param niche The niche.
+     * @param engagementRate The engagement rate.
+     * @param regions The regions the influencer operates in.
+     */
+    public void addInfluencer(String username, String password, String niche, double engagementRate, String... regions) {
+        call(owner(username), ShardProtocol.ADD_INFLUENCER, out -> {
+            out.writeUTF(username);
+            out.writeUTF(password);
+            out.writeUTF(niche);
+            out.writeDouble(engagementRate);
+            ShardProtocol.writeStrings(out, regions);
+        }, (status, in) -> null);
+    }
+
+    /**
+     * Returns an influencer's profile from its shard.
+     *
+     * @param username The influencer's username.
+     * @return The profile, or {@code null} if there is no such influencer.
+     */
+    public Profile profile(String username) {
+        return call(owner(username), ShardProtocol.PROFILE, out -> out.writeUTF(username),
+                (status, in) -> status == ShardProtocol.OK ? new Profile(in) : skipMessage(in));
+    }
+
+    /**
+     * Returns the contracts of an influencer from its shard.
+     *
+     * @param username The influencer's username.
+     * @return The contracts, oldest first.
+     */
+    public List<ContractRow> contractsOf(String username) {
+        return call(owner(username), ShardProtocol.INFLUENCER_CONTRACTS, out -> out.writeUTF(username), ShardRouter::readContracts);
+    }
+
+    /**
+     * Returns the contracts of a brand manager from every shard.
+     *
+     * @param brandUsername The brand manager's username.
+     * @return The contracts, oldest first.
+     */
+    public List<ContractRow> contractsOfBrand(String brandUsername) {
+        return byStart(gather(ShardProtocol.BRAND_CONTRACTS, out -> out.writeUTF(brandUsername), ShardRouter::readContracts));
+    }
+
+    /**
+     * Returns every contract from every shard.
+     *
+     * @return The contracts, oldest first.
+     */
+    public List<ContractRow> allContracts() {
+        return byStart(gather(ShardProtocol.ALL_CONTRACTS, out -> { }, ShardRouter::readContracts));
+    }
+
+    /**
+     * Launches a campaign for an influencer on its shard.
+     *
+     * @param username The influencer's username.
+     * @param campaign The name of the campaign.
+     * @param budget The budget, in cents.
+     * @param p The platform of the campaign, or {@code null} for none.
+     * @throws PaymentFailedException If the influencer does not exist or cannot cover the budget.
+     */
+    public void launchCampaign(String username, String campaign, long budget, Platform p) throws PaymentFailedException {
+        String refusal = call(owner(username), ShardProtocol.LAUNCH, out -> {
+            out.writeUTF(username);
+            out.writeUTF(campaign);
+            out.writeLong(budget);
+            out.writeUTF(p == null ? "" : p.getName()); // Dictionary ids differ between processes
+        }, (status, in) -> status == ShardProtocol.OK ? null : in.readUTF());
+        if (refusal != null) {
+            throw new PaymentFailedException(refusal);
+        }
+    }
+
+    /**
+     * Sponsors an influencer on its shard from a brand manager's budget.
+     *
+     * @param brand The brand manager, whose budget is held in this process.
+     * @param influencer The influencer's username.
+     * @param amount The amount, in cents.
+     * @return The start time of the new contract, in epoch milliseconds.
+     * @throws InsufficientBalanceException If the brand manager's budget is too low.
+     * @throws PaymentFailedException If the influencer does not exist, or the shard confirmed too late.
+     * @throws UncheckedIOException If the shard cannot be reached; the money stays in escrow until the shard
+     *         reports whether it paid.
+     */
+    public long offerSponsorship(BrandManager brand, String influencer, long amount)
+            throws InsufficientBalanceException, PaymentFailedException {
+        Shard shard = owner(influencer);
+        resolvePending(shard);
+        Escrow.Reservation reservation = Escrow.reserve(brand, amount, ShardProtocol.OFFER_TIMEOUT_MILLIS);
+        long[] start = new long[1];
+        String refusal;
+        try {
+            refusal = call(shard, ShardProtocol.OFFER, out -> {
+                out.writeLong(session);
+                out.writeLong(reservation.getId());
+                out.writeUTF(brand.username);
+                out.writeUTF(brand.getBrandName());
+                out.writeUTF(influencer);
+                out.writeLong(amount);
+            }, (status, in) -> {
+                if (status != ShardProtocol.OK) {
+                    return in.readUTF();
+                }
+                start[0] = in.readLong();
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            // The shard may have paid before the connection failed, so the money stays held until it says
+            long confirmed = resolve(shard, reservation);
+            if (confirmed < 0) {
+                throw e;
+            }
+            return confirmed;
+        }
+        if (refusal != null) {
+            Escrow.release(reservation);
+            throw new PaymentFailedException(refusal);
+        }
+        Escrow.commit(reservation, null); // The shard has paid the influencer
+        return start[0];
+    }
+
+    /**
+     * Settles the reservations of earlier offers to a shard whose outcome is still unknown.
+     *
+     * @param shard The shard.
+     * @throws UncheckedIOException If the shard still cannot be asked.
+     */
+    private void resolvePending(Shard shard) {
+        for (Escrow.Reservation reservation; (reservation = shard.unresolved.poll()) != null; ) {
+            try {
+                resolve(shard, reservation);
+            } catch (PaymentFailedException e) {
+                System.err.println("Sponsorship paid by shard " + shard.index + " after its escrow expired: "
+                        + e.getMessage()); // Needs reconciliation from the shard's audit log
+            }
+        }
+    }
+
+    /**
+     * Asks a shard whether it applied an offer whose reply was lost, and
+     * commits or releases the offer's reservation accordingly.
+     *
+     * <p>The question also stops the shard from applying the offer later, so
+     * the answer is final.</p>
+     *
+     * @param shard The shard the offer was sent to.
+     * @param reservation The held reservation of the offer.
+     * @return The start time of the contract if the shard paid, or {@code -1} if it did not.
+     * @throws PaymentFailedException If the shard paid but the reservation had already expired.
+     * @throws UncheckedIOException If the shard cannot be asked; the reservation is then kept held and asked about
+     *         again before the next offer to the shard.
+     */
+    private long resolve(Shard shard, Escrow.Reservation reservation) throws PaymentFailedException {
+        Long start;
+        try {
+            start = call(shard, ShardProtocol.OFFER_STATUS, out -> {
+                out.writeLong(session);
+                out.writeLong(reservation.getId());
+            }, (status, in) -> status == ShardProtocol.OK ? Long.valueOf(in.readLong()) : skipMessage(in));
+        } catch (UncheckedIOException e) {
+            shard.unresolved.add(reservation);
+            throw e;
+        }
+        if (start == null) {
+            Escrow.release(reservation);
+            return -1;
+        }
+        Escrow.commit(reservation, null);
+        return start;
+    }
+
+    /**
+     * Searches every shard for influencers whose username or niche matches a query.
+     *
+     * @param query The text typed by the user.
+     * @param page The zero-based page number.
+     * @param pageSize The number of matches per page.
+     * @return The matches on the page, best first.
+     */
+    public List<InfluencerRow> search(String query, int page, int pageSize) {
+        int limit = (page + 1) * pageSize; // Any shard may hold every match up to the end of the page
+        List<InfluencerRow> all = gather(ShardProtocol.SEARCH, out -> {
+            out.writeUTF(query);
+            out.writeInt(limit);
+        }, ShardRouter::readInfluencers);
+        all.sort(Comparator.comparingDouble((InfluencerRow r) -> -r.score)
+                .thenComparingDouble(r -> -r.engagementRate).thenComparing(r -> r.username));
+        return all.subList(Math.min(page * pageSize, all.size()), Math.min(limit, all.size()));
+    }
+
+    /**
+     * Returns every influencer from every shard.
+     *
+     * @return The influencers, by username.
+     */
+    public List<InfluencerRow> allInfluencers() {
+        List<InfluencerRow> all = gather(ShardProtocol.ALL_INFLUENCERS, out -> { }, ShardRouter::readInfluencers);
+        all.sort(Comparator.comparing(r -> r.username));
+        return all;
+    }
+
+    /**
+     * Returns the best influencers across every shard on the earnings or engagement leaderboard.
+     *
+     * <p>Each shard returns its own best {@code n}, which together always
+     * contain the overall best {@code n}.</p>
+     *
+     * @param engagement {@code true} for {@link analytics.Leaderboard#ENGAGEMENT}, {@code false} for
+     *        {@link analytics.Leaderboard#EARNINGS}.
+     * @param n The number of influencers.
+     * @return Up to {@code n} influencers, best first.
+     */
+    public List<InfluencerRow> leaderboard(boolean engagement, int n) {
+        List<InfluencerRow> all = gather(ShardProtocol.LEADERBOARD, out -> {
+            out.writeBoolean(engagement);
+            out.writeInt(n);
+        }, ShardRouter::readInfluencers);
+        all.sort(Comparator.comparingDouble((InfluencerRow r) -> -r.score).thenComparing(r -> r.username));
+        return all.subList(0, Math.min(n, all.size()));
+    }
+
+    /**
+     * Returns totals across every shard.
+     *
+     * @return The totals.
+     */
+    public Stats stats() {
+        Stats total = new Stats();
+        for (Stats s : this.<Stats>scatter(ShardProtocol.STATS, out -> { }, (status, in) -> {
+            Stats part = new Stats();
+            part.influencers = in.readInt();
+            part.contracts = in.readInt();
+            part.earningsCents = in.readLong();
+            return part;
+        })) {
+            total.influencers += s.influencers;
+            total.contracts += s.contracts;
+            total.earningsCents += s.earningsCents;
+        }
+        return total;
+    }
+
+    /**
+     * Stops every worker this router started and closes every connection.
+     */
+    @Override
+    public void close() {
+        for (Shard s : shards) {
+            if (s.process != null) {
+                try {
+                    s.call(ShardProtocol.SHUTDOWN, out -> { }, (status, in) -> null);
+                } catch (IOException e) {
+                    s.process.destroy();
+                }
+            }
+            for (Connection c; (c = s.idle.poll()) != null; ) {
+                try {
+                    c.socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+        scatter.shutdown();
+    }
+
+    /**
+     * Returns the shard that owns a username.
+     *
+     * @param username The username.
+     * @return The shard.
+     */
+    private Shard owner(String username) {
+        return shards[shardOf(username)];
+    }
+
+    /**
+     * Sends a request to one shard.
+     *
+     * @throws UncheckedIOException If the shard cannot be reached or failed.
+     */
+    private static <T> T call(Shard shard, byte op, Request request, Reply<T> reply) {
+        try {
+            return shard.call(op, request, reply);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shard " + shard.index + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sends the same request to every shard in parallel.
+     *
+     * @return The reply of each shard, by shard index.
+     * @throws UncheckedIOException If any shard cannot be reached or failed.
+     */
+    private <T> List<T> scatter(byte op, Request request, Reply<T> reply) {
+        List<Future<T>> futures = new ArrayList<>(shards.length);
+        for (Shard s : shards) {
+            futures.add(scatter.submit(() -> call(s, op, request, reply)));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        for (Future<T> f : futures) {
+            try {
+                results.add(f.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for shards"));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Sends the same request to every shard in parallel and concatenates the lists they return.
+     */
+    private <T> List<T> gather(byte op, Request request, Reply<List<T>> reply) {
+        List<T> all = new ArrayList<>();
+        for (List<T> part : scatter(op, request, reply)) {
+            all.addAll(part);
+        }
+        return all;
+    }
+
+    /**
+     * Sorts contract rows oldest first.
+     */
+    private static List<ContractRow> byStart(List<ContractRow> rows) {
+        rows.sort(Comparator.comparingLong(r -> r.startMillis));
+        return rows;
+    }
+
+    /**
+     * Reads a list of contract rows.
+     */
+    private static List<ContractRow> readContracts(int status, DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<ContractRow> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            rows.add(new ContractRow(in));
+        }
+        return rows;
+    }
+
+    /**
+     * Reads a list of influencer rows.
+     */
+    private static List<InfluencerRow> readInfluencers(int status, DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<InfluencerRow> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            rows.add(new InfluencerRow(in));
+        }
+        return rows;
+    }
+
+    /**
+     * Reads the message of a refused request and returns {@code null}.
+     */
+    private static <T> T skipMessage(DataInputStream in) throws IOException {
+        in.readUTF();
+        return null;
+    }
+}
@@ -0,0 +1,475 @@
+package cluster;
+
+import analytics.Leaderboard;
+import audit.AuditLog;
+import auth.PaymentFailedException;
+import contracts.Contract;
+import contracts.ContractIndex;
+import contracts.ContractLog;
+import contracts.ContractQuery;
+import entities.BrandManager;
+import entities.Influencer;
+import entities.User;
+import entities.UserDirectory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import platforms.Platform;
+import platforms.PlatformRegistry;
+import search.InfluencerSearchIndex;
+import storage.HistoryStore;
+import storage.InfluencerHistory;
+
+/**
+ * A worker process that owns one shard of the influencers and their contracts.
+ *
+ * <p>A worker holds the influencers whose username hashes to its shard, every
+ * contract they signed and their campaigns, with the same contract and search
+ * indexes the single-process application uses. Brand managers are not
+ * sharded: their budget stays with the {@link ShardRouter}, and a worker keeps
+ * a budgetless stand-in for each brand so that its contracts can name it.</p>
+ *
+ * <p>A sponsorship is applied at most once per router session and
+ * reservation id. The worker remembers the outcome of each offer for twice
+ * {@link ShardProtocol#OFFER_TIMEOUT_MILLIS}, so a router whose reply was lost
+ * can ask whether it was paid; asking about an offer that has not arrived
+ * makes the worker refuse it if it arrives later.</p>
+ *
+ * <p>The worker listens on the loopback interface only and serves each
+ * connection on its own thread. It prints {@value ShardProtocol#READY}
+ * followed by its port once it accepts connections, and exits when its
+ * standard input is closed, so it never outlives the router that started it.
+ * Audit events go to a {@code shard-N} subdirectory of {@code audit.dir}.</p>
+ *
+ * <p>Usage: {@code java cluster.ShardWorker <shard> <shards> [port]}. With no
+ * port, or port 0, a free one is chosen.</p>
+ */
+public final class ShardWorker {
+    private static final long OFFER_RETENTION_MILLIS = 2 * ShardProtocol.OFFER_TIMEOUT_MILLIS; // Time the outcome of an offer is remembered
+    private static final int MIN_PRUNE_SIZE = 1024; // Remembered offers below which none are forgotten
+
+    private final int shard; // Index of this shard
+    private final int shards; // Number of shards in the deployment
+    private final List<Influencer> influencers = new ArrayList<>(); // Influencers owned by this shard, guarded by itself
+    private final ConcurrentHashMap<String, BrandManager> brands = new ConcurrentHashMap<>(); // Stand-ins for brand managers, by username
+    private final ContractLog contracts = new ContractLog(); // Contracts of this shard's influencers
+    private final ContractIndex contractIndex = new ContractIndex(contracts); // Query indexes over the contracts
+    private final InfluencerSearchIndex searchIndex = new InfluencerSearchIndex(); // Username and niche search
+    private final ConcurrentHashMap<String, OfferOutcome> offers = new ConcurrentHashMap<>(); // Outcome of each offer, by router session and reservation id
+    private volatile int pruneAt = MIN_PRUNE_SIZE; // Number of remembered offers at which old ones are next forgotten
+
+    /**
+     * What became of an offer.
+     */
+    private static final class OfferOutcome {
+        final boolean paid; // Whether the influencer was paid; false if the router gave up on the offer first
+        final long millis; // Start time of the contract, or when the router gave up, in epoch milliseconds
+
+        OfferOutcome(boolean paid, long millis) {
+            this.paid = paid;
+            this.millis = millis;
+        }
+    }
+
+    /**
+     * Constructs a new {@code ShardWorker}.
+     *
+     * @param shard The index of this shard.
+     * @param shards The number of shards.
+     */
+    ShardWorker(int shard, int shards) {
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    /**
+     * Starts a worker.
+     *
+     * @param args The shard index, the number of shards and, optionally, the port.
+     * @throws IOException If the port cannot be opened.
+     */
+    public static void main(String[] args) throws IOException {
+        int shard = Integer.parseInt(args[0]);
+        int shards = Integer.parseInt(args[1]);
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        System.setProperty("audit.dir",
+                new File(System.getProperty("audit.dir", "audit-logs"), "shard-" + shard).getPath()); // Keep shards' audit files apart
+
+        ShardWorker worker = new ShardWorker(shard, shards);
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Campaign launches print to the console
+        out.println(ShardProtocol.READY + server.getLocalPort());
+        out.flush();
+
+        Thread watchdog = new Thread(() -> {
+            try {
+                InputStream in = System.in;
+                while (in.read() >= 0) {
+                    // Wait for the router to close the pipe
+                }
+            } catch (IOException e) {
+                // The router is gone either way
+            }
+            System.exit(0);
+        }, "shard-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+
+        while (true) {
+            Socket socket = server.accept();
+            Thread t = new Thread(() -> worker.serve(socket), "shard-" + shard + "-connection");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Answers requests on a connection until it is closed.
+     *
+     * @param socket The connection.
+     */
+    void serve(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            while (true) {
+                int op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return; // The router closed the connection
+                }
+                try {
+                    handle(op, in, out);
+                } catch (IOException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    out.writeByte(ShardProtocol.ERROR);
+                    out.writeUTF("Shard " + shard + ": " + e);
+                }
+                out.flush();
+                if (op == ShardProtocol.SHUTDOWN) {
+                    System.exit(0);
+                }
+            }
+        } catch (IOException e) {
+            // The connection broke; the router reconnects
+        }
+    }
+
+    /**
+     * Reads the arguments of one request and writes its reply.
+     *
+     * @param op The opcode.
+     * @param in The request stream.
+     * @param out The reply stream.
+     * @throws IOException If the connection fails.
+     */
+    private void handle(int op, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (op) {
+            case ShardProtocol.ADD_INFLUENCER: {
+                String username = in.readUTF();
+                String password = in.readUTF();
+                String niche = in.readUTF();
+                double rate = in.readDouble();
+                String[] regions = ShardProtocol.readStrings(in);
+                addInfluencer(new Influencer(username, password, niche, rate, regions));
+                out.writeByte(ShardProtocol.OK);
+                break;
+            }
+            case ShardProtocol.PROFILE: {
+                Influencer inf = find(in.readUTF());
+                if (inf == null) {
+                    notFound(out);
+                    break;
+                }
+                out.writeByte(ShardProtocol.OK);
+                writeInfluencer(out, inf, 0);
+                ShardProtocol.writeStrings(out, inf.getRegions());
+                List<InfluencerHistory.CampaignEntry> campaigns = new ArrayList<>(); // Newest first
+                if (inf.getId() >= 0) {
+                    new InfluencerHistory(HistoryStore.shared(), inf.getId()).forEachCampaign(campaigns::add);
+                }
+                out.writeInt(campaigns.size());
+                for (InfluencerHistory.CampaignEntry c : campaigns) {
+                    out.writeUTF(c.getName());
+                    out.writeLong(c.getBudget());
+                    out.writeUTF(c.getPlatform() == null ? "" : c.getPlatform().getName()); // Dictionary ids differ between processes
+                }
+                break;
+            }
+            case ShardProtocol.INFLUENCER_CONTRACTS: {
+                Influencer inf = find(in.readUTF());
+                writeRows(out, inf == null ? new int[0]
+                        : contractIndex.query(new ContractQuery().influencer(inf.getId())).getRows());
+                break;
+            }
+            case ShardProtocol.BRAND_CONTRACTS: {
+                BrandManager brand = brands.get(in.readUTF());
+                writeRows(out, brand == null ? new int[0]
+                        : contractIndex.query(new ContractQuery().brand(brand.getId())).getRows());
+                break;
+            }
+            case ShardProtocol.ALL_CONTRACTS: {
+                int[] rows = new int[contracts.size()];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = i;
+                }
+                writeRows(out, rows);
+                break;
+            }
+            case ShardProtocol.LAUNCH: {
+                Influencer inf = find(in.readUTF());
+                String campaign = in.readUTF();
+                long budget = in.readLong();
+                String platformName = in.readUTF();
+                if (inf == null) {
+                    notFound(out);
+                    break;
+                }
+                Platform platform = platformName.isEmpty() ? null : PlatformRegistry.find(platformName);
+                if (platform == null && !platformName.isEmpty()) {
+                    out.writeByte(ShardProtocol.REFUSED);
+                    out.writeUTF("Unknown platform " + platformName);
+                    break;
+                }
+                try {
+                    inf.launchCampaign(campaign, budget, platform);
+                    out.writeByte(ShardProtocol.OK);
+                } catch (PaymentFailedException e) {
+                    out.writeByte(ShardProtocol.REFUSED);
+                    out.writeUTF(e.getMessage());
+                }
+                break;
+            }
+            case ShardProtocol.OFFER: {
+                String key = offerKey(in.readLong(), in.readLong());
+                String brandUser = in.readUTF();
+                String brandName = in.readUTF();
+                Influencer inf = find(in.readUTF());
+                long amount = in.readLong();
+                if (inf == null) {
+                    notFound(out);
+                    break;
+                }
+                BrandManager brand = brands.computeIfAbsent(brandUser, u -> new BrandManager(u, "", brandName, 0));
+                OfferOutcome outcome = offers.compute(key, (k, previous) -> {
+                    if (previous != null) {
+                        return previous; // Applied already, or given up on by the router
+                    }
+                    inf.receivePayment(amount); // The router has already taken the money from the brand's budget
+                    Contract contract = new Contract(inf, brand, amount);
+                    contracts.append(contract);
+                    AuditLog.contractCreated(brandUser, inf.username, brandName, amount);
+                    return new OfferOutcome(true, contract.getStartMillis());
+                });
+                pruneOffers();
+                if (!outcome.paid) {
+                    out.writeByte(ShardProtocol.REFUSED);
+                    out.writeUTF("The offer was withdrawn");
+                    break;
+                }
+                out.writeByte(ShardProtocol.OK);
+                out.writeLong(outcome.millis);
+                break;
+            }
+            case ShardProtocol.OFFER_STATUS: {
+                OfferOutcome outcome = offers.computeIfAbsent(offerKey(in.readLong(), in.readLong()),
+                        k -> new OfferOutcome(false, System.currentTimeMillis())); // Refuses the offer if it arrives later
+                if (!outcome.paid) {
+                    out.writeByte(ShardProtocol.REFUSED);
+                    out.writeUTF("The offer was not applied");
+                    break;
+                }
+                out.writeByte(ShardProtocol.OK);
+                out.writeLong(outcome.millis);
+                break;
+            }
+            case ShardProtocol.SEARCH: {
+                String query = in.readUTF();
+                int limit = in.readInt();
+                List<InfluencerSearchIndex.Match> matches = searchIndex.search(query, 0, limit);
+                out.writeByte(ShardProtocol.OK);
+                out.writeInt(matches.size());
+                for (InfluencerSearchIndex.Match m : matches) {
+                    writeInfluencer(out, m.getInfluencer(), m.getScore());
+                }
+                break;
+            }
+            case ShardProtocol.ALL_INFLUENCERS: {
+                Influencer[] all = snapshot();
+                out.writeByte(ShardProtocol.OK);
+                out.writeInt(all.length);
+                for (Influencer inf : all) {
+                    writeInfluencer(out, inf, 0);
+                }
+                break;
+            }
+            case ShardProtocol.STATS: {
+                Influencer[] all = snapshot();
+                long earnings = 0;
+                for (Influencer inf : all) {
+                    earnings += inf.getSponsorshipAmount();
+                }
+                out.writeByte(ShardProtocol.OK);
+                out.writeInt(all.length);
+                out.writeInt(contracts.size());
+                out.writeLong(earnings);
+                break;
+            }
+            case ShardProtocol.LEADERBOARD: {
+                boolean engagement = in.readBoolean();
+                Leaderboard board = engagement ? Leaderboard.ENGAGEMENT : Leaderboard.EARNINGS;
+                List<Leaderboard.Entry> top = board.top(in.readInt());
+                out.writeByte(ShardProtocol.OK);
+                out.writeInt(top.size());
+                for (Leaderboard.Entry e : top) {
+                    // Rows carry a double score; the router ranks earnings by it and prints the exact cents
+                    writeInfluencer(out, (Influencer) UserDirectory.get(e.getUserId()),
+                            engagement ? Leaderboard.rateOf(e.getScore()) : e.getScore());
+                }
+                break;
+            }
+            case ShardProtocol.SHUTDOWN:
+                out.writeByte(ShardProtocol.OK);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown request " + op);
+        }
+    }
+
+    /**
+     * Adds an influencer to this shard.
+     *
+     * @param influencer The influencer.
+     * @throws IllegalArgumentException If the influencer belongs to another shard or is already here.
+     */
+    void addInfluencer(Influencer influencer) {
+        int owner = ShardProtocol.shardOf(influencer.username, shards);
+        if (owner != shard) {
+            throw new IllegalArgumentException(influencer.username + " belongs to shard " + owner);
+        }
+        synchronized (influencers) {
+            if (UserDirectory.find(influencer.username) != null) {
+                throw new IllegalArgumentException(influencer.username + " already exists");
+            }
+            influencers.add(influencer);
+            int id = UserDirectory.register(influencer);
+            Leaderboard.EARNINGS.increment(id, 0);
+            Leaderboard.ENGAGEMENT.set(id, Leaderboard.rateScore(influencer.getEngagementRate()));
+        }
+        searchIndex.add(influencer);
+    }
+
+    /**
+     * Returns the key under which the outcome of an offer is remembered.
+     *
+     * @param session The session of the router that sent the offer.
+     * @param reservationId The id of the offer's reservation in that router.
+     * @return The key.
+     */
+    private static String offerKey(long session, long reservationId) {
+        return session + "/" + reservationId;
+    }
+
+    /**
+     * Forgets offers older than {@link #OFFER_RETENTION_MILLIS} once enough are remembered.
+     *
+     * <p>Their reservations have expired, so no router asks about them any more.</p>
+     */
+    private void pruneOffers() {
+        if (offers.size() < pruneAt) {
+            return;
+        }
+        synchronized (offers) {
+            if (offers.size() < pruneAt) {
+                return;
+            }
+            long cutoff = System.currentTimeMillis() - OFFER_RETENTION_MILLIS;
+            offers.values().removeIf(o -> o.millis < cutoff);
+            pruneAt = Math.max(MIN_PRUNE_SIZE, offers.size() * 2);
+        }
+    }
+
+    /**
+     * Finds an influencer of this shard.
+     *
+     * @param username The username.
+     * @return The influencer, or {@code null} if it is not on this shard.
+     */
+    private static Influencer find(String username) {
+        User user = UserDirectory.find(username);
+        return user instanceof Influencer ? (Influencer) user : null;
+    }
+
+    /**
+     * Returns the influencers of this shard.
+     *
+     * @return A copy of the influencers, in the order they were added.
+     */
+    private Influencer[] snapshot() {
+        synchronized (influencers) {
+            return influencers.toArray(new Influencer[0]);
+        }
+    }
+
+    /**
+     * Writes an influencer row.
+     *
+     * @param out The reply stream.
+     * @param inf The influencer.
+     * @param score The search or ranking score to send with it.
+     * @throws IOException If the connection fails.
+     */
+    private static void writeInfluencer(DataOutputStream out, Influencer inf, double score) throws IOException {
+        out.writeUTF(inf.username);
+        out.writeUTF(inf.getNiche() == null ? "" : inf.getNiche());
+        out.writeDouble(inf.getEngagementRate());
+        out.writeLong(inf.getSponsorshipAmount());
+        out.writeDouble(score);
+    }
+
+    /**
+     * Writes contract rows.
+     *
+     * @param out The reply stream.
+     * @param rows The row indexes in the contract log.
+     * @throws IOException If the connection fails.
+     */
+    private void writeRows(DataOutputStream out, int[] rows) throws IOException {
+        out.writeByte(ShardProtocol.OK);
+        out.writeInt(rows.length);
+        for (int row : rows) {
+            out.writeUTF(((BrandManager) UserDirectory.get(contracts.brandId(row))).getBrandName());
+            out.writeUTF(UserDirectory.get(contracts.influencerId(row)).username);
+            out.writeLong(contracts.amountCents(row));
+            out.writeLong(contracts.startMillis(row));
+        }
+    }
+
+    /**
+     * Writes a reply saying the influencer is not on this shard.
+     *
+     * @param out The reply stream.
+     * @throws IOException If the connection fails.
+     */
+    private void notFound(DataOutputStream out) throws IOException {
+        out.writeByte(ShardProtocol.NOT_FOUND);
+        out.writeUTF("Influencer not found on shard " + shard);
+    }
+}
@@ -2,32 +2,54 @@ package contracts;
 
 import entities.BrandManager;
 import entities.Influencer;
+import entities.UserDirectory;
 import java.util.Date;
+import util.Money;
 
 /**
  * Represents a contract between an influencer and a brand manager for a sponsorship deal.
  *
  * <p>This class encapsulates the details of the contract, including the influencer,
  * the brand manager, the amount of sponsorship, and the start date of the contract.</p>
+ *
+ * <p>A contract is immutable and compact: the influencer and brand manager are held
+ * as {@link UserDirectory} ids, the amount in cents and the start date in epoch
+ * milliseconds. The same layout is used by {@link ContractLog}, which hands out
+ * {@code Contract} objects as views of its rows.</p>
  */
 public class Contract {
-    Influencer influencer; // The influencer involved in the contract
-    BrandManager brand; // The brand manager involved in the contract
-    double amount; // The amount of sponsorship
-    Date startDate; // The start date of the contract
+    final int influencerId; // Directory id of the influencer involved in the contract
+    final int brandId; // Directory id of the brand manager involved in the contract
+    final long amountCents; // The amount of sponsorship, in cents
+    final long startMillis; // The start date of the contract, in epoch milliseconds
 
     /**
      * Constructs a new {@code Contract} with the specified influencer, brand manager, and amount.
      *
+     * <p>Both users are registered with the {@link UserDirectory} if they are not already.</p>
+     *
      * @param influencer The influencer involved in the contract.
      * @param brand The brand manager involved in the contract.
-     * @param amount The amount of sponsorship for the contract.
+     * @param amount The amount of sponsorship for the contract, in cents.
      */
-    public Contract(Influencer influencer, BrandManager brand, double amount) {
-        this.influencer = influencer;
-        this.brand = brand;
-        this.amount = amount;
-        this.startDate = new Date(); // Set the current date as the start date
+    public Contract(Influencer influencer, BrandManager brand, long amount) {
+        this(UserDirectory.register(influencer), UserDirectory.register(brand),
+                amount, System.currentTimeMillis()); // Set the current date as the start date
+    }
+
+    /**
+     * Constructs a new {@code Contract} from its compact representation.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @param brandId The directory id of the brand manager.
+     * @param amountCents The amount of sponsorship, in cents.
+     * @param startMillis The start date, in epoch milliseconds.
+     */
+    public Contract(int influencerId, int brandId, long amountCents, long startMillis) {
+        this.influencerId = influencerId;
+        this.brandId = brandId;
+        this.amountCents = amountCents;
+        this.startMillis = startMillis;
     }
 
     /**
@@ -36,7 +58,7 @@ public class Contract {
      * @return The {@link BrandManager} involved in the contract.
      */
     public BrandManager getBrand() {
-        return this.brand;
+        return (BrandManager) UserDirectory.get(brandId);
     }
 
     /**
@@ -45,7 +67,25 @@ public class Contract {
      * @return The {@link Influencer} involved in the contract.
      */
     public Influencer getInfluencer() {
-        return this.influencer;
+        return (Influencer) UserDirectory.get(influencerId);
+    }
+
+    /**
+     * Returns the directory id of the brand manager associated with this contract.
+     *
+     * @return The brand manager's id.
+     */
+    public int getBrandId() {
+        return this.brandId;
+    }
+
+    /**
+     * Returns the directory id of the influencer associated with this contract.
+     *
+     * @return The influencer's id.
+     */
+    public int getInfluencerId() {
+        return this.influencerId;
     }
 
     /**
@@ -55,17 +95,17 @@ public class Contract {
      * of the contract to the console.</p>
      */
     public void displayContract() {
-        System.out.println("Contract: " + brand.brandName + " with " + influencer.username +
-                " | Amount: $" + amount + " | Date: " + startDate);
+        System.out.println("Contract: " + getBrand().getBrandName() + " with " + getInfluencer().username +
+                " | Amount: $" + Money.format(amountCents) + " | Date: " + getStartDate());
     }
 
     /**
      * Returns the amount of sponsorship for this contract.
      *
-     * @return The amount of sponsorship.
+     * @return The amount of sponsorship, in cents.
      */
-    public double getAmount() {
-        return this.amount;
+    public long getAmount() {
+        return this.amountCents;
     }
 
     /**
@@ -74,6 +114,15 @@ public class Contract {
      * @return The start date of the contract.
      */
     public Date getStartDate() {
-        return this.startDate;
+        return new Date(this.startMillis);
+    }
+
+    /**
+     * Returns the start date of the contract in epoch milliseconds.
+     *
+     * @return The start date, in epoch milliseconds.
+     */
+    public long getStartMillis() {
+        return this.startMillis;
     }
-}
\ No newline at end of file
+}
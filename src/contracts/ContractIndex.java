@@ -0,0 +1,537 @@
+package contracts;
+
+import entities.Influencer;
+import entities.User;
+import entities.UserDirectory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Secondary indexes over a {@link ContractLog} and a planner that uses them
+ * to answer {@link ContractQuery}s.
+ *
+ * <p>Brand managers, influencers and influencer niches are indexed by hash,
+ * each key holding its rows in ascending order. Amounts and start times are
+ * indexed in sorted order. For each query the planner estimates how many rows
+ * every applicable index would return, drives the query from the smallest,
+ * intersects it with the other hash indexes and checks any remaining range
+ * conditions against the log's columns. A query touches only the rows of its
+ * most selective index; it falls back to a scan of the log when no index would
+ * cut the work at least in half.</p>
+ *
+ * <p>The indexes catch up with rows appended to the log at the start of each
+ * query, so appends stay as cheap as before. New rows of the sorted indexes
+ * first go to a small unsorted tail, which is merged into the sorted part once
+ * it reaches a sixteenth of its size. Any number of queries can run at once;
+ * catching up briefly excludes them.</p>
+ */
+public class ContractIndex {
+    private static final int MIN_TAIL = 4096; // Tail size below which the sorted indexes are never merged
+
+    private final ContractLog log; // The indexed contracts
+    private volatile int indexed = 0; // Rows of the log added to the indexes
+    private final HashMap<Integer, IntList> byBrand = new HashMap<>(); // Brand manager id to rows
+    private final HashMap<Integer, IntList> byInfluencer = new HashMap<>(); // Influencer id to rows
+    private final HashMap<Integer, IntList> byNiche = new HashMap<>(); // Niche id to rows
+    private final SortedIndex byAmount = new SortedIndex(); // Rows sorted by amount
+    private final SortedIndex byStart = new SortedIndex(); // Rows sorted by start time
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Guards every index above
+
+    /**
+     * The rows matching a query and how they were found.
+     */
+    public static final class Result {
+        final int[] rows; // Matching rows, ascending
+        final String plan; // Description of the access path
+        final int examined; // Rows read from an index or the log
+
+        /**
+         * Constructs a new {@code Result}.
+         *
+         * @param rows The matching rows, ascending.
+         * @param plan The description of the access path.
+         * @param examined The number of rows examined.
+         */
+        Result(int[] rows, String plan, int examined) {
+            this.rows = rows;
+            this.plan = plan;
+            this.examined = examined;
+        }
+
+        /**
+         * Returns the matching rows.
+         *
+         * @return The row indexes in the log, in ascending order.
+         */
+        public int[] getRows() {
+            return rows;
+        }
+
+        /**
+         * Returns how the planner answered the query.
+         *
+         * @return A description of the indexes used.
+         */
+        public String getPlan() {
+            return plan;
+        }
+
+        /**
+         * Returns how many rows were read to answer the query.
+         *
+         * @return The number of rows examined.
+         */
+        public int getExamined() {
+            return examined;
+        }
+    }
+
+    /**
+     * Constructs a new {@code ContractIndex} over a log. Rows already in the
+     * log are indexed by the first query.
+     *
+     * @param log The contracts to index.
+     */
+    public ContractIndex(ContractLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Runs a query.
+     *
+     * @param query The conditions the contracts must meet.
+     * @return The matching rows and the plan used.
+     */
+    public Result query(ContractQuery query) {
+        catchUp();
+        lock.readLock().lock();
+        try {
+            return plan(query);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the rows appended to the log since the last call.
+     */
+    private void catchUp() {
+        if (indexed == log.size()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int size = log.size();
+            for (int row = indexed; row < size; row++) {
+                int influencerId = log.influencerId(row);
+                add(byBrand, log.brandId(row), row);
+                add(byInfluencer, influencerId, row);
+                User influencer = UserDirectory.get(influencerId);
+                if (influencer instanceof Influencer) {
+                    add(byNiche, ((Influencer) influencer).getNicheId(), row);
+                }
+                byAmount.add(log.amountCents(row), row);
+                byStart.add(log.startMillis(row), row);
+            }
+            indexed = size;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a row to a hash index.
+     *
+     * @param index The index.
+     * @param key The key of the row.
+     * @param row The row index.
+     */
+    private static void add(HashMap<Integer, IntList> index, int key, int row) {
+        index.computeIfAbsent(key, k -> new IntList()).add(row);
+    }
+
+    /**
+     * Chooses an access path for a query and runs it. Called with the read lock held.
+     *
+     * @param q The query.
+     * @return The result.
+     */
+    private Result plan(ContractQuery q) {
+        int total = indexed;
+        IntList[] lists = new IntList[3]; // Posting lists of the hash conditions that are set
+        String[] names = new String[3];
+        int count = 0;
+        if (q.brandId >= 0) {
+            names[count] = "brand";
+            lists[count++] = postings(byBrand, q.brandId);
+        }
+        if (q.influencerId >= 0) {
+            names[count] = "influencer";
+            lists[count++] = postings(byInfluencer, q.influencerId);
+        }
+        if (q.nicheId >= 0) {
+            names[count] = "niche";
+            lists[count++] = postings(byNiche, q.nicheId);
+        }
+
+        int bestHash = -1;
+        for (int i = 0; i < count; i++) {
+            if (bestHash < 0 || lists[i].size < lists[bestHash].size) {
+                bestHash = i;
+            }
+        }
+        long hashEstimate = bestHash < 0 ? Long.MAX_VALUE : lists[bestHash].size;
+        long amountEstimate = q.hasAmountRange() ? byAmount.estimate(q.minAmount, q.maxAmount) : Long.MAX_VALUE;
+        long startEstimate = q.hasDateRange() ? byStart.estimate(q.fromMillis, q.toMillis) : Long.MAX_VALUE;
+        long best = Math.min(hashEstimate, Math.min(amountEstimate, startEstimate));
+
+        if (best == Long.MAX_VALUE || best > total / 2) {
+            return scan(q, total);
+        }
+        StringBuilder plan = new StringBuilder();
+        IntList candidates;
+        boolean[] checked = new boolean[3]; // Hash conditions already satisfied by the candidates
+        boolean amountDone = false;
+        boolean startDone = false;
+        int examined;
+        if (best == hashEstimate) {
+            candidates = lists[bestHash];
+            examined = candidates.size;
+            checked[bestHash] = true;
+            plan.append("index ").append(names[bestHash]).append(" (").append(candidates.size).append(" rows)");
+            for (int i = 0; i < count; i++) {
+                if (!checked[i]) {
+                    candidates = intersect(candidates, lists[i]);
+                    checked[i] = true;
+                    plan.append(" AND index ").append(names[i]).append(" (").append(lists[i].size).append(" rows)");
+                }
+            }
+        } else {
+            SortedIndex driver = best == amountEstimate ? byAmount : byStart;
+            candidates = best == amountEstimate
+                ? driver.collect(q.minAmount, q.maxAmount)
+                : driver.collect(q.fromMillis, q.toMillis);
+            Arrays.sort(candidates.values, 0, candidates.size); // Back to row order
+            examined = candidates.size;
+            amountDone = best == amountEstimate;
+            startDone = !amountDone;
+            plan.append("range ").append(amountDone ? "amount" : "start").append(" (").append(candidates.size).append(" rows)");
+        }
+
+        IntList matches = new IntList();
+        for (int i = 0; i < candidates.size; i++) {
+            int row = candidates.values[i];
+            if ((amountDone || inRange(log.amountCents(row), q.minAmount, q.maxAmount))
+                    && (startDone || inRange(log.startMillis(row), q.fromMillis, q.toMillis))
+                    && residualMatches(q, row, names, checked, count)) {
+                matches.add(row);
+            }
+        }
+        if (!amountDone && q.hasAmountRange()) plan.append(" + filter amount");
+        if (!startDone && q.hasDateRange()) plan.append(" + filter start");
+        return new Result(Arrays.copyOf(matches.values, matches.size), plan.toString(), examined);
+    }
+
+    /**
+     * Answers a query by reading every row of the log.
+     *
+     * @param q The query.
+     * @param total The number of rows to scan.
+     * @return The result.
+     */
+    private Result scan(ContractQuery q, int total) {
+        IntList matches = new IntList();
+        for (int row = 0; row < total; row++) {
+            if (inRange(log.amountCents(row), q.minAmount, q.maxAmount)
+                    && inRange(log.startMillis(row), q.fromMillis, q.toMillis)
+                    && (q.brandId < 0 || log.brandId(row) == q.brandId)
+                    && (q.influencerId < 0 || log.influencerId(row) == q.influencerId)
+                    && (q.nicheId < 0 || nicheOf(row) == q.nicheId)) {
+                matches.add(row);
+            }
+        }
+        return new Result(Arrays.copyOf(matches.values, matches.size), "full scan", total);
+    }
+
+    /**
+     * Checks the hash conditions that the candidates were not intersected with.
+     *
+     * @param q The query.
+     * @param row The candidate row.
+     * @param names The names of the hash conditions that are set.
+     * @param checked Which of them are already satisfied.
+     * @param count The number of hash conditions that are set.
+     * @return {@code true} if the row meets every unchecked condition.
+     */
+    private boolean residualMatches(ContractQuery q, int row, String[] names, boolean[] checked, int count) {
+        for (int i = 0; i < count; i++) {
+            if (checked[i]) {
+                continue;
+            }
+            switch (names[i]) {
+                case "brand": if (log.brandId(row) != q.brandId) return false; break;
+                case "influencer": if (log.influencerId(row) != q.influencerId) return false; break;
+                default: if (nicheOf(row) != q.nicheId) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the niche of a row's influencer.
+     *
+     * @param row The row index.
+     * @return The niche id, or {@code -1} if the influencer has none.
+     */
+    private int nicheOf(int row) {
+        User user = UserDirectory.get(log.influencerId(row));
+        return user instanceof Influencer ? ((Influencer) user).getNicheId() : -1;
+    }
+
+    /**
+     * Checks a value against a half-open range.
+     *
+     * @param value The value.
+     * @param from The lowest value included.
+     * @param to The value from which values are excluded.
+     * @return {@code true} if {@code from <= value < to}.
+     */
+    private static boolean inRange(long value, long from, long to) {
+        return value >= from && value < to;
+    }
+
+    /**
+     * Returns the posting list of a key.
+     *
+     * @param index The hash index.
+     * @param key The key.
+     * @return The rows of the key; empty if it has none.
+     */
+    private static IntList postings(HashMap<Integer, IntList> index, int key) {
+        IntList list = index.get(key);
+        return list == null ? new IntList() : list;
+    }
+
+    /**
+     * Intersects two ascending row lists. The shorter list is walked and each
+     * row is searched for in the longer one by galloping, so the cost grows
+     * with the shorter list.
+     *
+     * @param a An ascending list.
+     * @param b Another ascending list.
+     * @return The rows in both lists, ascending.
+     */
+    private static IntList intersect(IntList a, IntList b) {
+        if (a.size > b.size) {
+            IntList t = a;
+            a = b;
+            b = t;
+        }
+        IntList result = new IntList();
+        int lo = 0;
+        for (int i = 0; i < a.size && lo < b.size; i++) {
+            int target = a.values[i];
+            int step = 1;
+            int hi = lo;
+            while (hi < b.size && b.values[hi] < target) {
+                lo = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            int found = Arrays.binarySearch(b.values, lo, Math.min(hi + 1, b.size), target);
+            if (found >= 0) {
+                result.add(target);
+                lo = found + 1;
+            } else {
+                lo = -found - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A growable list of {@code int} rows.
+     */
+    private static final class IntList {
+        int[] values = new int[4]; // Backing array
+        int size = 0; // Number of values in use
+
+        /**
+         * Appends a value.
+         *
+         * @param v The value to append.
+         */
+        void add(int v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+    }
+
+    /**
+     * Rows ordered by a {@code long} key, with ties in row order.
+     */
+    private static final class SortedIndex {
+        long[] keys = new long[0]; // Sorted keys
+        int[] rows = new int[0]; // Rows, parallel to keys
+        long[] tailKeys = new long[64]; // Keys added since the last merge, unsorted
+        int[] tailRows = new int[64]; // Rows, parallel to tailKeys
+        int tailSize = 0; // Number of entries in the tail
+
+        /**
+         * Adds a row, merging the tail into the sorted part when it grows too large.
+         *
+         * @param key The key of the row.
+         * @param row The row index.
+         */
+        void add(long key, int row) {
+            if (tailSize == tailKeys.length) {
+                tailKeys = Arrays.copyOf(tailKeys, tailSize * 2);
+                tailRows = Arrays.copyOf(tailRows, tailSize * 2);
+            }
+            tailKeys[tailSize] = key;
+            tailRows[tailSize++] = row;
+            if (tailSize > Math.max(MIN_TAIL, keys.length >> 4)) {
+                merge();
+            }
+        }
+
+        /**
+         * Sorts the tail and merges it into the sorted part.
+         */
+        private void merge() {
+            sort(tailKeys, tailRows, 0, tailSize);
+            long[] mk = new long[keys.length + tailSize];
+            int[] mr = new int[mk.length];
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < mk.length; k++) {
+                if (j >= tailSize || (i < keys.length && !less(tailKeys[j], tailRows[j], keys[i], rows[i]))) {
+                    mk[k] = keys[i];
+                    mr[k] = rows[i++];
+                } else {
+                    mk[k] = tailKeys[j];
+                    mr[k] = tailRows[j++];
+                }
+            }
+            keys = mk;
+            rows = mr;
+            tailSize = 0;
+        }
+
+        /**
+         * Returns an upper bound on the rows with keys in a range, without
+         * scanning the tail.
+         *
+         * @param from The lowest key included.
+         * @param to The key from which rows are excluded.
+         * @return The number of sorted rows in the range plus the size of the tail.
+         */
+        long estimate(long from, long to) {
+            return Math.max(0, lowerBound(to) - lowerBound(from)) + tailSize;
+        }
+
+        /**
+         * Collects the rows with keys in a range.
+         *
+         * @param from The lowest key included.
+         * @param to The key from which rows are excluded.
+         * @return The rows, in key order followed by the matching tail rows.
+         */
+        IntList collect(long from, long to) {
+            IntList result = new IntList();
+            for (int i = lowerBound(from), end = lowerBound(to); i < end; i++) {
+                result.add(rows[i]);
+            }
+            for (int i = 0; i < tailSize; i++) {
+                if (inRange(tailKeys[i], from, to)) {
+                    result.add(tailRows[i]);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the first position whose key is at least a value.
+         *
+         * @param key The value.
+         * @return The position, or the number of sorted keys if all are smaller.
+         */
+        private int lowerBound(long key) {
+            int lo = 0;
+            int hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid] < key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Orders two entries by key, then by row.
+         *
+         * @param k1 The key of the first entry.
+         * @param r1 The row of the first entry.
+         * @param k2 The key of the second entry.
+         * @param r2 The row of the second entry.
+         * @return {@code true} if the first entry comes before the second.
+         */
+        private static boolean less(long k1, int r1, long k2, int r2) {
+            return k1 < k2 || (k1 == k2 && r1 < r2);
+        }
+
+        /**
+         * Sorts parallel key and row arrays by key, then row, with a quicksort
+         * that finishes small ranges by insertion.
+         *
+         * @param k The keys.
+         * @param r The rows.
+         * @param from The first position to sort.
+         * @param to The position after the last one to sort.
+         */
+        private static void sort(long[] k, int[] r, int from, int to) {
+            while (to - from > 16) {
+                int mid = (from + to) >>> 1;
+                long pk = k[mid];
+                int pr = r[mid];
+                int i = from;
+                int j = to - 1;
+                while (i <= j) {
+                    while (less(k[i], r[i], pk, pr)) i++;
+                    while (less(pk, pr, k[j], r[j])) j--;
+                    if (i <= j) {
+                        long tk = k[i]; k[i] = k[j]; k[j] = tk;
+                        int tr = r[i]; r[i] = r[j]; r[j] = tr;
+                        i++;
+                        j--;
+                    }
+                }
+                if (j - from < to - i) { // Recurse into the smaller side, loop on the larger
+                    sort(k, r, from, j + 1);
+                    from = i;
+                } else {
+                    sort(k, r, i, to);
+                    to = j + 1;
+                }
+            }
+            for (int i = from + 1; i < to; i++) {
+                long tk = k[i];
+                int tr = r[i];
+                int j = i - 1;
+                while (j >= from && less(tk, tr, k[j], r[j])) {
+                    k[j + 1] = k[j];
+                    r[j + 1] = r[j];
+                    j--;
+                }
+                k[j + 1] = tk;
+                r[j + 1] = tr;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package contracts;
+
+import java.util.Arrays;
+
+/**
+ * An append-only, columnar store of contracts.
+ *
+ * <p>Each contract is kept as one row across four primitive columns: the
+ * influencer id, the brand manager id, the amount in cents and the start time
+ * in epoch milliseconds. A row costs 24 bytes and keeps no other objects
+ * reachable, so very large contract histories can stay in memory. Scans can
+ * read the columns directly through the per-row accessors; {@link #get(int)}
+ * returns a {@link Contract} view when the full object is needed.</p>
+ *
+ * <p>Appends are serialised; reads do not lock and see every row appended
+ * before the call to {@link #size()} they are bounded by.</p>
+ */
+public class ContractLog {
+    private static final int INITIAL_CAPACITY = 64; // Rows allocated for a new log
+
+    private int[] influencerIds = new int[INITIAL_CAPACITY]; // Influencer id column
+    private int[] brandIds = new int[INITIAL_CAPACITY]; // Brand manager id column
+    private long[] amountCents = new long[INITIAL_CAPACITY]; // Amount column, in cents
+    private long[] startMillis = new long[INITIAL_CAPACITY]; // Start time column, in epoch milliseconds
+    private volatile int size = 0; // Number of rows, published after the row is written
+
+    /**
+     * Appends a contract to the log.
+     *
+     * @param contract The contract to append.
+     * @return The row index of the appended contract.
+     */
+    public int append(Contract contract) {
+        return append(contract.influencerId, contract.brandId, contract.amountCents, contract.startMillis);
+    }
+
+    /**
+     * Appends a contract row to the log.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @param brandId The directory id of the brand manager.
+     * @param amountCents The sponsorship amount, in cents.
+     * @param startMillis The start time, in epoch milliseconds.
+     * @return The row index of the appended contract.
+     */
+    public synchronized int append(int influencerId, int brandId, long amountCents, long startMillis) {
+        int row = size;
+        if (row == influencerIds.length) {
+            grow();
+        }
+        influencerIds[row] = influencerId;
+        brandIds[row] = brandId;
+        this.amountCents[row] = amountCents;
+        this.startMillis[row] = startMillis;
+        size = row + 1; // Publish the row
+        return row;
+    }
+
+    /**
+     * Grows every column by half of its current capacity.
+     */
+    private void grow() {
+        int capacity = influencerIds.length + (influencerIds.length >> 1);
+        influencerIds = Arrays.copyOf(influencerIds, capacity);
+        brandIds = Arrays.copyOf(brandIds, capacity);
+        amountCents = Arrays.copyOf(amountCents, capacity);
+        startMillis = Arrays.copyOf(startMillis, capacity);
+    }
+
+    /**
+     * Returns the number of contracts in the log.
+     *
+     * @return The number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the influencer id of the specified row.
+     *
+     * @param row The row index.
+     * @return The directory id of the influencer.
+     */
+    public int influencerId(int row) {
+        checkRow(row);
+        return influencerIds[row];
+    }
+
+    /**
+     * Returns the brand manager id of the specified row.
+     *
+     * @param row The row index.
+     * @return The directory id of the brand manager.
+     */
+    public int brandId(int row) {
+        checkRow(row);
+        return brandIds[row];
+    }
+
+    /**
+     * Returns the amount of the specified row.
+     *
+     * @param row The row index.
+     * @return The sponsorship amount, in cents.
+     */
+    public long amountCents(int row) {
+        checkRow(row);
+        return amountCents[row];
+    }
+
+    /**
+     * Returns the start time of the specified row.
+     *
+     * @param row The row index.
+     * @return The start time, in epoch milliseconds.
+     */
+    public long startMillis(int row) {
+        checkRow(row);
+        return startMillis[row];
+    }
+
+    /**
+     * Returns a {@link Contract} view of the specified row.
+     *
+     * @param row The row index.
+     * @return A new {@link Contract} holding the row's values.
+     */
+    public Contract get(int row) {
+        checkRow(row);
+        return new Contract(influencerIds[row], brandIds[row], amountCents[row], startMillis[row]);
+    }
+
+    /**
+     * Checks that the specified row has been published.
+     *
+     * @param row The row index.
+     * @throws IndexOutOfBoundsException If the row does not exist.
+     */
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Contract row " + row + " out of bounds for size " + size);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package contracts;
+
+/**
+ * A conjunctive query over contracts, run by {@link ContractIndex#query(ContractQuery)}.
+ *
+ * <p>A new query matches every contract; each method adds a condition and
+ * returns the query, so conditions can be chained:</p>
+ * <pre>
+ * new ContractQuery().brand(brandId).niche(techId).minAmount(Money.ofUnits(1000)).startedBetween(julyFirst, octoberFirst)
+ * </pre>
+ *
+ * <p>Ranges include their lower bound and exclude their upper bound.
+ * Setting the same condition twice keeps the last value.</p>
+ */
+public class ContractQuery {
+    int brandId = -1; // Directory id of the brand manager, or -1 for any
+    int influencerId = -1; // Directory id of the influencer, or -1 for any
+    int nicheId = -1; // Dictionary id of the influencer's niche, or -1 for any
+    long minAmount = Long.MIN_VALUE; // Lowest amount included, in cents
+    long maxAmount = Long.MAX_VALUE; // Amount from which contracts are excluded, in cents
+    long fromMillis = Long.MIN_VALUE; // Earliest start time included
+    long toMillis = Long.MAX_VALUE; // Start time from which contracts are excluded
+
+    /**
+     * Keeps only the contracts of one brand manager.
+     *
+     * @param brandId The directory id of the brand manager.
+     * @return This query.
+     */
+    public ContractQuery brand(int brandId) {
+        this.brandId = brandId;
+        return this;
+    }
+
+    /**
+     * Keeps only the contracts of one influencer.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @return This query.
+     */
+    public ContractQuery influencer(int influencerId) {
+        this.influencerId = influencerId;
+        return this;
+    }
+
+    /**
+     * Keeps only the contracts of influencers in one niche.
+     *
+     * @param nicheId The id of the niche in {@link util.SymbolDictionary#NICHES}.
+     * @return This query.
+     */
+    public ContractQuery niche(int nicheId) {
+        this.nicheId = nicheId;
+        return this;
+    }
+
+    /**
+     * Keeps only the contracts worth at least an amount.
+     *
+     * @param cents The lowest amount included, in cents.
+     * @return This query.
+     */
+    public ContractQuery minAmount(long cents) {
+        this.minAmount = cents;
+        return this;
+    }
+
+    /**
+     * Keeps only the contracts worth less than an amount.
+     *
+     * @param cents The amount from which contracts are excluded, in cents.
+     * @return This query.
+     */
+    public ContractQuery maxAmount(long cents) {
+        this.maxAmount = cents;
+        return this;
+    }
+
+    /**
+     * Keeps only the contracts that started within a time range.
+     *
+     * @param fromMillis The earliest start time included, in epoch milliseconds.
+     * @param toMillis The start time from which contracts are excluded, in epoch milliseconds.
+     * @return This query.
+     */
+    public ContractQuery startedBetween(long fromMillis, long toMillis) {
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        return this;
+    }
+
+    /**
+     * Checks whether the query restricts the amount.
+     *
+     * @return {@code true} if an amount bound is set.
+     */
+    boolean hasAmountRange() {
+        return minAmount != Long.MIN_VALUE || maxAmount != Long.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether the query restricts the start time.
+     *
+     * @return {@code true} if a start time bound is set.
+     */
+    boolean hasDateRange() {
+        return fromMillis != Long.MIN_VALUE || toMillis != Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns a readable form of the query's conditions.
+     *
+     * @return The conditions, joined by {@code AND}, or {@code "all"} if there are none.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (brandId >= 0) sb.append(" AND brand=").append(brandId);
+        if (influencerId >= 0) sb.append(" AND influencer=").append(influencerId);
+        if (nicheId >= 0) sb.append(" AND niche=").append(nicheId);
+        if (hasAmountRange()) sb.append(" AND amount in [").append(minAmount).append(", ").append(maxAmount).append(')');
+        if (hasDateRange()) sb.append(" AND start in [").append(fromMillis).append(", ").append(toMillis).append(')');
+        return sb.length() == 0 ? "all" : sb.substring(5);
+    }
+}
@@ -1,7 +1,12 @@
 package entities;
 
+import audit.AuditLog;
 import auth.*;
 import contracts.Contract;
+import metrics.Metrics;
+import metrics.SponsorshipEvent;
+import storage.HistoryStore;
+import util.SymbolDictionary;
 
 /**
  * Represents a brand manager in the influencer platform.
@@ -11,8 +16,8 @@ import contracts.Contract;
  * to influencers.</p>
  */
 public class BrandManager extends User {
-    public String brandName; // The name of the brand managed by the brand manager
-    double sponsorshipBudget; // The budget available for sponsorships
+    int brandId; // Dictionary id of the brand managed by the brand manager
+    volatile long sponsorshipBudget; // The budget available for sponsorships, in cents; changed only through Escrow
 
     /**
      * Constructs a new {@code BrandManager} with the specified username, password,
@@ -21,23 +26,41 @@ public class BrandManager extends User {
      * @param username The username of the brand manager.
      * @param password The password of the brand manager.
      * @param brandName The name of the brand managed by the brand manager.
-     * @param sponsorshipBudget The initial budget available for sponsorships.
+     * @param sponsorshipBudget The initial budget available for sponsorships, in cents.
      */
-    public BrandManager(String username, String password, String brandName, double sponsorshipBudget) {
+    public BrandManager(String username, String password, String brandName, long sponsorshipBudget) {
         super(username, password);
-        this.brandName = brandName;
+        this.brandId = SymbolDictionary.BRANDS.intern(brandName);
         this.sponsorshipBudget = sponsorshipBudget;
     }
 
     /**
      * Returns the sponsorship budget available for this brand manager.
      *
-     * @return The sponsorship budget.
+     * @return The sponsorship budget, in cents.
      */
-    public double getSponsorshipBudget() {
+    public long getSponsorshipBudget() {
         return sponsorshipBudget;
     }
 
+    /**
+     * Returns the name of the brand managed by this brand manager.
+     *
+     * @return The brand name.
+     */
+    public String getBrandName() {
+        return SymbolDictionary.BRANDS.name(brandId);
+    }
+
+    /**
+     * Returns the dictionary id of the brand managed by this brand manager.
+     *
+     * @return The brand id from {@link SymbolDictionary#BRANDS}.
+     */
+    public int getBrandId() {
+        return brandId;
+    }
+
     /**
      * Displays the brand manager dashboard.
      *
@@ -46,7 +69,7 @@ public class BrandManager extends User {
      */
     @Override
     public void displayMenu() {
-        System.out.println("Brand Manager Dashboard for " + brandName);
+        System.out.println("Brand Manager Dashboard for " + getBrandName());
     }
 
     /**
@@ -58,23 +81,52 @@ public class BrandManager extends User {
      * fails, a {@link PaymentFailedException} is thrown. If successful, the method
      * updates the budget and returns a new {@link Contract}.</p>
      *
+     * <p>The check and the payment are one {@link Escrow#transfer}, so
+     * concurrent offers can never overdraw the budget.</p>
+     *
      * @param influencer The {@link Influencer} to whom the sponsorship is offered.
-     * @param amount The amount of the sponsorship.
+     * @param amount The amount of the sponsorship, in cents.
      * @return A {@link Contract} representing the sponsorship agreement.
      * @throws InsufficientBalanceException If the sponsorship amount exceeds the budget.
      * @throws PaymentFailedException If the payment to the influencer fails.
+     * @throws IllegalArgumentException If the amount is not positive.
      */
-    public Contract offerSponsorship(Influencer influencer, double amount) 
+    public Contract offerSponsorship(Influencer influencer, long amount) 
             throws InsufficientBalanceException, PaymentFailedException {
-        
-        if (amount > sponsorshipBudget) {
-            throw new InsufficientBalanceException("Not enough budget");
+        long start = System.nanoTime(); // Start of the call, for Metrics.OFFER_SPONSORSHIP
+        boolean success = false;
+        SponsorshipEvent event = new SponsorshipEvent();
+        event.begin();
+        String outcome = "ERROR";
+        try {
+            if (amount <= 0) {
+                outcome = "INVALID_AMOUNT";
+                throw new IllegalArgumentException("Sponsorship amount must be positive");
+            }
+            try {
+                Escrow.transfer(this, influencer, amount); // Check and move the budget atomically
+            } catch (InsufficientBalanceException e) {
+                outcome = "INSUFFICIENT_BUDGET";
+                throw e;
+            }
+            
+            Contract contract = new Contract(influencer, this, amount);
+            AuditLog.contractCreated(username, influencer.username, getBrandName(), amount);
+            HistoryStore.shared().appendContract(contract.getInfluencerId(), contract.getBrandId(), amount,
+                    contract.getStartMillis()); // Read back by the influencer's reports
+            success = true;
+            outcome = "ACCEPTED";
+            return contract;
+        } finally {
+            Metrics.OFFER_SPONSORSHIP.record(System.nanoTime() - start, success);
+            event.end();
+            if (event.shouldCommit()) {
+                event.brand = getBrandName();
+                event.influencer = influencer.username;
+                event.amountCents = amount;
+                event.outcome = outcome;
+                event.commit();
+            }
         }
-        
-        // Update budgets
-        sponsorshipBudget -= amount;
-        influencer.receivePayment(amount);
-        
-        return new Contract(influencer, this, amount);
     }
 }
\ No newline at end of file
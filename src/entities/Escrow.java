@@ -0,0 +1,328 @@
+package entities;
+
+import auth.InsufficientBalanceException;
+import auth.PaymentFailedException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import util.Money;
+
+/**
+ * Moves money between brand manager budgets and influencer balances.
+ *
+ * <p>Every account is guarded by its own user object's monitor, the same
+ * one {@link Influencer#launchCampaign} and {@link Influencer#receivePayment}
+ * synchronise on. An operation that touches two accounts locks them in
+ * ascending {@link UserDirectory} id order, so concurrent transfers in
+ * opposite directions cannot deadlock, and transfers between unrelated
+ * accounts never wait for each other. There is no global lock.</p>
+ *
+ * <p>Money can be moved in one step with {@link #transfer}, or in two with
+ * a {@link Reservation}: {@link #reserve} moves funds out of the payer's
+ * balance into escrow, and {@link #commit} pays them out or {@link #release}
+ * returns them. A reservation that is neither committed nor released within
+ * its timeout is released automatically.</p>
+ */
+public final class Escrow {
+    private static final AtomicLong nextId = new AtomicLong(1); // Id of the next reservation
+    private static final AtomicLong totalHeld = new AtomicLong(); // Cents held in escrow across all accounts
+
+    private Escrow() {
+    }
+
+    /**
+     * Releases reservations whose timeout has passed. Created on first use.
+     */
+    private static final class Expiry {
+        static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "escrow-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+
+        static {
+            TIMER.setRemoveOnCancelPolicy(true); // Keep the queue small when reservations settle early
+        }
+    }
+
+    /**
+     * Funds held in escrow for a pending payment.
+     */
+    public static final class Reservation {
+        /**
+         * The lifecycle of a reservation.
+         */
+        public enum State {
+            /** The funds are held in escrow. */
+            HELD,
+            /** The funds were paid out. */
+            COMMITTED,
+            /** The funds were returned to the payer. */
+            RELEASED,
+            /** The funds were returned to the payer because the timeout passed. */
+            EXPIRED
+        }
+
+        final long id; // Reservation id
+        final User payer; // Account the funds were taken from
+        final long amountCents; // Amount held, in cents
+        final long deadlineNanos; // System.nanoTime() after which the reservation expires
+        volatile State state = State.HELD; // Changed only while the payer's monitor is held
+        ScheduledFuture<?> expiry; // Timer task that releases the reservation
+
+        /**
+         * Constructs a new {@code Reservation}.
+         *
+         * @param payer The account the funds were taken from.
+         * @param amountCents The amount held, in cents.
+         * @param timeoutMillis The time before the reservation expires, in milliseconds.
+         */
+        Reservation(User payer, long amountCents, long timeoutMillis) {
+            this.id = nextId.getAndIncrement();
+            this.payer = payer;
+            this.amountCents = amountCents;
+            this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+
+        /**
+         * Returns the id of the reservation.
+         *
+         * @return The id.
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Returns the account the funds were taken from.
+         *
+         * @return The payer.
+         */
+        public User getPayer() {
+            return payer;
+        }
+
+        /**
+         * Returns the amount held.
+         *
+         * @return The amount, in cents.
+         */
+        public long getAmountCents() {
+            return amountCents;
+        }
+
+        /**
+         * Returns the current state of the reservation.
+         *
+         * @return The state.
+         */
+        public State getState() {
+            return state;
+        }
+    }
+
+    /**
+     * Moves money from a brand manager's budget to an influencer in one atomic step.
+     *
+     * @param from The paying brand manager.
+     * @param to The influencer being paid.
+     * @param amountCents The amount, in cents.
+     * @throws InsufficientBalanceException If the brand manager's budget is too low.
+     * @throws IllegalArgumentException If the amount is negative.
+     */
+    public static void transfer(BrandManager from, Influencer to, long amountCents) throws InsufficientBalanceException {
+        checkAmount(amountCents);
+        User first = lockFirst(from, to);
+        User second = first == from ? to : from;
+        synchronized (first) {
+            synchronized (second) {
+                if (amountCents > from.sponsorshipBudget) {
+                    throw new InsufficientBalanceException("Not enough budget");
+                }
+                from.sponsorshipBudget = Money.subtract(from.sponsorshipBudget, amountCents);
+                to.receivePayment(amountCents);
+            }
+        }
+    }
+
+    /**
+     * Moves funds from an account into escrow.
+     *
+     * @param payer The brand manager or influencer paying.
+     * @param amountCents The amount to hold, in cents.
+     * @param timeoutMillis The time after which the funds are returned if not committed, in milliseconds.
+     * @return The reservation.
+     * @throws InsufficientBalanceException If the payer's balance is too low.
+     * @throws IllegalArgumentException If the amount or timeout is negative, or the payer has no balance.
+     */
+    public static Reservation reserve(User payer, long amountCents, long timeoutMillis) throws InsufficientBalanceException {
+        checkAmount(amountCents);
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeout must not be negative");
+        }
+        UserDirectory.register(payer);
+        synchronized (payer) {
+            long balance = balanceOf(payer);
+            if (amountCents > balance) {
+                throw new InsufficientBalanceException("Not enough balance");
+            }
+            setBalance(payer, balance - amountCents);
+            payer.escrowCents += amountCents;
+            totalHeld.addAndGet(amountCents);
+            Reservation reservation = new Reservation(payer, amountCents, timeoutMillis);
+            reservation.expiry = Expiry.TIMER.schedule(() -> settle(reservation, Reservation.State.EXPIRED),
+                timeoutMillis, TimeUnit.MILLISECONDS); // Runs after this monitor is released
+            return reservation;
+        }
+    }
+
+    /**
+     * Pays out the funds of a reservation.
+     *
+     * @param reservation The reservation.
+     * @param payee The influencer being paid, or {@code null} if the money is spent outside the platform.
+     * @throws PaymentFailedException If the reservation was already committed, released or has expired.
+     */
+    public static void commit(Reservation reservation, Influencer payee) throws PaymentFailedException {
+        User payer = reservation.payer;
+        User first = payee == null ? payer : lockFirst(payer, payee);
+        User second = first == payer ? (payee == null ? payer : payee) : payer;
+        synchronized (first) {
+            synchronized (second) {
+                if (reservation.state == Reservation.State.HELD && System.nanoTime() - reservation.deadlineNanos > 0) {
+                    returnFunds(reservation, Reservation.State.EXPIRED); // The timer has not run yet
+                }
+                if (reservation.state != Reservation.State.HELD) {
+                    throw new PaymentFailedException("Reservation " + reservation.id + " is " + reservation.state);
+                }
+                payer.escrowCents -= reservation.amountCents;
+                totalHeld.addAndGet(-reservation.amountCents);
+                reservation.state = Reservation.State.COMMITTED;
+                if (payee != null) {
+                    payee.receivePayment(reservation.amountCents);
+                }
+            }
+        }
+        reservation.expiry.cancel(false);
+    }
+
+    /**
+     * Returns the funds of a reservation to the payer.
+     *
+     * @param reservation The reservation.
+     * @return {@code true} if the funds were returned; {@code false} if the reservation was already settled.
+     */
+    public static boolean release(Reservation reservation) {
+        boolean released = settle(reservation, Reservation.State.RELEASED);
+        if (released) {
+            reservation.expiry.cancel(false);
+        }
+        return released;
+    }
+
+    /**
+     * Returns the amount an account holds in escrow.
+     *
+     * @param user The account.
+     * @return The amount held, in cents.
+     */
+    public static long heldBy(User user) {
+        synchronized (user) {
+            return user.escrowCents;
+        }
+    }
+
+    /**
+     * Returns the amount held in escrow across all accounts.
+     *
+     * @return The total held, in cents.
+     */
+    public static long totalHeld() {
+        return totalHeld.get();
+    }
+
+    /**
+     * Returns the funds of a reservation if it is still held.
+     *
+     * @param reservation The reservation.
+     * @param outcome The state to record.
+     * @return {@code true} if the funds were returned.
+     */
+    private static boolean settle(Reservation reservation, Reservation.State outcome) {
+        synchronized (reservation.payer) {
+            if (reservation.state != Reservation.State.HELD) {
+                return false;
+            }
+            returnFunds(reservation, outcome);
+            return true;
+        }
+    }
+
+    /**
+     * Moves held funds back to the payer. Called with the payer's monitor held.
+     *
+     * @param reservation The held reservation.
+     * @param outcome The state to record.
+     */
+    private static void returnFunds(Reservation reservation, Reservation.State outcome) {
+        User payer = reservation.payer;
+        payer.escrowCents -= reservation.amountCents;
+        totalHeld.addAndGet(-reservation.amountCents);
+        setBalance(payer, Money.add(balanceOf(payer), reservation.amountCents));
+        reservation.state = outcome;
+    }
+
+    /**
+     * Returns which of two accounts to lock first.
+     *
+     * @param a One account.
+     * @param b The other account.
+     * @return The account with the lower directory id.
+     */
+    private static User lockFirst(User a, User b) {
+        return UserDirectory.register(a) <= UserDirectory.register(b) ? a : b;
+    }
+
+    /**
+     * Returns the spendable balance of an account. Called with its monitor held.
+     *
+     * @param user The account.
+     * @return The balance, in cents.
+     */
+    private static long balanceOf(User user) {
+        if (user instanceof BrandManager) {
+            return ((BrandManager) user).sponsorshipBudget;
+        }
+        if (user instanceof Influencer) {
+            return ((Influencer) user).sponsorshipAmount;
+        }
+        throw new IllegalArgumentException(user.username + " has no balance");
+    }
+
+    /**
+     * Sets the spendable balance of an account. Called with its monitor held.
+     *
+     * @param user The account.
+     * @param cents The new balance, in cents.
+     */
+    private static void setBalance(User user, long cents) {
+        if (user instanceof BrandManager) {
+            ((BrandManager) user).sponsorshipBudget = cents;
+        } else {
+            ((Influencer) user).sponsorshipAmount = cents;
+        }
+    }
+
+    /**
+     * Checks that an amount can be moved.
+     *
+     * @param amountCents The amount, in cents.
+     * @throws IllegalArgumentException If the amount is negative.
+     */
+    private static void checkAmount(long amountCents) {
+        if (amountCents < 0) {
+            throw new IllegalArgumentException("Amount must not be negative");
+        }
+    }
+}
@@ -1,8 +1,24 @@
 package entities;
 
+import analytics.Leaderboard;
+import analytics.RollingEngagement;
+import audit.AuditLog;
 import auth.*;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import metrics.CampaignLaunchEvent;
+import metrics.Metrics;
 import platforms.*;
+import storage.CampaignArchive;
+import storage.HistoryStore;
+import storage.InfluencerHistory;
+import util.Money;
+import util.SymbolDictionary;
 
 /**
  * Represents an influencer in the influencer platform.
@@ -11,31 +27,76 @@ import platforms.*;
  * functionalities for managing sponsorships, campaigns, and brand partnerships.</p>
  */
 public class Influencer extends User {
-    String niche; // The niche of the influencer
-    double sponsorshipAmount; // The total amount available for sponsorships
-    Double engagementRate; // The engagement rate of the influencer
-    String[] regions; // The regions where the influencer operates
+    private static final double PUBLISH_STEP = 0.05; // Change in the rolling rate, in points, that is published to rankings
+    private static final int RESIDENT_CAMPAIGNS = 32; // Most recent campaigns kept in memory; older ones are read from the HistoryStore
+    private static final int ARCHIVE_BATCH = 24; // Oldest campaigns archived together when the array is full, so they share a block
+    private static final int DECAY_SWEEP_MINUTES = 10; // How often rates of influencers with reported events are decayed and republished
+
+    int nicheId = SymbolDictionary.NONE; // Dictionary id of the influencer's niche
+    volatile long sponsorshipAmount; // The total amount available for sponsorships, in cents; changed only under this influencer's monitor
+    volatile double engagementRate; // The engagement rate of the influencer, in percent, as last published to the leaderboard
+    final RollingEngagement engagement = new RollingEngagement(0); // Rolling aggregates of reported views, likes and shares
+    boolean decaying = false; // Whether the influencer is in the decay sweep; guarded by engagement
+    int[] regionIds = new int[0]; // Dictionary ids of the regions where the influencer operates
     BrandManager[] brands = new BrandManager[10]; // Array to store associated brand managers
     int brandCount = 0; // Count of added brand managers
-    Campaign[] campaigns = new Campaign[10]; // Array to store campaigns
-    int campaignCount = 0; // Count of added campaigns
+    volatile Campaign[] campaigns = new Campaign[RESIDENT_CAMPAIGNS]; // Most recent campaigns, oldest first; replaced rather than changed once full
+    int campaignCount = 0; // Count of campaigns in the array
+    volatile int launchedCampaigns = 0; // Campaigns ever launched, archived ones included; changed only under this influencer's monitor
+    volatile int[] platformCampaigns = new int[0]; // Campaigns ever launched on each platform, by platform id; replaced on each launch
+
+    /**
+     * Decays the engagement rates of influencers that have reported events.
+     * Created, and started, on the first report.
+     */
+    private static final class DecaySweep {
+        static final Set<Influencer> ACTIVE = ConcurrentHashMap.newKeySet(); // Influencers with reported events
+        static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "engagement-decay");
+            t.setDaemon(true);
+            return t;
+        });
+
+        static {
+            TIMER.scheduleAtFixedRate(DecaySweep::sweep, DECAY_SWEEP_MINUTES, DECAY_SWEEP_MINUTES, TimeUnit.MINUTES);
+        }
+
+        /**
+         * Republishes the rates that have decayed since they were last published.
+         */
+        static void sweep() {
+            long now = System.currentTimeMillis();
+            for (Influencer inf : ACTIVE) {
+                try {
+                    inf.refreshEngagementRate(now);
+                } catch (RuntimeException e) {
+                    System.err.println("Could not refresh engagement of " + inf.username + ": " + e.getMessage());
+                }
+            }
+        }
+    }
 
     /**
      * Represents a campaign created by the influencer.
      */
     public static class Campaign {
         String name; // The name of the campaign
-        double budget; // The budget allocated for the campaign
+        long budget; // The budget allocated for the campaign, in cents
         Date date; // The date of the campaign
-        Platform plat; // The platform associated with the campaign
+        int platformId = SymbolDictionary.NONE; // Id of the campaign's platform in the PlatformRegistry
+        long historyOffset = -1; // Offset of the campaign's record in the HistoryStore, or -1 if it has none
+        int sequence; // Position among all the influencer's campaigns, oldest first, from 0
+        volatile long views; // Views reported for the campaign; written under the owner's RollingEngagement
+        volatile long likes; // Likes reported for the campaign; written under the owner's RollingEngagement
+        volatile long shares; // Shares reported for the campaign; written under the owner's RollingEngagement
 
         /**
          * Constructs a new {@code Campaign} with the specified name and budget.
          *
          * @param name The name of the campaign.
-         * @param budget The budget allocated for the campaign.
+         * @param budget The budget allocated for the campaign, in cents.
          */
-        public Campaign(String name, double budget) {
+        public Campaign(String name, long budget) {
             this.name = name;
             this.budget = budget;
         }
@@ -43,9 +104,9 @@ public class Influencer extends User {
         /**
          * Returns the budget of the campaign.
          *
-         * @return The budget of the campaign.
+         * @return The budget of the campaign, in cents.
          */
-        public double getBudget() {
+        public long getBudget() {
             return this.budget;
         }
 
@@ -62,31 +123,76 @@ public class Influencer extends User {
          * Constructs a new {@code Campaign} with the specified name, budget, date, and platform.
          *
          * @param name The name of the campaign.
-         * @param budget The budget allocated for the campaign.
+         * @param budget The budget allocated for the campaign, in cents.
          * @param date The date of the campaign.
-         * @param p The platform associated with the campaign.
+         * @param platformId The id of the platform associated with the campaign, or {@link SymbolDictionary#NONE}.
          */
-        Campaign(String name, double budget, Date date, Platform p) {
+        Campaign(String name, long budget, Date date, int platformId) {
             this.name = name;
             this.budget = budget;
             this.date = date;
-            this.plat = p;
+            this.platformId = platformId;
         }
 
         /**
          * Displays the details of the campaign.
          */
         void display() {
-            System.out.println("[" + date + "] Campaign: " + name + ", Budget: $" + budget);
+            System.out.println("[" + date + "] Campaign: " + name + ", Budget: $" + Money.format(budget));
         }
 
         /**
          * Returns the platform associated with the campaign.
          *
-         * @return The platform of the campaign.
+         * @return The shared {@link Platform} of the campaign, or {@code null} if it has none.
          */
         public Platform getPlatform() {
-            return plat;
+            return PlatformRegistry.get(platformId);
+        }
+
+        /**
+         * Returns the id of the platform associated with the campaign.
+         *
+         * @return The platform id, or {@link SymbolDictionary#NONE} if the campaign has no platform.
+         */
+        public int getPlatformId() {
+            return platformId;
+        }
+
+        /**
+         * Returns where the campaign is recorded in the {@link HistoryStore}.
+         *
+         * @return The offset of the campaign's record, or {@code -1} if it was not recorded.
+         */
+        public long getHistoryOffset() {
+            return historyOffset;
+        }
+
+        /**
+         * Returns the views reported for the campaign.
+         *
+         * @return The total views passed to {@link Influencer#recordEngagement}.
+         */
+        public long getViews() {
+            return views;
+        }
+
+        /**
+         * Returns the likes reported for the campaign.
+         *
+         * @return The total likes passed to {@link Influencer#recordEngagement}.
+         */
+        public long getLikes() {
+            return likes;
+        }
+
+        /**
+         * Returns the shares reported for the campaign.
+         *
+         * @return The total shares passed to {@link Influencer#recordEngagement}.
+         */
+        public long getShares() {
+            return shares;
         }
     }
 
@@ -94,34 +200,33 @@ public class Influencer extends User {
      * Represents an advertiser for a campaign.
      */
     class Advertiser extends Campaign {
-        Platform x; // The platform associated with the advertiser
-
         /**
          * Constructs a new {@code Advertiser} with the specified campaign name, budget, and platform.
          *
          * @param campaignName The name of the campaign.
-         * @param budget The budget allocated for the campaign.
+         * @param budget The budget allocated for the campaign, in cents.
          * @param p The platform associated with the advertiser.
          */
-        Advertiser(String campaignName, double budget, Platform p) {
+        Advertiser(String campaignName, long budget, Platform p) {
             super(campaignName, budget);
-            this.x = p;
+            this.platformId = p == null ? SymbolDictionary.NONE : p.getPlatformId();
         }
 
         /**
          * Displays the details of the campaign.
          */
         void showCampaign() {
-            System.out.println("Campaign: " + name + ", Budget: $" + budget);
+            System.out.println("Campaign: " + name + ", Budget: $" + Money.format(budget));
         }
 
         /**
          * Converts the advertiser to a campaign.
          *
+         * @param date The start date of the campaign.
          * @return A new {@link Campaign} object.
          */
-        Campaign toCampaign() {
-            return new Campaign(name, budget, new Date(), x);
+        Campaign toCampaign(Date date) {
+            return new Campaign(name, budget, date, platformId);
         }
     }
 
@@ -148,9 +253,10 @@ public class Influencer extends User {
     
     public Influencer(String username, String password, String niche, double engagementRate, String... regions) {
         super(username, password);
-        this.niche = niche;
+        this.nicheId = SymbolDictionary.NICHES.intern(niche);
         this.engagementRate = engagementRate;
-        this.regions = regions;
+        this.engagement.setBaseline(engagementRate, System.currentTimeMillis());
+        this.regionIds = SymbolDictionary.REGIONS.internAll(regions);
     }
 
     /**
@@ -200,14 +306,126 @@ public class Influencer extends User {
     /**
     * Updates the engagement rate of the influencer.
     *
-    * <p>This method sets the engagement rate to the new value and prints
-    * a message indicating the updated engagement rate.</p>
+    * <p>This method makes the new value the baseline of the rolling
+    * engagement and publishes the resulting rate, as
+    * {@link #setEngagementRate(double)} does. Nothing is printed; callers
+    * that talk to a user show {@link #getEngagementRate()} themselves.</p>
     *
     * @param newRate The new engagement rate to be set.
     */
     public void updateEngagementRate(Double newRate) {
-        this.engagementRate = newRate; // Update engagement rate
-        System.out.println("Updated engagement rate: " + engagementRate); // Print updated rate
+        setEngagementRate(newRate);
+    }
+
+    /**
+    * Sets the engagement rate to a value given by a user or computed
+    * elsewhere, such as by a replication leader.
+    *
+    * <p>The value becomes the baseline of the rolling engagement and the
+    * resulting rate is published. Without reported events the rate is the
+    * new value; with them it is blended in as described in
+    * {@link RollingEngagement}.</p>
+    *
+    * @param rate The engagement rate, in percent.
+    */
+    public void setEngagementRate(double rate) {
+        synchronized (engagement) {
+            publishEngagementRate(engagement.setBaseline(rate, System.currentTimeMillis())); // Blend with reported events
+        }
+    }
+
+    /**
+    * Records views, likes and shares reported for one of the influencer's campaigns now.
+    *
+    * @param campaign The campaign the events belong to.
+    * @param views The number of views.
+    * @param likes The number of likes.
+    * @param shares The number of shares.
+    */
+    public void recordEngagement(Campaign campaign, long views, long likes, long shares) {
+        recordEngagement(campaign, views, likes, shares, System.currentTimeMillis());
+    }
+
+    /**
+    * Records views, likes and shares reported for one of the influencer's campaigns.
+    *
+    * <p>The campaign's totals and the influencer's {@link RollingEngagement}
+    * are updated in constant time. The engagement rate is only published to
+    * the {@link Leaderboard#ENGAGEMENT} leaderboard and the
+    * {@link Recommendations} cache once it has moved by at least
+    * {@value #PUBLISH_STEP} points, so a steady stream of events does not
+    * re-rank the influencer and empty the niche's cached recommendations on
+    * every call. Once an influencer has reported events, a background sweep
+    * every {@value #DECAY_SWEEP_MINUTES} minutes decays the rate to the
+    * current time and publishes it the same way, so a rate earned by past
+    * events drifts back towards the baseline in the rankings when reports
+    * stop. The sweep drops the influencer once the rate is within
+    * {@value #PUBLISH_STEP} points of the baseline, until the next report.
+    * Nothing is printed.</p>
+    *
+    * @param campaign The campaign the events belong to.
+    * @param views The number of views.
+    * @param likes The number of likes.
+    * @param shares The number of shares.
+    * @param nowMillis When the events were reported, in milliseconds since the epoch.
+    */
+    public void recordEngagement(Campaign campaign, long views, long likes, long shares, long nowMillis) {
+        synchronized (engagement) {
+            campaign.views += views;
+            campaign.likes += likes;
+            campaign.shares += shares;
+            double rate = engagement.record(views, likes, shares, nowMillis);
+            if (Math.abs(rate - engagementRate) >= PUBLISH_STEP) {
+                publishEngagementRate(rate);
+            }
+            if (!decaying) {
+                decaying = true;
+                DecaySweep.ACTIVE.add(this);
+            }
+        }
+    }
+
+    /**
+    * Decays the rolling rate to a point in time and publishes it if it has
+    * moved by at least {@value #PUBLISH_STEP} points since last published.
+    * Takes the influencer out of the sweep once the rate has settled near
+    * the baseline.
+    *
+    * @param nowMillis The current time, in milliseconds since the epoch.
+    */
+    private void refreshEngagementRate(long nowMillis) {
+        synchronized (engagement) {
+            double rate = engagement.getRate(nowMillis);
+            if (Math.abs(rate - engagementRate) >= PUBLISH_STEP) {
+                publishEngagementRate(rate);
+            }
+            if (Math.abs(rate - engagement.getBaseline()) < PUBLISH_STEP) {
+                decaying = false; // Settled; the next report adds the influencer again
+                DecaySweep.ACTIVE.remove(this);
+            }
+        }
+    }
+
+    /**
+    * Returns the engagement rate over the last {@value RollingEngagement#WINDOW_HOURS} hours of reported events.
+    *
+    * @return The rate, in percent, or {@link Double#NaN} if no views were reported in that time.
+    */
+    public double getRecentEngagementRate() {
+        return engagement.getWindowRate(System.currentTimeMillis());
+    }
+
+    /**
+    * Sets the engagement rate and re-ranks the influencer. Called while holding the {@code engagement} monitor,
+    * so rates are published in the order they were computed.
+    *
+    * @param rate The new engagement rate, in percent.
+    */
+    private void publishEngagementRate(double rate) {
+        this.engagementRate = rate;
+        Leaderboard.ENGAGEMENT.set(UserDirectory.register(this), Leaderboard.rateScore(rate)); // Re-rank by engagement
+        Recommendations.engagementChanged(this); // Drop cached recommendations for this niche
+        UserDirectory.profileChanged(this); // Picked up by replication
     }
 
     /**
@@ -220,34 +438,122 @@ public class Influencer extends User {
     * {@link PaymentFailedException} is thrown.</p>
     *
     * @param campaignName The name of the campaign to be launched.
-    * @param budget The budget allocated for the campaign.
+    * @param budget The budget allocated for the campaign, in cents.
+    * @param p The {@link Platform} associated with the campaign.
+    * @throws PaymentFailedException If the budget exceeds the available sponsorship amount.
+    * @throws IllegalArgumentException If the budget is not positive.
+    */
+    public void launchCampaign(String campaignName, long budget, Platform p) throws PaymentFailedException {
+        launchCampaign(campaignName, budget, p, new Date());
+    }
+
+    /**
+    * Launches a new campaign for the influencer with a given start date.
+    *
+    * <p>Used by the {@link scheduling.CampaignScheduler} so that a scheduled
+    * campaign records the time it was due rather than the time it was
+    * activated. Launches are serialised per influencer because scheduled
+    * campaigns are activated on a background thread.</p>
+    *
+    * @param campaignName The name of the campaign to be launched.
+    * @param budget The budget allocated for the campaign, in cents.
     * @param p The {@link Platform} associated with the campaign.
+    * @param startDate The date the campaign starts.
     * @throws PaymentFailedException If the budget exceeds the available sponsorship amount.
+    * @throws IllegalArgumentException If the budget is not positive.
     */
-    public void launchCampaign(String campaignName, double budget, Platform p) throws PaymentFailedException {
-        Advertiser advertiser = new Advertiser(campaignName, budget, p); // Create advertiser
-        advertiser.showCampaign(); // Show campaign details
-        if (campaignCount < campaigns.length) {
+    public synchronized void launchCampaign(String campaignName, long budget, Platform p, Date startDate)
+            throws PaymentFailedException {
+        long start = System.nanoTime(); // Start of the call, for Metrics.LAUNCH_CAMPAIGN
+        boolean success = false;
+        CampaignLaunchEvent event = new CampaignLaunchEvent();
+        event.begin();
+        String outcome = "ERROR";
+        try {
+            if (budget <= 0) {
+                outcome = "INVALID_BUDGET";
+                throw new IllegalArgumentException("Budget must be positive"); // A negative budget would raise the balance
+            }
+            Advertiser advertiser = new Advertiser(campaignName, budget, p); // Create advertiser
+            advertiser.showCampaign(); // Show campaign details
             if (this.sponsorshipAmount >= budget) {
-                this.sponsorshipAmount -= budget; // Deduct budget from sponsorship amount
-                campaigns[campaignCount++] = advertiser.toCampaign(); // Add campaign to list
+                this.sponsorshipAmount = Money.subtract(this.sponsorshipAmount, budget); // Deduct budget from sponsorship amount
+                Campaign campaign = advertiser.toCampaign(startDate);
+                campaign.historyOffset = HistoryStore.shared().appendCampaign(UserDirectory.register(this), campaignName,
+                        budget, startDate.getTime(), campaign.platformId); // Full history, read back by reports
+                campaign.sequence = launchedCampaigns;
+                if (campaignCount == campaigns.length) {
+                    archive(campaigns, ARCHIVE_BATCH);
+                    Campaign[] recent = new Campaign[RESIDENT_CAMPAIGNS];
+                    campaignCount -= ARCHIVE_BATCH;
+                    System.arraycopy(campaigns, ARCHIVE_BATCH, recent, 0, campaignCount); // Readers keep the old array
+                    campaigns = recent;
+                }
+                campaigns[campaignCount++] = campaign; // Add campaign to list
+                launchedCampaigns = campaign.sequence + 1;
+                if (campaign.platformId != SymbolDictionary.NONE) {
+                    int[] counts = java.util.Arrays.copyOf(platformCampaigns,
+                            Math.max(platformCampaigns.length, campaign.platformId + 1));
+                    counts[campaign.platformId]++;
+                    platformCampaigns = counts; // Readers never see a half-updated array
+                }
+                AuditLog.campaignLaunched(username, campaignName,
+                        p == null ? null : p.getName(), budget); // Queue for the audit trail
             } else {
+                outcome = "EXCEEDED_BUDGET";
                 throw new PaymentFailedException("Exceeded Budget"); // Throw exception if budget exceeded
             }
+            success = true;
+            outcome = "LAUNCHED";
+        } finally {
+            Metrics.LAUNCH_CAMPAIGN.record(System.nanoTime() - start, success);
+            event.end();
+            if (event.shouldCommit()) {
+                event.influencer = username;
+                event.campaign = campaignName;
+                event.platform = p == null ? null : p.getName();
+                event.budgetCents = budget;
+                event.outcome = outcome;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+    * Moves the reported counts of the oldest resident campaigns to the {@link CampaignArchive}; everything else
+    * about them is in the {@link HistoryStore}. Called while holding this influencer's monitor.
+    *
+    * @param oldest The resident campaigns, oldest first.
+    * @param count The number of campaigns to archive.
+    */
+    private void archive(Campaign[] oldest, int count) {
+        CampaignArchive archive = CampaignArchive.shared();
+        int id = UserDirectory.register(this);
+        synchronized (engagement) { // Reported counts must not change while they are copied
+            for (int i = 0; i < count; i++) {
+                Campaign c = oldest[i];
+                archive.archive(id, c.views, c.likes, c.shares, c.historyOffset);
+            }
         }
     }
 
     /**
     * Displays the campaigns launched by the influencer.
     *
-    * <p>This method prints the name of the influencer and iterates through
-    * the list of campaigns, displaying each campaign's details.</p>
+    * <p>This method prints the name of the influencer and the details of
+    * each campaign, newest first. Campaigns are read from the
+    * {@link HistoryStore} one at a time, without taking the influencer's
+    * lock.</p>
+    *
+    * @throws java.io.UncheckedIOException If the history cannot be read.
     */
     public void viewCampaigns() {
         System.out.println("Campaigns by " + username + ":"); // Print influencer's name
-        for (int i = 0; i < campaignCount; i++) {
-        campaigns[i].display(); // Display each campaign
+        if (id < 0) {
+            return; // Never registered, so nothing was recorded
         }
+        new InfluencerHistory(HistoryStore.shared(), id).forEachCampaign(c ->
+            System.out.println("[" + c.getStartDate() + "] Campaign: " + c.getName() + ", Budget: $" + Money.format(c.getBudget())));
     }
 
     /**
@@ -268,13 +574,16 @@ public class Influencer extends User {
     * of the influencer, followed by the list of campaigns.</p>
     */
     public void showStats() {
-        System.out.println("Niche: " + niche + ", Engagement: " + engagementRate + ", Sponsored: $" + sponsorshipAmount); // Print stats
+        System.out.println("Niche: " + getNiche() + ", Engagement: " + engagementRate + ", Sponsored: $" + Money.format(sponsorshipAmount)); // Print stats
         viewCampaigns(); // Display campaigns
     }
 
     /**
     * Returns the engagement rate of the influencer.
     *
+    * <p>This is the rate last published to the rankings; see
+    * {@link #recordEngagement(Campaign, long, long, long, long)}.</p>
+    *
     * @return The engagement rate of the influencer.
     */
     public double getEngagementRate() {
@@ -287,15 +596,39 @@ public class Influencer extends User {
     * @return An array of regions associated with the influencer.
     */
     public String[] getRegions() {
-        return this.regions; // Return the regions
+        return SymbolDictionary.REGIONS.names(regionIds); // Resolve the region names
+    }
+
+    /**
+    * Returns the dictionary ids of the regions where the influencer operates.
+    *
+    * @return An array of region ids from {@link SymbolDictionary#REGIONS}.
+    */
+    public int[] getRegionIds() {
+        return this.regionIds.clone(); // Return a copy so callers cannot change the regions
+    }
+
+    /**
+    * Checks whether the influencer operates in the specified region.
+    *
+    * @param regionId The region id from {@link SymbolDictionary#REGIONS}.
+    * @return {@code true} if the influencer operates in the region; {@code false} otherwise.
+    */
+    public boolean operatesIn(int regionId) {
+        for (int id : regionIds) {
+            if (id == regionId) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
     * Returns the total sponsorship amount available for the influencer.
     *
-    * @return The total sponsorship amount.
+    * @return The total sponsorship amount, in cents.
     */
-    public double getSponsorshipAmount() {
+    public long getSponsorshipAmount() {
         return this.sponsorshipAmount; // Return the sponsorship amount
     }
 
@@ -303,22 +636,96 @@ public class Influencer extends User {
     * Receives a payment and adds it to the influencer's sponsorship amount.
     *
     * <p>This method updates the sponsorship amount by adding the specified
-    * payment amount.</p>
+    * payment amount and credits it on the {@link Leaderboard#EARNINGS} leaderboard.</p>
     *
-    * @param amount The amount of payment to be received.
+    * @param amount The amount of payment to be received, in cents.
     */
-    public void receivePayment(double amount) {
-        sponsorshipAmount += amount; // Update sponsorship amount
+    public synchronized void receivePayment(long amount) {
+        sponsorshipAmount = Money.add(sponsorshipAmount, amount); // Update sponsorship amount
+        Leaderboard.EARNINGS.increment(UserDirectory.register(this), amount); // Re-rank by earnings
         // System.out.println("Received payment of $" + amount); // Optional: Uncomment to print received payment
     }
 
     /**
     * Returns the array of campaigns associated with the influencer.
     *
-    * @return An array of {@link Campaign} objects associated with the influencer.
+    * <p>Up to {@value #RESIDENT_CAMPAIGNS} recent campaigns are held in
+    * memory; when they fill up, the reported counts of the oldest
+    * {@value #ARCHIVE_BATCH} are moved to the {@link CampaignArchive}
+    * together. Archived campaigns are read back as copies, built from their
+    * {@link HistoryStore} record and the counts reported before they were
+    * archived; those whose record could not be written are left out.
+    * Engagement recorded for a copy still counts toward the influencer's
+    * rate, but not toward the archived counts.</p>
+    *
+    * <p>Nothing is locked, so the archive is never read while launches or
+    * payments wait. This reads every archived campaign into memory; callers
+    * that only walk the campaigns should use {@link InfluencerHistory#forEachCampaign}
+    * and those that only count them {@link #getCampaignCount()}.</p>
+    *
+    * @return An array of {@link Campaign} objects, oldest first, with {@code null} for unused slots.
+    * @throws java.io.UncheckedIOException If the archive or the history cannot be read.
     */
     public Campaign[] getCampaigns() {
-        return this.campaigns; // Return the array of campaigns
+        Campaign[] resident = this.campaigns; // Read first: campaigns archived after this are still in it
+        if (resident[0] == null || resident[0].sequence == 0 || id < 0) {
+            return resident; // Nothing archived before this array
+        }
+        List<CampaignArchive.Entry> archived = CampaignArchive.shared().read(id);
+        int older = Math.min(archived.size(), resident[0].sequence); // Later entries are in the resident array too
+        InfluencerHistory history = new InfluencerHistory(HistoryStore.shared(), id);
+        List<Campaign> all = new ArrayList<>(older + resident.length);
+        for (int i = 0; i < older; i++) {
+            CampaignArchive.Entry e = archived.get(i);
+            if (e.getHistoryOffset() < 0) {
+                continue;
+            }
+            InfluencerHistory.CampaignEntry r = history.getCampaign(e.getHistoryOffset());
+            Campaign c = new Campaign(r.getName(), r.getBudget(), r.getStartDate(), r.getPlatformId());
+            c.views = e.getViews();
+            c.likes = e.getLikes();
+            c.shares = e.getShares();
+            c.historyOffset = e.getHistoryOffset();
+            c.sequence = i;
+            all.add(c);
+        }
+        for (Campaign c : resident) {
+            if (c != null) {
+                all.add(c);
+            }
+        }
+        return all.toArray(new Campaign[0]);
+    }
+
+    /**
+    * Returns the number of campaigns the influencer has launched, archived
+    * ones included, without reading the archive or taking any lock.
+    *
+    * @return The number of campaigns.
+    */
+    public int getCampaignCount() {
+        return launchedCampaigns;
+    }
+
+    /**
+    * Returns the campaigns of the influencer held in memory.
+    *
+    * @return An array of up to the last {@value #RESIDENT_CAMPAIGNS} {@link Campaign} objects, oldest first, with
+    *         {@code null} for unused slots.
+    */
+    public Campaign[] getRecentCampaigns() {
+        return this.campaigns;
+    }
+
+    /**
+    * Returns how many campaigns the influencer has launched on each platform,
+    * archived ones included, without reading the archive or taking any lock.
+    *
+    * @return The counts, indexed by platform id from {@link SymbolDictionary#PLATFORMS}; platforms with no
+    *         campaigns, or past the end of the array, have none.
+    */
+    public int[] getPlatformCampaignCounts() {
+        return this.platformCampaigns.clone();
     }
 
     /**
@@ -327,6 +734,15 @@ public class Influencer extends User {
          * @return The niche of the influencer.
          */
         public String getNiche() {
-            return this.niche;
+            return SymbolDictionary.NICHES.name(this.nicheId);
         }
+
+    /**
+    * Returns the dictionary id of the influencer's niche.
+    *
+    * @return The niche id from {@link SymbolDictionary#NICHES}, or {@link SymbolDictionary#NONE} if no niche is set.
+    */
+    public int getNicheId() {
+        return this.nicheId; // Return the niche id
+    }
 }
\ No newline at end of file
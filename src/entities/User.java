@@ -10,6 +10,8 @@ package entities;
 public abstract class User {
     public String username; // The username of the user
     protected String password; // The password of the user
+    volatile int id = -1; // Directory id of the user, assigned by UserDirectory.register
+    long escrowCents = 0; // Funds held in escrow, guarded by this user's monitor
 
     /**
      * Constructs a new {@code User} with the specified username and password.
@@ -29,4 +31,13 @@ public abstract class User {
      * menu options for different types of users.</p>
      */
     public abstract void displayMenu(); // Abstract method to display user menu
-}
+
+    /**
+     * Returns the directory id of this user.
+     *
+     * @return The id assigned by {@link UserDirectory#register(User)}, or {@code -1} if the user is not registered.
+     */
+    public int getId() {
+        return id; // Return the directory id
+    }
+}
\ No newline at end of file
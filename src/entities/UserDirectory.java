@@ -0,0 +1,142 @@
+package entities;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense integer ids to users and resolves them back.
+ *
+ * <p>Compact records such as {@link contracts.ContractLog} rows refer to
+ * influencers and brand managers by these ids instead of holding object
+ * references. Ids are assigned in registration order starting at {@code 0}
+ * and are never reused.</p>
+ *
+ * <p>The directory also keeps a journal of profile changes: each time a
+ * user's replicated profile, such as an influencer's engagement rate,
+ * changes, its id is appended. Readers such as replication keep their own
+ * position in the journal and read the current profile of each id they find.
+ * The journal takes four bytes per change and is never trimmed.</p>
+ */
+public final class UserDirectory {
+    private static volatile User[] users = new User[16]; // Id to user lookup
+    private static volatile int count = 0; // Number of registered users
+    private static final ConcurrentHashMap<String, Integer> byUsername = new ConcurrentHashMap<>(); // Username to id lookup
+    private static volatile int[] changes = new int[16]; // Ids of users whose profile changed, in order
+    private static volatile int changeCount = 0; // Number of journalled changes
+
+    private UserDirectory() {
+    }
+
+    /**
+     * Registers a user and assigns it the next free id.
+     *
+     * <p>Registering a user that already has an id returns that id. When two
+     * user objects share a username, the first one registered is the one
+     * returned by {@link #find(String)}.</p>
+     *
+     * @param user The user to register.
+     * @return The id of the user.
+     */
+    public static int register(User user) {
+        int id = user.id;
+        if (id >= 0) {
+            return id; // Already registered
+        }
+        synchronized (UserDirectory.class) {
+            if (user.id >= 0) {
+                return user.id;
+            }
+            int next = count;
+            User[] current = users;
+            if (next == current.length) {
+                User[] grown = new User[current.length * 2];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+            }
+            current[next] = user;
+            users = current; // Publish the array before the id becomes visible
+            user.id = next;
+            count = next + 1;
+            byUsername.putIfAbsent(user.username, next);
+            return next;
+        }
+    }
+
+    /**
+     * Returns the user with the specified id.
+     *
+     * @param id The id of the user.
+     * @return The registered {@link User}.
+     * @throws IllegalArgumentException If no user has the specified id.
+     */
+    public static User get(int id) {
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException("Unknown user id: " + id);
+        }
+        return users[id];
+    }
+
+    /**
+     * Finds a registered user by username.
+     *
+     * @param username The username to look up.
+     * @return The registered {@link User}, or {@code null} if none is registered under that name.
+     */
+    public static User find(String username) {
+        Integer id = byUsername.get(username);
+        return id == null ? null : users[id];
+    }
+
+    /**
+     * Returns the number of registered users. Ids range from {@code 0} to
+     * {@code size() - 1}.
+     *
+     * @return The number of registered users.
+     */
+    public static int size() {
+        return count;
+    }
+
+    /**
+     * Journals that a user's profile changed, registering the user if needed.
+     *
+     * @param user The user whose profile changed.
+     */
+    public static void profileChanged(User user) {
+        int id = register(user);
+        synchronized (UserDirectory.class) {
+            int next = changeCount;
+            int[] current = changes;
+            if (next == current.length) {
+                int[] grown = new int[current.length * 2];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+            }
+            current[next] = id;
+            changes = current; // Publish the array before the change becomes visible
+            changeCount = next + 1;
+        }
+    }
+
+    /**
+     * Returns the number of journalled profile changes.
+     *
+     * @return The number of changes since start.
+     */
+    public static int changeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Returns the user of a journalled profile change.
+     *
+     * @param change The position of the change, from {@code 0} to {@code changeCount() - 1}.
+     * @return The id of the user whose profile changed.
+     * @throws IllegalArgumentException If there is no such change.
+     */
+    public static int changedUser(int change) {
+        if (change < 0 || change >= changeCount) {
+            throw new IllegalArgumentException("Unknown change: " + change);
+        }
+        return changes[change];
+    }
+}
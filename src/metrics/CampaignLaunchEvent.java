@@ -0,0 +1,35 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event for one call to {@code Influencer.launchCampaign}.
+ */
+@Name("influencer.CampaignLaunch")
+@Label("Campaign Launch")
+@Category({"Influencer Platform", "Campaign"})
+@Description("An influencer launching a campaign on a platform")
+@Threshold("1 ms")
+@StackTrace(false)
+public class CampaignLaunchEvent extends jdk.jfr.Event {
+    @Label("Influencer")
+    public String influencer; // Username of the launching influencer
+
+    @Label("Campaign")
+    public String campaign; // Name of the campaign
+
+    @Label("Platform")
+    public String platform; // Name of the platform the campaign runs on
+
+    @Label("Budget (cents)")
+    public long budgetCents; // Campaign budget, in cents
+
+    @Label("Outcome")
+    @Description("LAUNCHED, EXCEEDED_BUDGET, INVALID_BUDGET or ERROR")
+    public String outcome; // How the launch ended
+}
@@ -0,0 +1,29 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event for one call to {@code AuthManager.login}.
+ *
+ * <p>Only logins slower than the threshold are recorded by default; the
+ * threshold can be lowered in a JFR settings file to capture every attempt.</p>
+ */
+@Name("influencer.Login")
+@Label("Login Attempt")
+@Category({"Influencer Platform", "Auth"})
+@Description("A user attempting to log in")
+@Threshold("10 ms")
+@StackTrace(false)
+public class LoginEvent extends jdk.jfr.Event {
+    @Label("Username")
+    public String username; // Username the user logged in with
+
+    @Label("Outcome")
+    @Description("SUCCESS, NOT_FOUND, BAD_PASSWORD or ERROR")
+    public String outcome; // How the attempt ended
+}
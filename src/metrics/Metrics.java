@@ -0,0 +1,68 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the timed operations in the influencer platform.
+ *
+ * <p>Each {@link OperationStats} is created once and published on the
+ * platform MBean server under {@code InfluencerPlatform:type=Operation,name=...}.
+ * Reports are registered on first use under {@code type=Report}.</p>
+ */
+public final class Metrics {
+    private static final String DOMAIN = "InfluencerPlatform"; // JMX domain of every MBean
+    private static final ConcurrentHashMap<String, OperationStats> reports = new ConcurrentHashMap<>(); // Report stats by name
+
+    /** Calls to {@code AuthManager.login}. */
+    public static final OperationStats LOGIN = register("Operation", "Login");
+    /** Calls to {@code BrandManager.offerSponsorship}. */
+    public static final OperationStats OFFER_SPONSORSHIP = register("Operation", "OfferSponsorship");
+    /** Calls to {@code Influencer.launchCampaign}. */
+    public static final OperationStats LAUNCH_CAMPAIGN = register("Operation", "LaunchCampaign");
+    /** Calls to {@code Recommendations.recommend}, cached or not. */
+    public static final OperationStats RECOMMEND = register("Operation", "Recommend");
+    /** Calls to {@code LookalikeIndex.lookalikes}. */
+    public static final OperationStats LOOKALIKE = register("Operation", "Lookalike");
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the statistics of a report, creating and registering them on first use.
+     *
+     * @param name The name of the report.
+     * @return The report's {@link OperationStats}.
+     */
+    public static OperationStats report(String name) {
+        return reports.computeIfAbsent(name, n -> register("Report", n));
+    }
+
+    /**
+     * Creates an {@link OperationStats} and publishes it as an MBean.
+     *
+     * <p>If the MBean cannot be registered, for example because the name is
+     * already taken by another class loader, the statistics are still recorded
+     * but are not visible over JMX.</p>
+     *
+     * @param type The MBean type key.
+     * @param name The name of the operation.
+     * @return The new {@link OperationStats}.
+     */
+    private static OperationStats register(String type, String name) {
+        OperationStats stats = new OperationStats(name);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(stats, objectName);
+            }
+        } catch (JMException e) {
+            System.err.println("Could not publish metrics for " + name + ": " + e.getMessage());
+        }
+        return stats;
+    }
+}
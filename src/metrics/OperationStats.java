@@ -0,0 +1,211 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free call counters and a latency histogram for one operation.
+ *
+ * <p>Latencies are recorded in nanoseconds into log-linear buckets: each power
+ * of two is split into {@value #SUB_BUCKETS} equal buckets, which keeps every
+ * percentile within about 12% of the true value. Recording is a handful of
+ * atomic increments and never allocates or locks, so it can sit on hot
+ * paths.</p>
+ */
+public class OperationStats implements OperationStatsMBean {
+    private static final int SUB_BUCKET_BITS = 3; // log2 of the buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // Buckets per power of two
+    private static final int BUCKETS = 64 * SUB_BUCKETS; // Enough for any non-negative long
+
+    private final String name; // Name of the operation
+    private final LongAdder count = new LongAdder(); // Completed calls
+    private final LongAdder errors = new LongAdder(); // Calls that failed
+    private final LongAdder totalNanos = new LongAdder(); // Sum of all latencies
+    private final AtomicLong maxNanos = new AtomicLong(); // Highest latency
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS); // Calls per latency bucket
+
+    /**
+     * Constructs a new {@code OperationStats}.
+     *
+     * @param name The name of the operation.
+     */
+    public OperationStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the operation.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records one completed call.
+     *
+     * @param nanos The latency of the call in nanoseconds.
+     * @param success Whether the call completed without an exception.
+     */
+    public void record(long nanos, boolean success) {
+        long v = Math.max(nanos, 0);
+        count.increment();
+        if (!success) {
+            errors.increment();
+        }
+        totalNanos.add(v);
+        histogram.incrementAndGet(bucketOf(v));
+        long max = maxNanos.get();
+        while (v > max && !maxNanos.compareAndSet(max, v)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Returns the bucket a latency falls into.
+     *
+     * @param v The latency in nanoseconds, not negative.
+     * @return The bucket index.
+     */
+    static int bucketOf(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v; // Small values get one bucket each
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the highest latency that falls into a bucket.
+     *
+     * @param bucket The bucket index.
+     * @return The upper bound of the bucket in nanoseconds.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long base = 1L << exponent;
+        long width = base >>> SUB_BUCKET_BITS;
+        return base + (sub + 1) * width - 1;
+    }
+
+    /**
+     * Returns a latency percentile.
+     *
+     * @param quantile The quantile, between {@code 0} and {@code 1}.
+     * @return The latency in nanoseconds at or below which that share of calls completed.
+     */
+    public long percentileNanos(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Returns the number of completed calls.
+     *
+     * @return The number of calls, successful or not.
+     */
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the number of calls that ended with an exception.
+     *
+     * @return The number of failed calls.
+     */
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * Returns the mean latency.
+     *
+     * @return The mean latency in milliseconds.
+     */
+    @Override
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / (double) n / 1e6;
+    }
+
+    /**
+     * Returns the median latency.
+     *
+     * @return The 50th percentile latency in milliseconds.
+     */
+    @Override
+    public double getP50Millis() {
+        return percentileNanos(0.5) / 1e6;
+    }
+
+    /**
+     * Returns the 99th percentile latency.
+     *
+     * @return The 99th percentile latency in milliseconds.
+     */
+    @Override
+    public double getP99Millis() {
+        return percentileNanos(0.99) / 1e6;
+    }
+
+    /**
+     * Returns the 99.9th percentile latency.
+     *
+     * @return The 99.9th percentile latency in milliseconds.
+     */
+    @Override
+    public double getP999Millis() {
+        return percentileNanos(0.999) / 1e6;
+    }
+
+    /**
+     * Returns the highest latency recorded.
+     *
+     * @return The maximum latency in milliseconds.
+     */
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Clears every counter and the latency histogram.
+     *
+     * <p>Calls recorded while the reset is in progress may be partly kept.</p>
+     */
+    @Override
+    public void reset() {
+        count.reset();
+        errors.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+}
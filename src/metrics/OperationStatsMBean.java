@@ -0,0 +1,65 @@
+package metrics;
+
+/**
+ * Management interface for the statistics of one timed operation.
+ *
+ * <p>Every {@link OperationStats} registered by {@link Metrics} is published
+ * through this interface as a standard JMX MBean, so the values can be read
+ * from JConsole, VisualVM or any other JMX client.</p>
+ */
+public interface OperationStatsMBean {
+
+    /**
+     * Returns the number of completed calls.
+     *
+     * @return The number of calls, successful or not.
+     */
+    long getCount();
+
+    /**
+     * Returns the number of calls that ended with an exception.
+     *
+     * @return The number of failed calls.
+     */
+    long getErrorCount();
+
+    /**
+     * Returns the mean latency.
+     *
+     * @return The mean latency in milliseconds.
+     */
+    double getMeanMillis();
+
+    /**
+     * Returns the median latency.
+     *
+     * @return The 50th percentile latency in milliseconds.
+     */
+    double getP50Millis();
+
+    /**
+     * Returns the 99th percentile latency.
+     *
+     * @return The 99th percentile latency in milliseconds.
+     */
+    double getP99Millis();
+
+    /**
+     * Returns the 99.9th percentile latency.
+     *
+     * @return The 99.9th percentile latency in milliseconds.
+     */
+    double getP999Millis();
+
+    /**
+     * Returns the highest latency recorded.
+     *
+     * @return The maximum latency in milliseconds.
+     */
+    double getMaxMillis();
+
+    /**
+     * Clears every counter and the latency histogram.
+     */
+    void reset();
+}
@@ -0,0 +1,25 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event for generating one dashboard report.
+ */
+@Name("influencer.Report")
+@Label("Report Generation")
+@Category({"Influencer Platform", "Report"})
+@Description("A dashboard report being generated")
+@Threshold("5 ms")
+@StackTrace(false)
+public class ReportEvent extends jdk.jfr.Event {
+    @Label("Report")
+    public String report; // Name of the report
+
+    @Label("Succeeded")
+    public boolean succeeded; // Whether the report completed without an exception
+}
@@ -0,0 +1,32 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event for one call to {@code BrandManager.offerSponsorship}.
+ */
+@Name("influencer.SponsorshipOffer")
+@Label("Sponsorship Offer")
+@Category({"Influencer Platform", "Sponsorship"})
+@Description("A brand manager offering a sponsorship to an influencer")
+@Threshold("1 ms")
+@StackTrace(false)
+public class SponsorshipEvent extends jdk.jfr.Event {
+    @Label("Brand")
+    public String brand; // Name of the offering brand
+
+    @Label("Influencer")
+    public String influencer; // Username of the sponsored influencer
+
+    @Label("Amount (cents)")
+    public long amountCents; // Amount offered, in cents
+
+    @Label("Outcome")
+    @Description("ACCEPTED, INSUFFICIENT_BUDGET, INVALID_AMOUNT or ERROR")
+    public String outcome; // How the offer ended
+}
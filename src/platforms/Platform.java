@@ -1,5 +1,7 @@
 package platforms;
 
+import util.SymbolDictionary;
+
 /**
  * Represents a platform for tracking campaigns and retrieving engagement metrics.
  *
@@ -35,4 +37,27 @@ public interface Platform {
      * @return The number of views.
      */
     int getViews();
+
+    /**
+     * Returns the dictionary id of this platform.
+     *
+     * <p>The id is interned from the simple class name, so every instance of the
+     * same platform shares one id in {@link SymbolDictionary#PLATFORMS}. This
+     * default interns on every call; implementations used on hot paths
+     * should intern once and keep the id in a field.</p>
+     *
+     * @return The platform id.
+     */
+    default int getPlatformId() {
+        return SymbolDictionary.PLATFORMS.intern(getName());
+    }
+
+    /**
+     * Returns the display name of this platform.
+     *
+     * @return The simple class name, such as {@code "YouTube"}.
+     */
+    default String getName() {
+        return getClass().getSimpleName();
+    }
 }
\ No newline at end of file
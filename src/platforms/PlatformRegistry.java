@@ -0,0 +1,100 @@
+package platforms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of the available {@link Platform}s, with one shared instance each.
+ *
+ * <p>Platforms are discovered with {@link ServiceLoader} from
+ * {@code META-INF/services/platforms.Platform}, so a new network can be added
+ * by putting its class and a line in that file on the classpath. Discovery
+ * runs once, on first use. If no provider is found, for example because the
+ * services file was not copied to the classpath, the built-in YouTube,
+ * Instagram and Twitter platforms are used.</p>
+ *
+ * <p>Campaigns store the platform id from {@link Platform#getPlatformId()}
+ * and resolve it here, so no campaign holds its own platform object. The
+ * registry is immutable once loaded and safe to read from any thread.</p>
+ */
+public final class PlatformRegistry {
+
+    private PlatformRegistry() {
+    }
+
+    /**
+     * Holds the loaded platforms; the JVM initialises it on first access,
+     * exactly once.
+     */
+    private static final class Loaded {
+        static final List<Platform> ALL; // Platforms in discovery order
+        static final Platform[] BY_ID; // Platforms indexed by platform id
+
+        static {
+            List<Platform> found = new ArrayList<>();
+            try {
+                for (Platform p : ServiceLoader.load(Platform.class, PlatformRegistry.class.getClassLoader())) {
+                    found.add(p);
+                }
+            } catch (ServiceConfigurationError e) {
+                System.err.println("Could not load platforms: " + e.getMessage());
+            }
+            if (found.isEmpty()) {
+                found.addAll(Arrays.asList(new YouTube(), new Instagram(), new Twitter()));
+            }
+            Platform[] byId = new Platform[0];
+            List<Platform> unique = new ArrayList<>(found.size());
+            for (Platform p : found) {
+                int id = p.getPlatformId();
+                if (id >= byId.length) {
+                    byId = Arrays.copyOf(byId, id + 1);
+                }
+                if (byId[id] == null) { // The first provider of a platform wins
+                    byId[id] = p;
+                    unique.add(p);
+                }
+            }
+            ALL = Collections.unmodifiableList(unique);
+            BY_ID = byId;
+        }
+    }
+
+    /**
+     * Returns every available platform.
+     *
+     * @return The platforms, in the order they were discovered.
+     */
+    public static List<Platform> all() {
+        return Loaded.ALL;
+    }
+
+    /**
+     * Returns the platform with the specified id.
+     *
+     * @param platformId The platform id.
+     * @return The shared {@link Platform}, or {@code null} if no platform has that id.
+     */
+    public static Platform get(int platformId) {
+        Platform[] byId = Loaded.BY_ID;
+        return platformId >= 0 && platformId < byId.length ? byId[platformId] : null;
+    }
+
+    /**
+     * Finds a platform by name, ignoring case.
+     *
+     * @param name The name of the platform, such as {@code "YouTube"}.
+     * @return The shared {@link Platform}, or {@code null} if none has that name.
+     */
+    public static Platform find(String name) {
+        for (Platform p : Loaded.ALL) {
+            if (p.getName().equalsIgnoreCase(name)) {
+                return p;
+            }
+        }
+        return null;
+    }
+}
@@ -1,5 +1,9 @@
 package platforms;
 
+import entities.Influencer;
+import java.util.List;
+import util.SymbolDictionary;
+
 /**
  * Represents a recommendation engine for suggesting influencers.
  *
@@ -7,6 +11,8 @@ package platforms;
  * recommendation system must implement to recommend influencers based on a specific niche.</p>
  */
 public interface RecommendationEngine {
+    /** Number of influencers {@link #recommendInfluencers(String)} prints. */
+    int DEFAULT_RECOMMENDATIONS = 5;
 
     /**
      * Recommends influencers based on the specified niche.
@@ -14,4 +20,18 @@ public interface RecommendationEngine {
      * @param niche The niche for which influencers are to be recommended.
      */
     void recommendInfluencers(String niche);
+
+    /**
+     * Returns the most engaged influencers of a niche, served from the
+     * shared {@link Recommendations} cache when possible.
+     *
+     * @param niche The niche for which influencers are to be recommended.
+     * @param region The region the influencers must operate in, or {@code null} for any.
+     * @param k The number of influencers.
+     * @return Up to {@code k} influencers, highest engagement rate first.
+     */
+    default List<Influencer> recommendInfluencers(String niche, String region, int k) {
+        int platformId = this instanceof Platform ? ((Platform) this).getPlatformId() : SymbolDictionary.NONE;
+        return Recommendations.recommend(platformId, niche, region, k);
+    }
 }
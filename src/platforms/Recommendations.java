@@ -0,0 +1,247 @@
+package platforms;
+
+import entities.Influencer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import metrics.Metrics;
+import util.SymbolDictionary;
+
+/**
+ * Recommends the most engaged influencers of a niche, with a cache of recent answers.
+ *
+ * <p>Influencers are grouped by niche when they are {@link #add added}. A
+ * recommendation ranks the influencers of one niche by engagement rate,
+ * optionally keeping only those that operate in a region or globally, and
+ * returns the best {@code k}.</p>
+ *
+ * <p>Answers are cached by platform, niche, region and {@code k}. The cache
+ * holds at most {@value #MAX_ENTRIES} answers, evicting the least recently
+ * used, and never returns one older than {@value #TTL_SECONDS} seconds. Each
+ * niche has a generation number that is bumped when an influencer joins the
+ * niche or changes engagement rate, and a cached answer is only returned if
+ * it was computed in the current generation of its niche. An update therefore
+ * invalidates exactly the answers for its own niche, at the cost of one
+ * counter increment.</p>
+ */
+public final class Recommendations {
+    private static final int MAX_ENTRIES = 4096; // Answers kept in the cache
+    private static final long TTL_SECONDS = 60; // Longest time an answer is served from the cache
+    private static final int UNKNOWN_REGION = -2; // Region filter naming a region no influencer operates in
+
+    private static final ConcurrentHashMap<Integer, List<Influencer>> byNiche = new ConcurrentHashMap<>(); // Influencers of each niche, each list guarded by itself
+    private static final ConcurrentHashMap<Integer, AtomicLong> generations = new ConcurrentHashMap<>(); // Generation of each niche
+    private static final Map<Key, Answer> cache = new LinkedHashMap<Key, Answer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Answer> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    }; // Cached answers in access order, guarded by itself
+    private static final LongAdder hits = new LongAdder(); // Answers served from the cache
+    private static final LongAdder misses = new LongAdder(); // Answers computed
+
+    private Recommendations() {
+    }
+
+    /**
+     * Identifies a recommendation request.
+     */
+    private static final class Key {
+        final int platformId; // Platform asking
+        final int nicheId; // Niche recommended from
+        final int regionId; // Region filter, or SymbolDictionary.NONE for any
+        final int k; // Number of influencers asked for
+
+        Key(int platformId, int nicheId, int regionId, int k) {
+            this.platformId = platformId;
+            this.nicheId = nicheId;
+            this.regionId = regionId;
+            this.k = k;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return platformId == other.platformId && nicheId == other.nicheId && regionId == other.regionId && k == other.k;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(platformId, nicheId, regionId, k);
+        }
+    }
+
+    /**
+     * A cached answer.
+     */
+    private static final class Answer {
+        final List<Influencer> influencers; // Recommended influencers, best first
+        final long generation; // Generation of the niche the answer was computed in
+        final long createdNanos; // System.nanoTime() when the answer was computed
+
+        Answer(List<Influencer> influencers, long generation, long createdNanos) {
+            this.influencers = influencers;
+            this.generation = generation;
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    /**
+     * Makes an influencer a candidate for recommendations in its niche.
+     *
+     * @param influencer The influencer.
+     */
+    public static void add(Influencer influencer) {
+        int nicheId = influencer.getNicheId();
+        List<Influencer> members = byNiche.computeIfAbsent(nicheId, id -> new ArrayList<>());
+        synchronized (members) {
+            members.add(influencer);
+        }
+        invalidate(nicheId);
+    }
+
+    /**
+     * Invalidates the cached answers for an influencer's niche after its engagement rate changed.
+     *
+     * @param influencer The influencer.
+     */
+    public static void engagementChanged(Influencer influencer) {
+        invalidate(influencer.getNicheId());
+    }
+
+    /**
+     * Returns the most engaged influencers of a niche.
+     *
+     * @param platformId The id of the platform asking, from {@link Platform#getPlatformId()}.
+     * @param niche The niche.
+     * @param region The region the influencers must operate in, or {@code null} or blank for any.
+     *        Influencers operating globally match every region.
+     * @param k The number of influencers.
+     * @return Up to {@code k} influencers, highest engagement rate first. The list is unmodifiable.
+     */
+    public static List<Influencer> recommend(int platformId, String niche, String region, int k) {
+        long start = System.nanoTime();
+        int nicheId = SymbolDictionary.NICHES.lookup(niche == null ? null : niche.trim());
+        if (nicheId == SymbolDictionary.NONE || k <= 0) {
+            return Collections.emptyList();
+        }
+        int regionId = SymbolDictionary.NONE;
+        if (region != null && !region.isBlank()) {
+            regionId = SymbolDictionary.REGIONS.lookup(region.trim());
+            if (regionId == SymbolDictionary.NONE) {
+                regionId = UNKNOWN_REGION; // Only global influencers match
+            }
+        }
+        Key key = new Key(platformId, nicheId, regionId, k);
+        long generation = generation(nicheId).get(); // Read before computing, so a concurrent update is never missed
+        synchronized (cache) {
+            Answer cached = cache.get(key);
+            if (cached != null && cached.generation == generation
+                    && System.nanoTime() - cached.createdNanos < TimeUnit.SECONDS.toNanos(TTL_SECONDS)) {
+                hits.increment();
+                Metrics.RECOMMEND.record(System.nanoTime() - start, true);
+                return cached.influencers;
+            }
+        }
+        misses.increment();
+        List<Influencer> result = Collections.unmodifiableList(rank(nicheId, regionId, k));
+        synchronized (cache) {
+            cache.put(key, new Answer(result, generation, System.nanoTime()));
+        }
+        Metrics.RECOMMEND.record(System.nanoTime() - start, true);
+        return result;
+    }
+
+    /**
+     * Returns the number of answers served from the cache.
+     *
+     * @return The number of hits.
+     */
+    public static long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of answers that had to be computed.
+     *
+     * @return The number of misses.
+     */
+    public static long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Ranks the influencers of a niche.
+     *
+     * @param nicheId The niche.
+     * @param regionId The region filter, or {@link SymbolDictionary#NONE} for any.
+     * @param k The number of influencers.
+     * @return Up to {@code k} influencers, highest engagement rate first.
+     */
+    private static List<Influencer> rank(int nicheId, int regionId, int k) {
+        List<Influencer> members = byNiche.get(nicheId);
+        if (members == null) {
+            return new ArrayList<>();
+        }
+        int global = SymbolDictionary.REGIONS.lookup("Global");
+        PriorityQueue<Influencer> best = new PriorityQueue<>(Math.min(k, 1024) + 1, Recommendations::compare); // Worst of the best on top
+        synchronized (members) {
+            for (Influencer inf : members) {
+                if (regionId != SymbolDictionary.NONE && !inf.operatesIn(regionId) && (global == SymbolDictionary.NONE || !inf.operatesIn(global))) {
+                    continue;
+                }
+                if (best.size() < k) {
+                    best.add(inf);
+                } else if (compare(inf, best.peek()) > 0) {
+                    best.poll();
+                    best.add(inf);
+                }
+            }
+        }
+        ArrayList<Influencer> result = new ArrayList<>(best);
+        result.sort((a, b) -> compare(b, a));
+        return result;
+    }
+
+    /**
+     * Orders influencers from least to most recommended: by engagement rate, then earlier registration first.
+     *
+     * @param a One influencer.
+     * @param b The other influencer.
+     * @return A negative number if {@code a} is less recommended than {@code b}.
+     */
+    private static int compare(Influencer a, Influencer b) {
+        int c = Double.compare(a.getEngagementRate(), b.getEngagementRate());
+        return c != 0 ? c : Integer.compare(b.getId(), a.getId());
+    }
+
+    /**
+     * Bumps the generation of a niche, so its cached answers are no longer returned.
+     *
+     * @param nicheId The niche.
+     */
+    private static void invalidate(int nicheId) {
+        generation(nicheId).incrementAndGet();
+    }
+
+    /**
+     * Returns the generation counter of a niche.
+     *
+     * @param nicheId The niche.
+     * @return The counter.
+     */
+    private static AtomicLong generation(int nicheId) {
+        return generations.computeIfAbsent(nicheId, id -> new AtomicLong());
+    }
+}
@@ -1,5 +1,9 @@
 package platforms;
 
+import audit.AuditLog;
+import entities.Influencer;
+import util.SymbolDictionary;
+
 /**
  * Represents the YouTube platform for tracking campaigns and recommending influencers.
  *
@@ -7,10 +11,11 @@ package platforms;
  * interfaces, providing functionalities to track campaigns and recommend influencers based on niche.</p>
  */
 public class YouTube implements Platform, RecommendationEngine {
-    int likes = 10000; // The number of likes on the platform
-    int shares = 2000; // The number of shares on the platform
-    int views = 500000; // The number of views on the platform
-    int subscribers = 1200000; // The number of subscribers on the platform
+    final int likes = 10000; // The number of likes on the platform
+    final int shares = 2000; // The number of shares on the platform
+    final int views = 500000; // The number of views on the platform
+    final int subscribers = 1200000; // The number of subscribers on the platform
+    final int platformId = SymbolDictionary.PLATFORMS.intern(getName()); // Dictionary id, interned once per instance
 
     /**
      * Constructs a new {@code YouTube} instance.
@@ -27,6 +32,7 @@ public class YouTube implements Platform, RecommendationEngine {
     @Override
     public void trackCampaign(String influencerName) {
         System.out.println("Tracking YouTube campaign for " + influencerName); // Print tracking message
+        AuditLog.campaignTracked("YouTube", influencerName); // Queue for the audit trail
     }
 
     /**
@@ -37,6 +43,9 @@ public class YouTube implements Platform, RecommendationEngine {
     @Override
     public void recommendInfluencers(String niche) {
         System.out.println("Recommending YouTube influencers in niche: " + niche); // Print recommendation message
+        for (Influencer inf : recommendInfluencers(niche, null, DEFAULT_RECOMMENDATIONS)) {
+            System.out.printf("- %s (Engagement: %.1f)%n", inf.username, inf.getEngagementRate());
+        }
     }
 
     /**
@@ -68,4 +77,14 @@ public class YouTube implements Platform, RecommendationEngine {
     public int getViews() {
         return views; // Return the number of views
     }
+
+    /**
+     * Returns the dictionary id of the platform.
+     *
+     * @return The platform id, interned when the instance was created.
+     */
+    @Override
+    public int getPlatformId() {
+        return platformId;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,241 @@
+package replication;
+
+import contracts.ContractLog;
+import entities.BrandManager;
+import entities.Influencer;
+import entities.User;
+import entities.UserDirectory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a read-only copy of a {@link LedgerLeader}'s contracts.
+ *
+ * <p>Rows are appended to a local {@link ContractLog} in the leader's order,
+ * so reports, indexes and exports built on it see the same contracts as the
+ * leader, a little later. Every influencer and brand manager registered on
+ * the leader, whether or not a row names them, is recreated locally as a
+ * stand-in with the leader's username, niche, engagement rate and brand
+ * name, and later changes to an influencer's engagement rate are applied to
+ * its stand-in, so influencer listings, recommendations and the engagement
+ * leaderboard follow the leader. Each contract is paid to its influencer's
+ * stand-in, so local earnings and the earnings leaderboard match the
+ * leader's.</p>
+ *
+ * <p>If the connection drops, the follower keeps serving what it has and
+ * reconnects every second, resuming where it stopped. If the leader was
+ * restarted in the meantime, the follower stops, since its rows no longer
+ * match; {@link #getState()} then says so.</p>
+ */
+public class LedgerFollower implements Closeable {
+    private static final long RETRY_MILLIS = 1000; // Pause before reconnecting to the leader
+
+    private final ContractLog log; // Local copy of the leader's contracts; written only by this follower
+    private final int leaderPort; // Loopback port of the leader
+    private final Consumer<Influencer> onInfluencer; // Told about each new influencer stand-in
+    private final HashMap<Integer, User> users = new HashMap<>(); // Leader directory id to local stand-in
+    private long epoch = 0; // Epoch of the leader being followed, or 0 before the first connection
+    private volatile String state = "connecting"; // What the follower is doing
+    private volatile int leaderRows; // Leader's row count in the last frame
+    private volatile long caughtUpMillis; // Leader time up to which every row has been applied
+    private volatile boolean closed = false; // Set by close()
+    private volatile Socket socket; // Current connection, or null
+
+    /**
+     * Constructs a new {@code LedgerFollower}.
+     *
+     * @param log The empty log to replicate into.
+     * @param leaderPort The loopback port of the leader.
+     * @param onInfluencer Called with each influencer stand-in when it is first created.
+     */
+    public LedgerFollower(ContractLog log, int leaderPort, Consumer<Influencer> onInfluencer) {
+        this.log = log;
+        this.leaderPort = leaderPort;
+        this.onInfluencer = onInfluencer;
+    }
+
+    /**
+     * Starts following the leader on a background thread.
+     */
+    public void start() {
+        Thread t = new Thread(this::run, "ledger-follower");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Connects, applies frames and reconnects until closed or the leader changes.
+     */
+    private void run() {
+        while (!closed) {
+            try (Socket s = new Socket(InetAddress.getLoopbackAddress(), leaderPort)) {
+                socket = s;
+                s.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 64 << 10));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                out.writeLong(epoch);
+                out.writeInt(log.size());
+                out.flush();
+                long leaderEpoch = in.readLong();
+                if (epoch != 0 && leaderEpoch != epoch) {
+                    state = "stopped: the leader was restarted; restart this follower to copy its contracts again";
+                    return;
+                }
+                epoch = leaderEpoch;
+                state = "connected";
+                while (true) {
+                    applyFrame(in);
+                    out.writeInt(log.size());
+                    out.writeLong(caughtUpMillis);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    state = "disconnected: " + e.getMessage();
+                }
+            } finally {
+                socket = null;
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads one frame and applies its users and rows.
+     *
+     * @param in The connection.
+     * @throws IOException If the connection fails or the frame is out of order.
+     */
+    private void applyFrame(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        long sentMillis = in.readLong();
+        int rows = in.readInt();
+        if (type == ReplicationProtocol.BATCH) {
+            for (int i = in.readInt(); i > 0; i--) {
+                readUser(in);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                User user = users.get(in.readInt());
+                double rate = in.readDouble();
+                if (user instanceof Influencer && ((Influencer) user).getEngagementRate() != rate) {
+                    ((Influencer) user).setEngagementRate(rate);
+                }
+            }
+            int first = in.readInt();
+            int n = in.readInt();
+            if (first != log.size()) {
+                throw new IOException("Expected row " + log.size() + " but the leader sent " + first);
+            }
+            for (int i = 0; i < n; i++) {
+                Influencer inf = (Influencer) users.get(in.readInt());
+                User brand = users.get(in.readInt());
+                long amount = in.readLong();
+                long start = in.readLong();
+                inf.receivePayment(amount);
+                log.append(inf.getId(), brand.getId(), amount, start);
+            }
+        } else if (type != ReplicationProtocol.HEARTBEAT) {
+            throw new IOException("Unknown frame " + type);
+        }
+        leaderRows = rows;
+        if (log.size() >= rows) {
+            caughtUpMillis = sentMillis;
+        }
+    }
+
+    /**
+     * Reads a user record and creates its local stand-in, or brings the
+     * engagement rate of an existing one up to date.
+     *
+     * @param in The connection.
+     * @throws IOException If the connection fails.
+     */
+    private void readUser(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        byte kind = in.readByte();
+        String username = in.readUTF();
+        String detail = in.readUTF();
+        double rate = kind == ReplicationProtocol.INFLUENCER ? in.readDouble() : 0;
+        User known = users.get(id);
+        if (known != null) {
+            if (known instanceof Influencer && ((Influencer) known).getEngagementRate() != rate) {
+                ((Influencer) known).setEngagementRate(rate); // Sent again after a reconnect
+            }
+            return;
+        }
+        if (kind == ReplicationProtocol.INFLUENCER) {
+            Influencer inf = new Influencer(username, "", detail.isEmpty() ? null : detail, rate);
+            UserDirectory.register(inf);
+            users.put(id, inf);
+            onInfluencer.accept(inf);
+        } else {
+            BrandManager brand = new BrandManager(username, "", detail, 0);
+            UserDirectory.register(brand);
+            users.put(id, brand);
+        }
+    }
+
+    /**
+     * Returns what the follower is doing.
+     *
+     * @return {@code "connected"}, or a description of why it is not.
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Returns the number of rows applied.
+     *
+     * @return The applied rows.
+     */
+    public int getAppliedRows() {
+        return log.size();
+    }
+
+    /**
+     * Returns the number of rows the leader had when it last sent a frame.
+     *
+     * @return The leader's rows.
+     */
+    public int getLeaderRows() {
+        return leaderRows;
+    }
+
+    /**
+     * Returns how far behind the leader reads on this follower are: every
+     * contract the leader had this long ago has been applied.
+     *
+     * @return The lag, in milliseconds, or {@code -1} before the first frame.
+     */
+    public long getLagMillis() {
+        long caughtUp = caughtUpMillis;
+        return caughtUp == 0 ? -1 : Math.max(System.currentTimeMillis() - caughtUp, 0);
+    }
+
+    /**
+     * Stops following the leader.
+     *
+     * @throws IOException If the connection cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Socket s = socket;
+        if (s != null) {
+            s.close();
+        }
+    }
+}
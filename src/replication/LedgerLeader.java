@@ -0,0 +1,350 @@
+package replication;
+
+import contracts.ContractLog;
+import entities.BrandManager;
+import entities.Influencer;
+import entities.User;
+import entities.UserDirectory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ships the rows of a {@link ContractLog} to {@link LedgerFollower}s on the same host.
+ *
+ * <p>Each follower connection gets its own shipping thread, which sends
+ * rows in batches as soon as they are appended and never waits for an
+ * acknowledgement unless the follower falls {@value ReplicationProtocol#MAX_UNACKED_ROWS}
+ * rows behind. Writers appending to the log are never blocked by
+ * replication. Every registered influencer and brand manager is sent too,
+ * so followers see influencers that have no contracts yet; the users a row
+ * names travel no later than the batch that needs them. Changes to an
+ * influencer's engagement rate are read from the {@link UserDirectory}'s
+ * journal of profile changes and sent as they happen.</p>
+ *
+ * <p>Every leader picks a random epoch when it is created. A follower that
+ * reconnects to the same leader resumes from the rows it already has; one
+ * whose epoch no longer matches was following an earlier leader and has to
+ * be restarted.</p>
+ */
+public class LedgerLeader implements Closeable {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1); // Pause when no rows are waiting
+
+    private final ContractLog log; // The replicated contracts
+    private final ServerSocket server; // Accepts followers on the loopback interface
+    private final long epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE); // Identifies this leader to followers
+    private final CopyOnWriteArrayList<Link> links = new CopyOnWriteArrayList<>(); // Connected followers
+    private volatile boolean closed = false; // Set by close()
+
+    /**
+     * The replication state of one follower, as seen by the leader.
+     */
+    public static final class FollowerStatus {
+        final String address; // Address of the follower's connection
+        final int ackedRows; // Rows the follower has applied
+        final int lagRows; // Rows the follower has not applied yet
+        final long lagMillis; // Age of the newest leader state the follower has fully applied, or -1 if unknown
+
+        FollowerStatus(String address, int ackedRows, int lagRows, long lagMillis) {
+            this.address = address;
+            this.ackedRows = ackedRows;
+            this.lagRows = lagRows;
+            this.lagMillis = lagMillis;
+        }
+
+        /**
+         * Returns the address of the follower's connection.
+         *
+         * @return The address.
+         */
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * Returns the number of rows the follower has applied.
+         *
+         * @return The applied rows.
+         */
+        public int getAckedRows() {
+            return ackedRows;
+        }
+
+        /**
+         * Returns the number of rows the follower has not applied yet.
+         *
+         * @return The lag in rows.
+         */
+        public int getLagRows() {
+            return lagRows;
+        }
+
+        /**
+         * Returns how far behind the leader the follower's reads are.
+         *
+         * @return The lag, in milliseconds, or {@code -1} if the follower has not caught up since it connected.
+         */
+        public long getLagMillis() {
+            return lagMillis;
+        }
+    }
+
+    /**
+     * One follower connection.
+     */
+    private final class Link {
+        final Socket socket; // The connection
+        final DataOutputStream out; // Frames to the follower
+        final DataInputStream in; // Acknowledgements from the follower
+        final BitSet sentUsers = new BitSet(); // Directory ids of the users this follower was sent
+        int registered; // Directory ids below this were sent or are not replicated
+        int changes; // Profile changes before this position in the directory's journal are sent
+        volatile int ackedRows; // Rows the follower has applied
+        volatile long caughtUpMillis; // Leader time up to which the follower has every row, or 0 if it never caught up
+
+        Link(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 << 10));
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+
+        /**
+         * Sends the handshake, then ships rows until the connection or the leader is closed.
+         */
+        void ship() {
+            try {
+                long followerEpoch = in.readLong();
+                int from = in.readInt();
+                out.writeLong(epoch);
+                out.flush();
+                if (followerEpoch != 0 && followerEpoch != epoch || from > log.size()) {
+                    return; // The follower has rows this leader never wrote
+                }
+                ackedRows = from;
+                changes = UserDirectory.changeCount(); // Users not yet sent carry their current profile anyway
+                Thread acks = new Thread(this::readAcks, "ledger-acks-" + socket.getPort());
+                acks.setDaemon(true);
+                acks.start();
+
+                int sent = from;
+                long lastFrame = System.nanoTime();
+                while (!closed) {
+                    int size = log.size();
+                    boolean rowsWaiting = size > sent && sent - ackedRows < ReplicationProtocol.MAX_UNACKED_ROWS;
+                    if (rowsWaiting || registered < UserDirectory.size() || changes < UserDirectory.changeCount()) {
+                        int n = rowsWaiting ? Math.min(size - sent, ReplicationProtocol.BATCH_ROWS) : 0;
+                        writeBatch(sent, n, size);
+                        sent += n;
+                        lastFrame = System.nanoTime();
+                    } else if (System.nanoTime() - lastFrame >= TimeUnit.MILLISECONDS.toNanos(ReplicationProtocol.HEARTBEAT_MILLIS)) {
+                        out.writeByte(ReplicationProtocol.HEARTBEAT);
+                        out.writeLong(System.currentTimeMillis());
+                        out.writeInt(size);
+                        out.flush();
+                        lastFrame = System.nanoTime();
+                    } else {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                }
+            } catch (IOException e) {
+                // The follower went away; it reconnects and resumes
+            } finally {
+                links.remove(this);
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+
+        /**
+         * Sends one batch of rows, preceded by the users they name that this
+         * follower has not seen, some newly registered users and the profile
+         * changes of users it has seen.
+         *
+         * @param first The first row to send.
+         * @param n The number of rows, possibly none.
+         * @param size The leader's row count.
+         * @throws IOException If the connection fails.
+         */
+        private void writeBatch(int first, int n, int size) throws IOException {
+            List<User> users = new ArrayList<>();
+            for (int row = first; row < first + n; row++) {
+                newUser(log.influencerId(row), users);
+                newUser(log.brandId(row), users);
+            }
+            for (int end = Math.min(UserDirectory.size(), registered + ReplicationProtocol.BATCH_ROWS); registered < end; registered++) {
+                User u = UserDirectory.get(registered);
+                if (u instanceof Influencer || u instanceof BrandManager) {
+                    newUser(registered, users);
+                }
+            }
+            List<Influencer> updated = new ArrayList<>();
+            for (int end = Math.min(UserDirectory.changeCount(), changes + ReplicationProtocol.BATCH_ROWS); changes < end; changes++) {
+                int id = UserDirectory.changedUser(changes);
+                if (sentUsers.get(id) && UserDirectory.get(id) instanceof Influencer) {
+                    updated.add((Influencer) UserDirectory.get(id)); // Unsent users carry their current rate
+                }
+            }
+            out.writeByte(ReplicationProtocol.BATCH);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(size);
+            out.writeInt(users.size());
+            for (User u : users) {
+                out.writeInt(u.getId());
+                if (u instanceof Influencer) {
+                    Influencer inf = (Influencer) u;
+                    out.writeByte(ReplicationProtocol.INFLUENCER);
+                    out.writeUTF(u.username);
+                    out.writeUTF(inf.getNiche() == null ? "" : inf.getNiche());
+                    out.writeDouble(inf.getEngagementRate());
+                } else {
+                    out.writeByte(ReplicationProtocol.BRAND);
+                    out.writeUTF(u.username);
+                    out.writeUTF(((BrandManager) u).getBrandName());
+                }
+            }
+            out.writeInt(updated.size());
+            for (Influencer inf : updated) {
+                out.writeInt(inf.getId());
+                out.writeDouble(inf.getEngagementRate());
+            }
+            out.writeInt(first);
+            out.writeInt(n);
+            for (int row = first; row < first + n; row++) {
+                out.writeInt(log.influencerId(row));
+                out.writeInt(log.brandId(row));
+                out.writeLong(log.amountCents(row));
+                out.writeLong(log.startMillis(row));
+            }
+            out.flush();
+        }
+
+        /**
+         * Adds a user to the list if this follower has not been sent it yet.
+         *
+         * @param id The directory id of the user.
+         * @param users The users to send with the batch.
+         */
+        private void newUser(int id, List<User> users) {
+            if (!sentUsers.get(id)) {
+                sentUsers.set(id);
+                users.add(UserDirectory.get(id));
+            }
+        }
+
+        /**
+         * Records the follower's acknowledgements until the connection closes.
+         */
+        private void readAcks() {
+            try {
+                while (true) {
+                    int applied = in.readInt();
+                    long caughtUp = in.readLong();
+                    if (caughtUp != 0) {
+                        caughtUpMillis = caughtUp;
+                    }
+                    ackedRows = applied;
+                }
+            } catch (IOException e) {
+                try {
+                    socket.close(); // Stops the shipping thread too
+                } catch (IOException ignored) {
+                    // Already closed
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructs a new {@code LedgerLeader} listening on a loopback port.
+     *
+     * @param log The contracts to replicate.
+     * @param port The port to listen on, or {@code 0} for any free port.
+     * @throws IOException If the port cannot be opened.
+     */
+    public LedgerLeader(ContractLog log, int port) throws IOException {
+        this.log = log;
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Starts accepting followers on a background thread.
+     */
+    public void start() {
+        Thread acceptor = new Thread(() -> {
+            while (!closed) {
+                try {
+                    Link link = new Link(server.accept());
+                    links.add(link);
+                    Thread t = new Thread(link::ship, "ledger-ship-" + link.socket.getPort());
+                    t.setDaemon(true);
+                    t.start();
+                } catch (IOException e) {
+                    if (closed) {
+                        return;
+                    }
+                }
+            }
+        }, "ledger-leader");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port followers connect to.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Returns the replication state of every connected follower.
+     *
+     * @return One status per follower.
+     */
+    public List<FollowerStatus> followers() {
+        List<FollowerStatus> result = new ArrayList<>();
+        int size = log.size();
+        long now = System.currentTimeMillis();
+        for (Link link : links) {
+            int acked = link.ackedRows;
+            long caughtUp = link.caughtUpMillis;
+            long lag = acked >= size ? 0 : caughtUp == 0 ? -1 : Math.max(now - caughtUp, 0);
+            result.add(new FollowerStatus(link.socket.getRemoteSocketAddress().toString(), acked,
+                    Math.max(size - acked, 0), lag));
+        }
+        return result;
+    }
+
+    /**
+     * Stops accepting followers and disconnects the connected ones.
+     *
+     * @throws IOException If the server socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (Link link : links) {
+            link.socket.close();
+        }
+    }
+}
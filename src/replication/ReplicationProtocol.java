@@ -0,0 +1,31 @@
+package replication;
+
+/**
+ * Constants shared by {@link LedgerLeader} and {@link LedgerFollower}.
+ *
+ * <p>A follower opens the connection with its leader epoch ({@code 0} if it
+ * has none) and the number of rows it holds. The leader answers with its
+ * epoch and then sends frames without waiting for acknowledgements: a
+ * {@link #BATCH} of consecutive rows, possibly none, preceded by users the
+ * follower has not been sent yet and by the current engagement rates of sent
+ * influencers whose profile changed, or a {@link #HEARTBEAT} when there is
+ * nothing new. Every registered influencer and brand manager is sent, not
+ * only those named by rows; the users rows name are always sent first. Every frame carries the leader's clock and row count at the
+ * time it was sent. After applying each frame the follower acknowledges with
+ * its row count and the leader time up to which it has every row.</p>
+ */
+final class ReplicationProtocol {
+    static final byte BATCH = 1; // sent millis, leader rows, users, profile updates, first row, rows
+    static final byte HEARTBEAT = 2; // sent millis, leader rows
+
+    static final byte INFLUENCER = 1; // A user record for an influencer: niche and engagement rate follow
+    static final byte BRAND = 2; // A user record for a brand manager: brand name follows
+    // A profile update is the influencer's directory id followed by its engagement rate
+
+    static final int BATCH_ROWS = 8192; // Most rows, registry users or profile updates sent in one frame
+    static final int MAX_UNACKED_ROWS = 256 << 10; // Rows a leader sends ahead of a follower's acknowledgements
+    static final long HEARTBEAT_MILLIS = 50; // Longest silence before the leader sends a heartbeat
+
+    private ReplicationProtocol() {
+    }
+}
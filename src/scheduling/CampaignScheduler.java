@@ -0,0 +1,602 @@
+package scheduling;
+
+import auth.PaymentFailedException;
+import entities.Influencer;
+import entities.User;
+import entities.UserDirectory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import platforms.Platform;
+import platforms.PlatformRegistry;
+
+/**
+ * Launches campaigns at future times, once or on a fixed cadence.
+ *
+ * <p>Pending campaigns sit in a hierarchical timer wheel of {@value #LEVELS}
+ * levels with {@value #WHEEL_SIZE} slots each. A tick is
+ * {@value #TICK_MILLIS} ms, so the levels cover about 25 seconds, 2 hours,
+ * 19 days and 13 years; campaigns further out wait in an overflow list. Each
+ * slot is a doubly linked list, so scheduling and cancelling are O(1)
+ * whatever the number of pending campaigns. When a lower level wraps
+ * around, the next slot of the level above is cascaded down, so each campaign
+ * is moved at most once per level before it is due.</p>
+ *
+ * <p>A background thread advances the wheel every tick. It gathers every
+ * campaign that has come due into one batch, updates the wheel and the
+ * journal under the lock, then launches and tracks the batch outside it.
+ * Campaigns are never launched early and at most one tick late; a
+ * recurring campaign that missed occurrences, for example while the
+ * application was stopped, runs once and continues from its next future
+ * occurrence.</p>
+ *
+ * <p>Pending schedules are kept in an append-only binary journal. It is
+ * replayed and compacted on start-up, and compacted again once it holds more
+ * obsolete records than live ones. A partly written last record, left by a
+ * crash, is ignored.</p>
+ */
+public class CampaignScheduler {
+    private static final long TICK_MILLIS = 100; // Resolution of the wheel
+    private static final int WHEEL_BITS = 8; // log2 of the slots per level
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS; // Slots per level
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1; // Mask of a slot index
+    private static final int LEVELS = 4; // Levels of the wheel
+    private static final int MIN_COMPACT_RECORDS = 100_000; // Obsolete records tolerated before compacting
+
+    private static final byte RECORD_SCHEDULED = 'S'; // Journal record of a new schedule
+    private static final byte RECORD_RESCHEDULED = 'R'; // Journal record of a recurring campaign's next occurrence
+    private static final byte RECORD_REMOVED = 'X'; // Journal record of a cancelled or finished schedule
+
+    private final ScheduledCampaign[][] wheels = new ScheduledCampaign[LEVELS][WHEEL_SIZE]; // Slot list heads
+    private final ScheduledCampaign overflow = new ScheduledCampaign(); // Campaigns beyond the top level
+    private final HashMap<Long, ScheduledCampaign> pending = new HashMap<>(); // Pending campaigns by id
+    private long tick; // Next tick to process
+    private long nextId = 1; // Id of the next schedule
+    private final File journalFile; // Where pending schedules are persisted
+    private DataOutputStream journal; // Appends to the journal file
+    private long obsoleteRecords = 0; // Journal records no longer needed to rebuild the pending set
+    private final LongAdder launched = new LongAdder(); // Campaigns launched since start
+    private final LongAdder failed = new LongAdder(); // Activations that could not launch
+    private volatile Thread ticker; // Background thread, while started
+
+    /**
+     * A campaign waiting to be launched.
+     */
+    public static final class ScheduledCampaign {
+        long id; // Schedule id
+        String influencer; // Username of the influencer
+        String campaign; // Name of the campaign
+        long budgetCents; // Budget of each launch, in cents
+        String platform; // Name of the platform, or empty for none
+        long dueMillis; // Next launch time, in epoch milliseconds
+        long intervalMillis; // Time between launches, or 0 for a single launch
+        ScheduledCampaign prev = this; // Previous entry in the slot list
+        ScheduledCampaign next = this; // Next entry in the slot list
+
+        /**
+         * Returns the id of the schedule.
+         *
+         * @return The id, as used by {@link CampaignScheduler#cancel(long)}.
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Returns the username of the influencer.
+         *
+         * @return The influencer's username.
+         */
+        public String getInfluencer() {
+            return influencer;
+        }
+
+        /**
+         * Returns the name of the campaign.
+         *
+         * @return The campaign name.
+         */
+        public String getCampaign() {
+            return campaign;
+        }
+
+        /**
+         * Returns the budget of each launch.
+         *
+         * @return The budget, in cents.
+         */
+        public long getBudgetCents() {
+            return budgetCents;
+        }
+
+        /**
+         * Returns the name of the platform.
+         *
+         * @return The platform name, or an empty string if the campaign has no platform.
+         */
+        public String getPlatform() {
+            return platform;
+        }
+
+        /**
+         * Returns the next launch time.
+         *
+         * @return The time, in epoch milliseconds.
+         */
+        public long getDueMillis() {
+            return dueMillis;
+        }
+
+        /**
+         * Returns the time between launches.
+         *
+         * @return The interval in milliseconds, or {@code 0} if the campaign launches once.
+         */
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        /**
+         * Returns the tick the campaign is due at, rounded up so it never runs early.
+         *
+         * @return The due tick.
+         */
+        long dueTick() {
+            return Math.floorDiv(dueMillis + TICK_MILLIS - 1, TICK_MILLIS);
+        }
+    }
+
+    /**
+     * Constructs a new {@code CampaignScheduler}, restoring the pending
+     * schedules from the journal if it exists. The scheduler does not launch
+     * anything until {@link #start()} is called.
+     *
+     * @param journalFile The journal file.
+     * @throws IOException If the journal cannot be read or rewritten.
+     */
+    public CampaignScheduler(File journalFile) throws IOException {
+        this.journalFile = journalFile;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheels[level][slot] = new ScheduledCampaign(); // Sentinel of an empty circular list
+            }
+        }
+        tick = System.currentTimeMillis() / TICK_MILLIS;
+        synchronized (this) {
+            for (ScheduledCampaign entry : replay()) {
+                pending.put(entry.id, entry);
+                link(entry);
+            }
+            compact();
+        }
+    }
+
+    /**
+     * Starts the background thread that launches campaigns as they come due.
+     */
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        Thread t = new Thread(() -> {
+            while (ticker == Thread.currentThread()) {
+                runDue(System.currentTimeMillis());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS));
+            }
+        }, "campaign-scheduler");
+        t.setDaemon(true);
+        ticker = t;
+        t.start();
+    }
+
+    /**
+     * Stops the background thread and closes the journal. Pending schedules
+     * stay in the journal for the next start.
+     */
+    public synchronized void stop() {
+        Thread t = ticker;
+        ticker = null;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not close the schedule journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Schedules a campaign.
+     *
+     * @param influencer The username of the influencer launching the campaign.
+     * @param campaign The name of the campaign.
+     * @param budgetCents The budget of each launch, in cents.
+     * @param platform The platform of the campaign, or {@code null} for none.
+     * @param startMillis The first launch time, in epoch milliseconds; past times launch on the next tick.
+     * @param intervalMillis The time between launches, or {@code 0} to launch once.
+     * @return The id of the schedule.
+     * @throws IOException If the schedule cannot be written to the journal.
+     * @throws IllegalArgumentException If the interval is negative or the budget is not positive.
+     */
+    public synchronized long schedule(String influencer, String campaign, long budgetCents, Platform platform,
+            long startMillis, long intervalMillis) throws IOException {
+        if (intervalMillis < 0 || budgetCents <= 0) {
+            throw new IllegalArgumentException("Interval must not be negative and budget must be positive");
+        }
+        ScheduledCampaign entry = new ScheduledCampaign();
+        entry.id = nextId++;
+        entry.influencer = influencer;
+        entry.campaign = campaign;
+        entry.budgetCents = budgetCents;
+        entry.platform = platform == null ? "" : platform.getName();
+        entry.dueMillis = startMillis;
+        entry.intervalMillis = intervalMillis;
+        writeScheduled(journal(), entry);
+        journal.flush();
+        pending.put(entry.id, entry);
+        link(entry);
+        return entry.id;
+    }
+
+    /**
+     * Cancels a pending campaign. A recurring campaign stops launching.
+     *
+     * @param id The id of the schedule.
+     * @return {@code true} if the schedule was pending.
+     * @throws IOException If the cancellation cannot be written to the journal.
+     */
+    public synchronized boolean cancel(long id) throws IOException {
+        ScheduledCampaign entry = pending.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        journal().writeByte(RECORD_REMOVED);
+        journal.writeLong(id);
+        journal.flush();
+        obsoleteRecords += 2;
+        maybeCompact();
+        return true;
+    }
+
+    /**
+     * Returns the pending campaigns of one influencer. This scans every
+     * pending schedule.
+     *
+     * @param influencer The username of the influencer.
+     * @return The influencer's pending campaigns, soonest first.
+     */
+    public synchronized List<ScheduledCampaign> pendingFor(String influencer) {
+        List<ScheduledCampaign> result = new ArrayList<>();
+        for (ScheduledCampaign entry : pending.values()) {
+            if (entry.influencer.equals(influencer)) {
+                result.add(entry);
+            }
+        }
+        result.sort((a, b) -> Long.compare(a.dueMillis, b.dueMillis));
+        return result;
+    }
+
+    /**
+     * Returns the number of pending campaigns.
+     *
+     * @return The number of pending schedules.
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of campaigns launched by the scheduler.
+     *
+     * @return The number of successful launches since start.
+     */
+    public long getLaunchedCount() {
+        return launched.sum();
+    }
+
+    /**
+     * Returns the number of activations that could not launch, for example
+     * because the influencer's balance was too low.
+     *
+     * @return The number of failed activations since start.
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Launches every campaign due at or before a time. Called by the
+     * background thread every tick; may also be called directly.
+     *
+     * @param nowMillis The current time, in epoch milliseconds.
+     * @return The number of campaigns activated.
+     */
+    public int runDue(long nowMillis) {
+        List<ScheduledCampaign> batch = new ArrayList<>();
+        List<Long> dueTimes = new ArrayList<>();
+        synchronized (this) {
+            long target = nowMillis / TICK_MILLIS;
+            while (tick <= target) {
+                expire(batch);
+                tick++;
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            try {
+                DataOutputStream out = journal();
+                for (ScheduledCampaign entry : batch) {
+                    dueTimes.add(entry.dueMillis);
+                    if (entry.intervalMillis > 0) {
+                        long next = entry.dueMillis + entry.intervalMillis;
+                        if (next <= nowMillis) {
+                            next += ((nowMillis - next) / entry.intervalMillis + 1) * entry.intervalMillis; // Skip missed occurrences
+                        }
+                        entry.dueMillis = next;
+                        link(entry);
+                        out.writeByte(RECORD_RESCHEDULED);
+                        out.writeLong(entry.id);
+                        out.writeLong(next);
+                    } else {
+                        pending.remove(entry.id);
+                        out.writeByte(RECORD_REMOVED);
+                        out.writeLong(entry.id);
+                    }
+                    obsoleteRecords++;
+                }
+                out.flush();
+                maybeCompact();
+            } catch (IOException e) {
+                System.err.println("Could not update the schedule journal: " + e.getMessage());
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            activate(batch.get(i), dueTimes.get(i));
+        }
+        return batch.size();
+    }
+
+    /**
+     * Launches and tracks one campaign.
+     *
+     * @param entry The schedule.
+     * @param dueMillis The time the launch was due.
+     */
+    private void activate(ScheduledCampaign entry, long dueMillis) {
+        User user = UserDirectory.find(entry.influencer);
+        if (!(user instanceof Influencer)) {
+            failed.increment();
+            System.err.println("Scheduled campaign " + entry.campaign + " skipped: unknown influencer " + entry.influencer);
+            return;
+        }
+        Platform platform = entry.platform.isEmpty() ? null : PlatformRegistry.find(entry.platform);
+        try {
+            ((Influencer) user).launchCampaign(entry.campaign, entry.budgetCents, platform, new Date(dueMillis));
+            launched.increment();
+            if (platform != null) {
+                platform.trackCampaign(entry.influencer);
+            }
+        } catch (PaymentFailedException | RuntimeException e) {
+            failed.increment();
+            System.err.println("Scheduled campaign " + entry.campaign + " for " + entry.influencer + " not launched: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Processes the current tick: cascades the levels that wrap around and
+     * moves the entries of the current level-0 slot to the batch.
+     *
+     * @param batch The campaigns due, added to in place.
+     */
+    private void expire(List<ScheduledCampaign> batch) {
+        int wrapped = 0; // Highest level whose slot index wraps to zero at this tick
+        while (wrapped < LEVELS - 1 && ((tick >>> (WHEEL_BITS * wrapped)) & WHEEL_MASK) == 0) {
+            wrapped++;
+        }
+        if (wrapped == LEVELS - 1 && ((tick >>> (WHEEL_BITS * wrapped)) & WHEEL_MASK) == 0) {
+            relink(overflow); // The whole wheel has turned; bring far-future campaigns closer
+        }
+        for (int level = wrapped; level >= 1; level--) {
+            relink(wheels[level][(int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK)]);
+        }
+        ScheduledCampaign head = wheels[0][(int) (tick & WHEEL_MASK)];
+        for (ScheduledCampaign e = head.next; e != head; ) {
+            ScheduledCampaign next = e.next;
+            e.prev = e;
+            e.next = e;
+            batch.add(e);
+            e = next;
+        }
+        head.prev = head;
+        head.next = head;
+    }
+
+    /**
+     * Empties a slot list and links each of its entries again, which moves it
+     * to a lower level.
+     *
+     * @param head The sentinel of the slot.
+     */
+    private void relink(ScheduledCampaign head) {
+        ScheduledCampaign e = head.next;
+        head.prev = head;
+        head.next = head;
+        while (e != head) {
+            ScheduledCampaign next = e.next;
+            link(e);
+            e = next;
+        }
+    }
+
+    /**
+     * Adds an entry to the slot for its due tick.
+     *
+     * @param e The entry, not currently linked.
+     */
+    private void link(ScheduledCampaign e) {
+        long due = Math.max(e.dueTick(), tick);
+        long delta = due - tick;
+        ScheduledCampaign head = overflow;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (WHEEL_BITS * (level + 1))) {
+                head = wheels[level][(int) ((due >>> (WHEEL_BITS * level)) & WHEEL_MASK)];
+                break;
+            }
+        }
+        e.prev = head.prev;
+        e.next = head;
+        head.prev.next = e;
+        head.prev = e;
+    }
+
+    /**
+     * Removes an entry from its slot.
+     *
+     * @param e The entry.
+     */
+    private static void unlink(ScheduledCampaign e) {
+        e.prev.next = e.next;
+        e.next.prev = e.prev;
+        e.prev = e;
+        e.next = e;
+    }
+
+    /**
+     * Returns the journal stream, opening it for appending if needed.
+     *
+     * @return The journal stream.
+     * @throws IOException If the journal cannot be opened.
+     */
+    private DataOutputStream journal() throws IOException {
+        if (journal == null) {
+            journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true), 1 << 16));
+        }
+        return journal;
+    }
+
+    /**
+     * Writes a full schedule record.
+     *
+     * @param out The journal stream.
+     * @param entry The schedule.
+     * @throws IOException If the write fails.
+     */
+    private static void writeScheduled(DataOutputStream out, ScheduledCampaign entry) throws IOException {
+        out.writeByte(RECORD_SCHEDULED);
+        out.writeLong(entry.id);
+        out.writeUTF(entry.influencer);
+        out.writeUTF(entry.campaign);
+        out.writeLong(entry.budgetCents);
+        out.writeUTF(entry.platform);
+        out.writeLong(entry.dueMillis);
+        out.writeLong(entry.intervalMillis);
+    }
+
+    /**
+     * Reads the journal and rebuilds the pending schedules.
+     *
+     * @return The pending schedules, in the order they were created.
+     * @throws IOException If the journal exists but cannot be read.
+     */
+    private Collection<ScheduledCampaign> replay() throws IOException {
+        LinkedHashMap<Long, ScheduledCampaign> live = new LinkedHashMap<>();
+        if (!journalFile.exists()) {
+            return live.values();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile), 1 << 16))) {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break; // Clean end of the journal
+                }
+                try {
+                    if (type == RECORD_SCHEDULED) {
+                        ScheduledCampaign entry = new ScheduledCampaign();
+                        entry.id = in.readLong();
+                        entry.influencer = in.readUTF();
+                        entry.campaign = in.readUTF();
+                        entry.budgetCents = in.readLong();
+                        entry.platform = in.readUTF();
+                        entry.dueMillis = in.readLong();
+                        entry.intervalMillis = in.readLong();
+                        live.put(entry.id, entry);
+                        nextId = Math.max(nextId, entry.id + 1);
+                    } else if (type == RECORD_RESCHEDULED) {
+                        long id = in.readLong();
+                        long due = in.readLong();
+                        ScheduledCampaign entry = live.get(id);
+                        if (entry != null) {
+                            entry.dueMillis = due;
+                        }
+                    } else if (type == RECORD_REMOVED) {
+                        live.remove(in.readLong());
+                    } else {
+                        System.err.println("Schedule journal " + journalFile + " is corrupt; ignoring the rest");
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break; // Last record was cut short, for example by a crash
+                }
+            }
+        }
+        return live.values();
+    }
+
+    /**
+     * Compacts the journal once it holds more obsolete records than pending schedules.
+     *
+     * @throws IOException If the journal cannot be rewritten.
+     */
+    private void maybeCompact() throws IOException {
+        if (obsoleteRecords > Math.max(MIN_COMPACT_RECORDS, pending.size())) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the journal with one record per pending schedule and
+     * atomically replaces the old file.
+     *
+     * @throws IOException If the journal cannot be rewritten.
+     */
+    private void compact() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        File parent = journalFile.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile("schedules", ".tmp", parent);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            for (ScheduledCampaign entry : pending.values()) {
+                writeScheduled(out, entry);
+            }
+        }
+        Files.move(tmp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        obsoleteRecords = 0;
+    }
+}
@@ -0,0 +1,386 @@
+package search;
+
+import entities.Influencer;
+import entities.UserDirectory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A search index over influencer usernames and niches.
+ *
+ * <p>Usernames and niches are each held in a character trie, so a prefix
+ * query only walks the nodes under the typed prefix. Usernames are also broken
+ * into character trigrams, which lets a misspelt query still find the
+ * influencer by the share of trigrams it has in common with the username.
+ * Results are ranked and returned a page at a time.</p>
+ *
+ * <p>Any number of searches can run at once; adding an influencer briefly
+ * excludes them.</p>
+ */
+public class InfluencerSearchIndex {
+    private static final int MAX_PREFIX_CANDIDATES = 512; // Influencers collected per prefix before ranking
+    private static final double MIN_SIMILARITY = 0.3; // Lowest trigram similarity reported as a fuzzy match
+    private static final int MAX_TRIGRAM_POSTINGS = 1024; // Trigrams shared by more usernames are too common to help
+
+    private final TrieNode usernames = new TrieNode(); // Trie of lower-case usernames
+    private final TrieNode niches = new TrieNode(); // Trie of lower-case niches
+    private final HashMap<Long, IntList> trigrams = new HashMap<>(); // Username trigram to influencer ids
+    private final HashMap<Integer, String> keys = new HashMap<>(); // Influencer id to lower-case username
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Guards every structure above
+
+    /**
+     * A ranked search result.
+     */
+    public static final class Match {
+        final int influencerId; // Directory id of the matching influencer
+        final double score; // Relevance, higher is better
+
+        /**
+         * Constructs a new {@code Match}.
+         *
+         * @param influencerId The directory id of the influencer.
+         * @param score The relevance of the match.
+         */
+        Match(int influencerId, double score) {
+            this.influencerId = influencerId;
+            this.score = score;
+        }
+
+        /**
+         * Returns the directory id of the matching influencer.
+         *
+         * @return The influencer's id.
+         */
+        public int getInfluencerId() {
+            return influencerId;
+        }
+
+        /**
+         * Returns the influencer matched.
+         *
+         * @return The {@link Influencer}.
+         */
+        public Influencer getInfluencer() {
+            return (Influencer) UserDirectory.get(influencerId);
+        }
+
+        /**
+         * Returns the relevance of the match.
+         *
+         * @return The score; exact username matches score highest.
+         */
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * A node of a character trie. Children are kept in parallel arrays sorted
+     * by character.
+     */
+    private static final class TrieNode {
+        char[] chars = new char[0]; // Sorted characters of the child edges
+        TrieNode[] children = new TrieNode[0]; // Child nodes, parallel to chars
+        IntList ids; // Influencers whose key ends at this node
+
+        /**
+         * Returns the child for a character, optionally creating it.
+         *
+         * @param c The character of the edge.
+         * @param create Whether to add the child if it does not exist.
+         * @return The child, or {@code null} if it does not exist and {@code create} is false.
+         */
+        TrieNode child(char c, boolean create) {
+            int i = Arrays.binarySearch(chars, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            if (!create) {
+                return null;
+            }
+            int at = -i - 1;
+            char[] nc = new char[chars.length + 1];
+            TrieNode[] nn = new TrieNode[children.length + 1];
+            System.arraycopy(chars, 0, nc, 0, at);
+            System.arraycopy(children, 0, nn, 0, at);
+            nc[at] = c;
+            nn[at] = new TrieNode();
+            System.arraycopy(chars, at, nc, at + 1, chars.length - at);
+            System.arraycopy(children, at, nn, at + 1, children.length - at);
+            chars = nc;
+            children = nn;
+            return nn[at];
+        }
+    }
+
+    /**
+     * A growable list of {@code int} ids.
+     */
+    private static final class IntList {
+        int[] values = new int[2]; // Backing array
+        int size = 0; // Number of values in use
+
+        /**
+         * Appends a value.
+         *
+         * @param v The value to append.
+         */
+        void add(int v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+    }
+
+    /**
+     * Adds an influencer to the index, registering it with the {@link UserDirectory} if needed.
+     *
+     * @param influencer The influencer to add.
+     */
+    public void add(Influencer influencer) {
+        int id = UserDirectory.register(influencer);
+        String name = normalise(influencer.username);
+        lock.writeLock().lock();
+        try {
+            if (keys.putIfAbsent(id, name) != null) {
+                return; // Already indexed
+            }
+            insert(usernames, name, id);
+            if (influencer.getNiche() != null) {
+                insert(niches, normalise(influencer.getNiche()), id);
+            }
+            for (long t : trigramsOf(name)) {
+                trigrams.computeIfAbsent(t, k -> new IntList()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of influencers in the index.
+     *
+     * @return The number of indexed influencers.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return keys.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches for influencers whose username or niche matches the query.
+     *
+     * <p>Matches are ranked as follows: an exact username, then usernames
+     * starting with the query (shorter first), then influencers whose niche
+     * starts with the query, then usernames that are similar by trigrams. Ties
+     * are broken by engagement rate. When a prefix matches more influencers than
+     * {@link #MAX_PREFIX_CANDIDATES}, only the first ones in key order are
+     * ranked; typing a longer prefix narrows the result. An empty query lists
+     * everyone in username order without ranking.</p>
+     *
+     * @param query The text typed by the user.
+     * @param page The zero-based page number.
+     * @param pageSize The number of matches per page.
+     * @return The matches on the requested page, best first.
+     */
+    public List<Match> search(String query, int page, int pageSize) {
+        String q = normalise(query);
+        HashMap<Integer, Double> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            if (q.isEmpty()) {
+                // An empty query lists everyone by username; only the requested page is walked
+                IntList ids = collect(usernames, q, (long) page * pageSize, pageSize);
+                List<Match> result = new ArrayList<>(ids.size);
+                for (int i = 0; i < ids.size; i++) {
+                    result.add(new Match(ids.values[i], 0.0));
+                }
+                return result;
+            }
+            IntList prefixed = collect(usernames, q, 0, MAX_PREFIX_CANDIDATES);
+            for (int i = 0; i < prefixed.size; i++) {
+                int id = prefixed.values[i];
+                int extra = keys.get(id).length() - q.length();
+                scores.merge(id, extra == 0 ? 100.0 : 90.0 - Math.min(extra, 30), Math::max);
+            }
+            IntList byNiche = collect(niches, q, 0, MAX_PREFIX_CANDIDATES);
+            for (int i = 0; i < byNiche.size; i++) {
+                scores.merge(byNiche.values[i], 50.0, Math::max);
+            }
+            if (scores.size() < (page + 1) * pageSize) {
+                fuzzy(q, scores); // Only fall back to fuzzy matching when prefixes do not fill the page
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Candidate> ranked = new ArrayList<>(scores.size());
+        for (Map.Entry<Integer, Double> e : scores.entrySet()) {
+            ranked.add(new Candidate(new Match(e.getKey(), e.getValue()))); // Looks the rate up once, not per comparison
+        }
+        ranked.sort((a, b) -> {
+            int c = Double.compare(b.match.score, a.match.score);
+            if (c == 0) {
+                c = Double.compare(b.engagementRate, a.engagementRate);
+            }
+            return c != 0 ? c : Integer.compare(a.match.influencerId, b.match.influencerId);
+        });
+        int from = Math.min(page * pageSize, ranked.size());
+        int to = Math.min(from + pageSize, ranked.size());
+        List<Match> result = new ArrayList<>(to - from);
+        for (Candidate c : ranked.subList(from, to)) {
+            result.add(c.match);
+        }
+        return result;
+    }
+
+    /**
+     * A match being ranked, with the engagement rate that breaks ties.
+     */
+    private static final class Candidate {
+        final Match match; // The match
+        final double engagementRate; // The influencer's engagement rate when the search ran
+
+        Candidate(Match match) {
+            this.match = match;
+            Influencer influencer = match.getInfluencer();
+            this.engagementRate = influencer == null ? 0 : influencer.getEngagementRate();
+        }
+    }
+
+    /**
+     * Scores usernames that share enough trigrams with the query.
+     *
+     * <p>The similarity is the Dice coefficient of the two distinct trigram sets, scaled
+     * to at most 40 so fuzzy matches rank below prefix matches. Trigrams that
+     * appear in very many usernames are skipped, which bounds the work per
+     * query; they would add little to the similarity anyway.</p>
+     *
+     * @param q The normalised query.
+     * @param scores The scores collected so far, updated in place.
+     */
+    private void fuzzy(String q, HashMap<Integer, Double> scores) {
+        long[] queryTrigrams = trigramsOf(q);
+        HashMap<Integer, Integer> shared = new HashMap<>();
+        for (long t : queryTrigrams) {
+            IntList ids = trigrams.get(t);
+            if (ids != null && ids.size <= MAX_TRIGRAM_POSTINGS) {
+                for (int i = 0; i < ids.size; i++) {
+                    shared.merge(ids.values[i], 1, Integer::sum);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Integer> e : shared.entrySet()) {
+            int nameTrigrams = trigramsOf(keys.get(e.getKey())).length;
+            double similarity = 2.0 * e.getValue() / (queryTrigrams.length + nameTrigrams);
+            if (similarity >= MIN_SIMILARITY) {
+                scores.merge(e.getKey(), 40.0 * similarity, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Adds a key to a trie.
+     *
+     * @param root The root of the trie.
+     * @param key The normalised key.
+     * @param id The influencer id to store at the end of the key.
+     */
+    private static void insert(TrieNode root, String key, int id) {
+        TrieNode node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.child(key.charAt(i), true);
+        }
+        if (node.ids == null) {
+            node.ids = new IntList();
+        }
+        node.ids.add(id);
+    }
+
+    /**
+     * Collects the ids stored under a prefix, in key order.
+     *
+     * <p>The subtree is walked depth first with an explicit stack, visiting a
+     * node's own ids before its children, so the walk stops as soon as enough
+     * ids are found regardless of how large the subtree is.</p>
+     *
+     * @param root The root of the trie.
+     * @param prefix The normalised prefix; empty for the whole trie.
+     * @param skip The number of ids to pass over first.
+     * @param limit The most ids to return.
+     * @return The ids found, in key order.
+     */
+    private static IntList collect(TrieNode root, String prefix, long skip, int limit) {
+        IntList result = new IntList();
+        TrieNode node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i), false);
+        }
+        if (node == null) {
+            return result;
+        }
+        ArrayDeque<TrieNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty() && result.size < limit) {
+            TrieNode n = stack.pop();
+            if (n.ids != null) {
+                int first = (int) Math.min(skip, n.ids.size);
+                skip -= first;
+                for (int i = first; i < n.ids.size && result.size < limit; i++) {
+                    result.add(n.ids.values[i]);
+                }
+            }
+            for (int c = n.children.length - 1; c >= 0; c--) {
+                stack.push(n.children[c]); // Pushed in reverse so the smallest character is visited first
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the distinct trigrams of a key, padded so that short keys still have some.
+     *
+     * <p>Each trigram is packed into a {@code long}, 16 bits per character.
+     * A trigram that occurs more than once, as in {@code "aaaa"}, is returned
+     * once, so it is posted and counted once and the similarity stays at most 1.</p>
+     *
+     * @param key The normalised key.
+     * @return The packed trigrams, sorted and without duplicates.
+     */
+    private static long[] trigramsOf(String key) {
+        String padded = "  " + key + " ";
+        long[] result = new long[padded.length() - 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    /**
+     * Normalises text for indexing and querying.
+     *
+     * @param text The text to normalise.
+     * @return The trimmed, lower-case text, or an empty string for {@code null}.
+     */
+    private static String normalise(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,652 @@
+package search;
+
+import analytics.Leaderboard;
+import entities.Influencer;
+import entities.UserDirectory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import metrics.Metrics;
+import util.SymbolDictionary;
+
+/**
+ * Finds the influencers most similar to a given one.
+ *
+ * <p>Each influencer is described by a sparse feature vector: engagement
+ * rate, lifetime earnings, niche, the regions it operates in and the share
+ * of its campaigns run on each platform. Similarity is the squared euclidean
+ * distance between vectors, so influencers in the same niche and regions,
+ * with a similar audience and platform mix, are nearest.</p>
+ *
+ * <p>The vectors are kept in an inverted file: once there are
+ * {@value #EXACT_LIMIT} influencers, k-means groups them into up to
+ * {@value #MAX_LISTS} lists around centroids, and a query only scans the
+ * {@value #PROBES} lists whose centroids are nearest to it. That makes the
+ * search approximate, trading a little recall for scanning a small fraction
+ * of the influencers. The lists are retrained whenever the index has doubled
+ * since the last training; new influencers are added to the nearest list in
+ * between.</p>
+ *
+ * <p>Vectors are captured when an influencer is added or the lists are
+ * retrained, so the lists may be slightly stale. The best candidates of the
+ * scan are therefore ranked again on their current features before they are
+ * returned.</p>
+ *
+ * <p>Any number of searches can run at once; adding an influencer briefly
+ * excludes them. Retraining runs on a background thread from a snapshot of
+ * the index while searches and additions carry on against the old lists,
+ * and the new lists are swapped in once they are built.</p>
+ */
+public class LookalikeIndex {
+    private static final int EXACT_LIMIT = 4096; // Influencers below which every query scans them all
+    private static final int MAX_LISTS = 256; // Most inverted lists
+    private static final int PROBES = 8; // Lists scanned per query
+    private static final int SAMPLE_PER_LIST = 64; // Vectors sampled per list to train the centroids
+    private static final int TRAINING_ROUNDS = 8; // k-means iterations per training
+    private static final int RERANK_FACTOR = 4; // Candidates ranked on current features, per influencer asked for
+
+    private static final int KIND_SHIFT = 24; // Feature codes are the kind above this bit and the dictionary id below
+    private static final int NUMERIC = 0; // Kind of the engagement and earnings features
+    private static final int NICHE = 1; // Kind of the niche feature
+    private static final int REGION = 2; // Kind of the region features
+    private static final int PLATFORM = 3; // Kind of the platform mix features
+    private static final int ENGAGEMENT = NUMERIC << KIND_SHIFT; // Feature code of the engagement rate
+    private static final int EARNINGS = NUMERIC << KIND_SHIFT | 1; // Feature code of the earnings
+
+    private final Random random = new Random(0x5EED); // Training samples, used by one retraining at a time; seeded so results are repeatable
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Guards every field below
+    private int[] members = new int[16]; // Directory ids of the indexed influencers
+    private int size = 0; // Number of indexed influencers
+    private int nextTraining = EXACT_LIMIT; // Size at which the lists are next retrained
+    private boolean training = false; // Whether a retraining is running on the trainer thread
+    private Model model = new Model(); // The centroids and lists searched; replaced whole by a retraining
+
+    /**
+     * A lookalike found for an influencer.
+     */
+    public static final class Match {
+        final int influencerId; // Directory id of the lookalike
+        final double distance; // Distance from the influencer asked about, lower is more similar
+
+        /**
+         * Constructs a new {@code Match}.
+         *
+         * @param influencerId The directory id of the lookalike.
+         * @param distance The distance from the influencer asked about.
+         */
+        Match(int influencerId, double distance) {
+            this.influencerId = influencerId;
+            this.distance = distance;
+        }
+
+        /**
+         * Returns the directory id of the lookalike.
+         *
+         * @return The influencer's id.
+         */
+        public int getInfluencerId() {
+            return influencerId;
+        }
+
+        /**
+         * Returns the lookalike.
+         *
+         * @return The {@link Influencer}.
+         */
+        public Influencer getInfluencer() {
+            return (Influencer) UserDirectory.get(influencerId);
+        }
+
+        /**
+         * Returns how far the lookalike is from the influencer asked about.
+         *
+         * @return The squared distance between their feature vectors; {@code 0} for identical features.
+         */
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * The feature vector of one influencer, as parallel arrays sorted by feature code.
+     */
+    private static final class Vector {
+        final int[] codes; // Feature codes, ascending
+        final float[] values; // Value of each feature
+        final float norm; // Squared length
+
+        Vector(int[] codes, float[] values) {
+            this.codes = codes;
+            this.values = values;
+            float n = 0;
+            for (float v : values) {
+                n += v * v;
+            }
+            this.norm = n;
+        }
+    }
+
+    /**
+     * One inverted list. The vectors are packed end to end in shared arrays
+     * so a scan reads memory in order.
+     */
+    private static final class InvertedList {
+        int[] ids = new int[8]; // Directory ids of the influencers in the list
+        int[] ends = new int[8]; // End of each influencer's features in codes and values
+        float[] norms = new float[8]; // Squared length of each vector
+        int[] codes = new int[64]; // Feature codes of every vector
+        float[] values = new float[64]; // Feature values of every vector
+        int size = 0; // Number of influencers in the list
+
+        /**
+         * Appends a vector.
+         *
+         * @param id The directory id of the influencer.
+         * @param v The influencer's vector.
+         */
+        void add(int id, Vector v) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                norms = Arrays.copyOf(norms, size * 2);
+            }
+            int from = size == 0 ? 0 : ends[size - 1];
+            int to = from + v.codes.length;
+            if (to > codes.length) {
+                codes = Arrays.copyOf(codes, Math.max(to, codes.length * 2));
+                values = Arrays.copyOf(values, codes.length);
+            }
+            System.arraycopy(v.codes, 0, codes, from, v.codes.length);
+            System.arraycopy(v.values, 0, values, from, v.values.length);
+            ids[size] = id;
+            ends[size] = to;
+            norms[size] = v.norm;
+            size++;
+        }
+    }
+
+    /**
+     * The trained centroids and the inverted lists built around them.
+     *
+     * <p>A model is only changed while it is being trained; once it is
+     * published to the index it is changed only by adding to its lists under
+     * the write lock.</p>
+     */
+    private static final class Model {
+        final InvertedList[] lists; // The inverted lists; a single one until trained
+        final float[][] centroids; // Centroid of each list over the columns of the layout, or null until trained
+        final float[] centroidNorms; // Squared length of each centroid
+        final int[] kindColumns; // First centroid column of each feature kind
+        final int[] kindWidths; // Number of centroid columns of each feature kind
+        final int columns; // Number of centroid columns
+
+        /**
+         * Constructs the untrained model: one list and no centroids.
+         */
+        Model() {
+            this.lists = new InvertedList[] { new InvertedList() };
+            this.centroids = null;
+            this.centroidNorms = null;
+            this.kindColumns = null;
+            this.kindWidths = null;
+            this.columns = 0;
+        }
+
+        /**
+         * Constructs a model to be trained, with empty lists and unset centroids.
+         *
+         * @param listCount The number of lists.
+         * @param kindWidths The number of centroid columns of each feature kind.
+         */
+        Model(int listCount, int[] kindWidths) {
+            this.lists = new InvertedList[listCount];
+            for (int c = 0; c < listCount; c++) {
+                lists[c] = new InvertedList();
+            }
+            this.centroids = new float[listCount][];
+            this.centroidNorms = new float[listCount];
+            this.kindWidths = kindWidths;
+            this.kindColumns = new int[kindWidths.length];
+            int total = 0;
+            for (int kind = 0; kind < kindWidths.length; kind++) {
+                kindColumns[kind] = total;
+                total += kindWidths[kind];
+            }
+            this.columns = total;
+        }
+
+        /**
+         * Recomputes the squared length of every centroid.
+         */
+        void updateNorms() {
+            for (int c = 0; c < centroids.length; c++) {
+                float n = 0;
+                for (float x : centroids[c]) {
+                    n += x * x;
+                }
+                centroidNorms[c] = n;
+            }
+        }
+
+        /**
+         * Returns the lists whose centroids are nearest to a vector.
+         *
+         * @param v The vector.
+         * @param n The number of lists wanted.
+         * @return The indexes of up to {@code n} lists, nearest first; just list {@code 0} before training.
+         */
+        int[] nearestLists(Vector v, int n) {
+            if (centroids == null) {
+                return new int[] { 0 };
+            }
+            int count = Math.min(n, centroids.length);
+            int[] nearest = new int[count];
+            float[] scores = new float[count];
+            int found = 0;
+            for (int c = 0; c < centroids.length; c++) {
+                float[] centroid = centroids[c];
+                float dot = 0;
+                for (int f = 0; f < v.codes.length; f++) {
+                    int col = column(v.codes[f]);
+                    if (col >= 0) {
+                        dot += v.values[f] * centroid[col];
+                    }
+                }
+                float score = centroidNorms[c] - 2 * dot; // Distance less the vector's own length, which every list shares
+                if (found < count || score < scores[found - 1]) {
+                    int at = found < count ? found++ : found - 1;
+                    while (at > 0 && scores[at - 1] > score) {
+                        scores[at] = scores[at - 1];
+                        nearest[at] = nearest[at - 1];
+                        at--;
+                    }
+                    scores[at] = score;
+                    nearest[at] = c;
+                }
+            }
+            return nearest;
+        }
+
+        /**
+         * Returns the centroid column of a feature code.
+         *
+         * @param code The feature code.
+         * @return The column, or {@code -1} if the feature was first seen after the model was trained.
+         */
+        int column(int code) {
+            int kind = code >>> KIND_SHIFT;
+            int id = code & ((1 << KIND_SHIFT) - 1);
+            return id < kindWidths[kind] ? kindColumns[kind] + id : -1;
+        }
+
+        /**
+         * Expands a vector over the centroid columns.
+         *
+         * @param v The vector.
+         * @return The dense vector.
+         */
+        float[] dense(Vector v) {
+            float[] d = new float[columns];
+            for (int f = 0; f < v.codes.length; f++) {
+                d[column(v.codes[f])] = v.values[f];
+            }
+            return d;
+        }
+    }
+
+    /**
+     * Runs retrainings in the background. Created on first use.
+     */
+    private static final class Trainer {
+        static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "lookalike-training");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Adds an influencer to the index, registering it with the {@link UserDirectory} if needed.
+     * Starts retraining the lists in the background if the index has doubled since they were last trained.
+     *
+     * @param influencer The influencer to add.
+     */
+    public void add(Influencer influencer) {
+        int id = UserDirectory.register(influencer);
+        Vector v = vectorOf(influencer);
+        boolean retrain = false;
+        lock.writeLock().lock();
+        try {
+            if (size == members.length) {
+                members = Arrays.copyOf(members, size * 2);
+            }
+            members[size++] = id;
+            model.lists[model.nearestLists(v, 1)[0]].add(id, v);
+            if (size >= nextTraining && !training) {
+                training = true;
+                retrain = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (retrain) {
+            Trainer.EXECUTOR.execute(this::retrain);
+        }
+    }
+
+    /**
+     * Returns the number of influencers in the index.
+     *
+     * @return The number of indexed influencers.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the influencers most similar to the specified one, which need not be in the index.
+     *
+     * @param influencer The influencer to find lookalikes for.
+     * @param k The number of lookalikes.
+     * @return Up to {@code k} other influencers, most similar first.
+     */
+    public List<Match> lookalikes(Influencer influencer, int k) {
+        long start = System.nanoTime();
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        int self = UserDirectory.register(influencer);
+        Vector q = vectorOf(influencer);
+        int keep = k * RERANK_FACTOR;
+        PriorityQueue<Long> best = new PriorityQueue<>(keep + 1, Collections.reverseOrder()); // Farthest candidate on top
+        lock.readLock().lock();
+        try {
+            Model m = model;
+            for (int l : m.nearestLists(q, PROBES)) {
+                scan(m.lists[l], q, self, keep, best);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Match> ranked = new ArrayList<>(best.size());
+        for (long candidate : best) {
+            int id = (int) candidate;
+            ranked.add(new Match(id, distance(q, vectorOf((Influencer) UserDirectory.get(id)))));
+        }
+        ranked.sort((a, b) -> {
+            int c = Double.compare(a.distance, b.distance);
+            return c != 0 ? c : Integer.compare(a.influencerId, b.influencerId);
+        });
+        List<Match> result = new ArrayList<>(ranked.subList(0, Math.min(k, ranked.size())));
+        Metrics.LOOKALIKE.record(System.nanoTime() - start, true);
+        return result;
+    }
+
+    /**
+     * Collects the candidates of one list nearest to the query.
+     *
+     * <p>Candidates are packed into a {@code long} with the distance's float
+     * bits above the directory id, so ordering the longs orders by distance
+     * and then by id.</p>
+     *
+     * @param list The list to scan.
+     * @param q The query vector.
+     * @param self The directory id of the influencer asked about, which is skipped.
+     * @param keep The number of candidates to keep.
+     * @param best The candidates kept so far, farthest on top; updated in place.
+     */
+    private static void scan(InvertedList list, Vector q, int self, int keep, PriorityQueue<Long> best) {
+        int from = 0;
+        for (int i = 0; i < list.size; i++) {
+            int to = list.ends[i];
+            int id = list.ids[i];
+            if (id != self) {
+                float d = q.norm + list.norms[i] - 2 * dot(q, list.codes, list.values, from, to);
+                long candidate = (long) Float.floatToIntBits(Math.max(d, 0f)) << 32 | id;
+                if (best.size() < keep) {
+                    best.add(candidate);
+                } else if (candidate < best.peek()) {
+                    best.poll();
+                    best.add(candidate);
+                }
+            }
+            from = to;
+        }
+    }
+
+    /**
+     * Retrains the lists on the trainer thread and swaps them in.
+     *
+     * <p>The centroids are trained and the lists rebuilt from the influencers
+     * indexed when the retraining started, without holding the lock, so
+     * searches and additions carry on against the old lists meanwhile.
+     * Influencers added in the meantime are then placed in the new lists
+     * under a brief write lock, and the new lists replace the old ones.</p>
+     */
+    private void retrain() {
+        int[] ids;
+        lock.readLock().lock();
+        try {
+            ids = Arrays.copyOf(members, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Model trained;
+        try {
+            trained = train(ids);
+        } catch (RuntimeException | Error e) {
+            lock.writeLock().lock();
+            try {
+                training = false; // Tried again at the next addition
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = ids.length; i < size; i++) {
+                Vector v = vectorOf((Influencer) UserDirectory.get(members[i])); // Added while training
+                trained.lists[trained.nearestLists(v, 1)[0]].add(members[i], v);
+            }
+            model = trained;
+            nextTraining = size * 2;
+            training = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Trains centroids on a sample of the current features of some
+     * influencers, then builds lists of all of them around the centroids.
+     * Called on the trainer thread without the lock.
+     *
+     * @param ids The directory ids of the influencers.
+     * @return The new model.
+     */
+    private Model train(int[] ids) {
+        int size = ids.length;
+        Vector[] all = new Vector[size];
+        for (int i = 0; i < size; i++) {
+            all[i] = vectorOf((Influencer) UserDirectory.get(ids[i]));
+        }
+        int[] kindWidths = { 2, SymbolDictionary.NICHES.size(), SymbolDictionary.REGIONS.size(), SymbolDictionary.PLATFORMS.size() };
+        int listCount = Math.min(MAX_LISTS, (int) Math.sqrt(size));
+        Model m = new Model(listCount, kindWidths);
+
+        // Partial shuffle: the first sampleSize entries become a random sample
+        int sampleSize = Math.min(size, listCount * SAMPLE_PER_LIST);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        for (int i = 0; i < sampleSize; i++) {
+            int j = i + random.nextInt(size - i);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+
+        for (int c = 0; c < listCount; c++) {
+            m.centroids[c] = m.dense(all[order[c]]);
+        }
+        int[] assigned = new int[sampleSize];
+        for (int round = 0; round < TRAINING_ROUNDS; round++) {
+            m.updateNorms();
+            for (int i = 0; i < sampleSize; i++) {
+                assigned[i] = m.nearestLists(all[order[i]], 1)[0];
+            }
+            float[][] sums = new float[listCount][m.columns];
+            int[] counts = new int[listCount];
+            for (int i = 0; i < sampleSize; i++) {
+                Vector v = all[order[i]];
+                float[] sum = sums[assigned[i]];
+                for (int f = 0; f < v.codes.length; f++) {
+                    sum[m.column(v.codes[f])] += v.values[f]; // Every code has a column: the layout was sized from the dictionaries
+                }
+                counts[assigned[i]]++;
+            }
+            for (int c = 0; c < listCount; c++) {
+                if (counts[c] == 0) {
+                    m.centroids[c] = m.dense(all[order[random.nextInt(sampleSize)]]); // Reseed an empty list
+                    continue;
+                }
+                for (int col = 0; col < m.columns; col++) {
+                    sums[c][col] /= counts[c];
+                }
+                m.centroids[c] = sums[c];
+            }
+        }
+        m.updateNorms();
+
+        for (int i = 0; i < size; i++) {
+            m.lists[m.nearestLists(all[i], 1)[0]].add(ids[i], all[i]);
+        }
+        return m;
+    }
+
+    /**
+     * Returns the dot product of a vector with a packed vector.
+     *
+     * @param q The vector.
+     * @param codes The packed feature codes.
+     * @param values The packed feature values.
+     * @param from The start of the packed vector.
+     * @param to The end of the packed vector.
+     * @return The dot product.
+     */
+    private static float dot(Vector q, int[] codes, float[] values, int from, int to) {
+        float dot = 0;
+        int i = 0;
+        int j = from;
+        while (i < q.codes.length && j < to) {
+            int a = q.codes[i];
+            int b = codes[j];
+            if (a == b) {
+                dot += q.values[i++] * values[j++];
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return dot;
+    }
+
+    /**
+     * Returns the squared distance between two vectors.
+     *
+     * @param a One vector.
+     * @param b The other vector.
+     * @return The squared distance.
+     */
+    private static double distance(Vector a, Vector b) {
+        return Math.max(a.norm + b.norm - 2 * dot(a, b.codes, b.values, 0, b.codes.length), 0);
+    }
+
+    /**
+     * Computes the current feature vector of an influencer.
+     *
+     * <p>The engagement rate and earnings are log-scaled, so a difference of
+     * one means roughly an order of magnitude in earnings or a few percentage
+     * points of engagement. The niche is a single feature of weight one. The
+     * regions and the platform mix are each scaled to a length of at most
+     * one, so neither outweighs the niche however many regions or campaigns
+     * an influencer has.</p>
+     *
+     * @param inf The influencer.
+     * @return The vector.
+     */
+    private static Vector vectorOf(Influencer inf) {
+        int[] regions = inf.getRegionIds();
+        Arrays.sort(regions);
+        int regionCount = distinct(regions, regions.length);
+
+        int[] campaignsOn = inf.getPlatformCampaignCounts(); // Kept by the influencer, so the archive is not read
+        int[] platforms = new int[campaignsOn.length];
+        int[] platformCounts = new int[campaignsOn.length];
+        int platformCount = 0;
+        int launched = 0;
+        for (int id = 0; id < campaignsOn.length; id++) {
+            if (campaignsOn[id] > 0) {
+                platforms[platformCount] = id;
+                platformCounts[platformCount++] = campaignsOn[id];
+                launched += campaignsOn[id];
+            }
+        }
+
+        boolean hasNiche = inf.getNicheId() != SymbolDictionary.NONE;
+        int n = 2 + (hasNiche ? 1 : 0) + regionCount + platformCount;
+        int[] codes = new int[n];
+        float[] values = new float[n];
+        double dollars = Leaderboard.EARNINGS.scoreOf(UserDirectory.register(inf)) / 100.0;
+        codes[0] = ENGAGEMENT;
+        values[0] = (float) Math.log1p(Math.max(inf.getEngagementRate(), 0));
+        codes[1] = EARNINGS;
+        values[1] = (float) (Math.log10(1 + Math.max(dollars, 0)) / 2);
+        int f = 2;
+        if (hasNiche) {
+            codes[f] = NICHE << KIND_SHIFT | inf.getNicheId();
+            values[f++] = 1;
+        }
+        for (int i = 0; i < regionCount; i++) {
+            codes[f] = REGION << KIND_SHIFT | regions[i];
+            values[f++] = (float) (1 / Math.sqrt(regionCount));
+        }
+        for (int i = 0; i < platformCount; i++) {
+            codes[f] = PLATFORM << KIND_SHIFT | platforms[i];
+            values[f++] = (float) platformCounts[i] / launched;
+        }
+        return new Vector(codes, values);
+    }
+
+    /**
+     * Moves the distinct dictionary ids of a sorted array to its front, dropping {@link SymbolDictionary#NONE}.
+     *
+     * @param values The sorted values; the distinct ones are moved to the front.
+     * @param length The number of values.
+     * @return The number of distinct values.
+     */
+    private static int distinct(int[] values, int length) {
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            if (values[i] != SymbolDictionary.NONE && (n == 0 || values[n - 1] != values[i])) {
+                values[n++] = values[i];
+            }
+        }
+        return n;
+    }
+}
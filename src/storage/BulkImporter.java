@@ -0,0 +1,414 @@
+package storage;
+
+import auth.AuthManager;
+import entities.BrandManager;
+import entities.Influencer;
+import entities.User;
+import entities.UserDirectory;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import util.Money;
+
+/**
+ * Imports influencers and brand managers from a CSV file.
+ *
+ * <p>Each line describes one account:</p>
+ * <pre>
+ * influencer,username,password,niche,engagementRate,region;region;...
+ * brand,username,password,brandName,budget
+ * </pre>
+ *
+ * <p>The file is read through a {@link FileChannel} in chunks of about
+ * {@value #CHUNK_BYTES} bytes, each cut at the last complete line. Chunks are
+ * parsed and validated on a thread pool while the next ones are read, and at
+ * most {@value #MAX_IN_FLIGHT} chunks per thread are held in memory at once.
+ * The credentials of each parsed chunk are then appended to
+ * {@code users.txt} in a single write and its accounts registered in file
+ * order, so when a username appears twice the first line wins. A username
+ * that is already registered or already has credentials in
+ * {@code users.txt} is rejected.</p>
+ *
+ * <p>A header line starting with {@code type,}, blank lines and lines
+ * starting with {@code #} are skipped. Invalid lines are counted and the
+ * first {@value #MAX_REPORTED_ERRORS} are described in the {@link Result};
+ * they do not stop the import.</p>
+ */
+public final class BulkImporter {
+    private static final int CHUNK_BYTES = 8 << 20; // Bytes read and parsed as one unit
+    private static final int MAX_IN_FLIGHT = 2; // Chunks per thread being parsed or waiting to be applied
+    private static final int MAX_REPORTED_ERRORS = 20; // Invalid lines described in the result
+
+    private BulkImporter() {
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static final class Result {
+        int influencers = 0; // Influencers imported
+        int brands = 0; // Brand managers imported
+        int rejected = 0; // Lines that failed validation or reused a username
+        long lines = 0; // Lines read, including skipped ones
+        long elapsedMillis = 0; // Wall-clock time of the import
+        final List<String> errors = new ArrayList<>(); // Descriptions of the first rejected lines
+
+        /**
+         * Returns the number of influencers imported.
+         *
+         * @return The number of new influencers.
+         */
+        public int getInfluencers() {
+            return influencers;
+        }
+
+        /**
+         * Returns the number of brand managers imported.
+         *
+         * @return The number of new brand managers.
+         */
+        public int getBrands() {
+            return brands;
+        }
+
+        /**
+         * Returns the number of lines that were rejected.
+         *
+         * @return The number of rejected lines.
+         */
+        public int getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Returns the number of lines read.
+         *
+         * @return The number of lines in the file.
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * Returns how long the import took.
+         *
+         * @return The elapsed time in milliseconds.
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Returns descriptions of the first rejected lines.
+         *
+         * @return Up to {@value BulkImporter#MAX_REPORTED_ERRORS} messages, each starting with the line number.
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+
+    /**
+     * A valid account line: the new user and the credentials to store for it.
+     */
+    private static final class Account {
+        final User user; // The unregistered influencer or brand manager
+        final String[] credentials; // Username, password and role for users.txt
+
+        /**
+         * Constructs a new {@code Account}.
+         *
+         * @param user The parsed user.
+         * @param password The user's password.
+         * @param role The role written to the credential file.
+         */
+        Account(User user, String password, String role) {
+            this.user = user;
+            this.credentials = new String[] {user.username, password, role};
+        }
+    }
+
+    /**
+     * The accounts parsed from one chunk, in line order.
+     */
+    private static final class ParsedChunk {
+        final List<Object> entries = new ArrayList<>(); // An Account for each valid line, an error message for each invalid one
+        int[] entryLines = new int[64]; // Chunk-relative line of each entry
+        int lineCount = 0; // Lines in the chunk
+
+        /**
+         * Appends an entry.
+         *
+         * @param entry The {@link Account} or the error message.
+         * @param lineNo The chunk-relative line of the entry.
+         */
+        void add(Object entry, int lineNo) {
+            if (entries.size() == entryLines.length) {
+                entryLines = Arrays.copyOf(entryLines, entryLines.length * 2);
+            }
+            entryLines[entries.size()] = lineNo;
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Imports every account in a CSV file.
+     *
+     * @param file The CSV file to read.
+     * @param onInfluencer Called, in file order, for each influencer after it is registered.
+     * @return The counts and errors of the import.
+     * @throws IOException If the file cannot be read or the credentials cannot be written.
+     */
+    public static Result importFile(Path file, Consumer<Influencer> onInfluencer) throws IOException {
+        long start = System.nanoTime();
+        Result result = new Result();
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bulk-import");
+            t.setDaemon(true);
+            return t;
+        });
+        ArrayDeque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES);
+            byte[] carry = new byte[0]; // Partial line left over from the previous read
+            boolean first = true;
+            while (true) {
+                buffer.clear();
+                buffer.put(carry);
+                int read = 0;
+                while (buffer.hasRemaining() && (read = channel.read(buffer)) > 0) {
+                    // Fill the buffer as far as the file allows
+                }
+                boolean eof = read < 0 || buffer.hasRemaining();
+                int length = buffer.position();
+                byte[] bytes = buffer.array();
+                int cut = length;
+                if (!eof) {
+                    cut = lastNewline(bytes, length) + 1;
+                    if (cut == 0) {
+                        throw new IOException("Line longer than " + CHUNK_BYTES + " bytes in " + file);
+                    }
+                }
+                if (cut > 0) {
+                    String text = new String(bytes, 0, cut, StandardCharsets.UTF_8);
+                    boolean skipHeader = first;
+                    inFlight.add(pool.submit(() -> parse(text, skipHeader)));
+                    first = false;
+                }
+                carry = Arrays.copyOfRange(bytes, cut, length);
+                while (inFlight.size() >= threads * MAX_IN_FLIGHT || (eof && !inFlight.isEmpty())) {
+                    apply(await(inFlight.poll()), onInfluencer, result);
+                }
+                if (eof) {
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        result.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    /**
+     * Waits for a chunk to be parsed.
+     *
+     * @param future The pending chunk.
+     * @return The parsed chunk.
+     * @throws IOException If parsing failed unexpectedly or the wait was interrupted.
+     */
+    private static ParsedChunk await(Future<ParsedChunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not parse import file: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Returns the position of the last line feed in a buffer.
+     *
+     * @param bytes The buffer.
+     * @param length The number of bytes in use.
+     * @return The index of the last {@code '\n'}, or {@code -1} if there is none.
+     */
+    private static int lastNewline(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses and validates the lines of one chunk. Runs on the pool, so it
+     * must not touch shared state.
+     *
+     * @param text The chunk, made of whole lines.
+     * @param skipHeader Whether the chunk starts the file and may begin with a header.
+     * @return The parsed chunk.
+     */
+    private static ParsedChunk parse(String text, boolean skipHeader) {
+        ParsedChunk chunk = new ParsedChunk();
+        int pos = 0;
+        while (pos < text.length()) {
+            int end = text.indexOf('\n', pos);
+            if (end < 0) {
+                end = text.length();
+            }
+            String line = text.substring(pos, end).trim(); // Also drops the carriage return of CRLF files
+            pos = end + 1;
+            int lineNo = chunk.lineCount++;
+            if (line.isEmpty() || line.startsWith("#") || (skipHeader && lineNo == 0 && line.startsWith("type,"))) {
+                continue;
+            }
+            try {
+                chunk.add(parseLine(line), lineNo);
+            } catch (IllegalArgumentException e) {
+                chunk.add(e.getMessage(), lineNo);
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Parses one account line.
+     *
+     * @param line The trimmed line.
+     * @return The account with a new, unregistered {@link Influencer} or {@link BrandManager}.
+     * @throws IllegalArgumentException If the line is not a valid account.
+     */
+    private static Account parseLine(String line) {
+        String[] f = line.split(",", -1);
+        for (int i = 0; i < f.length; i++) {
+            f[i] = f[i].trim();
+        }
+        if (f[0].equals("influencer")) {
+            if (f.length != 6) {
+                throw new IllegalArgumentException("expected 6 fields for an influencer, found " + f.length);
+            }
+            checkCredentials(f[1], f[2]);
+            if (f[3].isEmpty()) {
+                throw new IllegalArgumentException("missing niche");
+            }
+            double rate;
+            try {
+                rate = Double.parseDouble(f[4]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid engagement rate: " + f[4]);
+            }
+            if (!(rate >= 0 && rate <= 100)) {
+                throw new IllegalArgumentException("engagement rate out of range: " + f[4]);
+            }
+            String[] regions = f[5].isEmpty() ? new String[0] : f[5].split(";");
+            for (int i = 0; i < regions.length; i++) {
+                regions[i] = regions[i].trim();
+            }
+            return new Account(new Influencer(f[1], f[2], f[3], rate, regions), f[2], "Influencer");
+        }
+        if (f[0].equals("brand")) {
+            if (f.length != 5) {
+                throw new IllegalArgumentException("expected 5 fields for a brand, found " + f.length);
+            }
+            checkCredentials(f[1], f[2]);
+            if (f[3].isEmpty()) {
+                throw new IllegalArgumentException("missing brand name");
+            }
+            long budget = Money.parse(f[4]); // NumberFormatException is an IllegalArgumentException
+            if (budget < 0) {
+                throw new IllegalArgumentException("negative budget: " + f[4]);
+            }
+            return new Account(new BrandManager(f[1], f[2], f[3], budget), f[2], "BrandManager");
+        }
+        throw new IllegalArgumentException("unknown account type: " + f[0]);
+    }
+
+    /**
+     * Checks that a username and password can be stored in {@code users.txt}.
+     *
+     * @param username The username.
+     * @param password The password.
+     * @throws IllegalArgumentException If either is empty.
+     */
+    private static void checkCredentials(String username, String password) {
+        if (username.isEmpty() || password.isEmpty()) {
+            throw new IllegalArgumentException("missing username or password");
+        }
+    }
+
+    /**
+     * Stores the credentials of a parsed chunk and registers its accounts.
+     *
+     * <p>Credentials are stored first, in one call that also rejects
+     * usernames already in {@code users.txt} or earlier in the file, so a
+     * failed write leaves no account of the chunk registered.</p>
+     *
+     * @param chunk The parsed chunk.
+     * @param onInfluencer Called for each registered influencer.
+     * @param result The result, updated in place.
+     * @throws IOException If the credentials cannot be written.
+     */
+    private static void apply(ParsedChunk chunk, Consumer<Influencer> onInfluencer, Result result) throws IOException {
+        long firstLine = result.lines + 1; // File line number of the chunk's first line
+        List<String[]> credentials = new ArrayList<>(chunk.entries.size());
+        for (Object entry : chunk.entries) {
+            if (entry instanceof Account && UserDirectory.find(((Account) entry).user.username) == null) {
+                credentials.add(((Account) entry).credentials);
+            }
+        }
+        boolean[] added = AuthManager.addCredentials(credentials);
+        for (int i = 0, c = 0; i < chunk.entries.size(); i++) {
+            Object entry = chunk.entries.get(i);
+            long lineNo = firstLine + chunk.entryLines[i];
+            if (entry instanceof String) {
+                reject(result, lineNo, (String) entry);
+                continue;
+            }
+            Account account = (Account) entry;
+            User user = account.user;
+            if (c == credentials.size() || credentials.get(c) != account.credentials || !added[c++]) {
+                reject(result, lineNo, "username already exists: " + user.username);
+                continue;
+            }
+            UserDirectory.register(user);
+            if (user instanceof Influencer) {
+                result.influencers++;
+                onInfluencer.accept((Influencer) user);
+            } else {
+                result.brands++;
+            }
+        }
+        result.lines += chunk.lineCount;
+    }
+
+    /**
+     * Counts a rejected line and keeps its message if there is room.
+     *
+     * @param result The result, updated in place.
+     * @param lineNo The 1-based line number in the file.
+     * @param message What was wrong with the line.
+     */
+    private static void reject(Result result, long lineNo, String message) {
+        result.rejected++;
+        if (result.errors.size() < MAX_REPORTED_ERRORS) {
+            result.errors.add("Line " + lineNo + ": " + message);
+        }
+    }
+}
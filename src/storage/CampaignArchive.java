@@ -0,0 +1,410 @@
+package storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reported counts of campaigns that have dropped out of an influencer's in-memory list.
+ *
+ * <p>The {@link HistoryStore} is the cold tier for what a campaign is: its
+ * name, budget, start date and platform. The only thing it does not hold is
+ * what was reported for the campaign afterwards, so when a campaign leaves
+ * the in-memory list this archive keeps its views, likes and shares with the
+ * offset of its record in the store, and readers take everything else from
+ * the store.</p>
+ *
+ * <p>Archived counts are first collected in a staging block. Once it holds
+ * {@value #BLOCK_CAMPAIGNS} campaigns, the block is compressed with
+ * {@link Deflater} and appended to the current segment file, a
+ * {@value #SEGMENT_MB} MB file mapped into memory. A new segment is started
+ * when a block no longer fits. Blocks mix the campaigns of many influencers;
+ * most counts are small and offsets in one block are close together, so they
+ * compress well.</p>
+ *
+ * <p>Every archived campaign records where the influencer's previous archived
+ * campaign is, packed into a {@code long} as segment, offset of the block and
+ * slot within it. Only the newest location and the count per influencer are
+ * kept on the heap, plus the staging block and the last
+ * {@value #CACHED_BLOCKS} decompressed blocks, so heap use does not grow with
+ * the number of archived campaigns. Reading an influencer's campaigns walks
+ * the chain, decompressing each block it touches once.</p>
+ *
+ * <p>The archive does not persist across runs: it starts empty, as the
+ * in-memory campaign lists do. Without the {@code archive.dir} system
+ * property, segments are written to a temporary directory and deleted on
+ * exit. Segments in a directory set with {@code archive.dir} are left in
+ * place on exit and reused by the next run, which overwrites them from the
+ * first one as it archives, so the directory never holds more segments than
+ * the largest run needed.</p>
+ */
+public final class CampaignArchive {
+    private static final int BLOCK_CAMPAIGNS = 128; // Most campaigns in one compressed block
+    private static final int SEGMENT_MB = 16; // Size of a segment file
+    private static final int SEGMENT_BYTES = SEGMENT_MB << 20; // Size of a segment file, in bytes
+    private static final int BLOCK_HEADER_BYTES = 10; // Compressed length, raw length and campaign count
+    private static final int ENTRY_BYTES = 44; // Encoded size of an archived campaign
+    private static final int CACHED_BLOCKS = 16; // Decompressed blocks kept for reads
+    private static final long NONE = -1; // Location of nothing
+    private static final long STAGED = 1L << 62; // Flag of a location in the staging block
+
+    private static volatile CampaignArchive shared; // Archive used by the application, opened on first use
+
+    private final File directory; // Where segment files are created
+    private final boolean temporary; // Whether the directory is the archive's own, so its segments are deleted on exit
+    private final List<MappedByteBuffer> segments = new ArrayList<>(); // Mapped segment files, in order
+    private int segmentEnd = SEGMENT_BYTES; // Bytes used in the last segment; full until one is created
+    private long[] heads = new long[0]; // Location of each influencer's newest archived campaign, by directory id
+    private int[] counts = new int[0]; // Archived campaigns per influencer, by directory id
+    private final List<Entry> staging = new ArrayList<>(); // Campaigns not yet compressed, oldest first
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED); // Compresses blocks
+    private final Inflater inflater = new Inflater(); // Decompresses blocks
+    private final Map<Long, Entry[]> blocks = new LinkedHashMap<Long, Entry[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    }; // Recently decompressed blocks by location, in access order
+    private long compressedBytes = 0; // Bytes of compressed blocks written
+    private long rawBytes = 0; // Bytes of those blocks before compression
+
+    /**
+     * The reported counts of an archived campaign.
+     */
+    public static final class Entry {
+        final int influencerId; // Directory id of the influencer
+        final long views; // Views reported before the campaign was archived
+        final long likes; // Likes reported before the campaign was archived
+        final long shares; // Shares reported before the campaign was archived
+        final long historyOffset; // Offset of the campaign in the HistoryStore, or -1
+        long previous; // Location of the influencer's previous archived campaign
+
+        Entry(int influencerId, long views, long likes, long shares, long historyOffset, long previous) {
+            this.influencerId = influencerId;
+            this.views = views;
+            this.likes = likes;
+            this.shares = shares;
+            this.historyOffset = historyOffset;
+            this.previous = previous;
+        }
+
+        /**
+         * Returns the views reported before the campaign was archived.
+         *
+         * @return The number of views.
+         */
+        public long getViews() {
+            return views;
+        }
+
+        /**
+         * Returns the likes reported before the campaign was archived.
+         *
+         * @return The number of likes.
+         */
+        public long getLikes() {
+            return likes;
+        }
+
+        /**
+         * Returns the shares reported before the campaign was archived.
+         *
+         * @return The number of shares.
+         */
+        public long getShares() {
+            return shares;
+        }
+
+        /**
+         * Returns where the campaign is recorded in the {@link HistoryStore}.
+         *
+         * @return The offset of the campaign's record, or {@code -1} if it was not recorded.
+         */
+        public long getHistoryOffset() {
+            return historyOffset;
+        }
+    }
+
+    /**
+     * Constructs a new {@code CampaignArchive} writing segment files to a directory.
+     *
+     * @param directory The directory for segment files; created if missing.
+     * @param temporary {@code true} to delete the segments on exit; {@code false} to leave them for the next
+     *                  run to overwrite.
+     */
+    public CampaignArchive(File directory, boolean temporary) {
+        this.directory = directory;
+        this.temporary = temporary;
+    }
+
+    /**
+     * Returns the archive used by the application, creating it on first use.
+     *
+     * @return The shared archive.
+     * @throws IllegalStateException If no directory can be created for it.
+     */
+    public static CampaignArchive shared() {
+        CampaignArchive archive = shared;
+        if (archive == null) {
+            synchronized (CampaignArchive.class) {
+                archive = shared;
+                if (archive == null) {
+                    String path = System.getProperty("archive.dir");
+                    File directory;
+                    if (path != null) {
+                        directory = new File(path);
+                    } else {
+                        try {
+                            directory = Files.createTempDirectory("campaigns").toFile();
+                        } catch (IOException e) {
+                            throw new IllegalStateException("Cannot create campaign archive: " + e.getMessage(), e);
+                        }
+                        directory.deleteOnExit(); // Registered first so it is deleted after its segments
+                    }
+                    archive = new CampaignArchive(directory, path == null);
+                    shared = archive;
+                }
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * Archives the reported counts of a campaign as the newest of an influencer.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @param views The views reported for the campaign.
+     * @param likes The likes reported for the campaign.
+     * @param shares The shares reported for the campaign.
+     * @param historyOffset The offset of the campaign in the {@link HistoryStore}, or {@code -1}.
+     * @throws UncheckedIOException If a full staging block cannot be written.
+     */
+    public synchronized void archive(int influencerId, long views, long likes, long shares, long historyOffset) {
+        ensureCapacity(influencerId);
+        Entry entry = new Entry(influencerId, views, likes, shares, historyOffset, heads[influencerId]);
+        heads[influencerId] = STAGED | staging.size();
+        counts[influencerId]++;
+        staging.add(entry);
+        if (staging.size() == BLOCK_CAMPAIGNS) {
+            flush();
+        }
+    }
+
+    /**
+     * Returns the number of campaigns archived for an influencer.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @return The number of archived campaigns.
+     */
+    public synchronized int count(int influencerId) {
+        return influencerId >= 0 && influencerId < counts.length ? counts[influencerId] : 0;
+    }
+
+    /**
+     * Passes the campaigns archived for an influencer to an action, newest first.
+     *
+     * <p>Only the blocks the chain runs through are decompressed, and no list
+     * of the campaigns is built. The archive stays locked until the walk
+     * ends, so the action should be short.</p>
+     *
+     * @param influencerId The directory id of the influencer.
+     * @param action The action to perform on each archived campaign.
+     * @throws UncheckedIOException If a block cannot be decompressed.
+     */
+    public synchronized void forEach(int influencerId, Consumer<Entry> action) {
+        if (count(influencerId) == 0) {
+            return;
+        }
+        for (long location = heads[influencerId]; location != NONE; ) {
+            Entry entry = entryAt(location);
+            action.accept(entry);
+            location = entry.previous;
+        }
+    }
+
+    /**
+     * Returns the campaigns archived for an influencer, oldest first.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @return The archived campaigns.
+     * @throws UncheckedIOException If a block cannot be decompressed.
+     */
+    public synchronized List<Entry> read(int influencerId) {
+        if (count(influencerId) == 0) {
+            return Collections.emptyList();
+        }
+        List<Entry> entries = new ArrayList<>(counts[influencerId]);
+        for (long location = heads[influencerId]; location != NONE; ) {
+            Entry entry = entryAt(location);
+            entries.add(entry);
+            location = entry.previous;
+        }
+        Collections.reverse(entries);
+        return entries;
+    }
+
+    /**
+     * Returns the number of segment files.
+     *
+     * @return The number of segments created so far.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns how much the written blocks were compressed.
+     *
+     * @return Compressed bytes divided by uncompressed bytes, or {@code 1} before the first block.
+     */
+    public synchronized double getCompressionRatio() {
+        return rawBytes == 0 ? 1 : (double) compressedBytes / rawBytes;
+    }
+
+    /**
+     * Finds the campaign at a location. Called with the archive's lock held.
+     */
+    private Entry entryAt(long location) {
+        if ((location & STAGED) != 0) {
+            return staging.get((int) (location & ~STAGED));
+        }
+        long block = location & ~0xFFL;
+        Entry[] entries = blocks.get(block);
+        if (entries == null) {
+            entries = decode(block);
+            blocks.put(block, entries);
+        }
+        return entries[(int) (location & 0xFF)];
+    }
+
+    /**
+     * Compresses the staging block into the current segment. Called with the archive's lock held.
+     */
+    private void flush() {
+        int count = staging.size();
+        int encoded = count * ENTRY_BYTES;
+        ByteBuffer raw = ByteBuffer.allocate(encoded);
+        byte[] compressed = new byte[encoded + (encoded >> 4) + 64]; // Deflate never grows data by more
+        int length;
+        long block;
+        if (segmentEnd + BLOCK_HEADER_BYTES + compressed.length > SEGMENT_BYTES) {
+            startSegment();
+        }
+        block = ((long) (segments.size() - 1) << 40) | ((long) segmentEnd << 8);
+        for (int slot = 0; slot < count; slot++) {
+            Entry entry = staging.get(slot);
+            if (entry.previous != NONE && (entry.previous & STAGED) != 0) {
+                entry.previous = block | (entry.previous & ~STAGED); // Earlier campaign of the same block
+            }
+            raw.putInt(entry.influencerId).putLong(entry.previous).putLong(entry.views).putLong(entry.likes)
+                    .putLong(entry.shares).putLong(entry.historyOffset);
+        }
+        for (int slot = 0; slot < count; slot++) {
+            int id = staging.get(slot).influencerId;
+            if (heads[id] == (STAGED | slot)) {
+                heads[id] = block | slot; // The influencer's newest campaign is in this block
+            }
+        }
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, raw.position());
+        deflater.finish();
+        length = deflater.deflate(compressed);
+        if (!deflater.finished()) {
+            throw new IllegalStateException("Compressed block outgrew its buffer");
+        }
+        MappedByteBuffer segment = segments.get(segments.size() - 1);
+        segment.position(segmentEnd);
+        segment.putInt(length).putInt(raw.position()).putShort((short) count).put(compressed, 0, length);
+        segmentEnd += BLOCK_HEADER_BYTES + length;
+        compressedBytes += length;
+        rawBytes += raw.position();
+        staging.clear();
+    }
+
+    /**
+     * Reads and decompresses a block. Called with the archive's lock held.
+     */
+    private Entry[] decode(long block) {
+        ByteBuffer segment = segments.get((int) (block >>> 40)).duplicate();
+        segment.position((int) ((block >>> 8) & 0xFFFFFFFFL));
+        int length = segment.getInt();
+        int rawLength = segment.getInt();
+        int count = segment.getShort();
+        byte[] compressed = new byte[length];
+        segment.get(compressed);
+        byte[] bytes = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            if (inflater.inflate(bytes) != rawLength) {
+                throw new DataFormatException("block is shorter than recorded");
+            }
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Corrupt campaign block at " + block + ": " + e.getMessage(), e));
+        }
+        ByteBuffer raw = ByteBuffer.wrap(bytes);
+        Entry[] entries = new Entry[count];
+        for (int slot = 0; slot < count; slot++) {
+            int influencerId = raw.getInt();
+            long previous = raw.getLong();
+            long views = raw.getLong();
+            long likes = raw.getLong();
+            long shares = raw.getLong();
+            long historyOffset = raw.getLong();
+            entries[slot] = new Entry(influencerId, views, likes, shares, historyOffset, previous);
+        }
+        return entries;
+    }
+
+    /**
+     * Creates and maps a new segment file, replacing one left by an earlier
+     * run. Called with the archive's lock held.
+     */
+    private void startSegment() {
+        File file = new File(directory, String.format("campaigns-%05d.seg", segments.size()));
+        try {
+            Files.createDirectories(directory.toPath());
+            if (temporary) {
+                file.deleteOnExit();
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES)); // Stays mapped after close
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create campaign segment " + file, e);
+        }
+        segmentEnd = 0;
+    }
+
+    /**
+     * Grows the per-influencer arrays to hold an id. Called with the archive's lock held.
+     */
+    private void ensureCapacity(int influencerId) {
+        if (influencerId < 0) {
+            throw new IllegalArgumentException("Influencer is not registered");
+        }
+        if (influencerId >= heads.length) {
+            int size = Math.max(influencerId + 1, heads.length * 2);
+            int from = heads.length;
+            heads = Arrays.copyOf(heads, size);
+            Arrays.fill(heads, from, size, NONE);
+            counts = Arrays.copyOf(counts, size);
+        }
+    }
+}
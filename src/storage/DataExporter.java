@@ -0,0 +1,330 @@
+package storage;
+
+import contracts.ContractLog;
+import entities.BrandManager;
+import entities.Influencer;
+import entities.User;
+import entities.UserDirectory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.zip.GZIPOutputStream;
+import util.Json;
+import util.Money;
+
+/**
+ * Streams contracts and influencer earnings to CSV or JSON-lines files.
+ *
+ * <p>Rows are read straight from the {@link ContractLog} columns and encoded
+ * into a reusable buffer that is written to the file channel every
+ * {@value #FLUSH_CHARS} characters, optionally through gzip. Memory use does
+ * not depend on the number of contracts: the contract export holds one
+ * buffer, and the earnings export adds one running total per user.</p>
+ *
+ * <p>Each export covers the contracts that existed when it started; contracts
+ * appended while it runs are left out.</p>
+ */
+public final class DataExporter {
+    private static final int FLUSH_CHARS = 256 << 10; // Characters gathered before each write
+    private static final int GZIP_BUFFER_BYTES = 64 << 10; // Buffer of the gzip stream
+
+    private DataExporter() {
+    }
+
+    /**
+     * The file formats an export can be written in.
+     */
+    public enum Format {
+        /** Comma-separated values with a header line. */
+        CSV,
+        /** One JSON object per line. */
+        JSONL
+    }
+
+    /**
+     * Selects the contracts included in an export. A new filter matches every
+     * contract; each setter narrows it and returns the filter.
+     */
+    public static final class Filter {
+        int brandId = -1; // Directory id of the brand manager, or -1 for any
+        int influencerId = -1; // Directory id of the influencer, or -1 for any
+        long fromMillis = Long.MIN_VALUE; // Earliest start time included
+        long toMillis = Long.MAX_VALUE; // Start time from which contracts are excluded
+
+        /**
+         * Keeps only the contracts of one brand manager.
+         *
+         * @param brandId The directory id of the brand manager.
+         * @return This filter.
+         */
+        public Filter brand(int brandId) {
+            this.brandId = brandId;
+            return this;
+        }
+
+        /**
+         * Keeps only the contracts of one influencer.
+         *
+         * @param influencerId The directory id of the influencer.
+         * @return This filter.
+         */
+        public Filter influencer(int influencerId) {
+            this.influencerId = influencerId;
+            return this;
+        }
+
+        /**
+         * Keeps only the contracts that started within a time range.
+         *
+         * @param fromMillis The earliest start time included, in epoch milliseconds.
+         * @param toMillis The start time from which contracts are excluded, in epoch milliseconds.
+         * @return This filter.
+         */
+        public Filter between(long fromMillis, long toMillis) {
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            return this;
+        }
+
+        /**
+         * Checks whether the filter restricts the brand or the start time.
+         *
+         * @return {@code true} if only some contracts of an influencer may match.
+         */
+        boolean restrictsContracts() {
+            return brandId >= 0 || fromMillis != Long.MIN_VALUE || toMillis != Long.MAX_VALUE;
+        }
+
+        /**
+         * Checks whether a contract row matches the filter.
+         *
+         * @param influencer The directory id of the influencer.
+         * @param brand The directory id of the brand manager.
+         * @param startMillis The start time, in epoch milliseconds.
+         * @return {@code true} if the row is included.
+         */
+        boolean matches(int influencer, int brand, long startMillis) {
+            return (brandId < 0 || brand == brandId)
+                && (influencerId < 0 || influencer == influencerId)
+                && startMillis >= fromMillis && startMillis < toMillis;
+        }
+    }
+
+    /**
+     * Exports contracts, one row per contract.
+     *
+     * <p>Columns: brand manager, brand, influencer, amount in cents and start
+     * time as an ISO-8601 instant.</p>
+     *
+     * @param log The contracts to export.
+     * @param file The file to write; it is replaced if it exists.
+     * @param format The file format.
+     * @param gzip Whether to compress the file with gzip.
+     * @param filter The contracts to include.
+     * @return The number of rows written.
+     * @throws IOException If the file cannot be written.
+     */
+    public static long exportContracts(ContractLog log, Path file, Format format, boolean gzip, Filter filter)
+            throws IOException {
+        int rows = log.size();
+        long written = 0;
+        try (RowWriter out = new RowWriter(file, gzip)) {
+            if (format == Format.CSV) {
+                out.sb.append("brandManager,brand,influencer,amountCents,start\n");
+            }
+            for (int row = 0; row < rows; row++) {
+                int influencerId = log.influencerId(row);
+                int brandId = log.brandId(row);
+                long startMillis = log.startMillis(row);
+                if (!filter.matches(influencerId, brandId, startMillis)) {
+                    continue;
+                }
+                BrandManager brand = (BrandManager) UserDirectory.get(brandId);
+                String influencer = UserDirectory.get(influencerId).username;
+                String start = Instant.ofEpochMilli(startMillis).toString();
+                StringBuilder sb = out.sb;
+                if (format == Format.CSV) {
+                    appendCsv(sb, brand.username).append(',');
+                    appendCsv(sb, brand.getBrandName()).append(',');
+                    appendCsv(sb, influencer).append(',');
+                    sb.append(log.amountCents(row)).append(',').append(start).append('\n');
+                } else {
+                    sb.append("{\"brandManager\":");
+                    Json.appendString(sb, brand.username).append(",\"brand\":");
+                    Json.appendString(sb, brand.getBrandName()).append(",\"influencer\":");
+                    Json.appendString(sb, influencer).append(",\"amountCents\":").append(log.amountCents(row));
+                    sb.append(",\"start\":\"").append(start).append("\"}\n");
+                }
+                out.rowDone();
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Exports influencer earnings, one row per influencer.
+     *
+     * <p>Columns: influencer, niche, number of matching contracts, their total
+     * in cents, and the influencer's current balance in cents. When the
+     * filter restricts the brand or the time range, influencers without a
+     * matching contract are left out.</p>
+     *
+     * @param log The contracts to total.
+     * @param file The file to write; it is replaced if it exists.
+     * @param format The file format.
+     * @param gzip Whether to compress the file with gzip.
+     * @param filter The contracts to include.
+     * @return The number of rows written.
+     * @throws IOException If the file cannot be written.
+     */
+    public static long exportEarnings(ContractLog log, Path file, Format format, boolean gzip, Filter filter)
+            throws IOException {
+        int users = UserDirectory.size();
+        int[] contractCounts = new int[users];
+        long[] contractCents = new long[users];
+        int rows = log.size();
+        for (int row = 0; row < rows; row++) {
+            int influencerId = log.influencerId(row);
+            if (influencerId < users && filter.matches(influencerId, log.brandId(row), log.startMillis(row))) {
+                contractCounts[influencerId]++;
+                contractCents[influencerId] = Money.add(contractCents[influencerId], log.amountCents(row));
+            }
+        }
+
+        long written = 0;
+        try (RowWriter out = new RowWriter(file, gzip)) {
+            if (format == Format.CSV) {
+                out.sb.append("influencer,niche,contracts,contractedCents,balanceCents\n");
+            }
+            for (int id = 0; id < users; id++) {
+                User user = UserDirectory.get(id);
+                if (!(user instanceof Influencer)
+                        || (filter.influencerId >= 0 && id != filter.influencerId)
+                        || (filter.restrictsContracts() && contractCounts[id] == 0)) {
+                    continue;
+                }
+                Influencer influencer = (Influencer) user;
+                String niche = influencer.getNiche() == null ? "" : influencer.getNiche();
+                StringBuilder sb = out.sb;
+                if (format == Format.CSV) {
+                    appendCsv(sb, influencer.username).append(',');
+                    appendCsv(sb, niche).append(',');
+                    sb.append(contractCounts[id]).append(',').append(contractCents[id]).append(',');
+                    sb.append(influencer.getSponsorshipAmount()).append('\n');
+                } else {
+                    sb.append("{\"influencer\":");
+                    Json.appendString(sb, influencer.username).append(",\"niche\":");
+                    Json.appendString(sb, niche).append(",\"contracts\":").append(contractCounts[id]);
+                    sb.append(",\"contractedCents\":").append(contractCents[id]);
+                    sb.append(",\"balanceCents\":").append(influencer.getSponsorshipAmount()).append("}\n");
+                }
+                out.rowDone();
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Appends a CSV field, quoting it if it contains a separator, quote or line break.
+     *
+     * @param sb The builder to append to.
+     * @param value The field value.
+     * @return The builder.
+     */
+    private static StringBuilder appendCsv(StringBuilder sb, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return sb.append(value);
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"'); // Quotes are escaped by doubling them
+            }
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Gathers encoded rows and writes them to the file in large batches.
+     */
+    private static final class RowWriter implements Closeable {
+        final StringBuilder sb = new StringBuilder(FLUSH_CHARS + 1024); // Rows not yet written
+        private final WritableByteChannel channel; // File channel, or a gzip stream over it
+
+        /**
+         * Opens the file for writing, replacing any existing file.
+         *
+         * @param file The file to write.
+         * @param gzip Whether to compress the output.
+         * @throws IOException If the file cannot be opened.
+         */
+        RowWriter(Path file, boolean gzip) throws IOException {
+            FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            if (gzip) {
+                try {
+                    channel = Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(fileChannel), GZIP_BUFFER_BYTES));
+                } catch (IOException | RuntimeException e) {
+                    fileChannel.close(); // The gzip header could not be written
+                    throw e;
+                }
+            } else {
+                channel = fileChannel;
+            }
+        }
+
+        /**
+         * Writes the gathered rows once enough have been encoded.
+         *
+         * @throws IOException If the write fails.
+         */
+        void rowDone() throws IOException {
+            if (sb.length() >= FLUSH_CHARS) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes every gathered row.
+         *
+         * @throws IOException If the write fails.
+         */
+        private void flush() throws IOException {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(sb.toString());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            sb.setLength(0);
+        }
+
+        /**
+         * Writes the remaining rows and closes the file.
+         *
+         * @throws IOException If the write or close fails.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
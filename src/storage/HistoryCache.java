@@ -0,0 +1,82 @@
+package storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the histories of recently viewed influencers.
+ *
+ * <p>Reports ask for an influencer's history here instead of holding every
+ * influencer's campaigns and contracts in memory. The cache holds at most
+ * {@code history.cache.size} histories (default {@value #DEFAULT_CAPACITY}),
+ * evicting the least recently viewed, so memory follows the number of
+ * active users rather than the number of users. An evicted history is
+ * simply read again from the {@link HistoryStore#shared() shared store} the
+ * next time it is viewed.</p>
+ */
+public final class HistoryCache {
+    private static final int DEFAULT_CAPACITY = 1000; // Histories kept when history.cache.size is not set
+
+    private static final int capacity = Integer.getInteger("history.cache.size", DEFAULT_CAPACITY); // Histories kept
+    private static final Map<Integer, InfluencerHistory> cache = new LinkedHashMap<Integer, InfluencerHistory>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, InfluencerHistory> eldest) {
+            return size() > capacity;
+        }
+    }; // Histories in access order, guarded by itself
+    private static final LongAdder hits = new LongAdder(); // Histories found in the cache
+    private static final LongAdder misses = new LongAdder(); // Histories created
+
+    private HistoryCache() {
+    }
+
+    /**
+     * Returns the history of an influencer, creating it if it is not cached.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @return The influencer's history, of which nothing may have been read yet.
+     */
+    public static InfluencerHistory get(int influencerId) {
+        synchronized (cache) {
+            InfluencerHistory history = cache.get(influencerId);
+            if (history != null) {
+                hits.increment();
+                return history;
+            }
+            misses.increment();
+            history = new InfluencerHistory(HistoryStore.shared(), influencerId);
+            cache.put(influencerId, history);
+            return history;
+        }
+    }
+
+    /**
+     * Returns the number of histories cached.
+     *
+     * @return The number of histories, at most the capacity.
+     */
+    public static int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Returns how many times a history was found in the cache.
+     *
+     * @return The number of hits since start.
+     */
+    public static long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns how many times a history had to be created.
+     *
+     * @return The number of misses since start.
+     */
+    public static long getMissCount() {
+        return misses.sum();
+    }
+}
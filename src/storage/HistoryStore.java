@@ -0,0 +1,313 @@
+package storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only file of every influencer's campaigns and contracts.
+ *
+ * <p>Each record is written once at the end of the file and never moved. A
+ * record holds the offset of the previous record of the same kind for the
+ * same influencer, so the records of one influencer form a chain from the
+ * newest back to the oldest, and the store only keeps the newest offset and
+ * the count per influencer in memory. {@link InfluencerHistory} walks these
+ * chains a page at a time.</p>
+ *
+ * <p>A record is laid out as:</p>
+ * <pre>
+ * byte  kind            'C' for a campaign, 'K' for a contract
+ * int   influencerId    directory id of the influencer
+ * long  previous        offset of the previous record in the chain, or -1
+ * long  amount          campaign budget or contract amount, in cents
+ * long  startMillis     start date, in epoch milliseconds
+ * int   otherId         platform id of a campaign, brand id of a contract
+ * short nameLength      length of the name in bytes; 0 for contracts
+ * byte[nameLength]      campaign name, UTF-8
+ * </pre>
+ *
+ * <p>Appending never fails the caller: if the file cannot be written the
+ * record is counted in {@link #getFailedCount()} and left out of the chain.
+ * The file is set with the {@code history.file} system property; without
+ * the property a temporary file is used and deleted on exit.</p>
+ *
+ * <p>The store holds the history of the current run only, and the file is
+ * emptied when opened, even when named by {@code history.file}. Balances,
+ * contracts and campaigns all start afresh on every run, and records are
+ * keyed by directory ids that depend on the order users are registered in,
+ * so records kept from an earlier run would list contracts that no longer
+ * exist or show them under the wrong influencer. Point
+ * {@code history.file} at a scratch location.</p>
+ */
+public final class HistoryStore {
+    static final byte CAMPAIGN = 'C'; // Kind of a campaign record
+    static final byte CONTRACT = 'K'; // Kind of a contract record
+    static final int HEADER_BYTES = 35; // Bytes of a record before the name
+    private static final int MAX_NAME_BYTES = Short.MAX_VALUE; // Longest name that fits the length field
+
+    private static volatile HistoryStore shared; // Store used by the application, opened on first use
+
+    private final FileChannel channel; // The file, read and written at explicit positions
+    private long end = 0; // Offset at which the next record is written
+    private long[] campaignHeads = new long[0]; // Offset of each influencer's newest campaign, by directory id; -1 for none
+    private long[] contractHeads = new long[0]; // Offset of each influencer's newest contract, by directory id; -1 for none
+    private int[] campaignCounts = new int[0]; // Campaigns recorded per influencer, by directory id
+    private int[] contractCounts = new int[0]; // Contracts recorded per influencer, by directory id
+    private final LongAdder failed = new LongAdder(); // Records that could not be written
+
+    /**
+     * A record read back from the store.
+     */
+    static final class Record {
+        long offset; // Where the record starts
+        byte kind; // CAMPAIGN or CONTRACT
+        int influencerId; // Directory id of the influencer
+        long previous; // Offset of the previous record in the chain, or -1
+        long amount; // Budget or amount, in cents
+        long startMillis; // Start date, in epoch milliseconds
+        int otherId; // Platform id or brand id
+        String name; // Campaign name; empty for contracts
+    }
+
+    /**
+     * Constructs a new {@code HistoryStore} writing to a file, emptying it first.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be opened.
+     */
+    public HistoryStore(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Returns the store used by the application, opening it on first use.
+     *
+     * @return The shared store.
+     * @throws IllegalStateException If the file cannot be opened.
+     */
+    public static HistoryStore shared() {
+        HistoryStore store = shared;
+        if (store == null) {
+            synchronized (HistoryStore.class) {
+                store = shared;
+                if (store == null) {
+                    try {
+                        String path = System.getProperty("history.file");
+                        File file;
+                        if (path != null) {
+                            file = new File(path);
+                        } else {
+                            file = File.createTempFile("history", ".dat");
+                            file.deleteOnExit();
+                        }
+                        store = new HistoryStore(file);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Cannot open history file: " + e.getMessage(), e);
+                    }
+                    shared = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Appends a campaign to an influencer's history.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @param name The name of the campaign; names longer than {@value #MAX_NAME_BYTES} bytes are cut.
+     * @param budgetCents The budget of the campaign, in cents.
+     * @param startMillis The start date, in epoch milliseconds.
+     * @param platformId The id of the campaign's platform.
+     * @return The offset of the record, or {@code -1} if it could not be written.
+     */
+    public synchronized long appendCampaign(int influencerId, String name, long budgetCents, long startMillis,
+            int platformId) {
+        ensureCapacity(influencerId);
+        byte[] bytes = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_NAME_BYTES);
+        long offset = write(CAMPAIGN, influencerId, campaignHeads[influencerId], budgetCents, startMillis,
+                platformId, bytes, length);
+        if (offset >= 0) {
+            campaignHeads[influencerId] = offset;
+            campaignCounts[influencerId]++;
+        }
+        return offset;
+    }
+
+    /**
+     * Appends a contract to an influencer's history.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @param brandId The directory id of the brand manager.
+     * @param amountCents The amount of the contract, in cents.
+     * @param startMillis The start date, in epoch milliseconds.
+     * @return The offset of the record, or {@code -1} if it could not be written.
+     */
+    public synchronized long appendContract(int influencerId, int brandId, long amountCents, long startMillis) {
+        ensureCapacity(influencerId);
+        long offset = write(CONTRACT, influencerId, contractHeads[influencerId], amountCents, startMillis,
+                brandId, new byte[0], 0);
+        if (offset >= 0) {
+            contractHeads[influencerId] = offset;
+            contractCounts[influencerId]++;
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the offset of an influencer's newest campaign.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @return The offset, or {@code -1} if the influencer has no campaigns.
+     */
+    public synchronized long campaignHead(int influencerId) {
+        return influencerId >= 0 && influencerId < campaignHeads.length ? campaignHeads[influencerId] : -1;
+    }
+
+    /**
+     * Returns the offset of an influencer's newest contract.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @return The offset, or {@code -1} if the influencer has no contracts.
+     */
+    public synchronized long contractHead(int influencerId) {
+        return influencerId >= 0 && influencerId < contractHeads.length ? contractHeads[influencerId] : -1;
+    }
+
+    /**
+     * Returns the number of campaigns recorded for an influencer.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @return The number of campaigns.
+     */
+    public synchronized int campaignCount(int influencerId) {
+        return influencerId >= 0 && influencerId < campaignCounts.length ? campaignCounts[influencerId] : 0;
+    }
+
+    /**
+     * Returns the number of contracts recorded for an influencer.
+     *
+     * @param influencerId The directory id of the influencer.
+     * @return The number of contracts.
+     */
+    public synchronized int contractCount(int influencerId) {
+        return influencerId >= 0 && influencerId < contractCounts.length ? contractCounts[influencerId] : 0;
+    }
+
+    /**
+     * Returns the size of the file.
+     *
+     * @return The bytes written so far.
+     */
+    public synchronized long size() {
+        return end;
+    }
+
+    /**
+     * Returns the number of records that could not be written.
+     *
+     * @return The number of failed appends since the store was opened.
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Reads the record at an offset.
+     *
+     * <p>Records are never changed once written, so reads do not lock.</p>
+     *
+     * @param offset The offset of the record, as returned by an append or found in a chain.
+     * @return The record.
+     * @throws IOException If the file cannot be read.
+     */
+    Record read(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(header, offset);
+        header.flip();
+        Record record = new Record();
+        record.offset = offset;
+        record.kind = header.get();
+        record.influencerId = header.getInt();
+        record.previous = header.getLong();
+        record.amount = header.getLong();
+        record.startMillis = header.getLong();
+        record.otherId = header.getInt();
+        int length = header.getShort();
+        if (length > 0) {
+            ByteBuffer name = ByteBuffer.allocate(length);
+            readFully(name, offset + HEADER_BYTES);
+            record.name = new String(name.array(), StandardCharsets.UTF_8);
+        } else {
+            record.name = "";
+        }
+        return record;
+    }
+
+    /**
+     * Writes a record at the end of the file. Called with the store's lock held.
+     *
+     * @return The offset of the record, or {@code -1} if it could not be written.
+     */
+    private long write(byte kind, int influencerId, long previous, long amount, long startMillis, int otherId,
+            byte[] name, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + length);
+        buffer.put(kind).putInt(influencerId).putLong(previous).putLong(amount).putLong(startMillis)
+                .putInt(otherId).putShort((short) length).put(name, 0, length);
+        buffer.flip();
+        long offset = end;
+        try {
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            if (failed.sum() == 0) {
+                System.err.println("Could not write history: " + e.getMessage());
+            }
+            failed.increment();
+            return -1;
+        }
+        end = offset + HEADER_BYTES + length;
+        return offset;
+    }
+
+    /**
+     * Fills a buffer from the file starting at a position.
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("History file ends inside the record at " + position);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Grows the per-influencer arrays to hold an id. Called with the store's lock held.
+     */
+    private void ensureCapacity(int influencerId) {
+        if (influencerId < 0) {
+            throw new IllegalArgumentException("Influencer is not registered");
+        }
+        if (influencerId >= campaignHeads.length) {
+            int size = Math.max(influencerId + 1, campaignHeads.length * 2);
+            int from = campaignHeads.length;
+            campaignHeads = Arrays.copyOf(campaignHeads, size);
+            contractHeads = Arrays.copyOf(contractHeads, size);
+            Arrays.fill(campaignHeads, from, size, -1);
+            Arrays.fill(contractHeads, from, size, -1);
+            campaignCounts = Arrays.copyOf(campaignCounts, size);
+            contractCounts = Arrays.copyOf(contractCounts, size);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package storage;
+
+import contracts.Contract;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import platforms.Platform;
+import platforms.PlatformRegistry;
+
+/**
+ * One influencer's campaigns and contracts, read from a {@link HistoryStore} a page at a time.
+ *
+ * <p>Nothing is read until a page is asked for. Each request reads only the
+ * records needed to fill it, newest first, continuing the chain where the
+ * previous request stopped, and keeps what it read for later requests.
+ * Records appended after the history was first read are picked up at the
+ * next request by walking the chain from the new head back to the newest
+ * record already held.</p>
+ *
+ * <p>Instances are thread-safe. {@link HistoryCache} keeps the histories of
+ * recently viewed influencers.</p>
+ */
+public final class InfluencerHistory {
+    /** Records read from the store at a time, and the usual page size of reports. */
+    public static final int PAGE_RECORDS = 32;
+
+    private final HistoryStore store; // Where the records are read from
+    private final int influencerId; // Directory id of the influencer
+    private final Chain<CampaignEntry> campaigns = new Chain<>(); // Campaigns read so far
+    private final Chain<Contract> contracts = new Chain<>(); // Contracts read so far
+
+    /**
+     * A campaign read back from the history.
+     */
+    public static final class CampaignEntry {
+        private final String name; // The name of the campaign
+        private final long budget; // The budget of the campaign, in cents
+        private final long startMillis; // The start date, in epoch milliseconds
+        private final int platformId; // Id of the campaign's platform in the PlatformRegistry
+        private final long offset; // Offset of the campaign's record in the store
+
+        CampaignEntry(long offset, String name, long budget, long startMillis, int platformId) {
+            this.offset = offset;
+            this.name = name;
+            this.budget = budget;
+            this.startMillis = startMillis;
+            this.platformId = platformId;
+        }
+
+        /**
+         * Returns where the campaign is recorded in the store.
+         *
+         * @return The offset of the campaign's record, as in {@link entities.Influencer.Campaign#getHistoryOffset()}.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the name of the campaign.
+         *
+         * @return The name of the campaign.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the budget of the campaign.
+         *
+         * @return The budget, in cents.
+         */
+        public long getBudget() {
+            return budget;
+        }
+
+        /**
+         * Returns the start date of the campaign.
+         *
+         * @return The start date.
+         */
+        public Date getStartDate() {
+            return new Date(startMillis);
+        }
+
+        /**
+         * Returns the platform of the campaign.
+         *
+         * @return The shared {@link Platform}, or {@code null} if the campaign has none.
+         */
+        public Platform getPlatform() {
+            return PlatformRegistry.get(platformId);
+        }
+
+        /**
+         * Returns the id of the campaign's platform.
+         *
+         * @return The platform id in the {@link PlatformRegistry}.
+         */
+        public int getPlatformId() {
+            return platformId;
+        }
+    }
+
+    /**
+     * The records of one kind read so far, newest first.
+     */
+    private static final class Chain<T> {
+        final List<T> loaded = new ArrayList<>(); // Records read, newest first
+        long newest = -1; // Offset of loaded.get(0), or -1 if nothing is loaded
+        long next = -1; // Offset of the next older record to read, or -1 at the start of the chain
+    }
+
+    /**
+     * Constructs a new {@code InfluencerHistory} that reads nothing until asked.
+     *
+     * @param store The store to read from.
+     * @param influencerId The directory id of the influencer.
+     */
+    public InfluencerHistory(HistoryStore store, int influencerId) {
+        this.store = store;
+        this.influencerId = influencerId;
+    }
+
+    /**
+     * Returns the directory id of the influencer.
+     *
+     * @return The directory id.
+     */
+    public int getInfluencerId() {
+        return influencerId;
+    }
+
+    /**
+     * Returns the number of campaigns the influencer has launched.
+     *
+     * @return The number of campaigns in the store.
+     */
+    public int getCampaignCount() {
+        return store.campaignCount(influencerId);
+    }
+
+    /**
+     * Returns the number of contracts the influencer has been offered.
+     *
+     * @return The number of contracts in the store.
+     */
+    public int getContractCount() {
+        return store.contractCount(influencerId);
+    }
+
+    /**
+     * Returns some of the influencer's campaigns, newest first.
+     *
+     * @param from The number of newer campaigns to skip.
+     * @param count The most campaigns to return.
+     * @return The campaigns; fewer than {@code count} at the end of the history.
+     * @throws UncheckedIOException If the store cannot be read.
+     */
+    public synchronized List<CampaignEntry> getCampaigns(int from, int count) {
+        return page(campaigns, store.campaignHead(influencerId), from, count,
+                r -> new CampaignEntry(r.offset, r.name, r.amount, r.startMillis, r.otherId));
+    }
+
+    /**
+     * Reads one of the influencer's campaigns from the store.
+     *
+     * <p>The campaign is read directly and not kept, so lookups of single
+     * campaigns do not fill the pages held for {@link #getCampaigns(int, int)}.</p>
+     *
+     * @param offset The offset of the campaign's record, as in {@link CampaignEntry#getOffset()}.
+     * @return The campaign.
+     * @throws IllegalArgumentException If the record at the offset is not one of the influencer's campaigns.
+     * @throws UncheckedIOException If the store cannot be read.
+     */
+    public CampaignEntry getCampaign(long offset) {
+        HistoryStore.Record r;
+        try {
+            r = store.read(offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read history of influencer " + influencerId, e);
+        }
+        if (r.kind != HistoryStore.CAMPAIGN || r.influencerId != influencerId) {
+            throw new IllegalArgumentException("No campaign of influencer " + influencerId + " at " + offset);
+        }
+        return new CampaignEntry(r.offset, r.name, r.amount, r.startMillis, r.otherId);
+    }
+
+    /**
+     * Passes every campaign of the influencer to an action, newest first.
+     *
+     * <p>The campaigns are read straight from the store one at a time and not
+     * kept, so a walk over a long history, or over many influencers, holds
+     * one campaign at a time and leaves the pages of this history as they
+     * were. Campaigns appended during the walk are not passed.</p>
+     *
+     * @param action The action to perform on each campaign.
+     * @throws UncheckedIOException If the store cannot be read.
+     */
+    public void forEachCampaign(Consumer<CampaignEntry> action) {
+        try {
+            for (long offset = store.campaignHead(influencerId); offset >= 0; ) {
+                HistoryStore.Record r = store.read(offset);
+                action.accept(new CampaignEntry(r.offset, r.name, r.amount, r.startMillis, r.otherId));
+                offset = r.previous;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read history of influencer " + influencerId, e);
+        }
+    }
+
+    /**
+     * Returns some of the influencer's contracts, newest first.
+     *
+     * @param from The number of newer contracts to skip.
+     * @param count The most contracts to return.
+     * @return The contracts; fewer than {@code count} at the end of the history.
+     * @throws UncheckedIOException If the store cannot be read.
+     */
+    public synchronized List<Contract> getContracts(int from, int count) {
+        return page(contracts, store.contractHead(influencerId), from, count,
+                r -> new Contract(r.influencerId, r.otherId, r.amount, r.startMillis));
+    }
+
+    /**
+     * Converts a stored record to what a chain holds.
+     */
+    private interface Decoder<T> {
+        T decode(HistoryStore.Record record);
+    }
+
+    /**
+     * Brings a chain up to date with the store, reads enough of it for a page and returns the page.
+     */
+    private <T> List<T> page(Chain<T> chain, long head, int from, int count, Decoder<T> decoder) {
+        if (from < 0 || count < 0) {
+            throw new IllegalArgumentException("Page bounds must not be negative");
+        }
+        try {
+            if (chain.loaded.isEmpty()) {
+                chain.next = head; // Nothing read yet, so start from the current head
+            } else if (head != chain.newest) {
+                List<T> added = new ArrayList<>();
+                for (long offset = head; offset != chain.newest && offset >= 0; ) {
+                    HistoryStore.Record record = store.read(offset);
+                    added.add(decoder.decode(record));
+                    offset = record.previous;
+                }
+                chain.loaded.addAll(0, added);
+            }
+            long wanted = (long) from + count;
+            if (chain.loaded.size() < wanted) {
+                long target = Math.max(wanted, chain.loaded.size() + PAGE_RECORDS); // Read whole pages
+                while (chain.loaded.size() < target && chain.next >= 0) {
+                    HistoryStore.Record record = store.read(chain.next);
+                    chain.loaded.add(decoder.decode(record));
+                    chain.next = record.previous;
+                }
+            }
+            if (!chain.loaded.isEmpty()) {
+                chain.newest = head;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read history of influencer " + influencerId, e);
+        }
+        if (from >= chain.loaded.size()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(chain.loaded.subList(from, Math.min(chain.loaded.size(), from + count)));
+    }
+}
@@ -0,0 +1,604 @@
+package stress;
+
+import auth.InsufficientBalanceException;
+import auth.PaymentFailedException;
+import analytics.ReportSnapshot;
+import contracts.Contract;
+import contracts.ContractLog;
+import entities.BrandManager;
+import entities.Escrow;
+import entities.Influencer;
+import entities.User;
+import entities.UserDirectory;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import platforms.Platform;
+import platforms.PlatformRegistry;
+import storage.HistoryStore;
+import storage.InfluencerHistory;
+import util.Money;
+
+/**
+ * Stress test for the paths that move money: {@link BrandManager#offerSponsorship},
+ * {@link Influencer#receivePayment}, {@link Influencer#launchCampaign} and
+ * {@link Escrow}.
+ *
+ * <p>Each round builds a fresh set of brand managers and influencers and
+ * lets a number of actor threads, released together, pick random operations
+ * on random accounts until the round's time is up. Actors add random spins
+ * and yields between operations so that the interleavings differ from run
+ * to run. While the actors run, a checker thread periodically locks every
+ * account, in the same id order {@link Escrow} uses, and checks that no
+ * balance is negative and that no money has been created. When the round
+ * ends, and every abandoned reservation has expired, it checks that:</p>
+ * <ul>
+ *   <li>no balance is negative;</li>
+ *   <li>every account's balance equals its starting balance plus what the
+ *       actors recorded paying in, minus what they recorded paying out;</li>
+ *   <li>the money in all accounts, in escrow and spent on campaigns or
+ *       outside the platform adds up to the money the round started with;</li>
+ *   <li>every accepted sponsorship produced exactly one contract, for the
+ *       right brand, influencer and amount;</li>
+ *   <li>every launched campaign was recorded by its influencer exactly once;</li>
+ *   <li>the {@link ReportSnapshot} that {@value #REPORTERS} reporter threads
+ *       kept taking of the contracts while the actors ran counts every
+ *       contract exactly once, in the total and per influencer.</li>
+ * </ul>
+ *
+ * <p>Rounds are run for 1, 2, 4 and so on threads up to the maximum, and the
+ * throughput of each is reported next to its speedup over one thread, so a
+ * lock that stops scaling shows up as a flattening speedup column. The
+ * process exits with status 1 if any check failed.</p>
+ *
+ * <p>Usage: {@code java stress.MoneyStress [seconds-per-round] [max-threads] [seed]}.
+ * The defaults are 2 seconds and twice the number of processors. The seed
+ * fixes each actor's sequence of operations; the interleaving still depends on
+ * the scheduler. Campaign launches keep every campaign in memory, so long
+ * rounds need a larger heap. Audit events go to a temporary directory unless
+ * {@code audit.dir} is set.</p>
+ */
+public final class MoneyStress {
+    private static final int BRANDS = 4; // Brand managers per round; the last one has a small budget
+    private static final int INFLUENCERS = 16; // Influencers per round
+    private static final long BRAND_BUDGET = Money.ofUnits(1_000_000_000); // Budget of the large brand managers
+    private static final long SMALL_BRAND_BUDGET = Money.ofUnits(1_000); // Budget of the brand manager that runs dry
+    private static final long MAX_OFFER = Money.ofUnits(50); // Largest sponsorship offered
+    private static final long MAX_CAMPAIGN = Money.ofUnits(80); // Largest campaign budget
+    private static final long MAX_RESERVATION = Money.ofUnits(20); // Largest amount reserved
+    private static final int MAX_RESERVATION_MILLIS = 5; // Longest reservation timeout
+    private static final long CHECK_INTERVAL_MILLIS = 20; // Pause between checks while actors run
+    private static final long EXPIRY_WAIT_MILLIS = 5_000; // Time allowed for abandoned reservations to expire
+    private static final int MAX_REPORTED_FAILURES = 20; // Failures printed per round
+    private static final int REPORTERS = 2; // Threads taking report snapshots while the actors run
+
+    private MoneyStress() {
+    }
+
+    /**
+     * Discards everything printed while the actors run, without the lock
+     * a {@link PrintStream} takes on every call.
+     */
+    private static final class Discard extends PrintStream {
+        Discard() {
+            super(OutputStream.nullOutputStream());
+        }
+
+        @Override
+        public void println(String x) {
+        }
+
+        @Override
+        public void print(String x) {
+        }
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) {
+        }
+    }
+
+    /**
+     * The accounts of one round and what the actors recorded doing to them.
+     */
+    private static final class World {
+        final User[] accounts; // Brand managers first, then influencers
+        final User[] lockOrder; // The accounts sorted by directory id
+        final long[] initial; // Starting balance of each account, in cents
+        final long initialTotal; // Money in all accounts at the start, in cents
+        final List<Platform> platforms = PlatformRegistry.all(); // Platforms campaigns are launched on
+        final ContractLog contracts = new ContractLog(); // Every contract returned by offerSponsorship
+        final Influencer[] influencers = new Influencer[INFLUENCERS]; // The influencers, as a registry for snapshots
+        final ReportSnapshot.Publisher snapshots = new ReportSnapshot.Publisher(contracts); // Snapshots of the contracts for the reporters
+        final AtomicLongArray paidIn; // Cents each account received
+        final AtomicLongArray paidOut; // Cents each account paid
+        final AtomicLongArray launched; // Campaigns launched by each account
+        final AtomicLongArray launchedCents; // Campaign budgets spent by each account, in cents
+        final AtomicLongArray offeredTo; // Cents each account received through contracts
+        final LongAdder spentOutside = new LongAdder(); // Cents committed from escrow to no one
+        final LongAdder ops = new LongAdder(); // Operations attempted
+        final LongAdder offers = new LongAdder(); // Sponsorships accepted
+        final LongAdder launches = new LongAdder(); // Campaigns launched
+        final LongAdder commits = new LongAdder(); // Reservations committed
+        final LongAdder rejected = new LongAdder(); // Operations refused for lack of money or expiry
+        final LongAdder checks = new LongAdder(); // Consistent snapshots checked while running
+        final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>(); // Broken invariants
+
+        /**
+         * Creates the accounts for a round.
+         *
+         * @param round A number that keeps usernames unique across rounds.
+         */
+        World(int round) {
+            accounts = new User[BRANDS + INFLUENCERS];
+            initial = new long[accounts.length];
+            long total = 0;
+            for (int i = 0; i < BRANDS; i++) {
+                long budget = i == BRANDS - 1 ? SMALL_BRAND_BUDGET : BRAND_BUDGET;
+                accounts[i] = new BrandManager("stress" + round + "-brand" + i, "", "StressBrand" + i, budget);
+                initial[i] = budget;
+                total += budget;
+            }
+            for (int i = BRANDS; i < accounts.length; i++) {
+                accounts[i] = new Influencer("stress" + round + "-inf" + i, "", "Tech", 5.0, "US");
+                influencers[i - BRANDS] = (Influencer) accounts[i];
+            }
+            for (User u : accounts) {
+                UserDirectory.register(u);
+            }
+            initialTotal = total;
+            lockOrder = accounts.clone();
+            Arrays.sort(lockOrder, Comparator.comparingInt(UserDirectory::register));
+            paidIn = new AtomicLongArray(accounts.length);
+            paidOut = new AtomicLongArray(accounts.length);
+            launched = new AtomicLongArray(accounts.length);
+            launchedCents = new AtomicLongArray(accounts.length);
+            offeredTo = new AtomicLongArray(accounts.length);
+        }
+
+        /**
+         * Records a broken invariant.
+         *
+         * @param message What was broken.
+         */
+        void fail(String message) {
+            failures.add(message);
+        }
+    }
+
+    /**
+     * The throughput of one round.
+     */
+    private static final class Round {
+        final int threads; // Actor threads
+        final World world; // Accounts and counters of the round
+        final long elapsedNanos; // Time the actors ran
+
+        Round(int threads, World world, long elapsedNanos) {
+            this.threads = threads;
+            this.world = world;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        double opsPerSecond() {
+            return world.ops.sum() * 1e9 / elapsedNanos;
+        }
+    }
+
+    /**
+     * Runs the stress test.
+     *
+     * @param args Optional seconds per round, maximum thread count and seed.
+     * @throws Exception If the test is interrupted or the audit directory cannot be created.
+     */
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        if (System.getProperty("audit.dir") == null) {
+            System.setProperty("audit.dir", Files.createTempDirectory("stress-audit").toString());
+        }
+        PrintStream out = System.out;
+        out.printf("Money stress test: %.1f s per round, up to %d threads, seed %d%n", seconds, maxThreads, seed);
+        long roundNanos = (long) (seconds * 1e9);
+        SplittableRandom seeds = new SplittableRandom(seed);
+
+        System.setOut(new Discard());
+        int roundNo = 0;
+        List<Round> rounds = new ArrayList<>();
+        try {
+            runRound(maxThreads, Math.min(roundNanos, TimeUnit.SECONDS.toNanos(1)), seeds, roundNo++); // Warm-up, checked but not reported
+            for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+                rounds.add(runRound(threads, roundNanos, seeds, roundNo++));
+                if (threads == maxThreads) {
+                    break;
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        out.println();
+        out.printf("%7s %12s %12s %12s %8s %10s %10s %10s %10s %8s%n",
+                "threads", "ops", "ops/s", "ops/s/thread", "speedup", "offers", "launches", "commits", "rejected", "checks");
+        double base = rounds.get(0).opsPerSecond();
+        boolean failed = false;
+        for (Round r : rounds) {
+            World w = r.world;
+            double rate = r.opsPerSecond();
+            out.printf("%7d %12d %12.0f %12.0f %7.2fx %10d %10d %10d %10d %8d%n",
+                    r.threads, w.ops.sum(), rate, rate / r.threads, rate / base,
+                    w.offers.sum(), w.launches.sum(), w.commits.sum(), w.rejected.sum(), w.checks.sum());
+            failed |= !w.failures.isEmpty();
+        }
+        out.println();
+        for (Round r : rounds) {
+            int shown = 0;
+            for (String f : r.world.failures) {
+                if (shown++ == MAX_REPORTED_FAILURES) {
+                    out.println("  ... " + (r.world.failures.size() - MAX_REPORTED_FAILURES) + " more");
+                    break;
+                }
+                out.println("FAILED with " + r.threads + " threads: " + f);
+            }
+        }
+        out.println(failed ? "Invariants BROKEN" : "All invariants held");
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * Runs one round and checks its invariants.
+     *
+     * @param threads The number of actor threads.
+     * @param nanos How long the actors run.
+     * @param seeds Source of each actor's random seed.
+     * @param roundNo The number of the round.
+     * @return The round's results.
+     * @throws InterruptedException If interrupted while waiting for the actors.
+     */
+    private static Round runRound(int threads, long nanos, SplittableRandom seeds, int roundNo) throws InterruptedException {
+        World world = new World(roundNo);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] actors = new Thread[threads];
+        long[] deadline = new long[1];
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = seeds.split();
+            actors[t] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long end = deadline[0];
+                while (System.nanoTime() - end < 0) {
+                    act(world, random);
+                }
+            }, "stress-actor-" + t);
+            actors[t].start();
+        }
+        Thread checker = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                lockAll(world, 0);
+                try {
+                    Thread.sleep(CHECK_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "stress-checker");
+        Thread[] reporters = new Thread[REPORTERS];
+        for (int r = 0; r < REPORTERS; r++) {
+            reporters[r] = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    report(world);
+                }
+            }, "stress-reporter-" + r);
+        }
+
+        long start = System.nanoTime();
+        deadline[0] = start + nanos; // Published to the actors by the latch
+        go.countDown();
+        checker.start();
+        for (Thread r : reporters) {
+            r.start();
+        }
+        for (Thread a : actors) {
+            a.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        checker.interrupt();
+        checker.join();
+        for (Thread r : reporters) {
+            r.interrupt();
+            r.join();
+        }
+
+        long waitUntil = System.currentTimeMillis() + EXPIRY_WAIT_MILLIS;
+        while (heldByWorld(world) > 0 && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(1);
+        }
+        checkFinal(world);
+        return new Round(threads, world, elapsed);
+    }
+
+    /**
+     * Performs one random operation.
+     *
+     * @param w The round's accounts.
+     * @param random The actor's random source.
+     */
+    private static void act(World w, SplittableRandom random) {
+        int dice = random.nextInt(100);
+        if (dice < 45) {
+            offer(w, random.nextInt(BRANDS), BRANDS + random.nextInt(INFLUENCERS), 1 + random.nextLong(MAX_OFFER));
+        } else if (dice < 70) {
+            launch(w, BRANDS + random.nextInt(INFLUENCERS), 1 + random.nextLong(MAX_CAMPAIGN), random.nextInt(w.platforms.size()));
+        } else {
+            reserve(w, random.nextInt(w.accounts.length), 1 + random.nextLong(MAX_RESERVATION),
+                    random.nextInt(MAX_RESERVATION_MILLIS + 1), random);
+        }
+        w.ops.increment();
+        int jitter = random.nextInt(256);
+        if (jitter < 16) {
+            for (int i = jitter * 4; i > 0; i--) {
+                Thread.onSpinWait();
+            }
+        } else if (jitter == 255) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Offers a sponsorship and records the contract.
+     *
+     * @param w The round's accounts.
+     * @param b The index of the brand manager.
+     * @param i The index of the influencer.
+     * @param amount The amount, in cents.
+     */
+    private static void offer(World w, int b, int i, long amount) {
+        BrandManager brand = (BrandManager) w.accounts[b];
+        Influencer influencer = (Influencer) w.accounts[i];
+        try {
+            Contract contract = brand.offerSponsorship(influencer, amount);
+            w.contracts.append(contract);
+            w.paidOut.addAndGet(b, amount);
+            w.paidIn.addAndGet(i, amount);
+            w.offeredTo.addAndGet(i, amount);
+            w.offers.increment();
+        } catch (InsufficientBalanceException e) {
+            w.rejected.increment();
+        } catch (PaymentFailedException e) {
+            w.fail("offerSponsorship failed: " + e.getMessage());
+        }
+        if (brand.getSponsorshipBudget() < 0) {
+            w.fail(brand.username + " budget went negative: " + brand.getSponsorshipBudget());
+        }
+    }
+
+    /**
+     * Launches a campaign and records the spend.
+     *
+     * @param w The round's accounts.
+     * @param i The index of the influencer.
+     * @param budget The campaign budget, in cents.
+     * @param platform The index of the platform.
+     */
+    private static void launch(World w, int i, long budget, int platform) {
+        Influencer influencer = (Influencer) w.accounts[i];
+        try {
+            influencer.launchCampaign("stress", budget, w.platforms.get(platform));
+            w.paidOut.addAndGet(i, budget);
+            w.launched.incrementAndGet(i);
+            w.launchedCents.addAndGet(i, budget);
+            w.launches.increment();
+        } catch (PaymentFailedException e) {
+            w.rejected.increment();
+        }
+        if (influencer.getSponsorshipAmount() < 0) {
+            w.fail(influencer.username + " balance went negative: " + influencer.getSponsorshipAmount());
+        }
+    }
+
+    /**
+     * Reserves money in escrow, then commits it to an influencer or to no one,
+     * releases it, or abandons it to expire.
+     *
+     * @param w The round's accounts.
+     * @param p The index of the payer.
+     * @param amount The amount, in cents.
+     * @param timeoutMillis The reservation timeout.
+     * @param random The actor's random source.
+     */
+    private static void reserve(World w, int p, long amount, int timeoutMillis, SplittableRandom random) {
+        Escrow.Reservation reservation;
+        try {
+            reservation = Escrow.reserve(w.accounts[p], amount, timeoutMillis);
+        } catch (InsufficientBalanceException e) {
+            w.rejected.increment();
+            return;
+        }
+        int action = random.nextInt(4);
+        if (action < 2) {
+            int payee = action == 0 ? BRANDS + random.nextInt(INFLUENCERS) : -1;
+            try {
+                Escrow.commit(reservation, payee < 0 ? null : (Influencer) w.accounts[payee]);
+                w.paidOut.addAndGet(p, amount);
+                if (payee < 0) {
+                    w.spentOutside.add(amount);
+                } else {
+                    w.paidIn.addAndGet(payee, amount);
+                }
+                w.commits.increment();
+            } catch (PaymentFailedException e) {
+                if (reservation.getState() != Escrow.Reservation.State.EXPIRED) {
+                    w.fail("commit of a held reservation failed: " + e.getMessage());
+                }
+                w.rejected.increment();
+            }
+        } else if (action == 2) {
+            if (!Escrow.release(reservation) && reservation.getState() != Escrow.Reservation.State.EXPIRED) {
+                w.fail("release left reservation " + reservation.getId() + " " + reservation.getState());
+            }
+        } // Otherwise leave it to expire
+    }
+
+    /**
+     * Locks every account of the round in directory id order, then checks that
+     * no balance is negative and that no money was created.
+     *
+     * @param w The round's accounts.
+     * @param from The index in {@link World#lockOrder} of the next account to lock.
+     */
+    private static void lockAll(World w, int from) {
+        if (from < w.lockOrder.length) {
+            synchronized (w.lockOrder[from]) {
+                lockAll(w, from + 1);
+            }
+            return;
+        }
+        long total = 0;
+        for (User u : w.accounts) {
+            long balance = balanceOf(u);
+            if (balance < 0) {
+                w.fail(u.username + " balance was negative while running: " + balance);
+            }
+            total += balance + Escrow.heldBy(u);
+        }
+        if (total > w.initialTotal) {
+            w.fail("money was created while running: " + Money.format(total) + " > " + Money.format(w.initialTotal));
+        }
+        w.checks.increment();
+    }
+
+    /**
+     * Takes a report snapshot of the contracts recorded so far, the way
+     * reports do, and checks that it holds at least those contracts.
+     *
+     * @param w The round's accounts.
+     */
+    private static void report(World w) {
+        int rows = w.contracts.size();
+        Thread.yield(); // Let the other reporter take a newer snapshot before this one asks
+        ReportSnapshot snapshot = w.snapshots.take(rows, INFLUENCERS, w.influencers);
+        if (snapshot.getContractCount() < rows) {
+            w.fail("snapshot holds " + snapshot.getContractCount() + " contracts, " + rows + " were recorded before it");
+        }
+    }
+
+    /**
+     * Checks the invariants of a finished round.
+     *
+     * @param w The round's accounts.
+     */
+    private static void checkFinal(World w) {
+        long held = heldByWorld(w);
+        if (held != 0) {
+            w.fail(Money.format(held) + " still held in escrow after every reservation should have expired");
+        }
+        long total = held + w.spentOutside.sum();
+        for (int a = 0; a < w.accounts.length; a++) {
+            User u = w.accounts[a];
+            long balance = balanceOf(u);
+            long expected = w.initial[a] + w.paidIn.get(a) - w.paidOut.get(a);
+            if (balance < 0) {
+                w.fail(u.username + " ended with a negative balance: " + balance);
+            }
+            if (balance != expected) {
+                w.fail(u.username + " has " + Money.format(balance) + ", expected " + Money.format(expected));
+            }
+            total += balance + w.launchedCents.get(a);
+        }
+        if (total != w.initialTotal) {
+            w.fail("money not conserved: " + Money.format(total) + " != " + Money.format(w.initialTotal));
+        }
+
+        if (w.contracts.size() != w.offers.sum()) {
+            w.fail(w.contracts.size() + " contracts recorded for " + w.offers.sum() + " accepted offers");
+        }
+        long[] byAccount = new long[w.accounts.length];
+        int[] index = new int[UserDirectory.size()];
+        Arrays.fill(index, -1);
+        for (int a = 0; a < w.accounts.length; a++) {
+            index[UserDirectory.register(w.accounts[a])] = a;
+        }
+        for (int row = 0, n = w.contracts.size(); row < n; row++) {
+            int b = index[w.contracts.brandId(row)];
+            int i = index[w.contracts.influencerId(row)];
+            if (b < 0 || b >= BRANDS || i < BRANDS) {
+                w.fail("contract " + row + " names accounts outside the round");
+                continue;
+            }
+            byAccount[i] += w.contracts.amountCents(row);
+        }
+        ReportSnapshot snapshot = w.snapshots.take(w.contracts.size(), INFLUENCERS, w.influencers);
+        long snapshotTotal = 0;
+        for (int i = BRANDS; i < w.accounts.length; i++) {
+            snapshotTotal += byAccount[i];
+            long reported = snapshot.getEarningsCents((Influencer) w.accounts[i]);
+            if (reported != byAccount[i]) {
+                w.fail(w.accounts[i].username + " is reported with contracts worth " + Money.format(reported)
+                        + ", expected " + Money.format(byAccount[i]));
+            }
+        }
+        if (snapshot.getContractCount() != w.contracts.size() || snapshot.getTotalCents() != snapshotTotal) {
+            w.fail("snapshot reports " + snapshot.getContractCount() + " contracts worth " + Money.format(snapshot.getTotalCents())
+                    + ", expected " + w.contracts.size() + " worth " + Money.format(snapshotTotal));
+        }
+        for (int i = BRANDS; i < w.accounts.length; i++) {
+            if (byAccount[i] != w.offeredTo.get(i)) {
+                w.fail(w.accounts[i].username + " has contracts worth " + Money.format(byAccount[i])
+                        + ", expected " + Money.format(w.offeredTo.get(i)));
+            }
+            InfluencerHistory history = new InfluencerHistory(HistoryStore.shared(), w.accounts[i].getId()); // Every campaign, not just the resident ones
+            long count = history.getCampaignCount();
+            long cents = 0;
+            for (InfluencerHistory.CampaignEntry c : history.getCampaigns(0, Integer.MAX_VALUE)) {
+                cents += c.getBudget();
+            }
+            if (count != w.launched.get(i) || cents != w.launchedCents.get(i)) {
+                w.fail(w.accounts[i].username + " recorded " + count + " campaigns worth " + Money.format(cents)
+                        + ", expected " + w.launched.get(i) + " worth " + Money.format(w.launchedCents.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Returns the money the round's accounts hold in escrow.
+     *
+     * @param w The round's accounts.
+     * @return The amount held, in cents.
+     */
+    private static long heldByWorld(World w) {
+        long held = 0;
+        for (User u : w.accounts) {
+            held += Escrow.heldBy(u);
+        }
+        return held;
+    }
+
+    /**
+     * Returns the spendable balance of an account.
+     *
+     * @param u A brand manager or influencer.
+     * @return The balance, in cents.
+     */
+    private static long balanceOf(User u) {
+        return u instanceof BrandManager
+                ? ((BrandManager) u).getSponsorshipBudget()
+                : ((Influencer) u).getSponsorshipAmount();
+    }
+}
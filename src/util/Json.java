@@ -0,0 +1,41 @@
+package util;
+
+/**
+ * Encoding of JSON string literals for the hand-written JSON lines of the
+ * audit trail and the data exports.
+ */
+public final class Json {
+    private Json() {
+    }
+
+    /**
+     * Appends a string as a JSON string literal, quotes included.
+     *
+     * <p>Quotes, backslashes and control characters are escaped; everything
+     * else is appended as is.</p>
+     *
+     * @param sb The builder to append to.
+     * @param value The string value.
+     * @return The builder.
+     */
+    public static StringBuilder appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+}
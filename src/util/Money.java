@@ -0,0 +1,168 @@
+package util;
+
+/**
+ * Fixed-point money arithmetic on {@code long} amounts of cents.
+ *
+ * <p>Amounts are passed around as plain {@code long} values holding minor
+ * units, so arithmetic is exact, nothing is boxed and no objects are
+ * allocated. This class only provides the conversions, checked arithmetic
+ * and report formatting that go with that representation.</p>
+ */
+public final class Money {
+    /** Number of cents in one whole unit. */
+    public static final long CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Converts a whole number of currency units to cents.
+     *
+     * @param units The amount in whole units.
+     * @return The amount in cents.
+     * @throws ArithmeticException If the result overflows a {@code long}.
+     */
+    public static long ofUnits(long units) {
+        return Math.multiplyExact(units, CENTS_PER_UNIT);
+    }
+
+    /**
+     * Converts a floating-point amount to cents, rounding to the nearest cent.
+     *
+     * <p>Only meant for values that arrive as {@code double}; prefer
+     * {@link #parse(String)} for user input.</p>
+     *
+     * @param amount The amount in currency units.
+     * @return The amount in cents.
+     */
+    public static long of(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    /**
+     * Parses a decimal amount such as {@code "2500"}, {@code "19.9"} or
+     * {@code "-0.05"} into cents without going through {@code double}.
+     *
+     * @param text The text to parse.
+     * @return The amount in cents.
+     * @throws NumberFormatException If the text is not an amount with at most two decimal places.
+     */
+    public static long parse(String text) {
+        if (text == null) {
+            throw new NumberFormatException("Amount is missing");
+        }
+        String s = text.trim();
+        int i = 0;
+        boolean negative = false;
+        if (i < s.length() && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        while (i < s.length() && s.charAt(i) != '.') {
+            units = Math.addExact(Math.multiplyExact(units, 10), digit(s, i));
+            digits++;
+            i++;
+        }
+        long cents = 0;
+        if (i < s.length()) {
+            i++; // Skip the decimal point
+            int decimals = s.length() - i;
+            if (decimals > 2) {
+                throw new NumberFormatException("More than two decimal places: " + text);
+            }
+            for (int d = 0; d < 2; d++) {
+                cents = cents * 10 + (d < decimals ? digit(s, i + d) : 0);
+            }
+            digits += decimals;
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+        long total = Math.addExact(Math.multiplyExact(units, CENTS_PER_UNIT), cents);
+        return negative ? -total : total;
+    }
+
+    /**
+     * Returns the value of the digit at the specified position.
+     *
+     * @param s The text being parsed.
+     * @param i The position of the digit.
+     * @return The digit value.
+     * @throws NumberFormatException If the character is not a digit.
+     */
+    private static int digit(String s, int i) {
+        char c = s.charAt(i);
+        if (c < '0' || c > '9') {
+            throw new NumberFormatException("Not an amount: " + s);
+        }
+        return c - '0';
+    }
+
+    /**
+     * Adds two amounts.
+     *
+     * @param a The first amount, in cents.
+     * @param b The second amount, in cents.
+     * @return The sum, in cents.
+     * @throws ArithmeticException If the result overflows a {@code long}.
+     */
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * Subtracts one amount from another.
+     *
+     * @param a The amount to subtract from, in cents.
+     * @param b The amount to subtract, in cents.
+     * @return The difference, in cents.
+     * @throws ArithmeticException If the result overflows a {@code long}.
+     */
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Converts an amount to a {@code double} number of units, for ratios and
+     * other calculations that are not money themselves.
+     *
+     * @param cents The amount, in cents.
+     * @return The amount in currency units.
+     */
+    public static double toUnits(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    /**
+     * Formats an amount with exactly two decimal places, like {@code "2500.00"}.
+     *
+     * @param cents The amount, in cents.
+     * @return The formatted amount.
+     */
+    public static String format(long cents) {
+        return append(new StringBuilder(24), cents).toString();
+    }
+
+    /**
+     * Appends an amount with exactly two decimal places to a builder.
+     *
+     * <p>Reports that build a line at a time can use this to avoid both
+     * {@code String.format} and the intermediate string.</p>
+     *
+     * @param sb The builder to append to.
+     * @param cents The amount, in cents.
+     * @return The builder, for chaining.
+     */
+    public static StringBuilder append(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+        }
+        long units = Math.abs(cents / CENTS_PER_UNIT);
+        int fraction = (int) Math.abs(cents % CENTS_PER_UNIT);
+        sb.append(units).append('.');
+        sb.append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+        return sb;
+    }
+}
@@ -0,0 +1,147 @@
+package util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps frequently repeated strings such as niches, brand names, regions and
+ * platform names to dense integer ids.
+ *
+ * <p>Each {@code SymbolDictionary} is its own id space, starting at {@code 0}.
+ * Entities store the ids instead of separate {@link String} instances, so
+ * comparisons, grouping and hashing can be done on plain {@code int}s and the
+ * name is only resolved when it has to be displayed.</p>
+ */
+public final class SymbolDictionary {
+    /** Id returned for a symbol that has not been interned. */
+    public static final int NONE = -1;
+
+    /** Dictionary of influencer niches such as {@code "Fashion"} or {@code "Tech"}. */
+    public static final SymbolDictionary NICHES = new SymbolDictionary("niche");
+    /** Dictionary of brand names managed by brand managers. */
+    public static final SymbolDictionary BRANDS = new SymbolDictionary("brand");
+    /** Dictionary of regions influencers operate in. */
+    public static final SymbolDictionary REGIONS = new SymbolDictionary("region");
+    /** Dictionary of platform names such as {@code "YouTube"}. */
+    public static final SymbolDictionary PLATFORMS = new SymbolDictionary("platform");
+
+    private final String kind; // What kind of symbol this dictionary holds
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>(); // Name to id lookup
+    private volatile String[] names = new String[16]; // Id to name lookup
+    private volatile int size = 0; // Number of interned symbols
+
+    /**
+     * Constructs a new, empty {@code SymbolDictionary}.
+     *
+     * @param kind A short description of the symbols held, used in error messages.
+     */
+    public SymbolDictionary(String kind) {
+        this.kind = kind;
+    }
+
+    /**
+     * Returns the id of the specified name, assigning the next free id if the
+     * name has not been seen before.
+     *
+     * @param name The name to intern, or {@code null}.
+     * @return The id of the name, or {@link #NONE} if the name is {@code null}.
+     */
+    public int intern(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id; // Fast path: already interned
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            int next = size;
+            String[] current = names;
+            if (next == current.length) {
+                String[] grown = new String[current.length * 2];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+            }
+            current[next] = name;
+            names = current; // Publish the array before the id becomes visible
+            size = next + 1;
+            ids.put(name, next);
+            return next;
+        }
+    }
+
+    /**
+     * Interns every name in the specified array.
+     *
+     * @param names The names to intern.
+     * @return The ids of the names, in the same order, or an empty array if {@code names} is {@code null}.
+     */
+    public int[] internAll(String... names) {
+        if (names == null) {
+            return new int[0];
+        }
+        int[] result = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            result[i] = intern(names[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the id of the specified name without interning it.
+     *
+     * @param name The name to look up.
+     * @return The id of the name, or {@link #NONE} if it has not been interned.
+     */
+    public int lookup(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        return id == null ? NONE : id;
+    }
+
+    /**
+     * Returns the name for the specified id.
+     *
+     * @param id The id of the symbol.
+     * @return The name of the symbol, or {@code null} if {@code id} is {@link #NONE}.
+     * @throws IllegalArgumentException If the id has not been assigned by this dictionary.
+     */
+    public String name(int id) {
+        if (id == NONE) {
+            return null;
+        }
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Unknown " + kind + " id: " + id);
+        }
+        return names[id];
+    }
+
+    /**
+     * Resolves every id in the specified array to its name.
+     *
+     * @param ids The ids to resolve.
+     * @return The names of the symbols, in the same order.
+     */
+    public String[] names(int[] ids) {
+        String[] result = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            result[i] = name(ids[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of symbols interned so far. Ids range from {@code 0}
+     * to {@code size() - 1}.
+     *
+     * @return The number of interned symbols.
+     */
+    public int size() {
+        return size;
+    }
+}